@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.moneymanagerex.android.benchmarks;
+
+import android.util.Log;
+
+import java.util.Locale;
+
+/**
+ * A task timed after a warm-up. The time per operation is logged with the name of the task.
+ * @param <T> result of a run. The last one is returned, so that the work is not optimized away.
+ */
+public abstract class Benchmark<T> {
+
+    public Benchmark(String tag, String name) {
+        this.tag = tag;
+        this.name = name;
+    }
+
+    private final String tag;
+    private final String name;
+
+    protected abstract T run();
+
+    /**
+     * @param operations number of operations in a run, i.e. the values added or formatted.
+     * @return the result of the last run.
+     */
+    public T measure(int warmupIterations, int measuredIterations, int operations) {
+        T result = null;
+        for (int i = 0; i < warmupIterations; i++) {
+            result = run();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < measuredIterations; i++) {
+            result = run();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Log.i(tag, String.format(Locale.US, "%-35s %8.2f ns/op", name,
+            (double) elapsed / ((long) measuredIterations * operations)));
+        return result;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.moneymanagerex.android.benchmarks;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.io.File;
+
+/**
+ * Scratch database of a benchmark, created with only the tables and indexes it uses.
+ * A database left by a previous run is deleted first. Call delete() when done.
+ */
+public class BenchmarkOpenHelper
+    extends SQLiteOpenHelper {
+
+    /**
+     * @param name file name, in the databases directory of the app.
+     * @param schema the statements that create the tables and indexes.
+     */
+    public BenchmarkOpenHelper(Context context, String name, String... schema) {
+        this(context, context.getDatabasePath(name), schema);
+    }
+
+    private BenchmarkOpenHelper(Context context, File file, String[] schema) {
+        super(context, file.getPath(), null, 1);
+
+        SQLiteDatabase.deleteDatabase(file);
+        this.file = file;
+        this.schema = schema;
+    }
+
+    private final File file;
+    private final String[] schema;
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        for (String statement : schema) {
+            db.execSQL(statement);
+        }
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    }
+
+    /**
+     * Closes the database and deletes its files.
+     */
+    public void delete() {
+        close();
+        SQLiteDatabase.deleteDatabase(file);
+    }
+}
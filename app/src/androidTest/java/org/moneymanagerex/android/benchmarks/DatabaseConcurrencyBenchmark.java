@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.moneymanagerex.android.benchmarks;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Reader throughput while a writer keeps committing transactions, with and without write-ahead
+ * logging. The readers run the account balance query used by the lists, on the shared
+ * database instance, as the loaders do.
+ * The results are in the log, tag "DbBenchmark".
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseConcurrencyBenchmark {
+
+    private static final String TAG = "DbBenchmark";
+    private static final int READERS = 3;
+    private static final int ACCOUNTS = 10;
+    private static final int INITIAL_ROWS = 20000;
+    private static final int ROWS_PER_WRITE = 20;
+    private static final long DURATION_MILLIS = 3000;
+
+    @Test
+    public void readersAreNotBlockedByTheWriter() throws Exception {
+        Result journal = run(false);
+        Result wal = run(true);
+
+        Log.i(TAG, "rollback journal: " + journal);
+        Log.i(TAG, "write-ahead log: " + wal);
+
+        assertThat(wal.reads).isGreaterThan(0);
+        assertThat(wal.writes).isGreaterThan(0);
+    }
+
+    private Result run(boolean writeAheadLogging) throws Exception {
+        // the transactions table, reduced to the columns used here.
+        BenchmarkOpenHelper helper = new BenchmarkOpenHelper(InstrumentationRegistry.getTargetContext(),
+            "benchmark-" + (writeAheadLogging ? "wal" : "journal") + ".db",
+            "CREATE TABLE CHECKINGACCOUNT_V1 (TRANSID integer primary key, " +
+                "ACCOUNTID integer NOT NULL, TRANSDATE TEXT, TRANSAMOUNT numeric NOT NULL)",
+            "CREATE INDEX IDX_CHECKINGACCOUNT_ACCOUNT_TRANSDATE " +
+                "ON CHECKINGACCOUNT_V1 (ACCOUNTID, TRANSDATE)");
+        helper.setWriteAheadLoggingEnabled(writeAheadLogging);
+        final SQLiteDatabase db = helper.getWritableDatabase();
+        try {
+            insertRows(db, INITIAL_ROWS);
+            return measure(db);
+        } finally {
+            helper.delete();
+        }
+    }
+
+    private Result measure(final SQLiteDatabase db) throws InterruptedException {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong reads = new AtomicLong();
+        final AtomicLong writes = new AtomicLong();
+        final AtomicLong maxReadNanos = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(READERS + 1);
+
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (running.get()) {
+                        insertRows(db, ROWS_PER_WRITE);
+                        writes.incrementAndGet();
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }
+        }));
+        for (int i = 0; i < READERS; i++) {
+            final int reader = i;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int account = reader;
+                    try {
+                        while (running.get()) {
+                            long start = System.nanoTime();
+                            Cursor c = db.rawQuery("SELECT COUNT(*), TOTAL(TRANSAMOUNT) FROM CHECKINGACCOUNT_V1 " +
+                                "WHERE ACCOUNTID = ?", new String[] { Integer.toString(account % ACCOUNTS + 1) });
+                            c.moveToFirst();
+                            c.close();
+                            long nanos = System.nanoTime() - start;
+
+                            reads.incrementAndGet();
+                            if (nanos > maxReadNanos.get()) {
+                                maxReadNanos.set(nanos);
+                            }
+                            account++;
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(DURATION_MILLIS);
+        running.set(false);
+        done.await();
+
+        return new Result(reads.get(), writes.get(), maxReadNanos.get());
+    }
+
+    private static void insertRows(SQLiteDatabase db, int count) {
+        SQLiteStatement insert = db.compileStatement("INSERT INTO CHECKINGACCOUNT_V1 " +
+            "(ACCOUNTID, TRANSDATE, TRANSAMOUNT) VALUES (?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < count; i++) {
+                insert.bindLong(1, i % ACCOUNTS + 1);
+                insert.bindString(2, String.format("2017-%02d-%02d", i % 12 + 1, i % 28 + 1));
+                insert.bindDouble(3, i % 100);
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+
+    private static class Result {
+        Result(long reads, long writes, long maxReadNanos) {
+            this.reads = reads;
+            this.writes = writes;
+            this.maxReadNanos = maxReadNanos;
+        }
+
+        long reads;
+        long writes;
+        long maxReadNanos;
+
+        @Override
+        public String toString() {
+            return String.format("%.0f reads/s, %.0f writes/s, slowest read %.1f ms",
+                reads * 1000.0 / DURATION_MILLIS, writes * 1000.0 / DURATION_MILLIS,
+                maxReadNanos / 1000000.0);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.moneymanagerex.android.benchmarks;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.money.manager.ex.currency.ExchangeRates;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Converts 100k transactions to the base currency at the rates on their dates, with the
+ * in-memory rate history (ExchangeRates) and with the SQL lookup (ExchangeRates.getRateSql).
+ * Both must give the same total.
+ * The results are in the log, tag "DbBenchmark".
+ */
+@RunWith(AndroidJUnit4.class)
+public class ExchangeRateBenchmark {
+
+    private static final String TAG = "DbBenchmark";
+    private static final int CURRENCIES = 10;
+    private static final int HISTORY_DAYS = 5 * 365;
+    private static final int TRANSACTIONS = 100000;
+    /**
+     * Some transactions are older than the history and use the current rate.
+     */
+    private static final int TRANSACTION_DAYS = HISTORY_DAYS + 100;
+
+    @Test
+    public void convert100kTransactions() {
+        // the tables used for the conversion, reduced to the columns used here.
+        BenchmarkOpenHelper helper = new BenchmarkOpenHelper(InstrumentationRegistry.getTargetContext(),
+            "benchmark-rates.db",
+            "CREATE TABLE CURRENCYFORMATS_V1 (CURRENCYID integer primary key, BASECONVRATE numeric)",
+            "CREATE TABLE CURRENCYHISTORY_V1 (CURRHISTID INTEGER PRIMARY KEY, " +
+                "CURRENCYID INTEGER NOT NULL, CURRDATE TEXT NOT NULL, CURRVALUE NUMERIC NOT NULL, " +
+                "UNIQUE(CURRENCYID, CURRDATE))",
+            "CREATE INDEX IDX_CURRENCYHISTORY_CURRENCYID_CURRDATE " +
+                "ON CURRENCYHISTORY_V1(CURRENCYID, CURRDATE)",
+            "CREATE TABLE ACCOUNTLIST_V1 (ACCOUNTID integer primary key, CURRENCYID integer NOT NULL)",
+            "CREATE TABLE CHECKINGACCOUNT_V1 (TRANSID integer primary key, " +
+                "ACCOUNTID integer NOT NULL, TRANSDATE TEXT, TRANSAMOUNT numeric NOT NULL)");
+        SQLiteDatabase db = helper.getWritableDatabase();
+        try {
+            int today = ExchangeRates.toEpochDay(2017, 6, 30);
+            insertData(db, today);
+
+            // in memory
+            long start = System.nanoTime();
+            SparseArray<ExchangeRates.RateHistory> rates = ExchangeRates.load(db);
+            long loadNanos = System.nanoTime() - start;
+
+            int[] currencies = new int[TRANSACTIONS];
+            String[] dates = new String[TRANSACTIONS];
+            double[] amounts = new double[TRANSACTIONS];
+            start = System.nanoTime();
+            Cursor c = db.rawQuery("SELECT a.CURRENCYID, TX.TRANSDATE, TX.TRANSAMOUNT " +
+                "FROM CHECKINGACCOUNT_V1 TX JOIN ACCOUNTLIST_V1 a ON a.ACCOUNTID = TX.ACCOUNTID", null);
+            int count = 0;
+            try {
+                while (c.moveToNext()) {
+                    currencies[count] = c.getInt(0);
+                    dates[count] = c.getString(1);
+                    amounts[count] = c.getDouble(2);
+                    count++;
+                }
+            } finally {
+                c.close();
+            }
+            long readNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            double memoryTotal = 0;
+            for (int i = 0; i < count; i++) {
+                double rate = rates.get(currencies[i]).rateOn(ExchangeRates.toEpochDay(dates[i]));
+                memoryTotal += amounts[i] * rate;
+            }
+            long convertNanos = System.nanoTime() - start;
+
+            // in SQL
+            start = System.nanoTime();
+            c = db.rawQuery("SELECT TOTAL(TX.TRANSAMOUNT * " +
+                ExchangeRates.getRateSql("a.CURRENCYID", "TX.TRANSDATE", "cf.BASECONVRATE") + ") " +
+                "FROM CHECKINGACCOUNT_V1 TX JOIN ACCOUNTLIST_V1 a ON a.ACCOUNTID = TX.ACCOUNTID " +
+                "LEFT JOIN CURRENCYFORMATS_V1 cf ON cf.CURRENCYID = a.CURRENCYID", null);
+            double sqlTotal;
+            try {
+                c.moveToFirst();
+                sqlTotal = c.getDouble(0);
+            } finally {
+                c.close();
+            }
+            long sqlNanos = System.nanoTime() - start;
+
+            Log.i(TAG, String.format(Locale.US, "%d transactions, %d rates: history load %.1f ms, " +
+                    "read %.1f ms, convert in memory %.1f ms, convert in SQL %.1f ms",
+                count, CURRENCIES * HISTORY_DAYS, toMillis(loadNanos), toMillis(readNanos),
+                toMillis(convertNanos), toMillis(sqlNanos)));
+
+            assertThat(count).isEqualTo(TRANSACTIONS);
+            assertThat(Math.abs(memoryTotal - sqlTotal)).isLessThan(Math.abs(sqlTotal) * 1e-9 + 0.01);
+        } finally {
+            helper.delete();
+        }
+    }
+
+    private void insertData(SQLiteDatabase db, int today) {
+        Random random = new Random(1);
+
+        db.beginTransaction();
+        try {
+            SQLiteStatement insert = db.compileStatement("INSERT INTO CURRENCYFORMATS_V1 " +
+                "(CURRENCYID, BASECONVRATE) VALUES (?, ?)");
+            for (int currency = 1; currency <= CURRENCIES; currency++) {
+                insert.bindLong(1, currency);
+                insert.bindDouble(2, 0.5 + random.nextDouble());
+                insert.executeInsert();
+            }
+            insert.close();
+
+            insert = db.compileStatement("INSERT INTO ACCOUNTLIST_V1 (ACCOUNTID, CURRENCYID) VALUES (?, ?)");
+            for (int currency = 1; currency <= CURRENCIES; currency++) {
+                insert.bindLong(1, currency);
+                insert.bindLong(2, currency);
+                insert.executeInsert();
+            }
+            insert.close();
+
+            insert = db.compileStatement("INSERT INTO CURRENCYHISTORY_V1 " +
+                "(CURRENCYID, CURRDATE, CURRVALUE) VALUES (?, ?, ?)");
+            for (int currency = 1; currency <= CURRENCIES; currency++) {
+                for (int day = today - HISTORY_DAYS + 1; day <= today; day++) {
+                    insert.bindLong(1, currency);
+                    insert.bindString(2, formatDay(day));
+                    insert.bindDouble(3, 0.5 + random.nextDouble());
+                    insert.executeInsert();
+                }
+            }
+            insert.close();
+
+            insert = db.compileStatement("INSERT INTO CHECKINGACCOUNT_V1 " +
+                "(ACCOUNTID, TRANSDATE, TRANSAMOUNT) VALUES (?, ?, ?)");
+            for (int i = 0; i < TRANSACTIONS; i++) {
+                insert.bindLong(1, random.nextInt(CURRENCIES) + 1);
+                insert.bindString(2, formatDay(today - random.nextInt(TRANSACTION_DAYS)));
+                insert.bindDouble(3, random.nextInt(100000) / 100.0);
+                insert.executeInsert();
+            }
+            insert.close();
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * @return yyyy-MM-dd of the day since the epoch.
+     */
+    private static String formatDay(int epochDay) {
+        // inverse of ExchangeRates.toEpochDay.
+        int z = epochDay + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int dayOfEra = z - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return String.format(Locale.US, "%04d-%02d-%02d", year, month, day);
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.moneymanagerex.android.benchmarks;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import info.javaperformance.money.Money;
+import info.javaperformance.money.MoneyAccumulator;
+import info.javaperformance.money.MoneyFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Sums Money values with Money.add, MoneyAccumulator and MoneyAccumulator.sum.
+ * All must give the same total.
+ * The results are in the log, tag "MoneyBenchmark", in ns per added value.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MoneyAccumulatorBenchmark {
+
+    private static final String TAG = "MoneyBenchmark";
+    private static final int VALUES = 4096;
+    private static final int WARMUP_ITERATIONS = 50;
+    private static final int MEASURED_ITERATIONS = 200;
+
+    @Test
+    public void sumValues() {
+        final long[] units = new long[VALUES];
+        final Money[] values = new Money[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            units[i] = (i * 7919L - 16000000L) * 13;
+            values[i] = MoneyFactory.fromUnits(units[i], 4);
+        }
+
+        Benchmark<Money> moneyAdd = new Benchmark<Money>(TAG, "Money.add") {
+            @Override
+            protected Money run() {
+                Money sum = MoneyFactory.fromUnits(0, 0);
+                for (Money value : values) {
+                    sum = sum.add(value);
+                }
+                return sum;
+            }
+        };
+        final MoneyAccumulator accumulator = new MoneyAccumulator();
+        Benchmark<Money> accumulatorAdd = new Benchmark<Money>(TAG, "MoneyAccumulator.add(Money)") {
+            @Override
+            protected Money run() {
+                accumulator.clear();
+                for (Money value : values) {
+                    accumulator.add(value);
+                }
+                return accumulator.toMoney();
+            }
+        };
+        Benchmark<Money> sumOfUnits = new Benchmark<Money>(TAG, "MoneyAccumulator.sum(long[])") {
+            @Override
+            protected Money run() {
+                return MoneyAccumulator.sum(units, 4);
+            }
+        };
+
+        Money expected = measure(moneyAdd);
+        assertThat(measure(accumulatorAdd).compareTo(expected)).isEqualTo(0);
+        assertThat(measure(sumOfUnits).compareTo(expected)).isEqualTo(0);
+    }
+
+    private Money measure(Benchmark<Money> benchmark) {
+        return benchmark.measure(WARMUP_ITERATIONS, MEASURED_ITERATIONS, VALUES);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.moneymanagerex.android.benchmarks;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+
+import info.javaperformance.money.Money;
+import info.javaperformance.money.MoneyFactory;
+import info.javaperformance.money.MoneyFormatter;
+
+/**
+ * Compares MoneyFormatter with the DecimalFormat based formatting used before.
+ * The results are in the log, tag "MoneyBenchmark", in ns per formatted value.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MoneyFormatterBenchmark {
+
+    private static final String TAG = "MoneyBenchmark";
+    private static final int VALUES = 1024;
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int MEASURED_ITERATIONS = 100;
+
+    @Test
+    public void formatValues() {
+        Money[] values = new Money[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            values[i] = MoneyFactory.fromUnits((i * 7919L - 4000000L) * 13, 4);
+        }
+
+        final DecimalFormatSymbols symbols = new DecimalFormatSymbols();
+        symbols.setDecimalSeparator('.');
+        symbols.setGroupingSeparator(',');
+        final MoneyFormatter formatter = new MoneyFormatter(2, '.', ',', "$ ", null);
+
+        FormatBenchmark decimalFormat = new FormatBenchmark(values, "DecimalFormat per call") {
+            @Override
+            int format(Money value) {
+                // same steps as FormatUtilities.format before MoneyFormatter
+                DecimalFormat format = new DecimalFormat("#,##0.00");
+                format.setMaximumFractionDigits(2);
+                format.setMinimumFractionDigits(2);
+                format.setGroupingSize(3);
+                format.setDecimalFormatSymbols(symbols);
+                return ("$ " + format.format(value.truncate(2).toDouble())).length();
+            }
+        };
+        final DecimalFormat cached = new DecimalFormat("#,##0.00", symbols);
+        FormatBenchmark cachedDecimalFormat = new FormatBenchmark(values, "cached DecimalFormat") {
+            @Override
+            int format(Money value) {
+                return ("$ " + cached.format(value.truncate(2).toDouble())).length();
+            }
+        };
+        FormatBenchmark moneyFormatter = new FormatBenchmark(values, "MoneyFormatter") {
+            @Override
+            int format(Money value) {
+                return formatter.format(value).length();
+            }
+        };
+        final StringBuilder builder = new StringBuilder();
+        FormatBenchmark moneyFormatterBuilder = new FormatBenchmark(values, "MoneyFormatter to StringBuilder") {
+            @Override
+            int format(Money value) {
+                builder.setLength(0);
+                return formatter.format(value, builder).length();
+            }
+        };
+
+        for (FormatBenchmark benchmark : new FormatBenchmark[] { decimalFormat, cachedDecimalFormat,
+            moneyFormatter, moneyFormatterBuilder }) {
+            benchmark.measure(WARMUP_ITERATIONS, MEASURED_ITERATIONS, VALUES);
+        }
+    }
+
+    /**
+     * Formats all the values in a run. The result is the total length of the formatted values.
+     */
+    private static abstract class FormatBenchmark
+        extends Benchmark<Long> {
+
+        FormatBenchmark(Money[] values, String name) {
+            super(TAG, name);
+            this.values = values;
+        }
+
+        private final Money[] values;
+
+        abstract int format(Money value);
+
+        @Override
+        protected Long run() {
+            long length = 0;
+            for (Money value : values) {
+                length += format(value);
+            }
+            return length;
+        }
+    }
+}
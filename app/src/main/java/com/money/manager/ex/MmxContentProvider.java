@@ -17,8 +17,11 @@
 package com.money.manager.ex;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 //import net.sqlcipher.database.SQLiteDatabase;
@@ -32,13 +35,25 @@ import android.text.TextUtils;
 
 import com.money.manager.ex.budget.BudgetQuery;
 import com.money.manager.ex.currency.CurrencyRepository;
+import com.money.manager.ex.database.AccountBalanceLedger;
+import com.money.manager.ex.database.BalanceCheckpoints;
+import com.money.manager.ex.database.CacheState;
+import com.money.manager.ex.database.DataChangeBus;
+import com.money.manager.ex.database.MonthlyTotals;
+import com.money.manager.ex.database.NameUsageChange;
+import com.money.manager.ex.database.TransactionDates;
+import com.money.manager.ex.database.TransactionSearchIndex;
 import com.money.manager.ex.database.Dataset;
 import com.money.manager.ex.database.DatasetType;
+import com.money.manager.ex.database.ITransactionEntity;
 import com.money.manager.ex.database.MmxOpenHelper;
 import com.money.manager.ex.database.QueryAccountBills;
 import com.money.manager.ex.database.QueryAllData;
 import com.money.manager.ex.database.QueryBillDeposits;
 import com.money.manager.ex.database.QueryCategorySubCategory;
+import com.money.manager.ex.database.QueryPlanAdvisor;
+import com.money.manager.ex.database.QueryStatistics;
+import com.money.manager.ex.database.StatementCache;
 import com.money.manager.ex.database.QueryReportIncomeVsExpenses;
 import com.money.manager.ex.database.SQLDataSet;
 import com.money.manager.ex.database.ViewMobileData;
@@ -53,17 +68,29 @@ import com.money.manager.ex.datalayer.PayeeRepository;
 import com.money.manager.ex.datalayer.RecurringTransactionRepository;
 import com.money.manager.ex.datalayer.SplitCategoriesRepository;
 import com.money.manager.ex.datalayer.SplitRecurringCategoriesRepository;
+import com.money.manager.ex.datalayer.StockFields;
 import com.money.manager.ex.datalayer.StockRepository;
 import com.money.manager.ex.datalayer.SubcategoryRepository;
 import com.money.manager.ex.datalayer.StockHistoryRepository;
-import com.money.manager.ex.sync.SyncManager;
+import com.money.manager.ex.domainmodel.Category;
+import com.money.manager.ex.domainmodel.Payee;
+import com.money.manager.ex.domainmodel.SplitCategory;
+import com.money.manager.ex.domainmodel.Subcategory;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 import javax.inject.Inject;
 
 import dagger.Lazy;
+import rx.Observable;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
 import timber.log.Timber;
 
 /**
@@ -86,6 +113,14 @@ public class MmxContentProvider
     }
 
     @Inject Lazy<MmxOpenHelper> openHelper;
+    @Inject Lazy<DataChangeBus> changeBus;
+    @Inject Lazy<QueryStatistics> statistics;
+    @Inject Lazy<StatementCache> statementCache;
+
+    /**
+     * Batch being applied on the current thread, if any.
+     */
+    private final ThreadLocal<Batch> mBatch = new ThreadLocal<>();
 
     public static String getAuthority() {
         return mAuthority;
@@ -156,6 +191,7 @@ public class MmxContentProvider
         // find object from uri
         Object ret = getObjectFromUri(uri);
         long id = Constants.NOT_SET;
+        NameUsageChange usage = null;
         String parse;
 
         if (Dataset.class.isInstance(ret)) {
@@ -164,16 +200,29 @@ public class MmxContentProvider
                 case TABLE:
                     logTableInsert(dataset, values);
 
-                    //database.beginTransaction();
-                    try {
-                        initializeDependencies();
+                    initializeDependencies();
+                    SQLiteDatabase database = openHelper.get().getWritableDatabase();
+                    long start = statistics.get().start();
 
-                        id = openHelper.get().getWritableDatabase()
-                                .insertOrThrow(dataset.getSource(), null, values);
-                        //database.setTransactionSuccessful();
+                    database.beginTransaction();
+                    try {
+                        long[] splitTransactions = prepareSplitInsert(database, dataset, values);
+                        long newId = statementCache.get().insert(database, dataset.getSource(), values);
+                        updateCacheState(database, dataset, new long[] { newId });
+                        updateBalancesAfterInsert(database, dataset, newId, values);
+                        updateTotalsAfterSplitInsert(database, splitTransactions);
+                        NameUsageChange usageChange = getUsageAfterInsert(database, dataset, newId);
+
+                        database.setTransactionSuccessful();
+                        id = newId;
+                        usage = usageChange;
                     } catch (Exception e) {
                         Timber.e(e, "inserting: %s", "insert");
+                        markBatchFailed();
+                    } finally {
+                        database.endTransaction();
                     }
+                    recordOperation(dataset, "insert", start);
                     parse = dataset.getBasepath() + "/" + id;
                     break;
                 default:
@@ -184,7 +233,7 @@ public class MmxContentProvider
         }
 
         if (id > 0) {
-            notifyChange(uri);
+            notifyChange(uri, usage);
         }
 
         // return Uri with the primary key of the inserted record.
@@ -202,18 +251,36 @@ public class MmxContentProvider
         SQLiteDatabase database = openHelper.get().getWritableDatabase();
 
         int rowsUpdate = 0;
+        NameUsageChange usage = null;
 
         if (Dataset.class.isInstance(ret)) {
             Dataset dataset = ((Dataset) ret);
             switch (dataset.getType()) {
                 case TABLE:
                     logUpdate(dataset, values, whereClause, whereArgs);
+                    long start = statistics.get().start();
 
+                    database.beginTransaction();
                     try {
-                        rowsUpdate = database.update(dataset.getSource(), values, whereClause, whereArgs);
+                        long[] changedRows = prepareCacheState(database, dataset, whereClause, whereArgs);
+                        BalanceChange change = prepareBalanceChange(database, dataset, whereClause, whereArgs, values);
+                        NameUsageChange usageChange = prepareUsageChange(database, dataset, whereClause, whereArgs,
+                            values);
+                        int updated = database.update(dataset.getSource(), values, whereClause, whereArgs);
+                        updateCacheState(database, dataset, changedRows);
+                        updateBalancesAfterUpdate(database, change, values);
+                        updateUsageAfterUpdate(database, dataset, usageChange, values, changedRows);
+
+                        database.setTransactionSuccessful();
+                        rowsUpdate = updated;
+                        usage = usageChange;
                     } catch (Exception ex) {
                         Timber.e(ex, "updating: %s", "update");
+                        markBatchFailed();
+                    } finally {
+                        database.endTransaction();
                     }
+                    recordOperation(dataset, "update", start);
                     break;
                 default:
                     throw new IllegalArgumentException("Type of dataset not supported for update");
@@ -223,7 +290,7 @@ public class MmxContentProvider
         }
 
         if (rowsUpdate > 0) {
-            notifyChange(uri);
+            notifyChange(uri, usage);
         }
 
         // return rows modified
@@ -244,24 +311,36 @@ public class MmxContentProvider
         }
         // take a database reference
         int rowsDelete = 0;
+        NameUsageChange usage = null;
 
         if (Dataset.class.isInstance(ret)) {
             Dataset dataset = ((Dataset) ret);
             switch (dataset.getType()) {
                 case TABLE:
                     logDelete(dataset, selection, selectionArgs);
-                    try {
-                        initializeDependencies();
-
-                        rowsDelete = openHelper.get().getWritableDatabase()
-                                .delete(dataset.getSource(), selection, selectionArgs);
+                    initializeDependencies();
+                    SQLiteDatabase database = openHelper.get().getWritableDatabase();
+                    long start = statistics.get().start();
 
-                        // committed
-                        //if (BuildConfig.DEBUG) Log.d(LOGCAT, "database set transaction successful");
-                        //database.setTransactionSuccessful();
+                    database.beginTransaction();
+                    try {
+                        prepareCacheState(database, dataset, selection, selectionArgs);
+                        BalanceChange change = prepareBalanceChange(database, dataset, selection, selectionArgs, null);
+                        NameUsageChange usageChange = prepareUsageChange(database, dataset, selection, selectionArgs,
+                            null);
+                        int deleted = database.delete(dataset.getSource(), selection, selectionArgs);
+                        updateBalancesAfterDelete(database, change);
+
+                        database.setTransactionSuccessful();
+                        rowsDelete = deleted;
+                        usage = usageChange;
                     } catch (Exception e) {
-                        Timber.e(e, "insert");
+                        Timber.e(e, "delete");
+                        markBatchFailed();
+                    } finally {
+                        database.endTransaction();
                     }
+                    recordOperation(dataset, "delete", start);
                     break;
                 default:
                     throw new IllegalArgumentException("Type of dataset not supported for delete");
@@ -270,11 +349,47 @@ public class MmxContentProvider
             throw new IllegalArgumentException("Object ret of mapContent is not istance of dataset");
         }
 
-        if (rowsDelete > 0) notifyChange(uri);
+        if (rowsDelete > 0) notifyChange(uri, usage);
 
         return rowsDelete;
     }
 
+    /**
+     * Applies all the operations in one database transaction. If any of the operations fails,
+     * none of the changes are stored.
+     * Observers are notified once per changed uri, and the change bus once, after the commit.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+        throws OperationApplicationException {
+        initializeDependencies();
+        SQLiteDatabase database = openHelper.get().getWritableDatabase();
+
+        Batch batch = new Batch();
+        mBatch.set(batch);
+
+        ContentProviderResult[] results;
+        database.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            if (batch.failed) {
+                throw new OperationApplicationException("batch operation failed");
+            }
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            mBatch.remove();
+        }
+
+        if (!batch.changedUris.isEmpty()) {
+            notifyChange(batch.changedUris, batch.changedTables, batch.usage);
+        }
+
+        return results;
+    }
+
     /**
      * Prepare statement SQL from data set object
      *
@@ -354,6 +469,7 @@ public class MmxContentProvider
 
     public void resetDatabase() {
         if (openHelper != null) {
+            statementCache.get().clear();
             openHelper.get().close();
         }
 
@@ -367,6 +483,268 @@ public class MmxContentProvider
         if (openHelper != null) return;
 
         MoneyManagerApplication.getApp().iocComponent.inject(this);
+
+        if (BuildConfig.DEBUG) {
+            checkQueryPlans();
+        }
+    }
+
+    /**
+     * Reports the full table scans in the queries, in the background.
+     */
+    private void checkQueryPlans() {
+        final List<Dataset> datasets = new ArrayList<>();
+        for (int i = 0; i < mapContent.size(); i++) {
+            Object item = mapContent.valueAt(i);
+            if (item instanceof Dataset) {
+                datasets.add((Dataset) item);
+            }
+        }
+
+        Observable.fromCallable(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                SQLiteDatabase db = openHelper.get().getReadableDatabase();
+                if (db == null) return 0;
+
+                return new QueryPlanAdvisor(db).report(datasets);
+            }
+        })
+            .subscribeOn(Schedulers.io())
+            .onErrorReturn(new Func1<Throwable, Integer>() {
+                @Override
+                public Integer call(Throwable throwable) {
+                    Timber.e(throwable, "checking query plans");
+                    return 0;
+                }
+            })
+            .subscribe();
+    }
+
+    // Account balances
+
+    /**
+     * Balance ledger state captured before an update or delete.
+     */
+    private static class BalanceChange {
+        AccountBalanceLedger ledger;
+        long[] transactionIds;
+        List<Integer> stockAccounts;
+        /**
+         * Transactions owning the changed splits, whose monthly totals are recalculated.
+         */
+        long[] splitTransactionIds;
+        /**
+         * Transactions using the changed payee or category names, indexed again for the search.
+         */
+        long[] namedTransactionIds;
+    }
+
+    private boolean isTransactionsTable(Dataset dataset) {
+        return AccountTransactionRepository.TABLE_NAME.equalsIgnoreCase(dataset.getSource());
+    }
+
+    private boolean isSplitsTable(Dataset dataset) {
+        return SplitCategory.TABLE_NAME.equalsIgnoreCase(dataset.getSource());
+    }
+
+    private boolean isStocksTable(Dataset dataset) {
+        return StockRepository.TABLE_NAME.equalsIgnoreCase(dataset.getSource());
+    }
+
+    /**
+     * @return the name column if the dataset is the payee, category or subcategory table.
+     */
+    private String getNameColumn(Dataset dataset) {
+        String source = dataset.getSource();
+        if (PayeeRepository.TABLE_NAME.equalsIgnoreCase(source)) return Payee.PAYEENAME;
+        if (CategoryRepository.tableName.equalsIgnoreCase(source)) return Category.CATEGNAME;
+        if (SubcategoryRepository.tableName.equalsIgnoreCase(source)) return Subcategory.SUBCATEGNAME;
+        return null;
+    }
+
+    /**
+     * Removes the rows about to be updated or deleted from the state of the local caches.
+     * @return ids of the rows, or null if the dataset is not a source of the caches.
+     */
+    private long[] prepareCacheState(SQLiteDatabase database, Dataset dataset, String selection,
+                                     String[] selectionArgs) {
+        if (!CacheState.isSource(dataset.getSource())) return null;
+
+        return new CacheState(database).beforeRowsChange(dataset.getSource(), selection, selectionArgs);
+    }
+
+    /**
+     * Adds the inserted or updated rows to the state of the local caches.
+     */
+    private void updateCacheState(SQLiteDatabase database, Dataset dataset, long[] ids) {
+        if (ids == null || !CacheState.isSource(dataset.getSource())) return;
+
+        new CacheState(database).rowsChanged(dataset.getSource(), ids);
+    }
+
+    private void updateBalancesAfterInsert(SQLiteDatabase database, Dataset dataset, long id,
+                                           ContentValues values) {
+        if (isTransactionsTable(dataset)) {
+            new AccountBalanceLedger(database).transactionInserted(id);
+            new BalanceCheckpoints(database).transactionsChanged(new long[] { id });
+            new TransactionDates(database).transactionsChanged(new long[] { id });
+            new MonthlyTotals(database).transactionsChanged(new long[] { id });
+            new TransactionSearchIndex(database).transactionsChanged(new long[] { id });
+        } else if (isStocksTable(dataset) && values.containsKey(StockFields.HELDAT)) {
+            new AccountBalanceLedger(database).refreshStockValue(
+                Collections.singletonList(values.getAsInteger(StockFields.HELDAT)));
+        }
+    }
+
+    /**
+     * Removes the monthly totals of the transaction that gets a new split.
+     * @return the transaction id, or null if the dataset is not the splits table.
+     */
+    private long[] prepareSplitInsert(SQLiteDatabase database, Dataset dataset, ContentValues values) {
+        if (!isSplitsTable(dataset) || !values.containsKey(SplitCategory.TRANSID)) return null;
+
+        long[] ids = new long[] { values.getAsLong(SplitCategory.TRANSID) };
+        new MonthlyTotals(database).beforeTransactionsChange(ids);
+        return ids;
+    }
+
+    private void updateTotalsAfterSplitInsert(SQLiteDatabase database, long[] splitTransactions) {
+        if (splitTransactions == null) return;
+
+        new MonthlyTotals(database).transactionsChanged(splitTransactions);
+        new TransactionSearchIndex(database).transactionsChanged(splitTransactions);
+    }
+
+    /**
+     * @param values The new values on update, null on delete.
+     */
+    private BalanceChange prepareBalanceChange(SQLiteDatabase database, Dataset dataset,
+                                               String selection, String[] selectionArgs,
+                                               ContentValues values) {
+        if (isSplitsTable(dataset)) {
+            MonthlyTotals totals = new MonthlyTotals(database);
+
+            BalanceChange change = new BalanceChange();
+            change.splitTransactionIds = totals.getSplitTransactions(selection, selectionArgs);
+            // a split moved to another transaction changes that one too.
+            if (values != null && values.containsKey(SplitCategory.TRANSID)) {
+                long newId = values.getAsLong(SplitCategory.TRANSID);
+                long[] ids = Arrays.copyOf(change.splitTransactionIds, change.splitTransactionIds.length + 1);
+                ids[ids.length - 1] = newId;
+                change.splitTransactionIds = ids;
+            }
+            totals.beforeTransactionsChange(change.splitTransactionIds);
+            return change;
+        }
+        String nameColumn = getNameColumn(dataset);
+        if (nameColumn != null) {
+            // only renames and deletions change the indexed names.
+            if (values != null && !values.containsKey(nameColumn)) return null;
+
+            BalanceChange change = new BalanceChange();
+            change.namedTransactionIds = new TransactionSearchIndex(database)
+                .getTransactionsUsing(dataset.getSource(), selection, selectionArgs);
+            return change;
+        }
+        if (!isTransactionsTable(dataset) && !isStocksTable(dataset)) return null;
+
+        BalanceChange change = new BalanceChange();
+        change.ledger = new AccountBalanceLedger(database);
+
+        if (isTransactionsTable(dataset)) {
+            change.transactionIds = change.ledger.beforeTransactionsChange(selection, selectionArgs);
+            new BalanceCheckpoints(database).beforeTransactionsChange(change.transactionIds);
+            new MonthlyTotals(database).beforeTransactionsChange(change.transactionIds);
+        } else {
+            change.stockAccounts = change.ledger.getStockAccounts(selection, selectionArgs);
+        }
+        return change;
+    }
+
+    private void updateBalancesAfterUpdate(SQLiteDatabase database, BalanceChange change,
+                                           ContentValues values) {
+        if (change == null) return;
+
+        if (change.namedTransactionIds != null) {
+            new TransactionSearchIndex(database).transactionsChanged(change.namedTransactionIds);
+        } else if (change.splitTransactionIds != null) {
+            new MonthlyTotals(database).transactionsChanged(change.splitTransactionIds);
+            new TransactionSearchIndex(database).transactionsChanged(change.splitTransactionIds);
+        } else if (change.transactionIds != null) {
+            change.ledger.transactionsUpdated(change.transactionIds);
+            // the date or the accounts may have changed.
+            new BalanceCheckpoints(database).transactionsChanged(change.transactionIds);
+            new TransactionDates(database).transactionsChanged(change.transactionIds);
+            new MonthlyTotals(database).transactionsChanged(change.transactionIds);
+            new TransactionSearchIndex(database).transactionsChanged(change.transactionIds);
+        } else {
+            List<Integer> accounts = new ArrayList<>(change.stockAccounts);
+            // The stock may have been moved to another account.
+            if (values.containsKey(StockFields.HELDAT)) {
+                accounts.add(values.getAsInteger(StockFields.HELDAT));
+            }
+            change.ledger.refreshStockValue(accounts);
+        }
+    }
+
+    private void updateBalancesAfterDelete(SQLiteDatabase database, BalanceChange change) {
+        if (change == null) return;
+
+        if (change.namedTransactionIds != null) {
+            new TransactionSearchIndex(database).transactionsChanged(change.namedTransactionIds);
+        } else if (change.splitTransactionIds != null) {
+            // the remaining splits of the transactions.
+            new MonthlyTotals(database).transactionsChanged(change.splitTransactionIds);
+            new TransactionSearchIndex(database).transactionsChanged(change.splitTransactionIds);
+        } else if (change.transactionIds != null) {
+            new TransactionDates(database).transactionsDeleted(change.transactionIds);
+            new TransactionSearchIndex(database).transactionsDeleted(change.transactionIds);
+        } else {
+            change.ledger.refreshStockValue(change.stockAccounts);
+        }
+    }
+
+    // Payee and category usage
+
+    private NameUsageChange getUsageAfterInsert(SQLiteDatabase database, Dataset dataset, long id) {
+        if (!NameUsageChange.isUsageTable(dataset.getSource())) return null;
+
+        NameUsageChange usage = new NameUsageChange();
+        usage.rowsChanged(database, dataset.getSource(), new long[] { id });
+        return usage;
+    }
+
+    /**
+     * Removes the usage of the transactions or splits about to be updated or deleted.
+     * @param values The new values on update, null on delete.
+     * @return the usage change, or null if the dataset is not the transactions or the splits.
+     */
+    private NameUsageChange prepareUsageChange(SQLiteDatabase database, Dataset dataset,
+                                               String selection, String[] selectionArgs,
+                                               ContentValues values) {
+        if (!NameUsageChange.isUsageTable(dataset.getSource())) return null;
+
+        NameUsageChange usage = new NameUsageChange();
+        if (values == null || changesUsage(values)) {
+            usage.beforeRowsChange(database, dataset.getSource(), selection, selectionArgs);
+        }
+        return usage;
+    }
+
+    /**
+     * @param ids rowids of the updated rows, as returned by prepareCacheState.
+     */
+    private void updateUsageAfterUpdate(SQLiteDatabase database, Dataset dataset, NameUsageChange usage,
+                                        ContentValues values, long[] ids) {
+        if (usage == null || !changesUsage(values)) return;
+
+        usage.rowsChanged(database, dataset.getSource(), ids);
+    }
+
+    private boolean changesUsage(ContentValues values) {
+        return values.containsKey(ITransactionEntity.PAYEEID) || values.containsKey(ITransactionEntity.CATEGID) ||
+            values.containsKey(ITransactionEntity.SUBCATEGID);
     }
 
     private void logTableInsert(Dataset dataset, ContentValues values) {
@@ -399,16 +777,21 @@ public class MmxContentProvider
 
 //            logQuery(dataset, projection, selection, selectionArgs, sortOrder);
 
+            long start = statistics.get().start();
+            String sql;
+
             switch (dataset.getType()) {
                 case QUERY:
-                    String query = prepareQuery(dataset.getSource(), projection, selection, sortOrder);
-                    cursor = database.rawQuery(query, selectionArgs);
+                    sql = prepareQuery(dataset.getSource(), projection, selection, sortOrder);
+                    cursor = database.rawQuery(sql, selectionArgs);
                     break;
                 case SQL:
+                    sql = selection;
                     cursor = database.rawQuery(selection, selectionArgs);
                     break;
                 case TABLE:
                 case VIEW:
+                    sql = null;
                     SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
                     queryBuilder.setTables(dataset.getSource());
                     cursor = queryBuilder.query(database, projection, selection, selectionArgs, null, null, sortOrder);
@@ -416,6 +799,14 @@ public class MmxContentProvider
                 default:
                     throw new IllegalArgumentException("Type of dataset not defined");
             }
+
+            if (start != 0) {
+                if (sql == null) {
+                    sql = SQLiteQueryBuilder.buildQueryString(false, dataset.getSource(), projection,
+                        selection, null, null, sortOrder, null);
+                }
+                recordQuery(database, dataset, cursor, sql, selectionArgs, start);
+            }
         } else {
             throw new IllegalArgumentException("Object sourceObject of mapContent is not instance of dataset");
         }
@@ -423,13 +814,42 @@ public class MmxContentProvider
         // notify listeners waiting for the data is ready
         cursor.setNotificationUri(getContext().getContentResolver(), uri);
 
-        if (!cursor.isClosed()) {
-            Timber.d("Rows returned: %d", cursor.getCount());
-        }
+        // The row count is not logged. Counting reads the whole result before the first row
+        // is displayed.
 
         return cursor;
     }
 
+    /**
+     * Records the duration of the query. The cursor is filled here, as the query is only
+     * executed when the cursor is first read, so this runs only while the recording is on.
+     * Slow queries are sampled with their plan.
+     */
+    private void recordQuery(SQLiteDatabase database, Dataset dataset, Cursor cursor, String sql,
+                             String[] selectionArgs, long start) {
+        QueryStatistics stats = statistics.get();
+
+        cursor.getCount();
+        long elapsed = stats.elapsed(start);
+        stats.record(dataset.getBasepath(), "query", elapsed);
+
+        if (stats.isSlow(elapsed)) {
+            try {
+                List<String> plan = new QueryPlanAdvisor(database).explain(sql, selectionArgs);
+                stats.recordSlowQuery(dataset.getBasepath(), sql, plan, elapsed);
+            } catch (Exception e) {
+                Timber.e(e, "explaining a slow query");
+            }
+        }
+    }
+
+    private void recordOperation(Dataset dataset, String operation, long start) {
+        if (start == 0) return;
+
+        QueryStatistics stats = statistics.get();
+        stats.record(dataset.getBasepath(), operation, stats.elapsed(start));
+    }
+
     private void logQuery(Dataset dataset, String[] projection, String selection,
                           String[] selectionArgs, String sortOrder) {
         // compose log verbose instruction
@@ -493,12 +913,51 @@ public class MmxContentProvider
         Timber.d(log);
     }
 
-    private void notifyChange(Uri uri) {
+    /**
+     * @param usage change of the payee and category usage, for the writes to the transactions
+     *              and the splits. Null otherwise.
+     */
+    private void notifyChange(Uri uri, NameUsageChange usage) {
+        String table = ((Dataset) getObjectFromUri(uri)).getSource();
+
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            // notified when the batch is committed.
+            batch.changedUris.add(uri);
+            batch.changedTables.add(table);
+            if (usage != null) {
+                batch.usage.add(usage);
+            }
+            return;
+        }
+
+        notifyChange(Collections.singleton(uri), Collections.singleton(table), usage);
+    }
+
+    private void notifyChange(Set<Uri> uris, Set<String> tables, NameUsageChange usage) {
         if (getContext() == null) return;
 
-        // notify update. todo Do this also after changes via sqlite.
-        getContext().getContentResolver().notifyChange(uri, null);
-        // notify the sync that database has changed.
-        new SyncManager(getContext()).dataChanged();
+        for (Uri uri : uris) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+        // caches and the sync scheduler.
+        changeBus.get().tablesChanged(tables, usage);
+    }
+
+    private void markBatchFailed() {
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            batch.failed = true;
+        }
+    }
+
+    /**
+     * State of the batch being applied.
+     */
+    private static class Batch {
+        Set<Uri> changedUris = new LinkedHashSet<>();
+        Set<String> changedTables = new LinkedHashSet<>();
+        NameUsageChange usage = new NameUsageChange();
+        boolean failed;
     }
 }
@@ -34,6 +34,8 @@ import com.money.manager.ex.core.UIHelper;
 import com.money.manager.ex.core.ioc.DaggerMmxComponent;
 import com.money.manager.ex.core.ioc.MmxComponent;
 import com.money.manager.ex.core.ioc.MmxModule;
+import com.money.manager.ex.database.CacheState;
+import com.money.manager.ex.database.DataChangeBus;
 import com.money.manager.ex.database.MmxOpenHelper;
 import com.money.manager.ex.log.CrashReportingTree;
 import com.money.manager.ex.database.QueryAccountBills;
@@ -43,9 +45,12 @@ import com.money.manager.ex.settings.AppSettings;
 import com.money.manager.ex.settings.DatabaseSettings;
 import com.money.manager.ex.settings.LookAndFeelSettings;
 import com.money.manager.ex.settings.PreferenceConstants;
+import com.money.manager.ex.sync.SyncManager;
 import com.money.manager.ex.utils.MmxDatabaseUtils;
 import com.money.manager.ex.view.RobotoView;
 import com.shamanland.fonticon.FontIconTypefaceHolder;
+import com.squareup.sqlbrite.BriteDatabase;
+import com.squareup.sqlbrite.SqlBrite;
 
 import io.fabric.sdk.android.Fabric;
 
@@ -55,9 +60,11 @@ import org.parceler.ParcelClasses;
 
 import java.io.File;
 import java.util.Locale;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 
 import info.javaperformance.money.Money;
+import rx.schedulers.Schedulers;
 import timber.log.Timber;
 
 /**
@@ -138,6 +145,16 @@ public class MoneyManagerApplication
 
     public MmxComponent iocComponent;
     public AtomicReference<MmxOpenHelper> openHelperAtomicReference;
+    /**
+     * The SqlBrite wrapper of the current open helper, shared by the repositories.
+     */
+    private BriteDatabase mBriteDatabase;
+    private MmxOpenHelper mBriteDatabaseHelper;
+    /**
+     * Incremented whenever a database is opened, or closed before its file is replaced, so
+     * that the in-memory caches load the data again. See DatabaseKey.
+     */
+    private volatile int mDatabaseGeneration;
 
     // Overrides.
 
@@ -187,6 +204,20 @@ public class MoneyManagerApplication
         iocComponent = DaggerMmxComponent.builder()
                 .mmxModule(new MmxModule(appInstance))
                 .build();
+
+        // Schedule the synchronization once after a series of database changes.
+        iocComponent.dataChangeBus().subscribeDebounced(new DataChangeBus.Listener() {
+            @Override
+            public void onTablesChanged(Set<String> tables) {
+                for (String table : tables) {
+                    // a rebuilt local cache is not a change of the data.
+                    if (!CacheState.isCache(table)) {
+                        new SyncManager(getApp()).dataChanged();
+                        return;
+                    }
+                }
+            }
+        });
     }
 
     @Override
@@ -210,16 +241,86 @@ public class MoneyManagerApplication
 
     // dynamic
 
-    public void initDb(String path) {
+    public synchronized void initDb(String path) {
         MmxOpenHelper db = createDbInstance(path);
 
         if (openHelperAtomicReference == null) {
             openHelperAtomicReference = new AtomicReference<>(db);
         } else {
-            // close existing db
+            // close existing db. The cached statements belong to it.
+            iocComponent.statementCache().clear();
             openHelperAtomicReference.get().close();
             openHelperAtomicReference.set(db);
         }
+        mBriteDatabase = null;
+        mBriteDatabaseHelper = null;
+        mDatabaseGeneration++;
+    }
+
+    public int getDatabaseGeneration() {
+        return mDatabaseGeneration;
+    }
+
+    /**
+     * @return the SqlBrite database over the current open helper. Created once per database,
+     * so that all the repositories share the connection pool and the query notifications.
+     */
+    public synchronized BriteDatabase getBriteDatabase(SqlBrite sqlBrite, MmxOpenHelper helper) {
+        if (mBriteDatabase == null || mBriteDatabaseHelper != helper) {
+            mBriteDatabase = sqlBrite.wrapDatabaseHelper(helper, Schedulers.io());
+            // Formats every statement. The timings are in QueryStatistics.
+            mBriteDatabase.setLoggingEnabled(BuildConfig.DEBUG);
+            mBriteDatabaseHelper = helper;
+        }
+        return mBriteDatabase;
+    }
+
+    /**
+     * Copies the pending changes from the write-ahead log into the database file, if it is the
+     * current database. Call before the file is read directly, i.e. uploaded.
+     */
+    public void checkpointDb(String path) {
+        MmxOpenHelper helper = getCurrentDbHelper(path);
+        if (helper == null) return;
+
+        try {
+            helper.checkpoint();
+        } catch (Exception e) {
+            Timber.e(e, "checkpoint of %s", path);
+        }
+    }
+
+    /**
+     * Closes the database if it is the current one, before its file is replaced. Closing
+     * moves the write-ahead log into the file. The database is opened again on the next access.
+     */
+    public synchronized void closeDb(String path) {
+        MmxOpenHelper helper = getCurrentDbHelper(path);
+        if (helper == null) return;
+
+        iocComponent.statementCache().clear();
+        helper.close();
+        // the file at the same path is about to change.
+        mDatabaseGeneration++;
+    }
+
+    /**
+     * Call after the file of the database, closed with closeDb, was replaced. The caches loaded
+     * in the meantime from the old file are loaded again.
+     */
+    public synchronized void databaseReplaced(String path) {
+        if (getCurrentDbHelper(path) == null) return;
+
+        mDatabaseGeneration++;
+    }
+
+    private MmxOpenHelper getCurrentDbHelper(String path) {
+        if (openHelperAtomicReference == null) return null;
+
+        MmxOpenHelper helper = openHelperAtomicReference.get();
+        if (helper == null || !helper.isDatabase(path)) return null;
+
+        return helper;
     }
 
     private MmxOpenHelper createDbInstance(String path) {
@@ -52,6 +52,8 @@ import com.money.manager.ex.datalayer.AccountRepository;
 import com.money.manager.ex.datalayer.Select;
 import com.money.manager.ex.servicelayer.AccountService;
 import com.money.manager.ex.common.AllDataListFragment;
+import com.money.manager.ex.common.AllDataPager;
+import com.money.manager.ex.common.events.AllDataPageLoadedEvent;
 import com.money.manager.ex.common.MmxCursorLoader;
 import com.money.manager.ex.core.DefinedDateRange;
 import com.money.manager.ex.core.DefinedDateRangeName;
@@ -414,6 +416,12 @@ public class AccountTransactionListFragment
         mAllDataListFragment.displayRunningBalances(event.balances);
     }
 
+    @Subscribe
+    public void onEvent(AllDataPageLoadedEvent event) {
+        // calculate the balances of the added transactions.
+        populateRunningBalance();
+    }
+
     // Private
 
     private boolean datePeriodItemSelected(MenuItem item) {
@@ -642,6 +650,11 @@ public class AccountTransactionListFragment
 
         CalculateRunningBalanceTask2 task = new CalculateRunningBalanceTask2(
             getContext(), this.mAccountId, mFilter.dateRange.dateFrom, arguments);
+        // Only the loaded pages, newest first.
+        AllDataPager pager = mAllDataListFragment.getPager();
+        if (pager != null && pager.isDescending()) {
+            task.setLoadedRange(pager.getLoadedSelection(), pager.getRemainingSelection());
+        }
         // events now handled in onEvent, using an event bus.
         task.execute();
 
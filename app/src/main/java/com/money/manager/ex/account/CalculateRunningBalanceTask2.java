@@ -18,26 +18,34 @@ package com.money.manager.ex.account;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.os.AsyncTask;
 import android.os.Bundle;
 
+import com.money.manager.ex.MoneyManagerApplication;
 import com.money.manager.ex.account.events.RunningBalanceCalculatedEvent;
+import com.money.manager.ex.database.BalanceCheckpoints;
+import com.money.manager.ex.database.BalanceSql;
+import com.money.manager.ex.database.MmxOpenHelper;
+import com.money.manager.ex.database.QueryAllData;
 import com.money.manager.ex.servicelayer.AccountService;
 import com.money.manager.ex.common.AllDataListFragment;
 import com.money.manager.ex.core.TransactionStatuses;
 import com.money.manager.ex.core.TransactionTypes;
+import com.money.manager.ex.datalayer.AccountTransactionRepository;
 import com.money.manager.ex.datalayer.QueryAllDataRepository;
 import com.money.manager.ex.utils.MmxDate;
-import com.money.manager.ex.viewmodels.AccountTransactionDisplay;
+import com.money.manager.ex.utils.MoneyUnits;
 
 import org.greenrobot.eventbus.EventBus;
 
-import java.math.BigDecimal;
 import java.util.Date;
 import java.util.HashMap;
 
+import javax.inject.Inject;
+
+import dagger.Lazy;
 import info.javaperformance.money.Money;
-import info.javaperformance.money.MoneyFactory;
 import timber.log.Timber;
 
 /**
@@ -62,13 +70,30 @@ public class CalculateRunningBalanceTask2
         this.accountId = accountId;
         this.startingDate = startingDate;
         this.selectionBundle = selection;
+
+        MoneyManagerApplication.getApp().iocComponent.inject(this);
     }
 
+    @Inject Lazy<MmxOpenHelper> openHelper;
+
     private Context context;
     private HashMap<Integer, Money> balances;
     private int accountId;
     private Date startingDate;
     private Bundle selectionBundle;
+    private String loadedSelection;
+    private String remainingSelection;
+
+    /**
+     * Limits the calculation to the records loaded in a paged list. The balance of the remaining
+     * (older) records is summed in the database, without loading them.
+     * @param loaded Selection of the loaded records.
+     * @param remaining Selection of the records older than the loaded ones.
+     */
+    public void setLoadedRange(String loaded, String remaining) {
+        this.loadedSelection = loaded;
+        this.remainingSelection = remaining;
+    }
 
     /**
      * Override this method to perform a computation on a background thread. The
@@ -107,79 +132,105 @@ public class CalculateRunningBalanceTask2
         if (balances != null && records == balances.size()) return null;
         if (c.getCount() <= 0) return null;
 
-        Money startingBalance = null;
+        int idColumn = c.getColumnIndex(QueryAllData.ID);
+        int typeColumn = c.getColumnIndex(QueryAllData.TransactionType);
+        int statusColumn = c.getColumnIndex(QueryAllData.Status);
+        int accountColumn = c.getColumnIndex(QueryAllData.ACCOUNTID);
+        int amountColumn = c.getColumnIndex(QueryAllData.Amount);
+        int toAmountColumn = c.getColumnIndex(QueryAllData.ToAmount);
 
-        AccountService accountService = new AccountService(this.context);
-        AccountTransactionDisplay tx = new AccountTransactionDisplay();
+        String voidStatus = TransactionStatuses.VOID.getCode();
+        String withdrawal = TransactionTypes.Withdrawal.name();
+        String deposit = TransactionTypes.Deposit.name();
+        String transfer = TransactionTypes.Transfer.name();
+
+        balances = new HashMap<>(records);
 
-        int originalPosition = c.getPosition();
-        balances = new HashMap<>();
-        String transType;
-        Money amount = MoneyFactory.fromBigDecimal(BigDecimal.ZERO);
-        Money runningBalance = MoneyFactory.fromBigDecimal(BigDecimal.ZERO);
+        // The running balance is kept in MoneyUnits.
+        long runningBalance = loadStartingBalance();
 
         // populate balance amounts
 
         // Move from the earliest record towards the newer ones.
-        int i = c.getCount() - 1;
+        for (int i = records - 1; c.moveToPosition(i); i--) {
+            // Exclude Void transactions from calculation.
+            if (!voidStatus.equals(c.getString(statusColumn))) {
+                String transType = c.getString(typeColumn);
+
+                if (withdrawal.equals(transType) || deposit.equals(transType)) {
+                    runningBalance += MoneyUnits.fromDouble(c.getDouble(amountColumn));
+                } else if (transfer.equals(transType)) {
+                    if (c.getInt(accountColumn) == this.accountId) {
+                        runningBalance += MoneyUnits.fromDouble(c.getDouble(amountColumn));
+                    } else {
+                        runningBalance += MoneyUnits.fromDouble(c.getDouble(toAmountColumn));
+                    }
+                }
+            }
 
-        while (c.moveToPosition(i)) {
-            // load the initial balance based on the date of the first transaction
-            if (startingBalance == null) {
-                // Get starting balance on the given day.
-                startingBalance = accountService.loadInitialBalance(this.accountId);
+            this.balances.put(c.getInt(idColumn),
+                MoneyUnits.toMoney(runningBalance));
+        }
 
-                String date = new MmxDate(this.startingDate).minusDays(1)
-                        .toIsoString();
-                Money balanceOnDate = accountService.calculateBalanceOn(this.accountId, date);
-                startingBalance = startingBalance.add(balanceOnDate);
+        c.close();
 
-                runningBalance = startingBalance;
-            }
+        return this.balances;
+    }
 
-            // adjust the balance for each transaction.
+    /**
+     * Account balance at the end of the day before the starting date, from the nearest
+     * balance checkpoint.
+     */
+    private long loadStartingBalance() {
+        AccountService accountService = new AccountService(this.context);
+        Money initialBalance = accountService.loadInitialBalance(this.accountId);
 
-            tx.loadFromCursor(c);
+        String date = new MmxDate(this.startingDate).minusDays(1).toIsoString();
+        BalanceCheckpoints checkpoints = new BalanceCheckpoints(openHelper.get().getReadableDatabase());
 
-            // Exclude Void transactions from calculation.
-            TransactionStatuses status = tx.getStatus();
-            if (!status.equals(TransactionStatuses.VOID)) {
-                transType = tx.getTransactionTypeName();
-
-                switch (TransactionTypes.valueOf(transType)) {
-                    case Withdrawal:
-                        amount = tx.getAmount();
-                        break;
-                    case Deposit:
-                        amount = tx.getAmount();
-                        break;
-                    case Transfer:
-                        int accountId = tx.getAccountId();
-                        if (accountId == this.accountId) {
-                            amount = tx.getAmount();
-                        } else {
-                            amount = tx.getToAmount();
-                        }
-                        break;
-                }
-                runningBalance = runningBalance.add(amount);
-            }
+        return MoneyUnits.fromDouble(initialBalance.toDouble())
+            + checkpoints.getBalanceOn(this.accountId, date)
+            + loadRemainingBalance();
+    }
 
-            this.balances.put(tx.getId(), runningBalance);
-            i--;
-        }
+    /**
+     * Balance of the listed records that are older than the loaded ones.
+     */
+    private long loadRemainingBalance() {
+        if (this.remainingSelection == null) return 0;
+
+        String where = this.selectionBundle.getString(AllDataListFragment.KEY_ARGUMENTS_WHERE);
+        where = DatabaseUtils.concatenateWhere(where, this.remainingSelection);
 
-        // set back to the original position.
-        c.moveToPosition(originalPosition);
+        // the listed transactions, summed on the transactions table.
+        String sql = "SELECT " + MoneyUnits.getSumSql(BalanceSql.getAccountAmountSql(this.accountId)) + " " +
+            "FROM " + AccountTransactionRepository.TABLE_NAME + " " +
+            "WHERE " + BalanceSql.COUNTED + " AND TRANSID IN (" +
+                "SELECT " + QueryAllData.ID + " FROM (" + new QueryAllData(this.context).getSource() + ") T " +
+                "WHERE " + where + ")";
 
-        return this.balances;
+        Cursor c = openHelper.get().getReadableDatabase().rawQuery(sql, null);
+
+        long balance = 0;
+        if (c.moveToFirst()) {
+            balance = c.getLong(0);
+        }
+        c.close();
+        return balance;
     }
 
     private Cursor loadData() {
         String where = this.selectionBundle.getString(AllDataListFragment.KEY_ARGUMENTS_WHERE);
         String sort = this.selectionBundle.getString(AllDataListFragment.KEY_ARGUMENTS_SORT);
+        if (this.loadedSelection != null) {
+            where = DatabaseUtils.concatenateWhere(where, this.loadedSelection);
+        }
+
+        // Only the columns needed for the balance.
+        String[] projection = new String[] { QueryAllData.ID, QueryAllData.TransactionType,
+            QueryAllData.Status, QueryAllData.ACCOUNTID, QueryAllData.Amount, QueryAllData.ToAmount };
 
         QueryAllDataRepository repo = new QueryAllDataRepository(this.context);
-        return repo.query(where, sort);
+        return repo.openCursor(projection, where, null, sort);
     }
 }
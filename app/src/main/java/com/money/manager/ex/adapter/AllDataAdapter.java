@@ -34,7 +34,7 @@ import com.money.manager.ex.Constants;
 import com.money.manager.ex.MoneyManagerApplication;
 import com.money.manager.ex.R;
 import com.money.manager.ex.core.TransactionTypes;
-import com.money.manager.ex.currency.CurrencyService;
+import com.money.manager.ex.currency.CurrencyRegistry;
 import com.money.manager.ex.database.QueryAllData;
 import com.money.manager.ex.database.QueryBillDeposits;
 import com.money.manager.ex.database.TransactionStatus;
@@ -46,6 +46,8 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Locale;
 
+import javax.inject.Inject;
+
 import info.javaperformance.money.Money;
 import info.javaperformance.money.MoneyFactory;
 
@@ -67,8 +69,12 @@ public class AllDataAdapter
         this.requestingBalanceUpdate = new ArrayList<>();
 
         setFieldFromTypeCursor();
+
+        MoneyManagerApplication.getApp().iocComponent.inject(this);
     }
 
+    @Inject CurrencyRegistry currencyRegistry;
+
     // source type: AllData or RecurringTransaction
     public enum TypeCursor {
         ALLDATA,
@@ -173,8 +179,7 @@ public class AllDataAdapter
             setCurrencyId(cursor.getInt(cursor.getColumnIndex(CURRENCYID)));
         }
 
-        CurrencyService currencyService = new CurrencyService(mContext);
-        holder.txtAmount.setText(currencyService.getCurrencyFormatted(getCurrencyId(), MoneyFactory.fromDouble(amount)));
+        holder.txtAmount.setText(formatAmount(MoneyFactory.fromDouble(amount)));
 
         // text color amount
         int amountTextColor;
@@ -459,6 +464,17 @@ public class AllDataAdapter
         return result;
     }
 
+    /**
+     * Formats the amount in the current currency with the cached formatters, without
+     * querying the database.
+     */
+    private String formatAmount(Money amount) {
+        String result = currencyRegistry.format(amount, getCurrencyId());
+        return result == null
+            ? amount.toString()
+            : result;
+    }
+
     private void showBalanceAmount(TextView textView) {
         if (this.balances == null) {
             return;
@@ -471,9 +487,8 @@ public class AllDataAdapter
         int txId = (int) tag;
         if (!this.balances.containsKey(txId)) return;
 
-        CurrencyService currencyService = new CurrencyService(mContext);
         Money currentBalance = this.balances.get(txId);
-        String balanceFormatted = currencyService.getCurrencyFormatted(getCurrencyId(), currentBalance);
+        String balanceFormatted = formatAmount(currentBalance);
         textView.setText(balanceFormatted);
         textView.setVisibility(View.VISIBLE);
     }
@@ -33,7 +33,6 @@ import com.mikepenz.google_material_typeface_library.GoogleMaterial;
 import com.mikepenz.iconics.IconicsDrawable;
 import com.money.manager.ex.R;
 import com.money.manager.ex.assetallocation.editor.AssetAllocationEditorActivity;
-import com.money.manager.ex.assetallocation.ItemType;
 import com.money.manager.ex.common.MmxBaseFragmentActivity;
 import com.money.manager.ex.core.AnswersEvents;
 import com.money.manager.ex.core.FormatUtilities;
@@ -150,7 +149,7 @@ public class AssetAllocationOverviewActivity
 
         // add the totals at the end
         AssetClassViewModel totalModel = new AssetClassViewModel(assetAllocation, 0);
-        totalModel.assetClass.setType(ItemType.Footer);
+        totalModel.footer = true;
         modelList.add(totalModel);
 
         return modelList;
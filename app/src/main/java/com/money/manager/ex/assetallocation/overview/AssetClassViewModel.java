@@ -30,4 +30,8 @@ public class AssetClassViewModel {
 
     public AssetClass assetClass;
     public int level;
+    /**
+     * The totals row. The asset class (the shared allocation root) is not modified.
+     */
+    public boolean footer;
 }
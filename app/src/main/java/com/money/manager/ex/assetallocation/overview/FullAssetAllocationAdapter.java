@@ -26,6 +26,7 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import com.money.manager.ex.R;
+import com.money.manager.ex.assetallocation.ItemType;
 import com.money.manager.ex.core.FormatUtilities;
 
 import java.text.DecimalFormat;
@@ -64,7 +65,8 @@ public class FullAssetAllocationAdapter
         AssetClassViewModel item = this.model.get(position);
 
         // color the background, depending on the level.
-        switch (item.assetClass.getType()) {
+        ItemType type = item.footer ? ItemType.Footer : item.assetClass.getType();
+        switch (type) {
             case Allocation:
                 // reset bg color
                 holder.listItem.setBackgroundColor(Color.TRANSPARENT);
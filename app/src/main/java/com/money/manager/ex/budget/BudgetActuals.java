@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.budget;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.util.SparseArray;
+
+import com.money.manager.ex.Constants;
+import com.money.manager.ex.database.MonthlyTotals;
+import com.money.manager.ex.database.ViewMobileData;
+import com.squareup.sqlbrite.BriteDatabase;
+
+import timber.log.Timber;
+
+/**
+ * Actual amounts per category and subcategory for the period of a budget.
+ * All the totals are loaded with a single grouped query and kept until invalidated.
+ */
+public class BudgetActuals {
+
+    public BudgetActuals(Context context, BriteDatabase database) {
+        mContext = context.getApplicationContext();
+        mDatabase = database;
+    }
+
+    private Context mContext;
+    private BriteDatabase mDatabase;
+    private String mBudgetName;
+    private SparseArray<Double> mCategoryTotals;
+    private SparseArray<Double> mSubCategoryTotals;
+
+    public void setBudgetName(String budgetName) {
+        mBudgetName = budgetName;
+        invalidate();
+    }
+
+    /**
+     * Discards the loaded totals. They are reloaded on the next access.
+     */
+    public void invalidate() {
+        mCategoryTotals = null;
+        mSubCategoryTotals = null;
+    }
+
+    /**
+     * @return Total for the category, including all its subcategories.
+     */
+    public double getCategoryTotal(int categoryId) {
+        if (mCategoryTotals == null) load();
+        return mCategoryTotals.get(categoryId, 0.0);
+    }
+
+    public double getSubCategoryTotal(int subCategoryId) {
+        if (mSubCategoryTotals == null) load();
+        return mSubCategoryTotals.get(subCategoryId, 0.0);
+    }
+
+    // Private
+
+    private void load() {
+        mCategoryTotals = new SparseArray<>();
+        mSubCategoryTotals = new SparseArray<>();
+
+        if (mBudgetName == null) return;
+
+        Cursor cursor = null;
+        try {
+            cursor = mDatabase.query(getQuery());
+            if (cursor == null) return;
+
+            int categoryIndex = cursor.getColumnIndex(ViewMobileData.CATEGID);
+            int subCategoryIndex = cursor.getColumnIndex(ViewMobileData.SubcategID);
+            int totalIndex = cursor.getColumnIndex("TOTAL");
+
+            while (cursor.moveToNext()) {
+                int categoryId = cursor.getInt(categoryIndex);
+                int subCategoryId = cursor.getInt(subCategoryIndex);
+                double total = cursor.getDouble(totalIndex);
+
+                mCategoryTotals.put(categoryId, mCategoryTotals.get(categoryId, 0.0) + total);
+                if (subCategoryId != Constants.NOT_SET) {
+                    mSubCategoryTotals.put(subCategoryId, mSubCategoryTotals.get(subCategoryId, 0.0) + total);
+                }
+            }
+        } catch (IllegalStateException ise) {
+            Timber.e(ise, "loading budget actuals");
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Aggregates the maintained monthly totals of the budget period.
+     * The foreign currency totals are converted at the rate at the end of each month.
+     */
+    private String getQuery() {
+        String[] projectionIn = new String[] {
+            "m." + MonthlyTotals.CATEGID + " AS " + ViewMobileData.CATEGID,
+            "m." + MonthlyTotals.SUBCATEGID + " AS " + ViewMobileData.SubcategID,
+            "TOTAL(" + MonthlyTotals.BASE_AMOUNT + ") AS TOTAL"
+        };
+
+        String selection = "m." + MonthlyTotals.TRANSCODE + " IN ('Withdrawal', 'Deposit') AND " +
+            getPeriodSelection();
+
+        String groupBy = "m." + MonthlyTotals.CATEGID + ", m." + MonthlyTotals.SUBCATEGID;
+
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(MonthlyTotals.FROM_WITH_RATES);
+
+        return builder.buildQuery(projectionIn, selection, groupBy, null, null, null);
+    }
+
+    /**
+     * @return Condition on the year and month for the budget year or month.
+     */
+    private String getPeriodSelection() {
+        BudgetNameParser parser = new BudgetNameParser();
+        int year = parser.getYear(mBudgetName);
+        boolean monthly = mBudgetName.contains("-");
+
+        String selection = "m." + MonthlyTotals.YEAR + " = " + Integer.toString(year);
+        if (monthly) {
+            selection += " AND m." + MonthlyTotals.MONTH + " = " + Integer.toString(parser.getMonth(mBudgetName));
+        }
+        return selection;
+    }
+}
@@ -18,10 +18,8 @@ package com.money.manager.ex.budget;
 
 import android.content.Context;
 import android.database.Cursor;
-import android.database.sqlite.SQLiteQueryBuilder;
 import android.support.v4.content.ContextCompat;
 import android.support.v4.widget.SimpleCursorAdapter;
-import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -34,7 +32,6 @@ import com.money.manager.ex.R;
 import com.money.manager.ex.core.UIHelper;
 import com.money.manager.ex.currency.CurrencyService;
 import com.money.manager.ex.database.QueryCategorySubCategory;
-import com.money.manager.ex.database.ViewMobileData;
 import com.money.manager.ex.datalayer.BudgetEntryRepository;
 import com.money.manager.ex.domainmodel.BudgetEntry;
 import com.money.manager.ex.settings.AppSettings;
@@ -46,7 +43,6 @@ import javax.inject.Inject;
 
 import dagger.Lazy;
 import info.javaperformance.money.MoneyFactory;
-import timber.log.Timber;
 
 /**
  * Adapter for budgets.
@@ -88,6 +84,7 @@ public class BudgetAdapter
     private String mBudgetName;
     private long mBudgetYearId;
     private HashMap<String, BudgetEntry> mBudgetEntries;
+    private BudgetActuals mActuals;
 
     @Override
     public View newView(Context context, Cursor cursor, ViewGroup parent) {
@@ -185,6 +182,10 @@ public class BudgetAdapter
 
     public void setBudgetName(String budgetName) {
         mBudgetName = budgetName;
+
+        if (mActuals != null) {
+            mActuals.setBudgetName(budgetName);
+        }
     }
 
     /**
@@ -201,18 +202,34 @@ public class BudgetAdapter
         mBudgetEntries = populateThreadCache();
     }
 
+    /**
+     * Reloads the actual amounts on the next bind. To be called when the transactions change.
+     */
+    public void invalidateActuals() {
+        getActuals().invalidate();
+        notifyDataSetChanged();
+    }
+
     private double getActualAmount(boolean hasSubcategory, Cursor cursor) {
         double actual;
         if (!hasSubcategory) {
             int categoryId = cursor.getInt(cursor.getColumnIndex(BudgetQuery.CATEGID));
-            actual = getAmountForCategory(categoryId);
+            actual = getActuals().getCategoryTotal(categoryId);
         } else {
             int subCategoryId = cursor.getInt(cursor.getColumnIndex(BudgetQuery.SUBCATEGID));
-            actual = getAmountForSubCategory(subCategoryId);
+            actual = getActuals().getSubCategoryTotal(subCategoryId);
         }
         return actual;
     }
 
+    private BudgetActuals getActuals() {
+        if (mActuals == null) {
+            mActuals = new BudgetActuals(mContext, databaseLazy.get());
+            mActuals.setBudgetName(mBudgetName);
+        }
+        return mActuals;
+    }
+
     /**
      * Returns the budgeted amount for the category and subcategory, or zero, if there is none.
      * @param categoryId
@@ -249,100 +266,8 @@ public class BudgetAdapter
         return repo.loadForYear(mBudgetYearId);
     }
 
-    private double getAmountForCategory(int categoryId) {
-        double total = loadTotalFor(ViewMobileData.CATEGID + "=" + Integer.toString(categoryId));
-        return total;
-    }
-
-    private double getAmountForSubCategory(int subCategoryId) {
-        double total = loadTotalFor(ViewMobileData.SubcategID + "=" + Integer.toString(subCategoryId));
-        return total;
-    }
-
-    private double loadTotalFor(String where) {
-        double total = 0;
-
-        int year = getYearFromBudgetName(mBudgetName);
-        where += " AND " + ViewMobileData.Year + "=" + Integer.toString(year);
-        int month = getMonthFromBudgetName(mBudgetName);
-        if (month != Constants.NOT_SET) {
-            where += " AND " + ViewMobileData.Month + "=" + Integer.toString(month);
-        }
-
-        try {
-            String query = prepareQuery(where);
-            Cursor cursor = databaseLazy.get().query(query);
-            if (cursor == null) return 0;
-            // add all the categories and subcategories together.
-            while (cursor.moveToNext()) {
-                total += cursor.getDouble(cursor.getColumnIndex("TOTAL"));
-            }
-            cursor.close();
-        } catch (IllegalStateException ise) {
-            Timber.e(ise, "loading category total");
-        }
-
-        return total;
-    }
-
-    private String prepareQuery(String whereClause) {
-        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
-        ViewMobileData mobileData = new ViewMobileData(getContext());
-
-        //data to compose builder
-        String[] projectionIn = new String[]{
-                "ROWID AS _id", ViewMobileData.CATEGID, ViewMobileData.Category,
-                ViewMobileData.SubcategID, ViewMobileData.Subcategory,
-                "SUM(" + ViewMobileData.AmountBaseConvRate + ") AS TOTAL"
-        };
-
-        String selection = ViewMobileData.Status + "<>'V' AND " +
-                ViewMobileData.TransactionType + " IN ('Withdrawal', 'Deposit')";
-        if (!TextUtils.isEmpty(whereClause)) {
-            selection += " AND " + whereClause;
-        }
-
-        String groupBy = ViewMobileData.CATEGID + ", " + ViewMobileData.Category + ", " +
-                ViewMobileData.SubcategID + ", " + ViewMobileData.Subcategory;
-
-        String having = null;
-//        if (!TextUtils.isEmpty(((CategoriesReportActivity) context).mFilter)) {
-//            String filter = ((CategoriesReportActivity) context).mFilter;
-//            if (TransactionTypes.valueOf(filter).equals(TransactionTypes.Withdrawal)) {
-//                having = "SUM(" + ViewMobileData.AmountBaseConvRate + ") < 0";
-//            } else {
-//                having = "SUM(" + ViewMobileData.AmountBaseConvRate + ") > 0";
-//            }
-//        }
-
-        String sortOrder = ViewMobileData.Category + ", " + ViewMobileData.Subcategory;
-        String limit = null;
-
-        builder.setTables(mobileData.getSource());
-
-        return builder.buildQuery(projectionIn, selection, groupBy, having, sortOrder, limit);
-    }
-
-    private int getYearFromBudgetName(String budgetName) {
-        String yearString = budgetName.substring(0, 4);
-        int year = Integer.parseInt(yearString);
-        return year;
-    }
-
     private boolean isMonthlyBudget(String budgetName) {
         return budgetName.contains("-");
     }
 
-    private int getMonthFromBudgetName(String budgetName) {
-        int result = Constants.NOT_SET;
-
-        if (!isMonthlyBudget(budgetName)) return result;
-
-        int separatorLocation = budgetName.indexOf("-");
-        String monthString = budgetName.substring(separatorLocation + 1, separatorLocation + 3);
-
-        result = Integer.parseInt(monthString);
-        return result;
-    }
-
 }
@@ -16,8 +16,10 @@
  */
 package com.money.manager.ex.budget;
 
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.content.Loader;
 import android.view.LayoutInflater;
@@ -30,7 +32,9 @@ import com.money.manager.ex.R;
 import com.money.manager.ex.common.BaseListFragment;
 import com.money.manager.ex.common.MmxCursorLoader;
 import com.money.manager.ex.database.QueryCategorySubCategory;
+import com.money.manager.ex.datalayer.AccountTransactionRepository;
 import com.money.manager.ex.datalayer.Select;
+import com.money.manager.ex.datalayer.SplitCategoriesRepository;
 import com.money.manager.ex.settings.AppSettings;
 
 /**
@@ -47,6 +51,8 @@ public class BudgetDetailFragment
     private long mBudgetYearId = Constants.NOT_SET;
     private String mBudgetName;
     private View mHeader;
+    private View mFooter;
+    private ContentObserver mTransactionsObserver;
 
     /**
      * Use this factory method to create a new instance of
@@ -81,6 +87,15 @@ public class BudgetDetailFragment
             mBudgetYearId = getArguments().getLong(ARG_BUDGET_YEAR_ID);
             mBudgetName = getArguments().getString(ARG_BUDGET_NAME_ID);
         }
+
+        registerTransactionsObserver();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        getActivity().getContentResolver().unregisterContentObserver(mTransactionsObserver);
     }
 
     @Override
@@ -99,6 +114,9 @@ public class BudgetDetailFragment
 
         mHeader = View.inflate(getActivity(), layout, null);
         list.addHeaderView(mHeader);
+        // The actuals are converted to the base currency at the rate at the end of each month.
+        mFooter = View.inflate(getActivity(), R.layout.item_report_rate_note, null);
+        list.addFooterView(mFooter, null, false);
         // Header has to be added before the adapter is set on the list.
 
         setUpAdapter();
@@ -114,6 +132,9 @@ public class BudgetDetailFragment
         if (getListView().getHeaderViewsCount() > 0) {
             getListView().removeHeaderView(mHeader);
         }
+        if (getListView().getFooterViewsCount() > 0) {
+            getListView().removeFooterView(mFooter);
+        }
     }
 
     @Override
@@ -131,6 +152,28 @@ public class BudgetDetailFragment
         getLoaderManager().initLoader(LOADER_BUDGET, null, callbacks);
     }
 
+    /**
+     * Refreshes the actual amounts when the transactions change.
+     */
+    private void registerTransactionsObserver() {
+        mTransactionsObserver = new ContentObserver(new Handler()) {
+            @Override
+            public void onChange(boolean selfChange) {
+                BudgetAdapter adapter = (BudgetAdapter) getListAdapter();
+                if (adapter == null) return;
+
+                adapter.invalidateActuals();
+            }
+        };
+
+        AccountTransactionRepository transactions = new AccountTransactionRepository(getActivity());
+        SplitCategoriesRepository splits = new SplitCategoriesRepository(getActivity());
+        getActivity().getContentResolver().registerContentObserver(transactions.getUri(), true,
+            mTransactionsObserver);
+        getActivity().getContentResolver().registerContentObserver(splits.getUri(), true,
+            mTransactionsObserver);
+    }
+
     private void setUpAdapter() {
         BudgetAdapter adapter = new BudgetAdapter(getActivity(),
                 null,
@@ -18,9 +18,11 @@ package com.money.manager.ex.common;
 
 import android.app.Activity;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
+import android.database.MergeCursor;
 import android.graphics.Typeface;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
@@ -38,6 +40,7 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemClickListener;
 import android.widget.LinearLayout;
@@ -50,6 +53,7 @@ import com.afollestad.materialdialogs.DialogAction;
 import com.afollestad.materialdialogs.MaterialDialog;
 import com.mikepenz.google_material_typeface_library.GoogleMaterial;
 import com.money.manager.ex.Constants;
+import com.money.manager.ex.common.events.AllDataPageLoadedEvent;
 import com.money.manager.ex.core.TransactionTypes;
 import com.money.manager.ex.core.UIHelper;
 import com.money.manager.ex.currency.CurrencyService;
@@ -72,12 +76,19 @@ import com.money.manager.ex.home.DrawerMenuItemAdapter;
 import com.money.manager.ex.core.ExportToCsvFile;
 import com.money.manager.ex.database.QueryAllData;
 
+import org.greenrobot.eventbus.EventBus;
+
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
 
 import info.javaperformance.money.Money;
 import info.javaperformance.money.MoneyFactory;
+import rx.Observable;
+import rx.Subscriber;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.schedulers.Schedulers;
 import timber.log.Timber;
 
 /**
@@ -116,6 +127,11 @@ public class AllDataListFragment
     public static final String KEY_ARGUMENTS_WHERE = "SearchResultFragment:ArgumentsWhere";
     public static final String KEY_ARGUMENTS_SORT = "SearchResultFragment:ArgumentsSort";
 
+    /**
+     * Number of remaining records at which the next page is requested while scrolling.
+     */
+    private static final int PAGE_PRELOAD_ROWS = 50;
+
     public int AccountId = Constants.NOT_SET;
     private LinearLayout footer;
     private LoaderManager.LoaderCallbacks<Cursor> mSearResultFragmentLoaderCallbacks;
@@ -126,6 +142,10 @@ public class AllDataListFragment
     private View mListHeader = null;
     private Bundle mArguments;
     private boolean mShowFooter = false;
+    /**
+     * Pages the list when sorted by date. Null when the whole list is loaded at once.
+     */
+    private AllDataPager mPager;
 
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
@@ -190,11 +210,28 @@ public class AllDataListFragment
         // set animation progress
         setListShown(false);
 
+        // load the next page when scrolling near the end of the list.
+        AbsListView.OnScrollListener pagingListener = new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+                                 int totalItemCount) {
+                if (firstVisibleItem + visibleItemCount >= totalItemCount - PAGE_PRELOAD_ROWS) {
+                    loadNextPage(AllDataPager.PAGE_SIZE);
+                }
+            }
+        };
+
         boolean showAddButton = getArguments().getBoolean(ARG_SHOW_FLOATING_BUTTON);
         if (showAddButton) {
             // Show floating action button.
             setFloatingActionButtonVisible(true);
-            attachFloatingActionButtonToListView();
+            attachFloatingActionButtonToListView(pagingListener);
+        } else {
+            getListView().setOnScrollListener(pagingListener);
         }
 
         // start loader if asked to do so by the caller.
@@ -244,9 +281,16 @@ public class AllDataListFragment
                 }
                 // create loader
                 QueryAllData allData = new QueryAllData(getActivity());
-                Select query = new Select(allData.getAllColumns())
+                Select query;
+                if (AllDataPager.supports(sort)) {
+                    mPager = new AllDataPager(selection, sort);
+                    query = mPager.getFirstPage(allData.getAllColumns());
+                } else {
+                    mPager = null;
+                    query = new Select(allData.getAllColumns())
                         .where(selection)
                         .orderBy(sort);
+                }
 
                 return new MmxCursorLoader(getActivity(), allData.getUri(), query);
         }
@@ -264,6 +308,13 @@ public class AllDataListFragment
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        // The records loaded before a refresh. Loaded again to keep the scroll position.
+        int previouslyLoaded = 0;
+        if (loader.getId() == ID_LOADER_ALL_DATA_DETAIL && mPager != null) {
+            previouslyLoaded = mPager.getLoadedCount();
+            mPager.onFirstPageLoaded(data, AllDataPager.PAGE_SIZE);
+        }
+
         LoaderManager.LoaderCallbacks<Cursor> parent = getSearchResultFragmentLoaderCallbacks();
         if (parent != null) parent.onLoadFinished(loader, data);
 
@@ -284,6 +335,10 @@ public class AllDataListFragment
                 // reset the transaction groups (account name collection)
                 adapter.resetAccountHeaderIndexes();
 
+                if (mPager != null && previouslyLoaded > mPager.getLoadedCount()) {
+                    loadNextPage(previouslyLoaded - mPager.getLoadedCount());
+                }
+
                 // Show totals
                 if (this.mShowFooter) {
                     try {
@@ -476,6 +531,13 @@ public class AllDataListFragment
 
     // Methods
 
+    /**
+     * @return The pager of the displayed list, or null if the list is not paged.
+     */
+    public AllDataPager getPager() {
+        return mPager;
+    }
+
     public void displayRunningBalances(HashMap<Integer, Money> balances) {
         AllDataAdapter adapter = getAllDataAdapter();
         if(adapter == null) return;
@@ -496,7 +558,12 @@ public class AllDataListFragment
      * @param prefixName prefix for the file
      */
     public void exportDataToCSVFile(String prefixName) {
-        ExportToCsvFile csv = new ExportToCsvFile(getActivity(), (AllDataAdapter) getListAdapter());
+        // read the displayed transactions directly from the database.
+        Bundle arguments = getLatestArguments();
+        String selection = arguments != null ? arguments.getString(KEY_ARGUMENTS_WHERE) : null;
+        String sort = arguments != null ? arguments.getString(KEY_ARGUMENTS_SORT) : null;
+
+        ExportToCsvFile csv = new ExportToCsvFile(getActivity(), selection, sort);
         csv.setPrefixName(prefixName);
         csv.execute();
     }
@@ -664,6 +731,7 @@ public class AllDataListFragment
             DatabaseUtils.cursorIntToContentValues(cursor, adapter.TOCURRENCYID, values);
             DatabaseUtils.cursorDoubleToCursorValues(cursor, adapter.AMOUNT, values);
             DatabaseUtils.cursorDoubleToCursorValues(cursor, adapter.TOAMOUNT, values);
+            DatabaseUtils.cursorStringToContentValues(cursor, adapter.DATE, values);
 
             transType = values.getAsString(adapter.TRANSACTIONTYPE);
             transactionType = TransactionTypes.valueOf(transType);
@@ -676,7 +744,9 @@ public class AllDataListFragment
                 amount = MoneyFactory.fromString(values.getAsString(adapter.AMOUNT));
             }
 
-            converted = currencyService.doCurrencyExchange(baseCurrencyId, amount, currencyId);
+            // at the rate on the transaction date.
+            converted = currencyService.doCurrencyExchange(baseCurrencyId, amount, currencyId,
+                values.getAsString(adapter.DATE));
             total = total.add(converted);
         }
 
@@ -838,6 +908,77 @@ public class AllDataListFragment
         return adapter;
     }
 
+    /**
+     * Loads the next page in the background and appends it to the displayed records.
+     * @param count Number of records to load.
+     */
+    private void loadNextPage(final int count) {
+        final AllDataPager pager = mPager;
+        if (pager == null || !pager.canLoadMore()) return;
+        if (getAllDataAdapter() == null || getAllDataAdapter().getCursor() == null) return;
+
+        pager.setLoading(true);
+        final int generation = pager.getGeneration();
+
+        final QueryAllData allData = new QueryAllData(getActivity());
+        final Select query = pager.getNextPage(allData.getAllColumns(), count);
+        final Context context = getActivity().getApplicationContext();
+
+        Observable.fromCallable(new Callable<Cursor>() {
+            @Override
+            public Cursor call() throws Exception {
+                Cursor page = context.getContentResolver().query(allData.getUri(),
+                    query.projection, query.selection, query.selectionArgs, query.sort);
+                // fill the cursor window in the background.
+                if (page != null) page.getCount();
+                return page;
+            }
+        })
+            .subscribeOn(Schedulers.io())
+            .observeOn(AndroidSchedulers.mainThread())
+            .subscribe(new Subscriber<Cursor>() {
+                @Override
+                public void onCompleted() {
+                }
+
+                @Override
+                public void onError(Throwable e) {
+                    Timber.e(e, "loading the next page of transactions");
+                    if (generation == pager.getGeneration()) {
+                        pager.setLoading(false);
+                    }
+                }
+
+                @Override
+                public void onNext(Cursor page) {
+                    appendPage(pager, generation, page, count);
+                }
+            });
+    }
+
+    private void appendPage(AllDataPager pager, int generation, Cursor page, int count) {
+        AllDataAdapter adapter = getAllDataAdapter();
+        // discard the pages of a previous list.
+        if (pager != mPager || generation != pager.getGeneration()
+            || adapter == null || adapter.getCursor() == null) {
+            if (page != null) page.close();
+            return;
+        }
+
+        pager.onPageLoaded(page, count);
+        if (page == null) return;
+        if (page.getCount() == 0) {
+            page.close();
+            return;
+        }
+
+        // The merged cursor closes both cursors when the list is reloaded.
+        adapter.swapCursor(new MergeCursor(new Cursor[] { adapter.getCursor(), page }));
+        adapter.resetAccountHeaderIndexes();
+
+        EventBus.getDefault().post(new AllDataPageLoadedEvent());
+    }
+
     private void selectAllRecords() {
         AllDataAdapter adapter = getAllDataAdapter();
         if(adapter == null) return;
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.common;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.text.TextUtils;
+
+import com.money.manager.ex.database.QueryAllData;
+import com.money.manager.ex.datalayer.Select;
+
+/**
+ * Keyset pagination for the transactions list.
+ * The transactions are loaded in pages, ordered by (Date, ID). Each following page starts after
+ * the key of the last loaded record, so SQLite only reads the records of the requested page
+ * instead of counting the whole result.
+ * Only the lists sorted by date and id can be paged. Other sort orders are loaded in full.
+ */
+public class AllDataPager {
+
+    public static final int PAGE_SIZE = 200;
+
+    private static final String SORT_DESCENDING = QueryAllData.Date + " DESC, " + QueryAllData.ID + " DESC";
+    private static final String SORT_ASCENDING = QueryAllData.Date + " ASC, " + QueryAllData.ID + " ASC";
+
+    public static boolean supports(String sort) {
+        if (TextUtils.isEmpty(sort)) return false;
+
+        String normalized = sort.trim().replaceAll("\\s+", " ");
+        return SORT_DESCENDING.equalsIgnoreCase(normalized) || SORT_ASCENDING.equalsIgnoreCase(normalized);
+    }
+
+    public AllDataPager(String selection, String sort) {
+        mSelection = selection;
+        mSort = sort;
+        mDescending = sort.toUpperCase().contains("DESC");
+    }
+
+    private String mSelection;
+    private String mSort;
+    private boolean mDescending;
+
+    private String mLastDate;
+    private int mLastId;
+    private int mLoadedCount;
+    private boolean mHasMore = true;
+    private boolean mLoading;
+    /**
+     * Incremented when the first page is loaded again. Pages requested before are discarded.
+     */
+    private int mGeneration;
+
+    public Select getFirstPage(String[] projection) {
+        return getFirstPage(projection, PAGE_SIZE);
+    }
+
+    /**
+     * @param count Number of records to load. Used to keep the already loaded records when
+     *              the list is refreshed.
+     */
+    public Select getFirstPage(String[] projection, int count) {
+        return new Select(projection)
+            .where(mSelection)
+            .orderBy(getSortWithLimit(count));
+    }
+
+    public Select getNextPage(String[] projection) {
+        return getNextPage(projection, PAGE_SIZE);
+    }
+
+    public Select getNextPage(String[] projection, int count) {
+        return new Select(projection)
+            .where(DatabaseUtils.concatenateWhere(mSelection, getRemainingSelection()))
+            .orderBy(getSortWithLimit(count));
+    }
+
+    /**
+     * Resets the pager to the first page.
+     */
+    public void onFirstPageLoaded(Cursor page, int requested) {
+        mGeneration++;
+        mLastDate = null;
+        mLastId = 0;
+        mLoadedCount = 0;
+        onPageLoaded(page, requested);
+    }
+
+    /**
+     * Stores the key of the last record in the page.
+     * @param requested The number of records requested.
+     */
+    public void onPageLoaded(Cursor page, int requested) {
+        mLoading = false;
+        if (page == null) {
+            mHasMore = false;
+            return;
+        }
+
+        int count = page.getCount();
+        mHasMore = count >= requested;
+        mLoadedCount += count;
+
+        if (count > 0 && page.moveToLast()) {
+            mLastDate = page.getString(page.getColumnIndex(QueryAllData.Date));
+            mLastId = page.getInt(page.getColumnIndex(QueryAllData.ID));
+        }
+    }
+
+    public boolean canLoadMore() {
+        return mHasMore && !mLoading;
+    }
+
+    public void setLoading(boolean loading) {
+        mLoading = loading;
+    }
+
+    public int getGeneration() {
+        return mGeneration;
+    }
+
+    public int getLoadedCount() {
+        return mLoadedCount;
+    }
+
+    public boolean isDescending() {
+        return mDescending;
+    }
+
+    /**
+     * @return Selection of the records loaded so far. Not including the list selection.
+     */
+    public String getLoadedSelection() {
+        if (mLastDate == null) return "0";
+
+        return "NOT (" + getRemainingSelection() + ")";
+    }
+
+    /**
+     * @return Selection of the records after the last loaded one, in the list order.
+     * Not including the list selection.
+     */
+    public String getRemainingSelection() {
+        if (mLastDate == null) return "1";
+
+        String operator = mDescending ? "<" : ">";
+        String date = DatabaseUtils.sqlEscapeString(mLastDate);
+
+        return "(" + QueryAllData.Date + " " + operator + " " + date +
+            " OR (" + QueryAllData.Date + " = " + date +
+            " AND " + QueryAllData.ID + " " + operator + " " + Integer.toString(mLastId) + "))";
+    }
+
+    /**
+     * The content provider only accepts the sort order, which is appended to the query as is.
+     */
+    private String getSortWithLimit(int count) {
+        return mSort + " LIMIT " + Integer.toString(count);
+    }
+}
@@ -28,6 +28,7 @@ import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.AbsListView;
 
 import com.melnykov.fab.FloatingActionButton;
 import com.money.manager.ex.home.MainActivity;
@@ -221,6 +222,17 @@ public abstract class BaseListFragment
         }
     }
 
+    /**
+     * The button takes over the scroll listener of the list so the scroll events are forwarded.
+     */
+    public void attachFloatingActionButtonToListView(AbsListView.OnScrollListener scrollListener) {
+        if (mFloatingActionButton != null) {
+            mFloatingActionButton.attachToListView(getListView(), null, scrollListener);
+        } else {
+            getListView().setOnScrollListener(scrollListener);
+        }
+    }
+
     public void onFloatingActionButtonClicked() {
         return;
     }
@@ -43,12 +43,13 @@ import com.mikepenz.google_material_typeface_library.GoogleMaterial;
 import com.mikepenz.iconics.IconicsDrawable;
 import com.mikepenz.mmex_icon_font_typeface_library.MMXIconFont;
 import com.money.manager.ex.Constants;
+import com.money.manager.ex.MoneyManagerApplication;
 import com.money.manager.ex.R;
 import com.money.manager.ex.adapter.CategoryExpandableListAdapter;
 import com.money.manager.ex.core.ContextMenuIds;
 import com.money.manager.ex.core.UIHelper;
 import com.money.manager.ex.datalayer.CategoryRepository;
-import com.money.manager.ex.datalayer.Select;
+import com.money.manager.ex.datalayer.NameIndex;
 import com.money.manager.ex.datalayer.SubcategoryRepository;
 import com.money.manager.ex.domainmodel.Category;
 import com.money.manager.ex.domainmodel.Subcategory;
@@ -64,11 +65,12 @@ import com.shamanland.fonticon.FontIconDrawable;
 
 import org.parceler.Parcels;
 
-import java.text.Normalizer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
+import javax.inject.Inject;
+
 /**
  * Categories list fragment. Used in Main Activity for editing of categories, and own activity
  * when selecting the category for a transaction.
@@ -85,8 +87,6 @@ public class CategoryListFragment
     private static final String KEY_ID_GROUP = "CategorySubCategory:idGroup";
     private static final String KEY_ID_CHILD = "CategorySubCategory:idChild";
     private static final String KEY_CUR_FILTER = "CategorySubCategory:curFilter";
-    // table or query
-    private static QueryCategorySubCategory mQuery;
     private int mLayout;
     private int mIdGroupChecked = ExpandableListView.INVALID_POSITION;
     private int mIdChildChecked = ExpandableListView.INVALID_POSITION;
@@ -97,12 +97,13 @@ public class CategoryListFragment
     private ArrayList<Integer> mPositionToExpand;
     private String mCurFilter;
 
+    @Inject NameIndex nameIndex;
+
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
         super.onActivityCreated(savedInstanceState);
 
-        // create category adapter
-        mQuery = new QueryCategorySubCategory(getActivity());
+        MoneyManagerApplication.getApp().iocComponent.inject(this);
 
         mCategories = new ArrayList<>();
         mSubCategories = new HashMap<>();
@@ -266,19 +267,8 @@ public class CategoryListFragment
                 mCategories.clear();
                 mSubCategories.clear();
 
-                // load data
-                String whereClause = null;
-                String selectionArgs[] = null;
-                if (!TextUtils.isEmpty(mCurFilter)) {
-                    whereClause = QueryCategorySubCategory.CATEGNAME + " LIKE ? OR "
-                            + QueryCategorySubCategory.SUBCATEGNAME + " LIKE ?";
-                    selectionArgs = new String[]{mCurFilter + "%", mCurFilter + "%"};
-                }
-                Select query = new Select(mQuery.getAllColumns())
-                    .where(whereClause, selectionArgs)
-                    .orderBy(QueryCategorySubCategory.CATEGNAME + ", " + QueryCategorySubCategory.SUBCATEGNAME);
-
-                return new MmxCursorLoader(getActivity(), mQuery.getUri(), query);
+                // load data. Filtered in memory, without a query per keystroke.
+                return NameIndexLoader.forCategories(getActivity(), nameIndex, mCurFilter);
         }
         return null;
     }
@@ -388,7 +378,8 @@ public class CategoryListFragment
         mPositionToExpand.clear();
         // create core and fixed string filter to highlight
         Core core = new Core(getActivity().getApplicationContext());
-        String filter = mCurFilter != null ? mCurFilter.replace("%", "") : "";
+        // the highlight compares with the folded names.
+        String filter = NameIndex.fold(mCurFilter);
 
         int key = -1;
         List<QueryCategorySubCategory> listSubCategories = null;
@@ -428,8 +419,7 @@ public class CategoryListFragment
                 listSubCategories.add(subCategory);
                 // check if expand group
                 if (!TextUtils.isEmpty(filter)) {
-                    String normalizedText = Normalizer.normalize(subCategory.getSubcategoryName(), Normalizer.Form.NFD)
-                        .replaceAll("\\p{InCombiningDiacriticalMarks}+", "").toLowerCase();
+                    String normalizedText = NameIndex.fold(subCategory.getSubcategoryName().toString());
                     if ((normalizedText.indexOf(filter) >= 0) && (!mPositionToExpand.contains(mCategories.size() - 1))) {
                         mPositionToExpand.add(mCategories.size() - 1);
                     }
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.common;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.money.manager.ex.datalayer.NameIndex;
+
+import timber.log.Timber;
+
+/**
+ * Loads the payees or the categories matching a filter from the in-memory name index.
+ * Only the first load after a change of the names reads the database.
+ */
+public class NameIndexLoader
+    extends MmxCursorLoader {
+
+    public static NameIndexLoader forPayees(Context context, NameIndex index, String filter, boolean byUsage) {
+        return new NameIndexLoader(context, index, false, filter, byUsage);
+    }
+
+    public static NameIndexLoader forCategories(Context context, NameIndex index, String filter) {
+        return new NameIndexLoader(context, index, true, filter, false);
+    }
+
+    private NameIndexLoader(Context context, NameIndex index, boolean categories, String filter,
+                            boolean byUsage) {
+        super(context);
+
+        mIndex = index;
+        mCategories = categories;
+        mFilter = filter;
+        mByUsage = byUsage;
+    }
+
+    private final NameIndex mIndex;
+    private final boolean mCategories;
+    private final String mFilter;
+    private final boolean mByUsage;
+
+    @Override
+    public Cursor loadInBackground() {
+        try {
+            return mCategories
+                ? mIndex.getCategories(mFilter)
+                : mIndex.getPayees(mFilter, mByUsage);
+        } catch (Exception e) {
+            Timber.e(e, "loading names");
+        }
+        return null;
+    }
+}
@@ -111,6 +111,9 @@ public class Core {
         File database = new File(MoneyManagerApplication.getDatabasePath(getContext()));
         if (!database.exists()) return null;
 
+        // move the recent changes from the write-ahead log into the database file.
+        MoneyManagerApplication.getApp().checkpointDb(database.getPath());
+
         //create folder to copy database
         MmxDatabaseUtils dbUtils = new MmxDatabaseUtils(getContext());
         File folderOutput = new File(dbUtils.getDefaultDatabaseDirectory());
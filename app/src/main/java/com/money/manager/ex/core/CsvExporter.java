@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.core;
+
+import android.database.Cursor;
+import android.text.TextUtils;
+
+import com.money.manager.ex.database.QueryAllData;
+import com.money.manager.ex.datalayer.QueryAllDataRepository;
+import com.money.manager.ex.utils.MmxDate;
+import com.opencsv.CSVWriter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.NumberFormat;
+
+/**
+ * Writes transactions (QueryAllData rows) into a CSV file.
+ * Column indexes are resolved once per cursor and the record buffer is reused for all rows.
+ */
+public class CsvExporter {
+
+    /**
+     * Receives the number of exported rows.
+     */
+    public interface ProgressListener {
+        void onProgress(int exported, int total);
+    }
+
+    /**
+     * Progress is reported after this many rows.
+     */
+    private static final int PROGRESS_STEP = 100;
+
+    public CsvExporter(Writer writer) {
+        mWriter = new CSVWriter(new BufferedWriter(writer), CSVWriter.DEFAULT_SEPARATOR,
+            CSVWriter.NO_QUOTE_CHARACTER);
+    }
+
+    private CSVWriter mWriter;
+    private String mDatePattern;
+    private NumberFormat mAmountFormat;
+    private ProgressListener mProgressListener;
+
+    /**
+     * @param pattern Date pattern for the date column. When not set, the date is exported in
+     *                the user's date format.
+     */
+    public CsvExporter setDatePattern(String pattern) {
+        mDatePattern = pattern;
+        return this;
+    }
+
+    /**
+     * @param format Format for the amount column. When not set, the plain number is exported.
+     */
+    public CsvExporter setAmountFormat(NumberFormat format) {
+        mAmountFormat = format;
+        return this;
+    }
+
+    public CsvExporter setProgressListener(ProgressListener listener) {
+        mProgressListener = listener;
+        return this;
+    }
+
+    /**
+     * Exports all the rows of the cursor. The cursor is not closed.
+     * @return number of exported rows
+     */
+    public int export(Cursor data) throws IOException {
+        int total = data.getCount();
+
+        int dateColumn = data.getColumnIndex(TextUtils.isEmpty(mDatePattern)
+            ? QueryAllData.UserDate
+            : QueryAllData.Date);
+        int payeeColumn = data.getColumnIndex(QueryAllData.Payee);
+        int accountNameColumn = data.getColumnIndex(QueryAllData.AccountName);
+        int amountColumn = data.getColumnIndex(QueryAllData.Amount);
+        int categoryColumn = data.getColumnIndex(QueryAllData.Category);
+        int subcategoryColumn = data.getColumnIndex(QueryAllData.Subcategory);
+        int numberColumn = data.getColumnIndex(QueryAllData.TransactionNumber);
+        int notesColumn = data.getColumnIndex(QueryAllData.Notes);
+
+        String[] record = new String[7];
+        int exported = 0;
+
+        data.moveToPosition(-1);
+        while (data.moveToNext()) {
+            record[0] = formatDate(data.getString(dateColumn));
+            String payee = data.getString(payeeColumn);
+            record[1] = TextUtils.isEmpty(payee)
+                ? data.getString(accountNameColumn)
+                : payee;
+            record[2] = formatAmount(data.getDouble(amountColumn));
+            record[3] = data.getString(categoryColumn);
+            record[4] = data.getString(subcategoryColumn);
+            record[5] = Integer.toString(data.getInt(numberColumn));
+            record[6] = data.getString(notesColumn);
+
+            mWriter.writeNext(record);
+
+            exported++;
+            if (mProgressListener != null && exported % PROGRESS_STEP == 0) {
+                mProgressListener.onProgress(exported, total);
+            }
+        }
+
+        if (mProgressListener != null) {
+            mProgressListener.onProgress(exported, total);
+        }
+        return exported;
+    }
+
+    /**
+     * Streams the transactions matching the selection directly from the database, without
+     * using a cursor held by the UI.
+     * @return number of exported rows
+     */
+    public int export(QueryAllDataRepository repository, String selection, String sort)
+        throws IOException {
+        Cursor data = repository.query(selection, sort);
+        if (data == null) return 0;
+
+        try {
+            return export(data);
+        } finally {
+            data.close();
+        }
+    }
+
+    /**
+     * Flushes and closes the underlying writer.
+     */
+    public void close() throws IOException {
+        mWriter.close();
+    }
+
+    private String formatDate(String value) {
+        if (TextUtils.isEmpty(mDatePattern) || TextUtils.isEmpty(value)) return value;
+
+        return new MmxDate(value).toString(mDatePattern);
+    }
+
+    private String formatAmount(double amount) {
+        if (mAmountFormat == null) return Double.toString(amount);
+
+        return mAmountFormat.format(amount);
+    }
+}
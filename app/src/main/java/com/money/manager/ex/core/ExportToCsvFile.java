@@ -19,7 +19,6 @@ package com.money.manager.ex.core;
 
 import android.app.ProgressDialog;
 import android.content.Context;
-import android.database.Cursor;
 import android.os.AsyncTask;
 import android.os.Environment;
 import android.text.TextUtils;
@@ -27,9 +26,7 @@ import android.widget.Toast;
 
 import com.money.manager.ex.R;
 import com.money.manager.ex.adapter.AllDataAdapter;
-import com.money.manager.ex.database.QueryAllData;
-import com.money.manager.ex.log.ExceptionHandler;
-import com.opencsv.CSVWriter;
+import com.money.manager.ex.datalayer.QueryAllDataRepository;
 
 import java.io.File;
 import java.io.FileWriter;
@@ -39,7 +36,7 @@ import java.util.Calendar;
 import timber.log.Timber;
 
 public class ExportToCsvFile
-        extends AsyncTask<Void, Void, Boolean> {
+        extends AsyncTask<Void, Integer, Boolean> {
 
 	private Context mContext;
 	private AllDataAdapter mAdapter;
@@ -47,6 +44,9 @@ public class ExportToCsvFile
 
 	private String mFileName = null;
 	private String mPrefix = "";
+	private String mSelection;
+	private String mSort;
+	private boolean mStreaming = false;
 
 	public ExportToCsvFile(Context context, AllDataAdapter adapter) {
 		mContext = context;
@@ -55,6 +55,18 @@ public class ExportToCsvFile
 		dialog = new ProgressDialog(mContext);
 	}
 
+	/**
+	 * Exports the transactions matching the selection, read directly from the database.
+	 */
+	public ExportToCsvFile(Context context, String selection, String sort) {
+		mContext = context;
+		mSelection = selection;
+		mSort = sort;
+		mStreaming = true;
+		// create progress binaryDialog
+		dialog = new ProgressDialog(mContext);
+	}
+
 	@Override
 	protected Boolean doInBackground(Void... params) {
         try {
@@ -98,40 +110,41 @@ public class ExportToCsvFile
 		mFileName = folderOutput + "/" + prefix
 				+ new SimpleDateFormat("yyyyMMddhhmmss").format(Calendar.getInstance().getTime()) + ".csv";
 		// binaryDialog
-		dialog.setIndeterminate(true);
+		dialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+		dialog.setIndeterminate(false);
 		dialog.setMessage(mContext.getString(R.string.export_data_in_progress));
 		dialog.show();
 	}
 
+	@Override
+	protected void onProgressUpdate(Integer... values) {
+		if (dialog == null) return;
+
+		dialog.setMax(values[1]);
+		dialog.setProgress(values[0]);
+	}
+
 	private boolean runTask() {
-		if (mAdapter == null || mAdapter.getCursor() == null)
+		if (!mStreaming && (mAdapter == null || mAdapter.getCursor() == null))
 			return false;
-		// take cursor
-		Cursor data = mAdapter.getCursor();
-		// create object to write csv file
+
 		try {
-			CSVWriter csvWriter = new CSVWriter(new FileWriter(mFileName), CSVWriter.DEFAULT_SEPARATOR,
-					CSVWriter.NO_QUOTE_CHARACTER);
-			while (data.moveToNext()) {
-				String[] record = new String[7];
-				// compose a records
-				record[0] = data.getString(data.getColumnIndex(QueryAllData.UserDate));
-				if (!TextUtils.isEmpty(data.getString(data.getColumnIndex(QueryAllData.Payee)))) {
-					record[1] = data.getString(data.getColumnIndex(QueryAllData.Payee));
+			CsvExporter exporter = new CsvExporter(new FileWriter(mFileName));
+			exporter.setProgressListener(new CsvExporter.ProgressListener() {
+				@Override
+				public void onProgress(int exported, int total) {
+					publishProgress(exported, total);
+				}
+			});
+			try {
+				if (mStreaming) {
+					exporter.export(new QueryAllDataRepository(mContext), mSelection, mSort);
 				} else {
-					record[1] = data.getString(data.getColumnIndex(QueryAllData.AccountName));
+					exporter.export(mAdapter.getCursor());
 				}
-				record[2] = Double.toString(data.getDouble(data.getColumnIndex(QueryAllData.Amount)));
-				record[3] = data.getString(data.getColumnIndex(QueryAllData.Category));
-				record[4] = data.getString(data.getColumnIndex(QueryAllData.Subcategory));
-				record[5] = Integer.toString(data.getInt(data.getColumnIndex(QueryAllData.TransactionNumber)));
-				record[6] = data.getString(data.getColumnIndex(QueryAllData.Notes));
-				// writer record
-				csvWriter.writeNext(record);
-				// move to next row
-				data.moveToNext();
+			} finally {
+				exporter.close();
 			}
-			csvWriter.close();
 		} catch (Exception e) {
 			Timber.e(e, "exporting to CSV");
 
@@ -23,6 +23,7 @@ import android.widget.TextView;
 import com.money.manager.ex.Constants;
 import com.money.manager.ex.MoneyManagerApplication;
 import com.money.manager.ex.R;
+import com.money.manager.ex.currency.CurrencyRegistry;
 import com.money.manager.ex.currency.CurrencyService;
 import com.money.manager.ex.domainmodel.Currency;
 import com.money.manager.ex.log.ExceptionHandler;
@@ -54,6 +55,7 @@ public class FormatUtilities {
 
     private Context context;
     @Inject CurrencyService currencyService;
+    @Inject CurrencyRegistry currencyRegistry;
 
     /**
      * Formats the amount in TextView with the given currency preferences.
@@ -156,19 +158,8 @@ public class FormatUtilities {
     public String format(Money value, boolean showSymbols, Currency currency) {
         if (currency == null) return "n/a";
 
-        String result = this.format(value, currency.getScale(),
-            currency.getDecimalSeparator(), currency.getGroupSeparator());
-
-        // check suffix
-        if ((showSymbols) && (!TextUtils.isEmpty(currency.getSfxSymbol()))) {
-            result = result + " " + currency.getSfxSymbol();
-        }
-        // check prefix
-        if (((showSymbols) && !TextUtils.isEmpty(currency.getPfxSymbol()))) {
-            result = currency.getPfxSymbol() + " " + result;
-        }
-
-        return result;
+        // with the shared formatter.
+        return currencyRegistry.format(value, currency, showSymbols);
     }
 
     /**
@@ -181,44 +172,13 @@ public class FormatUtilities {
     }
 
     public String format(Money value, int currencyId) {
-        CurrencyService currencyService = getCurrencyService();
-        Currency currency = currencyService.getCurrency(currencyId);
-        
-        return format(value, true, currency);
+        String result = currencyRegistry.format(value, currencyId);
+        return result == null ? "n/a" : result;
     }
 
     public String format(Money value, int scale, String decimalSeparator, String groupSeparator) {
-        int decimals = new NumericHelper(getContext()).getNumberOfDecimals(scale);
-
-        value = value.truncate(decimals);
-
-        // set format
-        DecimalFormatSymbols formatSymbols = new DecimalFormatSymbols();
-        // getDecimalSeparator()
-        if (!(TextUtils.isEmpty(decimalSeparator))) {
-            formatSymbols.setDecimalSeparator(decimalSeparator.charAt(0));
-        }
-        // getGroupSeparator()
-        if (!(TextUtils.isEmpty(groupSeparator))) {
-            formatSymbols.setGroupingSeparator(groupSeparator.charAt(0));
-        }
-
-        // All these use locale-dependent formatting.
-//        DecimalFormat formatter = new DecimalFormat();
-//        Locale appLocale = MoneyManagerApplication.getInstance().getLocale();
-//        DecimalFormat formatter = (DecimalFormat) NumberFormat.getNumberInstance(appLocale);
-        String pattern = NumericPatternGenerator.getPattern(decimals);
-
-        DecimalFormat formatter = new DecimalFormat(pattern);
-
-        formatter.setMaximumFractionDigits(decimals);
-        formatter.setMinimumFractionDigits(decimals);
-
-        formatter.setGroupingSize(3);
-        formatter.setDecimalFormatSymbols(formatSymbols);
-
-        String result = formatter.format(value.toDouble());
-        return result;
+        // with the shared formatter.
+        return currencyRegistry.format(value, scale, decimalSeparator, groupSeparator);
     }
 
     /**
@@ -306,5 +266,4 @@ public class FormatUtilities {
         CurrencyService service = getCurrencyService();
         return format(value, service.getBaseCurrency());
     }
-
 }
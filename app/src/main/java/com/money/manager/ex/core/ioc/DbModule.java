@@ -22,9 +22,10 @@ import com.money.manager.ex.database.MmxOpenHelper;
 import com.squareup.sqlbrite.BriteDatabase;
 import com.squareup.sqlbrite.SqlBrite;
 
+import javax.inject.Singleton;
+
 import dagger.Module;
 import dagger.Provides;
-import rx.schedulers.Schedulers;
 import timber.log.Timber;
 
 /**
@@ -76,7 +77,7 @@ public final class DbModule {
 //        return new MmxOpenHelper(application, dbPath);
 //    }
 
-    @Provides SqlBrite provideSqlBrite() {
+    @Provides @Singleton SqlBrite provideSqlBrite() {
         return SqlBrite.create(new SqlBrite.Logger() {
             @Override public void log(String message) {
                 Timber.tag("Database").v(message);
@@ -84,9 +85,12 @@ public final class DbModule {
         });
     }
 
-    @Provides BriteDatabase provideDatabase(SqlBrite sqlBrite, MmxOpenHelper helper) {
-        BriteDatabase db = sqlBrite.wrapDatabaseHelper(helper, Schedulers.io());
-        db.setLoggingEnabled(true);
-        return db;
+    /**
+     * One instance per database file, kept in the application next to the open helper, so that
+     * the content provider and the repositories share the connections. Replaced on database
+     * switch.
+     */
+    @Provides BriteDatabase provideDatabase(MoneyManagerApplication app, SqlBrite sqlBrite, MmxOpenHelper helper) {
+        return app.getBriteDatabase(sqlBrite, helper);
     }
 }
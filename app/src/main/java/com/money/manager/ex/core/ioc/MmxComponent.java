@@ -18,17 +18,24 @@
 package com.money.manager.ex.core.ioc;
 
 import com.money.manager.ex.MmxContentProvider;
+import com.money.manager.ex.account.CalculateRunningBalanceTask2;
+import com.money.manager.ex.adapter.AllDataAdapter;
 import com.money.manager.ex.budget.BudgetAdapter;
 import com.money.manager.ex.common.CalculatorActivity;
+import com.money.manager.ex.common.CategoryListFragment;
 import com.money.manager.ex.core.Core;
 import com.money.manager.ex.core.FormatUtilities;
 import com.money.manager.ex.core.Passcode;
 import com.money.manager.ex.core.UIHelper;
 import com.money.manager.ex.currency.CurrencyService;
 import com.money.manager.ex.currency.list.CurrencyListFragment;
+import com.money.manager.ex.database.DataChangeBus;
+import com.money.manager.ex.database.StatementCache;
 import com.money.manager.ex.datalayer.StockHistoryRepositorySql;
 import com.money.manager.ex.datalayer.StockRepositorySql;
 import com.money.manager.ex.domainmodel.Stock;
+import com.money.manager.ex.fragment.PayeeListFragment;
+import com.money.manager.ex.home.DashboardFragment;
 import com.money.manager.ex.home.HomeFragment;
 import com.money.manager.ex.home.MainActivity;
 import com.money.manager.ex.home.SelectDatabaseActivity;
@@ -36,12 +43,14 @@ import com.money.manager.ex.investment.EditPriceDialog;
 import com.money.manager.ex.investment.ISecurityPriceUpdater;
 import com.money.manager.ex.investment.InvestmentTransactionEditActivity;
 import com.money.manager.ex.investment.PriceEditActivity;
+import com.money.manager.ex.investment.PriceCsvExport;
 import com.money.manager.ex.investment.PriceEditModel;
-import com.money.manager.ex.investment.morningstar.MorningstarPriceUpdater;
+import com.money.manager.ex.investment.PriceIngestion;
 import com.money.manager.ex.recurring.transactions.RecurringTransactionEditActivity;
 import com.money.manager.ex.recurring.transactions.RecurringTransactionListFragment;
 import com.money.manager.ex.reports.BaseReportFragment;
 import com.money.manager.ex.search.SearchParametersFragment;
+import com.money.manager.ex.servicelayer.AssetAllocationService;
 import com.money.manager.ex.servicelayer.InfoService;
 import com.money.manager.ex.settings.AppSettings;
 import com.money.manager.ex.settings.DatabaseSettingsFragment;
@@ -67,6 +76,8 @@ import dagger.Component;
 public interface MmxComponent {
     // Example on how to expose a provision method.
 //    MmxOpenHelper getHelper();
+    DataChangeBus dataChangeBus();
+    StatementCache statementCache();
 
     // Activities
     void inject(CalculatorActivity activity);
@@ -80,9 +91,12 @@ public interface MmxComponent {
 
     // Fragments
     void inject(BaseReportFragment fragment);
+    void inject(CategoryListFragment fragment);
     void inject(CurrencyListFragment fragment);
+    void inject(DashboardFragment fragment);
     void inject(DatabaseSettingsFragment fragment);
     void inject(HomeFragment fragment);
+    void inject(PayeeListFragment fragment);
     void inject(RecurringTransactionListFragment fragment);
     void inject(SearchParametersFragment fragment);
     void inject(SyncPreferenceFragment fragment);
@@ -95,7 +109,8 @@ public interface MmxComponent {
 
     // Custom objects
     void inject(ISecurityPriceUpdater updater);
-    void inject(MorningstarPriceUpdater updater);
+    void inject(PriceIngestion ingestion);
+    void inject(PriceCsvExport export);
     void inject(AppSettings settings);
     void inject(Core core);
     void inject(MmxContentProvider provider);
@@ -104,6 +119,7 @@ public interface MmxComponent {
     void inject(SyncServiceMessageHandler handler);
     void inject(Passcode object);
     void inject(EditTransactionCommonFunctions object);
+    void inject(CalculateRunningBalanceTask2 task);
 
     // Helpers
     void inject(UIHelper helper);
@@ -111,6 +127,7 @@ public interface MmxComponent {
 
     // Business Services
     void inject(CurrencyService service);
+    void inject(AssetAllocationService service);
     void inject(InfoService service);
 
     // Intent Services
@@ -121,5 +138,6 @@ public interface MmxComponent {
     void inject(StockHistoryRepositorySql repository);
 
     // Adapters
+    void inject(AllDataAdapter adapter);
     void inject(BudgetAdapter adapter);
 }
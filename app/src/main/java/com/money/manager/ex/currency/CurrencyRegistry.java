@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.currency;
+
+import android.database.Cursor;
+import android.text.TextUtils;
+import android.util.SparseArray;
+
+import com.money.manager.ex.MoneyManagerApplication;
+import com.money.manager.ex.core.NumericHelper;
+import com.money.manager.ex.database.DataChangeBus;
+import com.money.manager.ex.database.DatabaseKey;
+import com.money.manager.ex.domainmodel.Currency;
+
+import java.text.DecimalFormatSymbols;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import info.javaperformance.money.Money;
+import info.javaperformance.money.MoneyFormatter;
+import timber.log.Timber;
+
+/**
+ * Application-wide cache of the currencies and their number formatters.
+ * All the currencies are loaded with one query on first use. The cache is discarded when the
+ * currencies table changes or a different database is opened.
+ * Callers get copies of the cached currencies, which can be modified freely.
+ * The formatters are shared by all the currencies, and the amounts formatted without one,
+ * with the same scale, separators, prefix and suffix.
+ */
+@Singleton
+public class CurrencyRegistry {
+
+    @Inject
+    public CurrencyRegistry(MoneyManagerApplication app, DataChangeBus changeBus) {
+        mApp = app;
+
+        final String table = new CurrencyRepository(app).getSource();
+        changeBus.subscribe(new DataChangeBus.Listener() {
+            @Override
+            public void onTablesChanged(Set<String> tables) {
+                if (tables.contains(table)) {
+                    invalidate();
+                }
+            }
+        });
+    }
+
+    private MoneyManagerApplication mApp;
+    private volatile Snapshot mSnapshot;
+    /**
+     * Formatters by their formatting and the default locale, which provides the missing
+     * separators.
+     */
+    private final Map<String, MoneyFormatter> mFormatters = new HashMap<>();
+
+    /**
+     * @return a copy of the currency, or null if it does not exist.
+     */
+    public Currency getCurrency(int currencyId) {
+        Currency cached = getSnapshot().currencies.get(currencyId);
+        if (cached == null) return null;
+
+        Currency currency = new Currency();
+        currency.contentValues.putAll(cached.contentValues);
+        return currency;
+    }
+
+    /**
+     * Formats the amount with the currency scale, separators, prefix and suffix.
+     * Same output as FormatUtilities.format(Money, Currency).
+     * @return formatted value or null if the currency does not exist.
+     */
+    public String format(Money value, int currencyId) {
+        Snapshot snapshot = getSnapshot();
+        Currency currency = snapshot.currencies.get(currencyId);
+        if (currency == null) return null;
+
+        return format(snapshot.formats.get(currencyId), value);
+    }
+
+    /**
+     * Formats the amount with the scale and separators of the given currency, which does not
+     * need to be saved.
+     * @param showSymbols Whether to include the currency prefix and suffix.
+     */
+    public String format(Money value, Currency currency, boolean showSymbols) {
+        return format(getFormatter(currency, showSymbols), value);
+    }
+
+    /**
+     * Formats the amount with the given scale and separators, without a currency symbol.
+     * Missing separators are taken from the default locale.
+     */
+    public String format(Money value, int scale, String decimalSeparator, String groupSeparator) {
+        return format(getFormatter(scale, decimalSeparator, groupSeparator, null, null), value);
+    }
+
+    public void invalidate() {
+        mSnapshot = null;
+    }
+
+    // Private
+
+    private Snapshot getSnapshot() {
+        Snapshot snapshot = mSnapshot;
+        DatabaseKey database = DatabaseKey.current(mApp);
+
+        if (snapshot == null || !database.equals(snapshot.database)) {
+            snapshot = load(database);
+            mSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    private Snapshot load(DatabaseKey database) {
+        Snapshot snapshot = new Snapshot();
+        snapshot.database = database;
+
+        CurrencyRepository repository = new CurrencyRepository(mApp);
+        Cursor c = repository.openCursor(repository.getAllColumns(), null, null);
+        if (c == null) return snapshot;
+
+        try {
+            while (c.moveToNext()) {
+                Currency currency = Currency.fromCursor(c);
+
+                snapshot.currencies.put(currency.getCurrencyId(), currency);
+                snapshot.formats.put(currency.getCurrencyId(), getFormatter(currency, true));
+            }
+        } catch (Exception e) {
+            Timber.e(e, "loading currencies");
+        } finally {
+            c.close();
+        }
+
+        return snapshot;
+    }
+
+    private MoneyFormatter getFormatter(Currency currency, boolean showSymbols) {
+        String prefix = showSymbols && !TextUtils.isEmpty(currency.getPfxSymbol())
+            ? currency.getPfxSymbol() + " "
+            : null;
+        String suffix = showSymbols && !TextUtils.isEmpty(currency.getSfxSymbol())
+            ? " " + currency.getSfxSymbol()
+            : null;
+        return getFormatter(currency.getScale(), currency.getDecimalSeparator(), currency.getGroupSeparator(),
+            prefix, suffix);
+    }
+
+    /**
+     * @return the shared formatter. The number of decimals is calculated from the scale once,
+     * when the formatter is created.
+     */
+    private MoneyFormatter getFormatter(int scale, String decimalSeparator, String groupSeparator,
+                                        String prefix, String suffix) {
+        String key = scale + "\u0000" + decimalSeparator + "\u0000" + groupSeparator + "\u0000" +
+            prefix + "\u0000" + suffix + "\u0000" + Locale.getDefault();
+
+        synchronized (mFormatters) {
+            MoneyFormatter formatter = mFormatters.get(key);
+            if (formatter == null) {
+                int decimals = new NumericHelper(mApp).getNumberOfDecimals(scale);
+                formatter = createFormatter(decimals, decimalSeparator, groupSeparator, prefix, suffix);
+                mFormatters.put(key, formatter);
+            }
+            return formatter;
+        }
+    }
+
+    /**
+     * Missing separators are taken from the default locale.
+     */
+    private MoneyFormatter createFormatter(int decimals, String decimalSeparator, String groupSeparator,
+                                           String prefix, String suffix) {
+        DecimalFormatSymbols formatSymbols = new DecimalFormatSymbols();
+        char decimalChar = TextUtils.isEmpty(decimalSeparator)
+            ? formatSymbols.getDecimalSeparator()
+            : decimalSeparator.charAt(0);
+        char groupChar = TextUtils.isEmpty(groupSeparator)
+            ? formatSymbols.getGroupingSeparator()
+            : groupSeparator.charAt(0);
+
+        return new MoneyFormatter(decimals, decimalChar, groupChar, prefix, suffix);
+    }
+
+    private String format(MoneyFormatter formatter, Money value) {
+        // The formatter writes into its own buffer.
+        synchronized (formatter) {
+            return formatter.format(value);
+        }
+    }
+
+    private static class Snapshot {
+        DatabaseKey database;
+        SparseArray<Currency> currencies = new SparseArray<>();
+        SparseArray<MoneyFormatter> formats = new SparseArray<>();
+    }
+}
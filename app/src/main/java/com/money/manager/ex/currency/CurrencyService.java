@@ -23,12 +23,10 @@ import android.database.sqlite.SQLiteDatabase;
 import android.os.Build;
 import android.text.TextUtils;
 import android.util.Log;
-import android.util.SparseArray;
 
 import com.money.manager.ex.Constants;
 import com.money.manager.ex.MoneyManagerApplication;
 import com.money.manager.ex.R;
-import com.money.manager.ex.core.FormatUtilities;
 import com.money.manager.ex.core.InfoKeys;
 import com.money.manager.ex.core.UIHelper;
 import com.money.manager.ex.datalayer.AccountRepository;
@@ -65,16 +63,15 @@ public class CurrencyService
         super(context);
 
         mCurrencyCodes = new HashMap<>();
-        mCurrencies = new SparseArray<>();
 
         MoneyManagerApplication.getApp().iocComponent.inject(this);
     }
 
     @Inject CurrencyRepositorySql mRepository;
+    @Inject CurrencyRegistry mRegistry;
+    @Inject ExchangeRates mExchangeRates;
 
     private Integer mBaseCurrencyId = null;
-    // hash map of all currencies
-    private SparseArray<Currency> mCurrencies;
     /**
      * a fast lookup for symbol -> id. i.e. EUR->2.
      */
@@ -87,16 +84,7 @@ public class CurrencyService
     public Currency getCurrency(Integer currencyId) {
         if (currencyId == null || currencyId == Constants.NOT_SET) return null;
 
-        if (mCurrencies.indexOfKey(currencyId) >= 0) {
-            return mCurrencies.get(currencyId);
-        }
-
-        CurrencyRepository repository = getRepository();
-        Currency currency = repository.loadCurrency(currencyId);
-
-        mCurrencies.put(currencyId, currency);
-
-        return currency;
+        return mRegistry.getCurrency(currencyId);
     }
 
     public Currency getCurrency(String currencyCode) {
@@ -210,6 +198,26 @@ public class CurrencyService
         return result;
     }
 
+    /**
+     * Converts the amount with the rates on the given date, from the rate history.
+     * @param isoDate date of the transaction, yyyy-MM-dd.
+     */
+    public Money doCurrencyExchange(Integer toCurrencyId, Money amount, Integer fromCurrencyId, String isoDate) {
+        if (toCurrencyId == null || fromCurrencyId == null) return amount;
+        if (toCurrencyId == Constants.NOT_SET || fromCurrencyId == Constants.NOT_SET) return amount;
+        if (toCurrencyId.equals(fromCurrencyId)) return amount;
+        // without a date, at the current rates.
+        if (TextUtils.isEmpty(isoDate) || isoDate.length() < 10) {
+            return doCurrencyExchange(toCurrencyId, amount, fromCurrencyId);
+        }
+
+        int day = ExchangeRates.toEpochDay(isoDate);
+        double toConversionRate = mExchangeRates.rateOn(toCurrencyId, day);
+        double fromConversionRate = mExchangeRates.rateOn(fromCurrencyId, day);
+
+        return amount.multiply(fromConversionRate).divide(toConversionRate, Constants.DEFAULT_PRECISION);
+    }
+
     /**
      * Loads id of base currency.
      *
@@ -292,18 +300,14 @@ public class CurrencyService
 
         // find currency id
         if (currencyId != null) {
-            Currency currency = getCurrency(currencyId);
-//            NumericHelper helper = new NumericHelper(mContext);
+            // formatted value, with the cached formatter.
+            result = mRegistry.format(value, currencyId);
 
-            if (currency == null) {
+            if (result == null) {
                 // no currency
                 return value.toString();
                 // we can not simply cut off the decimals!
 //                result = String.format("%.2f", value);
-            } else {
-                // formatted value
-                FormatUtilities formats = new FormatUtilities(getContext());
-                result = formats.format(value, currency);
             }
         } else {
             result = String.valueOf(value);
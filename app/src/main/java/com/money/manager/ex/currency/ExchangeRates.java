@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.currency;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.SparseArray;
+
+import com.money.manager.ex.MoneyManagerApplication;
+import com.money.manager.ex.database.DataChangeBus;
+import com.money.manager.ex.database.DatabaseKey;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import timber.log.Timber;
+
+/**
+ * Exchange rates to the base currency as of a date, from the rate history
+ * (CURRENCYHISTORY_V1). The rate on a date is the last one recorded on or before it. Dates
+ * before the first recorded rate, and currencies without history, use the current rate
+ * (CURRENCYFORMATS_V1.BASECONVRATE).
+ * The history is loaded with one query on first use and kept per currency in sorted arrays of
+ * days since the epoch and rates. The cache is discarded when the currencies or their history
+ * change, or a different database is opened.
+ * getRateSql() gives the same lookup as an SQL expression, for the queries.
+ */
+@Singleton
+public class ExchangeRates {
+
+    public static final String HISTORY_TABLE = "CURRENCYHISTORY_V1";
+
+    @Inject
+    public ExchangeRates(MoneyManagerApplication app, DataChangeBus changeBus) {
+        mApp = app;
+
+        final String currencies = new CurrencyRepository(app).getSource().toLowerCase(Locale.US);
+        final String history = HISTORY_TABLE.toLowerCase(Locale.US);
+        changeBus.subscribe(new DataChangeBus.Listener() {
+            @Override
+            public void onTablesChanged(Set<String> tables) {
+                if (tables.contains(currencies) || tables.contains(history)) {
+                    invalidate();
+                }
+            }
+        });
+    }
+
+    private MoneyManagerApplication mApp;
+    private volatile Snapshot mSnapshot;
+
+    /**
+     * SQL expression for the rate to the base currency on the given date.
+     * Uses the (CURRENCYID, CURRDATE) index of the history, one lookup per row.
+     * @param currencyId SQL expression for the currency id, i.e. a.CURRENCYID
+     * @param date SQL expression for the date, yyyy-MM-dd, i.e. TX.TRANSDATE
+     * @param currentRate SQL expression for the current rate, i.e. cf.BASECONVRATE
+     */
+    public static String getRateSql(String currencyId, String date, String currentRate) {
+        return "ifnull((SELECT h.CURRVALUE FROM " + HISTORY_TABLE + " h" +
+            " WHERE h.CURRENCYID = " + currencyId + " AND h.CURRDATE <= " + date +
+            " ORDER BY h.CURRDATE DESC LIMIT 1), ifnull(" + currentRate + ", 1))";
+    }
+
+    /**
+     * @param isoDate yyyy-MM-dd, optionally followed by the time.
+     * @return days since 1970-01-01.
+     */
+    public static int toEpochDay(String isoDate) {
+        int year = Integer.parseInt(isoDate.substring(0, 4));
+        int month = Integer.parseInt(isoDate.substring(5, 7));
+        int day = Integer.parseInt(isoDate.substring(8, 10));
+        return toEpochDay(year, month, day);
+    }
+
+    public static int toEpochDay(Date date) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(date);
+        return toEpochDay(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1,
+            calendar.get(Calendar.DAY_OF_MONTH));
+    }
+
+    /**
+     * Days since 1970-01-01 in the proleptic Gregorian calendar, without the calendar classes.
+     * @param month 1-based
+     */
+    public static int toEpochDay(int year, int month, int day) {
+        // the year starts in March, so that the leap day is the last day of the year.
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * @return the rate to the base currency on the day, 1 for an unknown currency.
+     */
+    public double rateOn(int currencyId, int epochDay) {
+        RateHistory history = getSnapshot().histories.get(currencyId);
+        if (history == null) return 1;
+
+        return history.rateOn(epochDay);
+    }
+
+    public double rateOn(int currencyId, String isoDate) {
+        return rateOn(currencyId, toEpochDay(isoDate));
+    }
+
+    public double rateOn(int currencyId, Date date) {
+        return rateOn(currencyId, toEpochDay(date));
+    }
+
+    public void invalidate() {
+        mSnapshot = null;
+    }
+
+    /**
+     * Loads the current rates and the history of all the currencies.
+     * @return the rates by currency id.
+     */
+    public static SparseArray<RateHistory> load(SQLiteDatabase db) {
+        SparseArray<RateHistory> histories = new SparseArray<>();
+
+        Cursor c = db.rawQuery("SELECT CURRENCYID, BASECONVRATE FROM CURRENCYFORMATS_V1", null);
+        try {
+            while (c.moveToNext()) {
+                double rate = c.isNull(1) ? 1 : c.getDouble(1);
+                histories.put(c.getInt(0), new RateHistory(rate));
+            }
+        } finally {
+            c.close();
+        }
+
+        c = db.rawQuery("SELECT CURRENCYID, CURRDATE, CURRVALUE FROM " + HISTORY_TABLE +
+            " ORDER BY CURRENCYID, CURRDATE", null);
+        try {
+            while (c.moveToNext()) {
+                RateHistory history = histories.get(c.getInt(0));
+                if (history == null) continue;
+
+                history.add(toEpochDay(c.getString(1)), c.getDouble(2));
+            }
+        } finally {
+            c.close();
+        }
+
+        for (int i = 0; i < histories.size(); i++) {
+            histories.valueAt(i).trim();
+        }
+        return histories;
+    }
+
+    // Private
+
+    private Snapshot getSnapshot() {
+        Snapshot snapshot = mSnapshot;
+        DatabaseKey database = DatabaseKey.current(mApp);
+
+        if (snapshot == null || !database.equals(snapshot.database)) {
+            snapshot = new Snapshot();
+            snapshot.database = database;
+            try {
+                snapshot.histories = load(mApp.openHelperAtomicReference.get().getReadableDatabase());
+            } catch (Exception e) {
+                Timber.e(e, "loading exchange rates");
+            }
+            mSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Rates of one currency, by day.
+     */
+    public static class RateHistory {
+        RateHistory(double currentRate) {
+            this.currentRate = currentRate;
+        }
+
+        final double currentRate;
+        /**
+         * Days since the epoch, ascending.
+         */
+        int[] days = new int[0];
+        double[] rates = new double[0];
+        int size;
+
+        /**
+         * The rates must be added in date order.
+         */
+        void add(int day, double rate) {
+            if (size == days.length) {
+                int capacity = Math.max(16, size * 2);
+                days = Arrays.copyOf(days, capacity);
+                rates = Arrays.copyOf(rates, capacity);
+            }
+            days[size] = day;
+            rates[size] = rate;
+            size++;
+        }
+
+        void trim() {
+            days = Arrays.copyOf(days, size);
+            rates = Arrays.copyOf(rates, size);
+        }
+
+        /**
+         * @return the last rate on or before the day, or the current rate.
+         */
+        public double rateOn(int day) {
+            int index = Arrays.binarySearch(days, 0, size, day);
+            if (index < 0) {
+                // the last rate before the day.
+                index = -index - 2;
+                if (index < 0) return currentRate;
+            }
+            return rates[index];
+        }
+    }
+
+    private static class Snapshot {
+        DatabaseKey database;
+        SparseArray<RateHistory> histories = new SparseArray<>();
+    }
+}
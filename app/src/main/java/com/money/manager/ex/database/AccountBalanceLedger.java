@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+import com.money.manager.ex.datalayer.StockFields;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import timber.log.Timber;
+
+/**
+ * Materialized per-account balances (total and reconciled), maintained incrementally on every
+ * write to the transactions and stocks tables. Used by Account Bills instead of aggregating
+ * the whole transactions table on every query.
+ * The ledger is a local cache. It is checked against the transactions in the background when
+ * the file is opened (see CacheState) and can be rebuilt at any time, i.e. when the database
+ * file was edited by the desktop application.
+ */
+public class AccountBalanceLedger {
+
+    public static final String TABLE_NAME = "MMX_ACCOUNTBALANCE";
+
+    public static final String ACCOUNTID = "ACCOUNTID";
+    public static final String TOTAL = "TOTAL";
+    public static final String RECONCILED = "RECONCILED";
+    public static final String STOCKVALUE = "STOCKVALUE";
+
+    private static final String TRANSACTIONS = CacheState.TRANSACTIONS;
+    private static final String STOCKS = "STOCK_V1";
+
+    /**
+     * Amounts are compared with this tolerance when verifying the ledger.
+     */
+    private static final double TOLERANCE = 0.00001;
+
+    public AccountBalanceLedger(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    private SQLiteDatabase db;
+
+    public void create() {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
+            ACCOUNTID + " integer primary key" +
+            ", " + TOTAL + " numeric NOT NULL DEFAULT 0" +
+            ", " + RECONCILED + " numeric NOT NULL DEFAULT 0" +
+            ", " + STOCKVALUE + " numeric NOT NULL DEFAULT 0)");
+    }
+
+    /**
+     * Rebuilds the ledger if it does not match the transactions stored in the file.
+     * @return true if the ledger had to be rebuilt.
+     */
+    public boolean ensure(CacheState state) {
+        if (state.isInSync(TABLE_NAME, TRANSACTIONS)) return false;
+
+        Timber.d("account balance ledger out of date, rebuilding");
+        rebuild();
+        return true;
+    }
+
+    /**
+     * Recalculates the ledger from scratch.
+     */
+    public void rebuild() {
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM " + TABLE_NAME);
+            db.execSQL("INSERT INTO " + TABLE_NAME + " (" + ACCOUNTID + ", " + TOTAL + ", " + RECONCILED + ") " +
+                getAggregateSql(null));
+            db.execSQL("INSERT OR IGNORE INTO " + TABLE_NAME + " (" + ACCOUNTID + ") " +
+                "SELECT DISTINCT " + StockFields.HELDAT + " FROM " + STOCKS);
+            db.execSQL("UPDATE " + TABLE_NAME + " SET " + STOCKVALUE + " = " + getStockValueSql());
+
+            // the balance snapshots are based on the same transactions.
+            new BalanceCheckpoints(db).clear();
+
+            new CacheState(db).record(TABLE_NAME, TRANSACTIONS);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Compares the stored balances with the ones aggregated from the transactions.
+     * @return ids of the accounts whose balances differ. Empty if the ledger is correct.
+     */
+    public List<Integer> verify() {
+        Map<Integer, double[]> expected = new HashMap<>();
+
+        Cursor c = db.rawQuery(getAggregateSql(null), null);
+        while (c.moveToNext()) {
+            expected.put(c.getInt(0), new double[] { c.getDouble(1), c.getDouble(2), 0 });
+        }
+        c.close();
+
+        c = db.rawQuery("SELECT " + StockFields.HELDAT + ", TOTAL(" + StockFields.NUMSHARES + " * " +
+            StockFields.CURRENTPRICE + ") FROM " + STOCKS + " GROUP BY " + StockFields.HELDAT, null);
+        while (c.moveToNext()) {
+            double[] values = expected.get(c.getInt(0));
+            if (values == null) {
+                values = new double[3];
+                expected.put(c.getInt(0), values);
+            }
+            values[2] = c.getDouble(1);
+        }
+        c.close();
+
+        List<Integer> result = new ArrayList<>();
+
+        c = db.rawQuery("SELECT " + ACCOUNTID + ", " + TOTAL + ", " + RECONCILED + ", " + STOCKVALUE +
+            " FROM " + TABLE_NAME, null);
+        while (c.moveToNext()) {
+            int accountId = c.getInt(0);
+            double[] values = expected.remove(accountId);
+            if (values == null) values = new double[3];
+
+            if (differs(values[0], c.getDouble(1)) || differs(values[1], c.getDouble(2))
+                || differs(values[2], c.getDouble(3))) {
+                result.add(accountId);
+            }
+        }
+        c.close();
+
+        // Anything left is missing from the ledger.
+        for (Map.Entry<Integer, double[]> entry : expected.entrySet()) {
+            double[] values = entry.getValue();
+            if (differs(values[0], 0) || differs(values[1], 0) || differs(values[2], 0)) {
+                result.add(entry.getKey());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Verifies the ledger and rebuilds it if needed.
+     * @return true if the ledger was correct, false if it had to be rebuilt.
+     */
+    public boolean verifyAndRebuild() {
+        List<Integer> invalid = verify();
+        if (invalid.isEmpty()) {
+            // balance snapshots are cheap to recreate.
+            new BalanceCheckpoints(db).clear();
+            return true;
+        }
+
+        Timber.w("account balances out of sync for accounts %s", invalid);
+        rebuild();
+        return false;
+    }
+
+    // Incremental maintenance. Run these within the same database transaction as the write.
+
+    /**
+     * Adds the effect of a newly inserted transaction.
+     */
+    public void transactionInserted(long id) {
+        applyTransactions("TRANSID=" + id, null, 1);
+    }
+
+    /**
+     * Removes the effect of the transactions matching the selection. To be called before the
+     * transactions are updated or deleted.
+     * @return ids of the affected transactions, to be passed to transactionsUpdated.
+     */
+    public long[] beforeTransactionsChange(String selection, String[] selectionArgs) {
+        Cursor c = db.rawQuery("SELECT TRANSID FROM " + TRANSACTIONS +
+            (TextUtils.isEmpty(selection) ? "" : " WHERE " + selection), selectionArgs);
+        long[] ids = new long[c.getCount()];
+        for (int i = 0; c.moveToNext(); i++) {
+            ids[i] = c.getLong(0);
+        }
+        c.close();
+
+        if (ids.length > 0) {
+            applyTransactions(getIdSelection(ids), null, -1);
+        }
+        return ids;
+    }
+
+    /**
+     * Adds the new values of the updated transactions.
+     * @param ids as returned by beforeTransactionsChange.
+     */
+    public void transactionsUpdated(long[] ids) {
+        if (ids.length == 0) return;
+
+        applyTransactions(getIdSelection(ids), null, 1);
+    }
+
+    /**
+     * Lists the investment accounts that hold the stocks matching the selection.
+     */
+    public List<Integer> getStockAccounts(String selection, String[] selectionArgs) {
+        List<Integer> result = new ArrayList<>();
+
+        Cursor c = db.rawQuery("SELECT DISTINCT " + StockFields.HELDAT + " FROM " + STOCKS +
+            (TextUtils.isEmpty(selection) ? "" : " WHERE " + selection), selectionArgs);
+        while (c.moveToNext()) {
+            result.add(c.getInt(0));
+        }
+        c.close();
+
+        return result;
+    }
+
+    /**
+     * Recalculates the value of the stocks held in the given investment accounts.
+     */
+    public void refreshStockValue(List<Integer> accountIds) {
+        for (int accountId : accountIds) {
+            String[] args = new String[] { Integer.toString(accountId) };
+            db.execSQL("INSERT OR IGNORE INTO " + TABLE_NAME + " (" + ACCOUNTID + ") VALUES (?)", args);
+            db.execSQL("UPDATE " + TABLE_NAME + " SET " + STOCKVALUE + " = " + getStockValueSql() +
+                " WHERE " + ACCOUNTID + "=?", args);
+        }
+    }
+
+    // Private
+
+    private void applyTransactions(String selection, String[] selectionArgs, int sign) {
+        Cursor c = db.rawQuery(getAggregateSql(selection), selectionArgs);
+
+        while (c.moveToNext()) {
+            String accountId = c.getString(0);
+            double total = c.getDouble(1) * sign;
+            double reconciled = c.getDouble(2) * sign;
+
+            db.execSQL("INSERT OR IGNORE INTO " + TABLE_NAME + " (" + ACCOUNTID + ") VALUES (?)",
+                new String[] { accountId });
+            db.execSQL("UPDATE " + TABLE_NAME + " SET " +
+                    TOTAL + " = " + TOTAL + " + ?, " + RECONCILED + " = " + RECONCILED + " + ? " +
+                    "WHERE " + ACCOUNTID + "=?",
+                new Object[] { total, reconciled, accountId });
+        }
+        c.close();
+    }
+
+    /**
+     * Signed amounts per account for the transactions matching the selection.
+     * @return query with columns ACCOUNTID, TOTAL, RECONCILED
+     */
+    private String getAggregateSql(String selection) {
+        return "SELECT ACCOUNTID, TOTAL(AMOUNT), TOTAL(CASE WHEN STATUS = 'R' THEN AMOUNT ELSE 0 END) " +
+            "FROM (" + BalanceSql.getMovementsSql(null, selection) + ") GROUP BY ACCOUNTID";
+    }
+
+    private String getStockValueSql() {
+        return "(SELECT TOTAL(" + StockFields.NUMSHARES + " * " + StockFields.CURRENTPRICE + ") " +
+            "FROM " + STOCKS + " WHERE " + StockFields.HELDAT + " = " + TABLE_NAME + "." + ACCOUNTID + ")";
+    }
+
+    static String getIdSelection(long[] ids) {
+        StringBuilder builder = new StringBuilder("TRANSID IN (");
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) builder.append(',');
+            builder.append(ids[i]);
+        }
+        builder.append(')');
+        return builder.toString();
+    }
+
+    private boolean differs(double expected, double actual) {
+        return Math.abs(expected - actual) > TOLERANCE;
+    }
+}
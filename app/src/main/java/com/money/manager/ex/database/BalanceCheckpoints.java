@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.money.manager.ex.utils.MoneyUnits;
+
+/**
+ * Monthly account balance snapshots. Each checkpoint holds the balance of all the transactions
+ * dated before the checkpoint date (the first day of a month), excluding the initial balance.
+ * A balance on any date is then calculated from the nearest checkpoint plus the transactions
+ * in the remaining part of that month.
+ * Checkpoints are added in the background when the file is opened, and adjusted by every
+ * write of a transaction dated before them. Reading a balance does not write.
+ * Balances are stored as integers, in MoneyUnits.
+ */
+public class BalanceCheckpoints {
+
+    public static final String TABLE_NAME = "MMX_BALANCECHECKPOINT";
+
+    public static final String ACCOUNTID = "ACCOUNTID";
+    public static final String CHECKPOINTDATE = "CHECKPOINTDATE";
+    public static final String BALANCE = "BALANCE";
+
+    private static final String TRANSACTIONS = "CHECKINGACCOUNT_V1";
+
+    public BalanceCheckpoints(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    private SQLiteDatabase db;
+
+    public void create() {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
+            ACCOUNTID + " integer NOT NULL" +
+            ", " + CHECKPOINTDATE + " TEXT NOT NULL" +
+            ", " + BALANCE + " integer NOT NULL" +
+            ", PRIMARY KEY (" + ACCOUNTID + ", " + CHECKPOINTDATE + "))");
+    }
+
+    public void clear() {
+        db.execSQL("DELETE FROM " + TABLE_NAME);
+    }
+
+    // Incremental maintenance. Run these within the same database transaction as the write.
+
+    /**
+     * Removes the given transactions from the checkpoints dated after them. To be called before
+     * the transactions are updated or deleted.
+     */
+    public void beforeTransactionsChange(long[] ids) {
+        applyTransactions(ids, -1);
+    }
+
+    /**
+     * Adds the given inserted or updated transactions to the checkpoints dated after them.
+     */
+    public void transactionsChanged(long[] ids) {
+        applyTransactions(ids, 1);
+    }
+
+    /**
+     * Adds the checkpoints for the months after the latest existing checkpoint of every account.
+     */
+    public void update() {
+        Cursor c = db.rawQuery("SELECT ACCOUNTID FROM ACCOUNTLIST_V1", null);
+        int[] accountIds = new int[c.getCount()];
+        for (int i = 0; c.moveToNext(); i++) {
+            accountIds[i] = c.getInt(0);
+        }
+        c.close();
+
+        for (int accountId : accountIds) {
+            update(accountId);
+        }
+    }
+
+    /**
+     * Balance of all the non-void transactions on the account up to and including the given date.
+     * The initial balance of the account is not included.
+     * @param isoDate date in ISO format
+     * @return balance in MoneyUnits
+     */
+    public long getBalanceOn(int accountId, String isoDate) {
+        String checkpointDate = null;
+        long balance = 0;
+
+        Cursor c = db.rawQuery("SELECT " + CHECKPOINTDATE + ", " + BALANCE + " FROM " + TABLE_NAME +
+                " WHERE " + ACCOUNTID + "=? AND " + CHECKPOINTDATE + " <= ?" +
+                " ORDER BY " + CHECKPOINTDATE + " DESC LIMIT 1",
+            new String[] { Integer.toString(accountId), isoDate });
+        if (c.moveToFirst()) {
+            checkpointDate = c.getString(0);
+            balance = c.getLong(1);
+        }
+        c.close();
+
+        // add the transactions since the checkpoint.
+        c = db.rawQuery("SELECT " + MoneyUnits.getSumSql("AMOUNT") + " FROM (" +
+                BalanceSql.getMovementsSql("= ?1", "TRANSDATE >= ?2 AND TRANSDATE <= ?3") + ")",
+            getArgs(accountId, checkpointDate == null ? "" : checkpointDate, isoDate));
+        if (c.moveToFirst()) {
+            balance += c.getLong(0);
+        }
+        c.close();
+
+        return balance;
+    }
+
+    // Private
+
+    private void applyTransactions(long[] ids, int sign) {
+        if (ids.length == 0) return;
+
+        Cursor c = db.rawQuery("SELECT ACCOUNTID, date(TRANSDATE), " + MoneyUnits.getSumSql("AMOUNT") + " FROM (" +
+            BalanceSql.getMovementsSql(null, AccountBalanceLedger.getIdSelection(ids)) + ") GROUP BY 1, 2", null);
+        while (c.moveToNext()) {
+            if (c.isNull(1)) continue;
+
+            db.execSQL("UPDATE " + TABLE_NAME + " SET " + BALANCE + " = " + BALANCE + " + ? " +
+                    "WHERE " + ACCOUNTID + "=? AND " + CHECKPOINTDATE + " > ?",
+                new Object[] { c.getLong(2) * sign, c.getInt(0), c.getString(1) });
+        }
+        c.close();
+    }
+
+    private void update(int accountId) {
+        String lastDate = "";
+        long balance = 0;
+
+        Cursor c = db.rawQuery("SELECT " + CHECKPOINTDATE + ", " + BALANCE + " FROM " + TABLE_NAME +
+                " WHERE " + ACCOUNTID + "=? ORDER BY " + CHECKPOINTDATE + " DESC LIMIT 1",
+            new String[] { Integer.toString(accountId) });
+        if (c.moveToFirst()) {
+            lastDate = c.getString(0);
+            balance = c.getLong(1);
+        }
+        c.close();
+
+        c = db.rawQuery("SELECT date(TRANSDATE, 'start of month', '+1 month') AS NEXTMONTH, " +
+                MoneyUnits.getSumSql("AMOUNT") + " FROM (" + BalanceSql.getMovementsSql("= ?1", "TRANSDATE >= ?2") + ")" +
+                " GROUP BY NEXTMONTH ORDER BY NEXTMONTH",
+            getArgs(accountId, lastDate));
+        if (c.getCount() == 0) {
+            c.close();
+            return;
+        }
+
+        db.beginTransaction();
+        try {
+            while (c.moveToNext()) {
+                String date = c.getString(0);
+                if (date == null) continue;
+
+                balance += c.getLong(1);
+
+                db.execSQL("INSERT OR REPLACE INTO " + TABLE_NAME +
+                        " (" + ACCOUNTID + ", " + CHECKPOINTDATE + ", " + BALANCE + ") VALUES (?, ?, ?)",
+                    new Object[] { accountId, date, balance });
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            c.close();
+        }
+    }
+
+    private String[] getArgs(int accountId, String... dates) {
+        String[] args = new String[dates.length + 1];
+        args[0] = Integer.toString(accountId);
+        System.arraycopy(dates, 0, args, 1, dates.length);
+        return args;
+    }
+}
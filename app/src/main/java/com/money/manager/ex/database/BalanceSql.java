@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.database;
+
+/**
+ * How the transactions make up the account balances, in SQL over the columns of the
+ * transactions table. Used by the balance ledger, the balance checkpoints and the balance
+ * queries, so that they all agree.
+ * Void transactions do not count, a missing status counts as none. Withdrawals and transfers
+ * are negative for the account they are recorded on, deposits positive. A transfer adds the
+ * received amount to the destination account.
+ */
+public class BalanceSql {
+
+    /**
+     * Condition for the transactions included in the balances.
+     */
+    public static final String COUNTED = "TRANSCODE IN ('Withdrawal', 'Deposit', 'Transfer') " +
+        "AND IFNULL(STATUS, '') <> 'V'";
+
+    /**
+     * Amount of the transaction for the account it is recorded on.
+     */
+    public static final String SIGNED_AMOUNT = "CASE TRANSCODE WHEN 'Deposit' THEN TRANSAMOUNT ELSE -TRANSAMOUNT END";
+
+    private static final String TRANSACTIONS = "CHECKINGACCOUNT_V1";
+
+    /**
+     * Balance movements: the signed amount of every counted transaction for its account, and the
+     * received amount of every counted transfer for the destination account.
+     * @param account condition on the account of the movement, i.e. "= ?1" or "IN (1, 2)".
+     *                All the accounts if null.
+     * @param selection condition on the transactions, applied to both kinds of movements, so
+     *                  use numbered parameters. May be null.
+     * @return query with the columns ACCOUNTID, TRANSDATE, STATUS and AMOUNT.
+     */
+    public static String getMovementsSql(String account, String selection) {
+        String where = selection == null ? "" : " AND (" + selection + ")";
+
+        return "SELECT ACCOUNTID, TRANSDATE, STATUS, " + SIGNED_AMOUNT + " AS AMOUNT " +
+                "FROM " + TRANSACTIONS + " " +
+                "WHERE " + COUNTED + (account == null ? "" : " AND ACCOUNTID " + account) + where +
+            " UNION ALL " +
+            "SELECT TOACCOUNTID, TRANSDATE, STATUS, TOTRANSAMOUNT " +
+                "FROM " + TRANSACTIONS + " " +
+                "WHERE " + COUNTED + " AND TRANSCODE = 'Transfer' " +
+                "AND TOACCOUNTID " + (account == null ? "<> -1" : account) + where;
+    }
+
+    /**
+     * Amount of a counted transaction for the given account: the signed amount if the
+     * transaction is recorded on the account, plus the received amount if it is a transfer to
+     * the account. For the sums over the transactions of one account in a single pass.
+     */
+    public static String getAccountAmountSql(int accountId) {
+        return "(CASE WHEN ACCOUNTID = " + accountId + " THEN " + SIGNED_AMOUNT + " ELSE 0 END" +
+            " + CASE WHEN TRANSCODE = 'Transfer' AND TOACCOUNTID = " + accountId +
+            " THEN TOTRANSAMOUNT ELSE 0 END)";
+    }
+}
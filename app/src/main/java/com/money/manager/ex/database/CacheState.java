@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Tracks whether the local caches (the MMX_ tables, i.e. the account balance ledger, the
+ * monthly totals or the search index) still match the tables they are derived from.
+ * For every cache and source table it records the number of rows and a checksum of their
+ * contents, as of the last time the cache was in step with the source. The checksum is the
+ * sum of the hashes of all the column values of each row, so the app's own writes update it
+ * incrementally, while any change made elsewhere (a new, deleted or edited row) is detected.
+ *
+ * The caches are stored in the database file itself, not in an app-private database: they are
+ * joined by the queries and updated in the same SQLite transaction as the data they are
+ * derived from, so the app never sees one without the other. Attaching a separate database
+ * would disable write-ahead logging on Android, and the attachment would apply only to one of
+ * the connections. The desktop application ignores the extra tables, and a file changed on the
+ * desktop or replaced by a sync download is detected here and the caches rebuilt.
+ */
+public class CacheState {
+
+    public static final String TABLE_NAME = "MMX_CACHESTATE";
+
+    public static final String CACHE = "CACHE";
+    public static final String SOURCE = "SOURCE";
+    public static final String ROWCOUNT = "ROWCOUNT";
+    public static final String CHECKSUM = "CHECKSUM";
+
+    public static final String TRANSACTIONS = "CHECKINGACCOUNT_V1";
+    public static final String SPLITS = "SPLITTRANSACTIONS_V1";
+    public static final String PAYEES = "PAYEE_V1";
+    public static final String CATEGORIES = "CATEGORY_V1";
+    public static final String SUBCATEGORIES = "SUBCATEGORY_V1";
+
+    /**
+     * Tables the caches are derived from. Every write to them has to be reported with
+     * beforeRowsChange/rowsChanged.
+     */
+    private static final String[] SOURCES = new String[] {
+        TRANSACTIONS, SPLITS, PAYEES, CATEGORIES, SUBCATEGORIES };
+
+    /**
+     * The checksums are kept modulo this prime (2^61 - 1), so that adding two of them in SQL
+     * does not overflow.
+     */
+    private static final long MODULUS = 2305843009213693951L;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    // outside of the char range.
+    private static final int NULL_MARK = 0x10000;
+    private static final int SEPARATOR = 0x10001;
+
+    /**
+     * @return true if the table is one of the sources of the caches.
+     */
+    public static boolean isSource(String table) {
+        for (String source : SOURCES) {
+            if (source.equalsIgnoreCase(table)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the table is a local cache, derived from the data.
+     */
+    public static boolean isCache(String table) {
+        return table.toUpperCase(Locale.US).startsWith("MMX_");
+    }
+
+    public CacheState(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    private SQLiteDatabase db;
+    /**
+     * Fingerprints of the sources calculated by this instance, as count and checksum.
+     */
+    private final Map<String, long[]> mFingerprints = new HashMap<>();
+
+    public void create() {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
+            CACHE + " TEXT NOT NULL" +
+            ", " + SOURCE + " TEXT NOT NULL" +
+            ", " + ROWCOUNT + " integer NOT NULL" +
+            ", " + CHECKSUM + " integer NOT NULL" +
+            ", PRIMARY KEY (" + CACHE + ", " + SOURCE + "))");
+    }
+
+    /**
+     * Compares the state recorded for the cache with the current contents of its sources.
+     * The fingerprint of each source is calculated once per instance, so that several caches
+     * can be checked with one read of the data.
+     */
+    public boolean isInSync(String cache, String... sources) {
+        for (String source : sources) {
+            long[] recorded = getRecorded(cache, source);
+            if (recorded == null) return false;
+
+            long[] current = mFingerprints.get(source);
+            if (current == null) {
+                current = calculate(source, null, null);
+                mFingerprints.put(source, current);
+            }
+            if (current[0] != recorded[0] || current[1] != recorded[1]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records the current contents of the sources as the ones the cache was built from.
+     * To be called in the transaction that rebuilds the cache.
+     */
+    public void record(String cache, String... sources) {
+        for (String source : sources) {
+            long[] current = calculate(source, null, null);
+            mFingerprints.put(source, current);
+
+            db.execSQL("INSERT OR REPLACE INTO " + TABLE_NAME + " (" + CACHE + ", " + SOURCE + ", " +
+                    ROWCOUNT + ", " + CHECKSUM + ") VALUES (?, ?, ?, ?)",
+                new Object[] { cache, source, current[0], current[1] });
+        }
+    }
+
+    // Incremental maintenance. Run these within the same database transaction as the write.
+
+    /**
+     * Removes the rows matching the selection from the state of all the caches. To be called
+     * before the rows are updated or deleted.
+     * @return ids of the affected rows, to be passed to rowsChanged after the write.
+     */
+    public long[] beforeRowsChange(String source, String selection, String[] selectionArgs) {
+        Cursor c = db.rawQuery("SELECT rowid, * FROM " + source +
+            (TextUtils.isEmpty(selection) ? "" : " WHERE " + selection), selectionArgs);
+        long[] ids = new long[c.getCount()];
+        long checksum = 0;
+        for (int i = 0; c.moveToNext(); i++) {
+            ids[i] = c.getLong(0);
+            checksum = (checksum + hashRow(c)) % MODULUS;
+        }
+        c.close();
+
+        if (ids.length > 0) {
+            apply(source, -ids.length, MODULUS - checksum);
+        }
+        return ids;
+    }
+
+    /**
+     * Adds the current contents of the given inserted or updated rows to the state of all the
+     * caches. Rows deleted in the meantime are skipped.
+     */
+    public void rowsChanged(String source, long[] ids) {
+        if (ids.length == 0) return;
+
+        long[] fingerprint = calculate(source, getRowIdSelection(ids), null);
+        if (fingerprint[0] > 0) {
+            apply(source, fingerprint[0], fingerprint[1]);
+        }
+    }
+
+    // Private
+
+    private long[] getRecorded(String cache, String source) {
+        Cursor c = db.rawQuery("SELECT " + ROWCOUNT + ", " + CHECKSUM + " FROM " + TABLE_NAME +
+            " WHERE " + CACHE + "=? AND " + SOURCE + "=?", new String[] { cache, source });
+        long[] result = c.moveToFirst() ? new long[] { c.getLong(0), c.getLong(1) } : null;
+        c.close();
+        return result;
+    }
+
+    /**
+     * @return number of rows and checksum of the rows matching the selection.
+     */
+    private long[] calculate(String source, String selection, String[] selectionArgs) {
+        Cursor c = db.rawQuery("SELECT rowid, * FROM " + source +
+            (TextUtils.isEmpty(selection) ? "" : " WHERE " + selection), selectionArgs);
+        long count = 0;
+        long checksum = 0;
+        while (c.moveToNext()) {
+            count++;
+            checksum = (checksum + hashRow(c)) % MODULUS;
+        }
+        c.close();
+
+        return new long[] { count, checksum };
+    }
+
+    private void apply(String source, long count, long checksum) {
+        // the source names are stored as passed to record(), compare ignoring the case.
+        db.execSQL("UPDATE " + TABLE_NAME + " SET " + ROWCOUNT + " = " + ROWCOUNT + " + ?, " +
+                CHECKSUM + " = (" + CHECKSUM + " + ?) % " + MODULUS + " " +
+                "WHERE " + SOURCE + " = ? COLLATE NOCASE",
+            new Object[] { count, checksum, source });
+    }
+
+    /**
+     * FNV-1a hash of all the column values of the current row, except the leading rowid.
+     */
+    private long hashRow(Cursor c) {
+        long hash = FNV_OFFSET;
+        for (int i = 1; i < c.getColumnCount(); i++) {
+            String value = c.getString(i);
+            if (value == null) {
+                hash = (hash ^ NULL_MARK) * FNV_PRIME;
+            } else {
+                for (int j = 0; j < value.length(); j++) {
+                    hash = (hash ^ value.charAt(j)) * FNV_PRIME;
+                }
+            }
+            hash = (hash ^ SEPARATOR) * FNV_PRIME;
+        }
+        return (hash >>> 3) % MODULUS;
+    }
+
+    private String getRowIdSelection(long[] ids) {
+        StringBuilder builder = new StringBuilder("rowid IN (");
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) builder.append(',');
+            builder.append(ids[i]);
+        }
+        builder.append(')');
+        return builder.toString();
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.database;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import timber.log.Timber;
+
+/**
+ * Reports the changed database tables, for both the content provider and the direct (Brite)
+ * database writes. The writers report once per operation or transaction.
+ * Caches subscribe to be notified immediately. Expensive listeners, like the sync scheduler,
+ * subscribe to the debounced notifications, which collect the tables changed until there are
+ * no writes for DEBOUNCE_MILLIS and are delivered on the main thread.
+ * Table names are lower case.
+ * The content provider also reports how its writes to the transactions and the splits changed
+ * the usage of the payees and categories, to the usage listeners. The usage is null for the
+ * other writers.
+ */
+@Singleton
+public class DataChangeBus {
+
+    public interface Listener {
+        void onTablesChanged(Set<String> tables);
+    }
+
+    public interface UsageListener {
+        /**
+         * @param usage change of the payee and category usage, or null if not reported.
+         */
+        void onTablesChanged(Set<String> tables, NameUsageChange usage);
+    }
+
+    public static final long DEBOUNCE_MILLIS = 1000;
+
+    @Inject
+    public DataChangeBus() {
+        mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    private final Handler mHandler;
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<Listener> mDebouncedListeners = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<UsageListener> mUsageListeners = new CopyOnWriteArrayList<>();
+    private final Set<String> mPending = new LinkedHashSet<>();
+    private final Map<String, Integer> mWriteCounts = new HashMap<>();
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    public void subscribe(Listener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void subscribeDebounced(Listener listener) {
+        mDebouncedListeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Notified immediately, like the listeners subscribed with subscribe().
+     */
+    public void subscribeUsage(UsageListener listener) {
+        mUsageListeners.addIfAbsent(listener);
+    }
+
+    public void unsubscribe(Listener listener) {
+        mListeners.remove(listener);
+        mDebouncedListeners.remove(listener);
+    }
+
+    public void unsubscribe(UsageListener listener) {
+        mUsageListeners.remove(listener);
+    }
+
+    public void tableChanged(String table) {
+        tablesChanged(Collections.singleton(table));
+    }
+
+    public void tablesChanged(Collection<String> tables) {
+        tablesChanged(tables, null);
+    }
+
+    /**
+     * @param usage change of the payee and category usage, if the writer computed it.
+     */
+    public void tablesChanged(Collection<String> tables, NameUsageChange usage) {
+        if (tables.isEmpty()) return;
+
+        Set<String> changed = new LinkedHashSet<>();
+        for (String table : tables) {
+            changed.add(table.toLowerCase(Locale.US));
+        }
+
+        synchronized (this) {
+            for (String table : changed) {
+                Integer count = mWriteCounts.get(table);
+                mWriteCounts.put(table, count == null ? 1 : count + 1);
+            }
+            mPending.addAll(changed);
+        }
+
+        for (Listener listener : mListeners) {
+            listener.onTablesChanged(changed);
+        }
+        for (UsageListener listener : mUsageListeners) {
+            listener.onTablesChanged(changed, usage);
+        }
+
+        if (!mDebouncedListeners.isEmpty()) {
+            mHandler.removeCallbacks(mFlush);
+            mHandler.postDelayed(mFlush, DEBOUNCE_MILLIS);
+        }
+    }
+
+    /**
+     * @return number of reported writes (operations or transactions) per table, for diagnostics.
+     */
+    public synchronized Map<String, Integer> getWriteCounts() {
+        return new HashMap<>(mWriteCounts);
+    }
+
+    private void flush() {
+        Set<String> tables;
+        synchronized (this) {
+            if (mPending.isEmpty()) return;
+
+            tables = new LinkedHashSet<>(mPending);
+            mPending.clear();
+        }
+
+        Timber.d("tables changed: %s", tables);
+
+        for (Listener listener : mDebouncedListeners) {
+            listener.onTablesChanged(tables);
+        }
+    }
+}
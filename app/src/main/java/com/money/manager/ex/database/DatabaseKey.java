@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.database;
+
+import android.text.TextUtils;
+
+import com.money.manager.ex.MoneyManagerApplication;
+
+/**
+ * Identifies the database that an in-memory cache was loaded from: the path of the file and
+ * the generation of the database, which the application increments whenever it opens a
+ * database or closes one so that its file can be replaced, i.e. by a sync download.
+ * A snapshot loaded from another file, or from the same path before the file was replaced,
+ * does not match the current key and is loaded again.
+ */
+public class DatabaseKey {
+
+    /**
+     * @return the key of the database currently in use.
+     */
+    public static DatabaseKey current(MoneyManagerApplication app) {
+        String path = app.openHelperAtomicReference == null
+            ? null
+            : app.openHelperAtomicReference.get().getDatabaseName();
+        return new DatabaseKey(path, app.getDatabaseGeneration());
+    }
+
+    public DatabaseKey(String path, int generation) {
+        this.path = path;
+        this.generation = generation;
+    }
+
+    private final String path;
+    private final int generation;
+
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DatabaseKey)) return false;
+
+        DatabaseKey other = (DatabaseKey) o;
+        return generation == other.generation && TextUtils.equals(path, other.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (path == null ? 0 : path.hashCode()) + generation;
+    }
+}
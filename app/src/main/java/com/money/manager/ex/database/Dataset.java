@@ -107,6 +107,15 @@ public abstract class Dataset
 //		this.basepath = basepath;
 //	}
 
+	/**
+	 * Selection typical of the reads of the dataset, with literal values. Used to check the
+	 * query plan of the dataset as it is actually queried.
+	 * @return null if the dataset has no typical selection. Its plan is then not checked.
+	 */
+	public String getTypicalSelection() {
+		return null;
+	}
+
 	/**
 	 *
 	 * @param source table/view/query
@@ -24,8 +24,13 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.net.Uri;
+import android.os.Build;
+import android.text.TextUtils;
 
 import com.money.manager.ex.Constants;
+import com.money.manager.ex.MmxContentProvider;
+import com.money.manager.ex.MoneyManagerApplication;
 import com.money.manager.ex.R;
 import com.money.manager.ex.core.InfoKeys;
 import com.money.manager.ex.core.UIHelper;
@@ -46,8 +51,14 @@ import org.apache.commons.io.FilenameUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.Callable;
 
+import rx.Observable;
+import rx.functions.Action1;
+import rx.schedulers.Schedulers;
 import timber.log.Timber;
 
 /**
@@ -59,7 +70,7 @@ public class MmxOpenHelper
     /**
      * Database schema version.
      */
-    private static final int databaseVersion = 7;
+    private static final int databaseVersion = 8;
 
     // Dynamic
 
@@ -71,6 +82,11 @@ public class MmxOpenHelper
         super(context, dbPath, null, databaseVersion);
         this.mContext = context;
 
+        // Write-ahead logging lets the readers work on their own connections while a write
+        // is in progress.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
     }
 
     private Context mContext;
@@ -80,12 +96,6 @@ public class MmxOpenHelper
         return this.mContext;
     }
 
-//    @Override
-//    public void onConfigure(SQLiteDatabase db) {
-//        super.onConfigure(db);
-//        db.rawQuery("PRAGMA journal_mode=OFF", null).close();
-//    }
-
     /**
      * Called when the database is being created.
      * @param db Database instance.
@@ -107,6 +117,47 @@ public class MmxOpenHelper
         super.onOpen(db);
 
 //        int version = db.getVersion();
+
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN && !db.isReadOnly()) {
+            db.enableWriteAheadLogging();
+        }
+
+        // The file may have been modified outside of the app, i.e. on the desktop.
+        if (!db.isReadOnly()) {
+            try {
+                new CacheState(db).create();
+                new BalanceCheckpoints(db).create();
+                new AccountBalanceLedger(db).create();
+                new MonthlyTotals(db).create();
+                new TransactionSearchIndex(db).create();
+            } catch (Exception e) {
+                Timber.e(e, "creating the local caches");
+            }
+            try {
+                TransactionDates dates = new TransactionDates(db);
+                dates.create();
+                // the lists and reports join the dates, so they are complete before any query.
+                // One INSERT ... SELECT, when the table is new or the transactions were edited.
+                dates.ensure(new CacheState(db));
+            } catch (Exception e) {
+                Timber.e(e, "initializing transaction dates");
+            }
+            try {
+                // a search on the new, empty index would find nothing until the background check.
+                new TransactionSearchIndex(db).ensureNotEmpty();
+            } catch (Exception e) {
+                Timber.e(e, "initializing the search index");
+            }
+
+            refreshCachesInBackground(db);
+        } else {
+            // the queries join the transaction dates.
+            try {
+                new TransactionDates(db).createView();
+            } catch (Exception e) {
+                Timber.e(e, "creating transaction dates view");
+            }
+        }
     }
 
     @Override
@@ -192,6 +243,37 @@ public class MmxOpenHelper
 //        return null;
 //    }
 
+    /**
+     * Copies the changes from the write-ahead log into the database file, so that the file
+     * can be copied or uploaded on its own.
+     * @return true if all the changes are in the database file.
+     */
+    public boolean checkpoint() {
+        SQLiteDatabase db = getWritableDatabase();
+        if (db == null) return false;
+
+        Cursor c = db.rawQuery("PRAGMA wal_checkpoint(FULL)", null);
+        try {
+            // busy, log frames, checkpointed frames
+            if (c.moveToFirst() && c.getInt(0) != 0) {
+                Timber.w("checkpoint not complete, %d of %d frames", c.getInt(2), c.getInt(1));
+                return false;
+            }
+        } finally {
+            c.close();
+        }
+        return true;
+    }
+
+    /**
+     * @return true if this helper opens the database file at the given path.
+     */
+    public boolean isDatabase(String path) {
+        if (TextUtils.isEmpty(path) || getDatabaseName() == null) return false;
+
+        return new File(path).getAbsolutePath().equals(new File(getDatabaseName()).getAbsolutePath());
+    }
+
     public void setPassword(String password) {
         this.mPassword = password;
     }
@@ -261,6 +343,59 @@ public class MmxOpenHelper
         return sqliteVersion;
     }
 
+    /**
+     * Rebuilds the local caches that do not match the data any more, i.e. after the file was
+     * edited on the desktop or replaced by a sync download. Runs in the background, as it reads
+     * all the transactions. The views are refreshed if anything was rebuilt.
+     */
+    private void refreshCachesInBackground(final SQLiteDatabase db) {
+        Observable.fromCallable(new Callable<List<String>>() {
+            @Override
+            public List<String> call() throws Exception {
+                CacheState state = new CacheState(db);
+                List<String> rebuilt = new ArrayList<>();
+
+                // uses the transaction dates, brought up to date on open.
+                if (new MonthlyTotals(db).ensure(state)) {
+                    rebuilt.add(MonthlyTotals.TABLE_NAME);
+                }
+                if (new TransactionSearchIndex(db).ensure(state)) {
+                    rebuilt.add(TransactionSearchIndex.TABLE_NAME);
+                }
+                if (new AccountBalanceLedger(db).ensure(state)) {
+                    rebuilt.add(AccountBalanceLedger.TABLE_NAME);
+                }
+                // the checkpoints for the months since the last open.
+                new BalanceCheckpoints(db).update();
+
+                return rebuilt;
+            }
+        })
+            .subscribeOn(Schedulers.io())
+            .subscribe(new Action1<List<String>>() {
+                @Override
+                public void call(List<String> rebuilt) {
+                    if (!rebuilt.isEmpty()) {
+                        cachesRebuilt(rebuilt);
+                    }
+                }
+            }, new Action1<Throwable>() {
+                @Override
+                public void call(Throwable throwable) {
+                    Timber.e(throwable, "refreshing the local caches");
+                }
+            });
+    }
+
+    private void cachesRebuilt(List<String> tables) {
+        // the open lists and the caches of the derived values.
+        String authority = MmxContentProvider.getAuthority();
+        if (authority != null) {
+            getContext().getContentResolver().notifyChange(Uri.parse("content://" + authority + "/"), null);
+        }
+        MoneyManagerApplication.getApp().iocComponent.dataChangeBus().tablesChanged(tables);
+    }
+
     private void updateDatabase(SQLiteDatabase db, int oldVersion, int newVersion) {
         // Execute every script between the old and the new version of the database schema.
         for (int i = oldVersion + 1; i <= newVersion; i++) {
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+import com.money.manager.ex.currency.ExchangeRates;
+import com.money.manager.ex.utils.MmxDatabaseUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import timber.log.Timber;
+
+/**
+ * Monthly totals of the transactions per account, category, subcategory, payee and
+ * transaction type, maintained incrementally on every write to the transactions and splits
+ * tables. The reports aggregate these rows instead of the whole mobile data view.
+ * The totals are in the account currency, signed and rounded as in query_mobiledata. They are
+ * converted to the base currency when read (see BASE_AMOUNT), so changes of the exchange rates
+ * need no maintenance. Void transactions are not included.
+ * Note that BASE_AMOUNT uses the rate at the end of the month, while the mobile data view and
+ * the dashboard convert each transaction at the rate on its date. The reports built on these
+ * totals (income vs. expenses, budgets) state this in their UI (R.string.report_rate_note).
+ * Like the balance ledger, the table is a local cache. It is checked against the CacheState of
+ * the transactions and splits in the background after open, and rebuilt if they were modified
+ * outside of the app.
+ */
+public class MonthlyTotals {
+
+    public static final String TABLE_NAME = "MMX_MONTHLYTOTALS";
+
+    public static final String YEAR = "YEAR";
+    public static final String MONTH = "MONTH";
+    public static final String FINYEAR = "FINYEAR";
+    public static final String ACCOUNTID = "ACCOUNTID";
+    public static final String CATEGID = "CATEGID";
+    public static final String SUBCATEGID = "SUBCATEGID";
+    public static final String PAYEEID = "PAYEEID";
+    public static final String TRANSCODE = "TRANSCODE";
+    public static final String TOTAL = "TOTAL";
+    public static final String NUM = "NUM";
+
+    /**
+     * The totals table (alias m) with the exchange rates of the account currencies (alias cf).
+     */
+    public static final String FROM_WITH_RATES = TABLE_NAME + " m " +
+        "LEFT JOIN ACCOUNTLIST_V1 a ON a.ACCOUNTID = m." + ACCOUNTID + " " +
+        "LEFT JOIN CURRENCYFORMATS_V1 cf ON cf.CURRENCYID = a.CURRENCYID";
+    /**
+     * Last day of the month of the totals row.
+     */
+    public static final String MONTH_END = "date(m." + YEAR + " || '-' || substr('0' || m." + MONTH +
+        ", -2) || '-01', '+1 month', '-1 day')";
+    /**
+     * Total in the base currency, at the rate at the end of the month. Use with FROM_WITH_RATES.
+     */
+    public static final String BASE_AMOUNT = "m." + TOTAL + " * " +
+        ExchangeRates.getRateSql("a.CURRENCYID", MONTH_END, "cf.BASECONVRATE");
+
+    private static final String TRANSACTIONS = CacheState.TRANSACTIONS;
+    private static final String SPLITS = CacheState.SPLITS;
+    private static final String[] KEYS = new String[] {
+        YEAR, MONTH, FINYEAR, ACCOUNTID, CATEGID, SUBCATEGID, PAYEEID, TRANSCODE };
+
+    private static final double TOLERANCE = 0.00001;
+
+    public MonthlyTotals(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    private SQLiteDatabase db;
+
+    public void create() {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
+            YEAR + " integer NOT NULL" +
+            ", " + MONTH + " integer NOT NULL" +
+            ", " + FINYEAR + " integer NOT NULL" +
+            ", " + ACCOUNTID + " integer NOT NULL" +
+            ", " + CATEGID + " integer NOT NULL" +
+            ", " + SUBCATEGID + " integer NOT NULL" +
+            ", " + PAYEEID + " integer NOT NULL" +
+            ", " + TRANSCODE + " TEXT NOT NULL" +
+            ", " + TOTAL + " numeric NOT NULL DEFAULT 0" +
+            ", " + NUM + " integer NOT NULL DEFAULT 0" +
+            ", PRIMARY KEY (" + TextUtils.join(", ", KEYS) + "))");
+    }
+
+    /**
+     * Rebuilds the totals if the transactions or the splits were modified outside of the app.
+     * Uses the transaction dates, so check those first.
+     * @return true if the totals were rebuilt.
+     */
+    public boolean ensure(CacheState state) {
+        if (state.isInSync(TABLE_NAME, TRANSACTIONS, SPLITS)) return false;
+
+        Timber.d("monthly totals out of date, rebuilding");
+        rebuild();
+        return true;
+    }
+
+    /**
+     * Recalculates all the totals. Also to be called when the financial year changes.
+     */
+    public void rebuild() {
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM " + TABLE_NAME);
+            db.execSQL("INSERT INTO " + TABLE_NAME + " (" + TextUtils.join(", ", KEYS) + ", " +
+                TOTAL + ", " + NUM + ") " + getAggregateSql(null));
+            new CacheState(db).record(TABLE_NAME, TRANSACTIONS, SPLITS);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Compares the stored totals with the ones aggregated from the transactions.
+     * @return number of differing rows. 0 if the totals are correct.
+     */
+    public int verify() {
+        Map<String, double[]> expected = new HashMap<>();
+
+        Cursor c = db.rawQuery(getAggregateSql(null), null);
+        while (c.moveToNext()) {
+            expected.put(getKey(c), new double[] { c.getDouble(KEYS.length), c.getLong(KEYS.length + 1) });
+        }
+        c.close();
+
+        int differences = 0;
+
+        c = db.rawQuery("SELECT " + TextUtils.join(", ", KEYS) + ", " + TOTAL + ", " + NUM +
+            " FROM " + TABLE_NAME, null);
+        while (c.moveToNext()) {
+            double[] values = expected.remove(getKey(c));
+            if (values == null) values = new double[2];
+
+            if (differs(values[0], c.getDouble(KEYS.length)) || values[1] != c.getLong(KEYS.length + 1)) {
+                differences++;
+            }
+        }
+        c.close();
+
+        // Anything left is missing from the table.
+        return differences + expected.size();
+    }
+
+    /**
+     * Verifies the totals and rebuilds them if needed.
+     * @return true if the totals were correct, false if they had to be rebuilt.
+     */
+    public boolean verifyAndRebuild() {
+        int differences = verify();
+        if (differences == 0) return true;
+
+        Timber.w("monthly totals out of sync, %d rows differ", differences);
+        rebuild();
+        return false;
+    }
+
+    // Incremental maintenance. Run these within the same database transaction as the write.
+
+    /**
+     * Removes the totals of the given transactions. To be called before the transactions or
+     * their splits are updated or deleted, and before a split is inserted.
+     */
+    public void beforeTransactionsChange(long[] ids) {
+        if (ids.length == 0) return;
+
+        applyTransactions(ids, -1);
+        db.execSQL("DELETE FROM " + TABLE_NAME + " WHERE " + NUM + " <= 0");
+    }
+
+    /**
+     * Adds the totals of the given inserted or updated transactions, or of those whose splits
+     * changed.
+     */
+    public void transactionsChanged(long[] ids) {
+        if (ids.length == 0) return;
+
+        applyTransactions(ids, 1);
+    }
+
+    /**
+     * @return ids of the transactions that own the splits matching the selection.
+     */
+    public long[] getSplitTransactions(String selection, String[] selectionArgs) {
+        Cursor c = db.rawQuery("SELECT DISTINCT TRANSID FROM " + SPLITS +
+            (TextUtils.isEmpty(selection) ? "" : " WHERE " + selection), selectionArgs);
+        long[] ids = new long[c.getCount()];
+        for (int i = 0; c.moveToNext(); i++) {
+            ids[i] = c.getLong(0);
+        }
+        c.close();
+        return ids;
+    }
+
+    // Private
+
+    private void applyTransactions(long[] ids, int sign) {
+        Cursor c = db.rawQuery(getAggregateSql("TX." + AccountBalanceLedger.getIdSelection(ids)), null);
+
+        String keyColumns = TextUtils.join(", ", KEYS);
+        String keyPlaceholders = MmxDatabaseUtils.makePlaceholders(KEYS.length);
+        String keySelection = TextUtils.join("=? AND ", KEYS) + "=?";
+
+        while (c.moveToNext()) {
+            Object[] key = new Object[KEYS.length];
+            for (int i = 0; i < KEYS.length; i++) {
+                key[i] = c.getString(i);
+            }
+            double total = c.getDouble(KEYS.length) * sign;
+            long count = c.getLong(KEYS.length + 1) * sign;
+
+            db.execSQL("INSERT OR IGNORE INTO " + TABLE_NAME + " (" + keyColumns + ") VALUES (" +
+                keyPlaceholders + ")", key);
+
+            Object[] args = new Object[KEYS.length + 2];
+            args[0] = total;
+            args[1] = count;
+            System.arraycopy(key, 0, args, 2, KEYS.length);
+            db.execSQL("UPDATE " + TABLE_NAME + " SET " + TOTAL + " = " + TOTAL + " + ?, " +
+                NUM + " = " + NUM + " + ? WHERE " + keySelection, args);
+        }
+        c.close();
+    }
+
+    /**
+     * Split transactions contribute one row per split, as in query_mobiledata.
+     * The date parts come from the transaction dates table, which is updated before this one.
+     * @return query with the KEYS columns, followed by TOTAL and NUM.
+     */
+    private String getAggregateSql(String selection) {
+        String year = "CAST(strftime('%Y', TX.TRANSDATE) AS integer)";
+        String split = "TX.CATEGID = -1";
+
+        return "SELECT " + year + ", " +
+                "CAST(strftime('%m', TX.TRANSDATE) AS integer), " +
+                "ifnull(d." + TransactionDates.FINYEAR + ", " + year + "), " +
+                "TX.ACCOUNTID, " +
+                "ifnull(CASE WHEN " + split + " THEN st.CATEGID ELSE TX.CATEGID END, -1), " +
+                "ifnull(CASE WHEN " + split + " THEN st.SUBCATEGID ELSE TX.SUBCATEGID END, -1), " +
+                "ifnull(TX.PAYEEID, -1), " +
+                "ifnull(TX.TRANSCODE, ''), " +
+                "TOTAL(ROUND((CASE TX.TRANSCODE WHEN 'Withdrawal' THEN -1 ELSE 1 END) * " +
+                    "(CASE WHEN " + split + " THEN st.SPLITTRANSAMOUNT ELSE TX.TRANSAMOUNT END), 2)), " +
+                "COUNT(*) " +
+            "FROM " + TRANSACTIONS + " TX " +
+                "LEFT JOIN " + SPLITS + " st ON st.TRANSID = TX.TRANSID AND " + split + " " +
+                "LEFT JOIN " + TransactionDates.TABLE_NAME + " d ON d." + TransactionDates.TRANSID + " = TX.TRANSID " +
+            "WHERE TX.STATUS <> 'V'" +
+                (TextUtils.isEmpty(selection) ? "" : " AND (" + selection + ")") +
+            " GROUP BY 1, 2, 3, 4, 5, 6, 7, 8";
+    }
+
+    private String getKey(Cursor c) {
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < KEYS.length; i++) {
+            key.append(c.getString(i)).append('|');
+        }
+        return key.toString();
+    }
+
+    private boolean differs(double expected, double actual) {
+        return Math.abs(expected - actual) > TOLERANCE;
+    }
+}
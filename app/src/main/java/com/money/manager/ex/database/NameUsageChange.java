@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.SparseIntArray;
+
+/**
+ * Change of the number of transactions using each payee, category and subcategory, caused by
+ * writes to the transactions and the splits. Collected by the content provider and reported
+ * with the changed tables, so that the name index adjusts the counts instead of reading them
+ * all again.
+ * The rows are counted as in the name index: the payee of every transaction, the category of
+ * the transactions that are not split, and the category of every split.
+ */
+public class NameUsageChange {
+
+    private static final String TRANSACTIONS = CacheState.TRANSACTIONS;
+    private static final String SPLITS = CacheState.SPLITS;
+
+    public static boolean isUsageTable(String table) {
+        return TRANSACTIONS.equalsIgnoreCase(table) || SPLITS.equalsIgnoreCase(table);
+    }
+
+    private final SparseIntArray mPayees = new SparseIntArray();
+    private final SparseIntArray mCategories = new SparseIntArray();
+    private final SparseIntArray mSubcategories = new SparseIntArray();
+
+    /**
+     * Removes the usage of the rows about to be updated or deleted.
+     */
+    public void beforeRowsChange(SQLiteDatabase db, String table, String selection, String[] selectionArgs) {
+        count(db, table, selection, selectionArgs, -1);
+    }
+
+    /**
+     * Adds the usage of the inserted or updated rows.
+     * @param ids rowids of the rows, i.e. the TRANSID or the SPLITTRANSID.
+     */
+    public void rowsChanged(SQLiteDatabase db, String table, long[] ids) {
+        if (ids == null || ids.length == 0) return;
+
+        count(db, table, getRowIdSelection(ids), null, 1);
+    }
+
+    /**
+     * Adds the changes of another write, i.e. of the same batch.
+     */
+    public void add(NameUsageChange other) {
+        add(mPayees, other.mPayees);
+        add(mCategories, other.mCategories);
+        add(mSubcategories, other.mSubcategories);
+    }
+
+    public SparseIntArray getPayees() {
+        return mPayees;
+    }
+
+    public SparseIntArray getCategories() {
+        return mCategories;
+    }
+
+    public SparseIntArray getSubcategories() {
+        return mSubcategories;
+    }
+
+    // Private
+
+    private void count(SQLiteDatabase db, String table, String selection, String[] selectionArgs, int sign) {
+        boolean transactions = TRANSACTIONS.equalsIgnoreCase(table);
+        String sql = transactions
+            ? "SELECT CATEGID, SUBCATEGID, PAYEEID FROM " + TRANSACTIONS
+            : "SELECT CATEGID, SUBCATEGID FROM " + SPLITS;
+        if (selection != null && selection.length() > 0) {
+            sql += " WHERE " + selection;
+        }
+
+        Cursor c = db.rawQuery(sql, selectionArgs);
+        try {
+            while (c.moveToNext()) {
+                if (transactions) {
+                    increment(mPayees, c.getInt(2), sign);
+                    // the categories of a split transaction are those of its splits.
+                    if (c.isNull(0) || c.getInt(0) == -1) continue;
+                }
+                increment(mCategories, c.getInt(0), sign);
+                if (!c.isNull(1)) {
+                    increment(mSubcategories, c.getInt(1), sign);
+                }
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    private void increment(SparseIntArray counts, int id, int delta) {
+        counts.put(id, counts.get(id) + delta);
+    }
+
+    private void add(SparseIntArray counts, SparseIntArray other) {
+        for (int i = 0; i < other.size(); i++) {
+            increment(counts, other.keyAt(i), other.valueAt(i));
+        }
+    }
+
+    private String getRowIdSelection(long[] ids) {
+        StringBuilder builder = new StringBuilder("rowid IN (");
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) builder.append(',');
+            builder.append(ids[i]);
+        }
+        builder.append(')');
+        return builder.toString();
+    }
+}
@@ -121,6 +121,14 @@ public class QueryAccountBills
                 RECONCILEDBASECONVRATE};
     }
 
+    /**
+     * A single account, as read by the account screens and the widget.
+     */
+    @Override
+    public String getTypicalSelection() {
+        return ACCOUNTID + " = 1";
+    }
+
     /**
      * @return the currencyId
      */
@@ -73,4 +73,13 @@ public class QueryAllData
                 ToAccountName, TOACCOUNTID, ToAmount, ToCurrencyId,
                 currency, finyear};
     }
+
+    /**
+     * The transactions of an account in a period, as read by the account list.
+     */
+    @Override
+    public String getTypicalSelection() {
+        return "(" + TOACCOUNTID + " = 1 OR " + ACCOUNTID + " = 1) AND " +
+            Date + " >= '2017-01-01' AND " + Date + " <= '2017-12-31'";
+    }
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import timber.log.Timber;
+
+/**
+ * Development aid. Runs EXPLAIN QUERY PLAN on the queries and views of the data sets, with
+ * their typical selection, and reports the full table scans, which indicate a missing index.
+ * The data sets without a typical selection are not checked: explained without a predicate,
+ * every one of them would report a scan of its base table.
+ * Plain tables are not checked as they are always read through their selection.
+ */
+public class QueryPlanAdvisor {
+
+    public QueryPlanAdvisor(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    private SQLiteDatabase db;
+
+    /**
+     * Logs the full table scans in the data sets.
+     * @return the number of reported scans.
+     */
+    public int report(List<Dataset> datasets) {
+        int scans = 0;
+
+        for (Dataset dataset : datasets) {
+            String sql = getSql(dataset);
+            if (sql == null) continue;
+
+            try {
+                for (String scan : findTableScans(sql)) {
+                    Timber.w("full table scan in %s: %s", dataset.getBasepath(), scan);
+                    scans++;
+                }
+            } catch (Exception e) {
+                Timber.e(e, "explaining the query plan for %s", dataset.getBasepath());
+            }
+        }
+
+        Timber.i("query plan check complete, %d full table scans", scans);
+        return scans;
+    }
+
+    /**
+     * @return the plan steps that scan whole tables.
+     */
+    public List<String> findTableScans(String sql) {
+        List<String> scans = new ArrayList<>();
+
+        for (String detail : explain(sql, null)) {
+            if (isTableScan(detail)) {
+                scans.add(detail);
+            }
+        }
+        return scans;
+    }
+
+    /**
+     * @return the steps of the query plan.
+     */
+    public List<String> explain(String sql, String[] args) {
+        List<String> steps = new ArrayList<>();
+
+        Cursor c = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            int detailColumn = c.getColumnIndex("detail");
+            while (c.moveToNext()) {
+                steps.add(c.getString(detailColumn));
+            }
+        } finally {
+            c.close();
+        }
+        return steps;
+    }
+
+    // Private
+
+    /**
+     * @return the statement as the content provider runs it for the typical selection, or null
+     * if the data set is not checked.
+     */
+    private String getSql(Dataset dataset) {
+        String selection = dataset.getTypicalSelection();
+        if (TextUtils.isEmpty(dataset.getSource()) || TextUtils.isEmpty(selection)) return null;
+
+        switch (dataset.getType()) {
+            case QUERY:
+                // the raw queries may end with a statement separator.
+                String sql = dataset.getSource().trim();
+                if (sql.endsWith(";")) {
+                    sql = sql.substring(0, sql.length() - 1);
+                }
+                return "SELECT * FROM (" + sql + ") T WHERE " + selection;
+            case VIEW:
+                return SQLiteQueryBuilder.buildQueryString(false, dataset.getSource(), null,
+                    selection, null, null, null, null);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Scans of subqueries and scans through an index are not table scans.
+     * The detail is "SCAN TABLE name ..." in older SQLite versions and "SCAN name ..." in newer.
+     */
+    private boolean isTableScan(String detail) {
+        if (detail == null) return false;
+
+        String upper = detail.toUpperCase();
+        return upper.startsWith("SCAN ")
+            && !upper.contains(" INDEX")
+            && !upper.contains("SUBQUERY")
+            && !upper.contains("CONSTANT ROW");
+    }
+}
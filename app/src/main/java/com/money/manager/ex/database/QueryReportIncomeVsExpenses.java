@@ -17,9 +17,7 @@
 package com.money.manager.ex.database;
 
 import android.content.Context;
-import android.text.TextUtils;
 
-import com.money.manager.ex.Constants;
 import com.money.manager.ex.R;
 import com.money.manager.ex.utils.MmxFileUtils;
 import com.money.manager.ex.viewmodels.IncomeVsExpenseReportEntity;
@@ -30,7 +28,7 @@ public class QueryReportIncomeVsExpenses
     public QueryReportIncomeVsExpenses(Context context) {
         super("", DatasetType.QUERY, "report_income_vs_expenses");
 
-        initialize(context, null);
+        initialize(context);
     }
 
     @Override
@@ -43,18 +41,10 @@ public class QueryReportIncomeVsExpenses
             IncomeVsExpenseReportEntity.Transfers};
     }
 
-    private void initialize(Context context, String whereStatement) {
-        ViewMobileData mobileData = new ViewMobileData(context);
-        // add where statement
-        if(!TextUtils.isEmpty(whereStatement)) {
-            mobileData.setWhere(whereStatement);
-        }
-        String mobileDataQuery = mobileData.getSource();
-
-        // assemble the source statement by combining queries.
-        String source = MmxFileUtils.getRawAsString(context, R.raw.report_income_vs_expenses);
-        source = source.replace(Constants.MOBILE_DATA_PATTERN, mobileDataQuery);
-
-        this.setSource(source);
+    /**
+     * The report reads the maintained monthly totals instead of the mobile data view.
+     */
+    private void initialize(Context context) {
+        this.setSource(MmxFileUtils.getRawAsString(context, R.raw.report_income_vs_expenses));
     }
 }
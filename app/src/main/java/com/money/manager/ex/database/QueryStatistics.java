@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.database;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Timing of the database operations, per data set and operation (query, insert, update, delete).
+ * The durations are kept in histograms with power-of-two buckets, from which the percentiles
+ * are estimated. The plans of the slow queries are sampled.
+ * Recording is off until it is started from the database settings, as timing a query reads
+ * its whole result up front. When it is off, the operations only check the enabled flag.
+ */
+@Singleton
+public class QueryStatistics {
+
+    /**
+     * Queries that take longer are sampled with their query plan.
+     */
+    public static final long SLOW_QUERY_MILLIS = 100;
+    private static final int MAX_SLOW_QUERIES = 20;
+
+    @Inject
+    public QueryStatistics() {
+    }
+
+    private volatile boolean mEnabled;
+    private final Map<String, Histogram> mHistograms = new TreeMap<>();
+    private final LinkedList<SlowQuery> mSlowQueries = new LinkedList<>();
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    /**
+     * @return the start time of an operation, or 0 if the recording is off.
+     */
+    public long start() {
+        return mEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * @return the duration since the start, in nanoseconds.
+     */
+    public long elapsed(long start) {
+        return System.nanoTime() - start;
+    }
+
+    public boolean isSlow(long nanos) {
+        return nanos >= TimeUnit.MILLISECONDS.toNanos(SLOW_QUERY_MILLIS);
+    }
+
+    /**
+     * Records the duration of the operation started with start().
+     */
+    public void record(String dataset, String operation, long nanos) {
+        String key = dataset + " " + operation;
+
+        synchronized (this) {
+            Histogram histogram = mHistograms.get(key);
+            if (histogram == null) {
+                histogram = new Histogram();
+                mHistograms.put(key, histogram);
+            }
+            histogram.add(nanos);
+        }
+    }
+
+    public synchronized void recordSlowQuery(String dataset, String sql, List<String> plan, long nanos) {
+        mSlowQueries.addFirst(new SlowQuery(dataset, sql, plan, nanos));
+        if (mSlowQueries.size() > MAX_SLOW_QUERIES) {
+            mSlowQueries.removeLast();
+        }
+    }
+
+    public synchronized void reset() {
+        mHistograms.clear();
+        mSlowQueries.clear();
+    }
+
+    public synchronized String getReport() {
+        StringBuilder report = new StringBuilder();
+
+        report.append("operation: count, total ms, p50/p90/p99/max ms\n");
+        for (Map.Entry<String, Histogram> entry : mHistograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            report.append(String.format(Locale.US, "%s: %d, %.1f, %s/%s/%s/%.1f\n",
+                entry.getKey(), histogram.count, toMillis(histogram.totalNanos),
+                formatBucket(histogram.percentile(0.5)), formatBucket(histogram.percentile(0.9)),
+                formatBucket(histogram.percentile(0.99)), toMillis(histogram.maxNanos)));
+        }
+
+        if (!mSlowQueries.isEmpty()) {
+            report.append("\nslow queries:\n");
+            for (SlowQuery query : mSlowQueries) {
+                report.append(String.format(Locale.US, "%s, %.1f ms\n%s\n",
+                    query.dataset, toMillis(query.nanos), query.sql));
+                for (String step : query.plan) {
+                    report.append("  ").append(step).append("\n");
+                }
+            }
+        }
+
+        return report.toString();
+    }
+
+    public void export(File file) throws IOException {
+        Writer writer = new FileWriter(file);
+        try {
+            writer.write(getReport());
+        } finally {
+            writer.close();
+        }
+    }
+
+    // Private
+
+    private double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    /**
+     * The percentiles are the upper limits of the buckets, in milliseconds.
+     */
+    private String formatBucket(int bucket) {
+        double millis = (1L << bucket) / 1000.0;
+        return String.format(Locale.US, "<%.3g", millis);
+    }
+
+    /**
+     * Bucket i holds the durations of up to 2^i microseconds.
+     */
+    private static class Histogram {
+        private static final int BUCKETS = 25;
+
+        long count;
+        long totalNanos;
+        long maxNanos;
+        long[] buckets = new long[BUCKETS];
+
+        void add(long nanos) {
+            count++;
+            totalNanos += nanos;
+            if (nanos > maxNanos) {
+                maxNanos = nanos;
+            }
+
+            long micros = nanos / 1000;
+            int bucket = 64 - Long.numberOfLeadingZeros(micros);
+            buckets[Math.min(bucket, BUCKETS - 1)]++;
+        }
+
+        int percentile(double fraction) {
+            long target = (long) Math.ceil(count * fraction);
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                cumulative += buckets[i];
+                if (cumulative >= target) return i;
+            }
+            return BUCKETS - 1;
+        }
+    }
+
+    private static class SlowQuery {
+        SlowQuery(String dataset, String sql, List<String> plan, long nanos) {
+            this.dataset = dataset;
+            this.sql = sql;
+            this.plan = plan == null ? new ArrayList<String>() : plan;
+            this.nanos = nanos;
+        }
+
+        String dataset;
+        String sql;
+        List<String> plan;
+        long nanos;
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.database;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+
+import com.money.manager.ex.utils.MmxDatabaseUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import timber.log.Timber;
+
+/**
+ * Compiled statements for the frequent repository writes and lookups, kept per SQL text for the
+ * current database.
+ * A statement is not thread safe, so it is taken out of the cache while in use and returned
+ * afterwards. Threads using the same SQL at once get their own statements. No lock is held while
+ * a statement runs, so the cache does not block on the database connection.
+ * All the statements are closed when the database is switched (see clear()).
+ */
+@Singleton
+public class StatementCache {
+
+    /**
+     * Number of different SQL texts kept. The least recently used are closed.
+     */
+    private static final int MAX_SQL = 32;
+    /**
+     * Number of idle statements kept for one SQL text.
+     */
+    private static final int MAX_IDLE_PER_SQL = 2;
+
+    @Inject
+    public StatementCache() {
+    }
+
+    private SQLiteDatabase mDatabase;
+    /**
+     * Idle statements by SQL, in access order.
+     */
+    private final LinkedHashMap<String, List<SQLiteStatement>> mIdle = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * SQL of all the statements created for the current database, idle or in use.
+     */
+    private final Map<SQLiteStatement, String> mOwned = new HashMap<>();
+    private long mHits;
+    private long mMisses;
+
+    /**
+     * Takes a statement for the given SQL out of the cache, compiling it if there is none.
+     * The statement must be given back with release().
+     */
+    public synchronized SQLiteStatement acquire(SQLiteDatabase db, String sql) {
+        if (db != mDatabase) {
+            closeAll();
+            mDatabase = db;
+        }
+
+        List<SQLiteStatement> idle = mIdle.get(sql);
+        if (idle != null && !idle.isEmpty()) {
+            mHits++;
+            return idle.remove(idle.size() - 1);
+        }
+
+        mMisses++;
+        SQLiteStatement statement = db.compileStatement(sql);
+        mOwned.put(statement, sql);
+        return statement;
+    }
+
+    /**
+     * Returns the statement to the cache. Statements of a database that is no longer current
+     * are closed.
+     */
+    public synchronized void release(SQLiteStatement statement) {
+        statement.clearBindings();
+
+        String sql = mOwned.get(statement);
+        if (sql == null) {
+            statement.close();
+            return;
+        }
+
+        List<SQLiteStatement> idle = mIdle.get(sql);
+        if (idle == null) {
+            idle = new ArrayList<>(MAX_IDLE_PER_SQL);
+            mIdle.put(sql, idle);
+            trim();
+        }
+        if (idle.size() < MAX_IDLE_PER_SQL) {
+            idle.add(statement);
+        } else {
+            mOwned.remove(statement);
+            statement.close();
+        }
+    }
+
+    /**
+     * Closes all the statements. Called before the database is closed or switched.
+     * Statements in use are closed when released.
+     */
+    public synchronized void clear() {
+        closeAll();
+        mDatabase = null;
+    }
+
+    /**
+     * @return the value in the first column of the first row, or null if there are no rows.
+     */
+    public String queryForString(SQLiteDatabase db, String sql, Object... args) {
+        SQLiteStatement statement = acquire(db, sql);
+        try {
+            bind(statement, args);
+            return statement.simpleQueryForString();
+        } catch (SQLiteDoneException e) {
+            return null;
+        } finally {
+            release(statement);
+        }
+    }
+
+    /**
+     * @return the number in the first column of the first row, or 0 if there are no rows.
+     */
+    public long queryForLong(SQLiteDatabase db, String sql, Object... args) {
+        SQLiteStatement statement = acquire(db, sql);
+        try {
+            bind(statement, args);
+            return statement.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            return 0;
+        } finally {
+            release(statement);
+        }
+    }
+
+    /**
+     * @return the id of the inserted row, or -1.
+     */
+    public long executeInsert(SQLiteDatabase db, String sql, Object... args) {
+        SQLiteStatement statement = acquire(db, sql);
+        try {
+            bind(statement, args);
+            return statement.executeInsert();
+        } finally {
+            release(statement);
+        }
+    }
+
+    /**
+     * @return the number of rows affected.
+     */
+    public int executeUpdateDelete(SQLiteDatabase db, String sql, Object... args) {
+        SQLiteStatement statement = acquire(db, sql);
+        try {
+            bind(statement, args);
+            return statement.executeUpdateDelete();
+        } finally {
+            release(statement);
+        }
+    }
+
+    /**
+     * Inserts the values into the table. Inserts with the same set of columns share one
+     * statement. Throws on failure, like SQLiteDatabase.insertOrThrow.
+     * @return the id of the inserted row.
+     */
+    public long insert(SQLiteDatabase db, String table, ContentValues values) {
+        if (values == null || values.size() == 0) {
+            return db.insertOrThrow(table, null, values);
+        }
+
+        // sorted, so that the same columns always give the same SQL.
+        TreeSet<String> columns = new TreeSet<>(values.keySet());
+
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        Object[] args = new Object[columns.size()];
+        int i = 0;
+        for (String column : columns) {
+            if (i > 0) sql.append(", ");
+            sql.append(column);
+            args[i++] = values.get(column);
+        }
+        sql.append(") VALUES (").append(MmxDatabaseUtils.makePlaceholders(args.length)).append(")");
+
+        return executeInsert(db, sql.toString(), args);
+    }
+
+    /**
+     * @return the number of cache hits and misses, for diagnostics.
+     */
+    public synchronized String getStatistics() {
+        return "statement cache: " + mHits + " hits, " + mMisses + " misses, " +
+            mOwned.size() + " statements";
+    }
+
+    // Private
+
+    private void bind(SQLiteStatement statement, Object[] args) {
+        if (args == null) return;
+
+        for (int i = 0; i < args.length; i++) {
+            DatabaseUtils.bindObjectToProgram(statement, i + 1, args[i]);
+        }
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, List<SQLiteStatement>>> iterator = mIdle.entrySet().iterator();
+        while (mIdle.size() > MAX_SQL && iterator.hasNext()) {
+            List<SQLiteStatement> idle = iterator.next().getValue();
+            for (SQLiteStatement statement : idle) {
+                mOwned.remove(statement);
+                statement.close();
+            }
+            iterator.remove();
+        }
+    }
+
+    private void closeAll() {
+        for (List<SQLiteStatement> idle : mIdle.values()) {
+            for (SQLiteStatement statement : idle) {
+                try {
+                    statement.close();
+                } catch (Exception e) {
+                    Timber.w(e, "closing statement");
+                }
+            }
+        }
+        mIdle.clear();
+        mOwned.clear();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import com.money.manager.ex.core.InfoKeys;
+
+/**
+ * Date dimension of the account transactions: day, month, year, financial year and the date
+ * formatted with the user's date format, keyed by transaction id.
+ * Used by query_alldata and query_mobiledata instead of calculating the values for every
+ * transaction on every query.
+ * Rows are updated on every transaction write and the table is rebuilt when the date format
+ * or the start of the financial year change. It is brought up to date on open, before any
+ * query, when it is new or the transactions were modified outside of the app. A read-only file gets a temporary view with the same columns.
+ */
+public class TransactionDates {
+
+    public static final String TABLE_NAME = "MMX_TRANSDATE";
+
+    public static final String TRANSID = "TRANSID";
+    public static final String TRANSDATE = "TRANSDATE";
+    public static final String DAY = "DAY";
+    public static final String MONTH = "MONTH";
+    public static final String YEAR = "YEAR";
+    public static final String FINYEAR = "FINYEAR";
+    public static final String USERDATE = "USERDATE";
+
+    private static final String TRANSACTIONS = CacheState.TRANSACTIONS;
+
+    /**
+     * Indicates whether changing the given info value requires a rebuild.
+     */
+    public static boolean dependsOn(String infoKey) {
+        return InfoKeys.DATEFORMAT.equals(infoKey)
+            || InfoKeys.FINANCIAL_YEAR_START_DAY.equals(infoKey)
+            || InfoKeys.FINANCIAL_YEAR_START_MONTH.equals(infoKey);
+    }
+
+    public TransactionDates(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    private SQLiteDatabase db;
+
+    public void create() {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
+            TRANSID + " integer primary key" +
+            ", " + TRANSDATE + " TEXT" +
+            ", " + DAY + " integer" +
+            ", " + MONTH + " integer" +
+            ", " + YEAR + " integer" +
+            ", " + FINYEAR + " integer" +
+            ", " + USERDATE + " TEXT)");
+    }
+
+    /**
+     * Calculates the date values on every query, for a file that cannot be written. The view
+     * lives in the connection's temporary schema and hides the table, if any, which may be out
+     * of date.
+     */
+    public void createView() {
+        db.execSQL("CREATE TEMP VIEW IF NOT EXISTS " + TABLE_NAME + " AS " + getSelectSql(null));
+    }
+
+    /**
+     * Rebuilds the table if the transactions were modified outside of the app.
+     * @return true if the table was rebuilt.
+     */
+    public boolean ensure(CacheState state) {
+        if (state.isInSync(TABLE_NAME, TRANSACTIONS)) return false;
+
+        rebuild();
+        return true;
+    }
+
+    /**
+     * Recalculates all the rows. To be called when the date format or the financial year change.
+     */
+    public void rebuild() {
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM " + TABLE_NAME);
+            update(null);
+            new CacheState(db).record(TABLE_NAME, TRANSACTIONS);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Recalculates the rows for the given inserted or updated transactions.
+     */
+    public void transactionsChanged(long[] ids) {
+        if (ids.length == 0) return;
+
+        update("TX." + AccountBalanceLedger.getIdSelection(ids));
+    }
+
+    public void transactionsDeleted(long[] ids) {
+        if (ids.length == 0) return;
+
+        db.execSQL("DELETE FROM " + TABLE_NAME + " WHERE " + AccountBalanceLedger.getIdSelection(ids));
+    }
+
+    // Private
+
+    private void update(String selection) {
+        db.execSQL("INSERT OR REPLACE INTO " + TABLE_NAME + " (" +
+            TRANSID + ", " + TRANSDATE + ", " + DAY + ", " + MONTH + ", " + YEAR + ", " + FINYEAR + ", " +
+            USERDATE + ") " + getSelectSql(selection));
+    }
+
+    private String getSelectSql(String selection) {
+        return "SELECT TX.TRANSID AS " + TRANSID + ", " +
+                "date( TX.TRANSDATE ) AS " + TRANSDATE + ", " +
+                "round( strftime( '%d', TX.TRANSDATE ) ) AS " + DAY + ", " +
+                "round( strftime( '%m', TX.TRANSDATE ) ) AS " + MONTH + ", " +
+                "round( strftime( '%Y', TX.TRANSDATE ) ) AS " + YEAR + ", " +
+                "round( strftime( '%Y', TX.TRANSDATE, 'start of month', " +
+                    "( ( CASE WHEN fd.infovalue <= round( strftime( '%d', TX.TRANSDATE ) ) THEN 1 ELSE 0 END ) - fm.infovalue ) || ' month' ) ) AS " + FINYEAR + ", " +
+                "ifnull( ifnull( strftime( df.infovalue, TX.TRANSDATE ), " +
+                    "( strftime( REPLACE( df.infovalue, '%y', SubStr( strftime( '%Y', TX.TRANSDATE ), 3, 2 ) ), TX.TRANSDATE ) ) ), " +
+                    "date( TX.TRANSDATE ) ) AS " + USERDATE + " " +
+            "FROM " + TRANSACTIONS + " TX " +
+                "LEFT JOIN infotable_v1 df ON df.infoname = '" + InfoKeys.DATEFORMAT + "' " +
+                "LEFT JOIN infotable_v1 fm ON fm.infoname = '" + InfoKeys.FINANCIAL_YEAR_START_MONTH + "' " +
+                "LEFT JOIN infotable_v1 fd ON fd.infoname = '" + InfoKeys.FINANCIAL_YEAR_START_DAY + "'" +
+            (selection == null ? "" : " WHERE " + selection);
+    }
+}
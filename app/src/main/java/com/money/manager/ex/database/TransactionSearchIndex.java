@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.database;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+import com.money.manager.ex.datalayer.CategoryRepository;
+import com.money.manager.ex.datalayer.PayeeRepository;
+import com.money.manager.ex.datalayer.SubcategoryRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import timber.log.Timber;
+
+/**
+ * Full-text index (FTS4) of the transactions, for the search. One document per transaction,
+ * with the transaction id as the docid, and the notes, the payee name, the category and
+ * subcategory names (those of all the splits for a split transaction) and the transaction
+ * number as columns.
+ * The index is maintained on every write to the transactions, the splits, and the payee and
+ * category names. Like the monthly totals, it is a local cache, checked against the CacheState
+ * of those tables in the background after open. An empty index is built on open, before any
+ * search.
+ * The default (simple) tokenizer is used, available on all the API levels. It folds only the
+ * ASCII letters.
+ */
+public class TransactionSearchIndex {
+
+    public static final String TABLE_NAME = "MMX_TRANSACTION_FTS";
+
+    public static final String NOTES = "NOTES";
+    public static final String PAYEE = "PAYEE";
+    public static final String CATEGORY = "CATEGORY";
+    public static final String TRANSACTIONNUMBER = "TRANSACTIONNUMBER";
+
+    private static final String TRANSACTIONS = CacheState.TRANSACTIONS;
+    private static final String SPLITS = CacheState.SPLITS;
+    private static final String PAYEES = CacheState.PAYEES;
+    private static final String CATEGORIES = CacheState.CATEGORIES;
+    private static final String SUBCATEGORIES = CacheState.SUBCATEGORIES;
+    private static final String[] SOURCES = new String[] {
+        TRANSACTIONS, SPLITS, PAYEES, CATEGORIES, SUBCATEGORIES };
+    private static final String COLUMNS = NOTES + ", " + PAYEE + ", " + CATEGORY + ", " + TRANSACTIONNUMBER;
+
+    public TransactionSearchIndex(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    private SQLiteDatabase db;
+
+    /**
+     * Selection of the transactions matching all the words of the text, as prefixes, in any of
+     * the indexed columns.
+     * The search text is passed as an escaped literal, since the where clauses of the
+     * transaction lists are passed around as strings.
+     * @param idColumn the transaction id column of the queried source, i.e. QueryAllData.ID
+     * @return the selection, or null if the text has no words.
+     */
+    public static String getMatchSelection(String idColumn, String text) {
+        String query = getMatchQuery(text);
+        if (query == null) return null;
+
+        return idColumn + " IN (SELECT docid FROM " + TABLE_NAME + " WHERE " + TABLE_NAME +
+            " MATCH " + DatabaseUtils.sqlEscapeString(query) + ")";
+    }
+
+    /**
+     * Splits the text into words as the simple tokenizer does: the ASCII characters other than
+     * the letters and digits separate the words. Each word is matched as a prefix.
+     * Only the ASCII letters are put in lower case, as the tokenizer folds only those: the
+     * other letters are indexed as written.
+     * @return the FTS query, or null if the text has no words.
+     */
+    public static String getMatchQuery(String text) {
+        if (text == null) return null;
+
+        List<String> terms = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char ch = i < text.length() ? text.charAt(i) : ' ';
+            if (ch >= 'A' && ch <= 'Z') {
+                // lower case, so that the words are not taken as the AND/OR/NOT operators.
+                word.append((char) (ch - 'A' + 'a'));
+            } else if (ch >= 128 || Character.isLetterOrDigit(ch)) {
+                word.append(ch);
+            } else if (word.length() > 0) {
+                terms.add(word.toString() + "*");
+                word.setLength(0);
+            }
+        }
+        if (terms.isEmpty()) return null;
+
+        return TextUtils.join(" ", terms);
+    }
+
+    public void create() {
+        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE_NAME + " USING fts4(" + COLUMNS + ")");
+    }
+
+    /**
+     * Rebuilds the index if the transactions, the splits or the names were modified outside of
+     * the app, i.e. notes edited on the desktop.
+     * @return true if the index was rebuilt.
+     */
+    public boolean ensure(CacheState state) {
+        if (state.isInSync(TABLE_NAME, SOURCES)) return false;
+
+        Timber.d("search index out of date, rebuilding");
+        rebuild();
+        return true;
+    }
+
+    /**
+     * Indexes all the transactions if the index has no documents yet, i.e. right after it was
+     * created by the upgrade, so that the first searches do not wait for the background check.
+     * @return true if the index was built.
+     */
+    public boolean ensureNotEmpty() {
+        Cursor c = db.rawQuery("SELECT " +
+            "EXISTS (SELECT 1 FROM " + TABLE_NAME + "), " +
+            "EXISTS (SELECT 1 FROM " + TRANSACTIONS + ")", null);
+        boolean empty;
+        try {
+            empty = c.moveToFirst() && c.getInt(0) == 0 && c.getInt(1) == 1;
+        } finally {
+            c.close();
+        }
+        if (!empty) return false;
+
+        Timber.d("search index empty, building");
+        rebuild();
+        return true;
+    }
+
+    /**
+     * Indexes all the transactions again.
+     */
+    public void rebuild() {
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM " + TABLE_NAME);
+            db.execSQL("INSERT INTO " + TABLE_NAME + " (docid, " + COLUMNS + ") " + getDocumentSql(null));
+            new CacheState(db).record(TABLE_NAME, SOURCES);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Compares the indexed documents with the transactions.
+     * @return number of differing documents. 0 if the index is correct.
+     */
+    public int verify() {
+        String sql = "SELECT " +
+            "(SELECT COUNT(*) FROM (" + getDocumentSql(null) + ") d " +
+                "LEFT JOIN " + TABLE_NAME + " f ON f.docid = d.TRANSID " +
+                "WHERE f.docid IS NULL OR f." + NOTES + " IS NOT d." + NOTES +
+                " OR f." + PAYEE + " IS NOT d." + PAYEE +
+                " OR f." + CATEGORY + " IS NOT d." + CATEGORY +
+                " OR f." + TRANSACTIONNUMBER + " IS NOT d." + TRANSACTIONNUMBER + "), " +
+            // documents of deleted transactions.
+            "(SELECT COUNT(*) FROM " + TABLE_NAME + " WHERE docid NOT IN " +
+                "(SELECT TRANSID FROM " + TRANSACTIONS + "))";
+
+        Cursor c = db.rawQuery(sql, null);
+        int differences = c.moveToFirst() ? c.getInt(0) + c.getInt(1) : 0;
+        c.close();
+        return differences;
+    }
+
+    /**
+     * Verifies the index and rebuilds it if needed.
+     * @return true if the index was correct, false if it had to be rebuilt.
+     */
+    public boolean verifyAndRebuild() {
+        int differences = verify();
+        if (differences == 0) return true;
+
+        Timber.w("search index out of sync, %d documents differ", differences);
+        rebuild();
+        return false;
+    }
+
+    // Incremental maintenance. Run these within the same database transaction as the write.
+
+    /**
+     * Indexes again the given inserted or updated transactions, or those whose splits or
+     * names changed.
+     */
+    public void transactionsChanged(long[] ids) {
+        if (ids.length == 0) return;
+
+        db.execSQL("DELETE FROM " + TABLE_NAME + " WHERE " + getDocidSelection(ids));
+        db.execSQL("INSERT INTO " + TABLE_NAME + " (docid, " + COLUMNS + ") " +
+            getDocumentSql("TX." + AccountBalanceLedger.getIdSelection(ids)));
+    }
+
+    public void transactionsDeleted(long[] ids) {
+        if (ids.length == 0) return;
+
+        db.execSQL("DELETE FROM " + TABLE_NAME + " WHERE " + getDocidSelection(ids));
+    }
+
+    /**
+     * @param nameTable the payee, category or subcategory table.
+     * @return ids of the transactions that use the names matching the selection, directly or
+     * in their splits. Empty for the other tables.
+     */
+    public long[] getTransactionsUsing(String nameTable, String selection, String[] selectionArgs) {
+        String idColumn;
+        boolean inSplits = true;
+        if (PayeeRepository.TABLE_NAME.equalsIgnoreCase(nameTable)) {
+            idColumn = "PAYEEID";
+            inSplits = false;
+        } else if (CategoryRepository.tableName.equalsIgnoreCase(nameTable)) {
+            idColumn = "CATEGID";
+        } else if (SubcategoryRepository.tableName.equalsIgnoreCase(nameTable)) {
+            idColumn = "SUBCATEGID";
+        } else {
+            return new long[0];
+        }
+
+        String names = "SELECT " + idColumn + " FROM " + nameTable +
+            (TextUtils.isEmpty(selection) ? "" : " WHERE " + selection);
+        String sql = "SELECT TRANSID FROM " + TRANSACTIONS + " WHERE " + idColumn + " IN (" + names + ")";
+        String[] args = selectionArgs;
+        if (inSplits) {
+            sql += " UNION SELECT TRANSID FROM " + SPLITS + " WHERE " + idColumn + " IN (" + names + ")";
+            if (selectionArgs != null) {
+                args = new String[selectionArgs.length * 2];
+                System.arraycopy(selectionArgs, 0, args, 0, selectionArgs.length);
+                System.arraycopy(selectionArgs, 0, args, selectionArgs.length, selectionArgs.length);
+            }
+        }
+
+        Cursor c = db.rawQuery(sql, args);
+        long[] ids = new long[c.getCount()];
+        for (int i = 0; c.moveToNext(); i++) {
+            ids[i] = c.getLong(0);
+        }
+        c.close();
+        return ids;
+    }
+
+    // Private
+
+    private String getDocidSelection(long[] ids) {
+        StringBuilder builder = new StringBuilder("docid IN (");
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) builder.append(',');
+            builder.append(ids[i]);
+        }
+        builder.append(')');
+        return builder.toString();
+    }
+
+    /**
+     * @return query with the TRANSID, followed by the indexed columns.
+     */
+    private String getDocumentSql(String selection) {
+        String name = "ifnull(c.CATEGNAME, '') || ' ' || ifnull(sc.SUBCATEGNAME, '')";
+        String splitNames = "(SELECT group_concat(ifnull(c.CATEGNAME, '') || ' ' || " +
+                "ifnull(sc.SUBCATEGNAME, ''), ' ') " +
+            "FROM " + SPLITS + " st " +
+                "LEFT JOIN " + CATEGORIES + " c ON c.CATEGID = st.CATEGID " +
+                "LEFT JOIN " + SUBCATEGORIES + " sc ON sc.SUBCATEGID = st.SUBCATEGID " +
+            "WHERE st.TRANSID = TX.TRANSID)";
+
+        return "SELECT TX.TRANSID AS TRANSID, " +
+                "ifnull(TX.NOTES, '') AS " + NOTES + ", " +
+                "ifnull(p.PAYEENAME, '') AS " + PAYEE + ", " +
+                "CASE WHEN TX.CATEGID = -1 THEN ifnull(" + splitNames + ", '') ELSE " + name + " END AS " +
+                    CATEGORY + ", " +
+                "ifnull(TX.TRANSACTIONNUMBER, '') AS " + TRANSACTIONNUMBER + " " +
+            "FROM " + TRANSACTIONS + " TX " +
+                "LEFT JOIN " + PAYEES + " p ON p.PAYEEID = TX.PAYEEID " +
+                "LEFT JOIN " + CATEGORIES + " c ON c.CATEGID = TX.CATEGID " +
+                "LEFT JOIN " + SUBCATEGORIES + " sc ON sc.SUBCATEGID = TX.SUBCATEGID" +
+            (TextUtils.isEmpty(selection) ? "" : " WHERE " + selection);
+    }
+}
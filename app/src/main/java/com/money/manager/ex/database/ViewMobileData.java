@@ -78,6 +78,14 @@ public class ViewMobileData
                 AmountBaseConvRate};
 	}
 
+    /**
+     * The transactions of a period, as read by the reports.
+     */
+    @Override
+    public String getTypicalSelection() {
+        return Date + " >= '2017-01-01' AND " + Date + " <= '2017-12-31'";
+    }
+
     public void setWhere(String where) {
         initialize(mContext, where);
     }
@@ -32,8 +32,10 @@ import com.money.manager.ex.utils.MmxDatabaseUtils;
 public class AccountTransactionRepository
     extends RepositoryBase {
 
+    public static final String TABLE_NAME = "checkingaccount_v1";
+
     public AccountTransactionRepository(Context context) {
-        super(context, "checkingaccount_v1", DatasetType.TABLE, "checkingaccount");
+        super(context, TABLE_NAME, DatasetType.TABLE, "checkingaccount");
     }
 
     @Override
@@ -84,4 +86,20 @@ public class AccountTransactionRepository
         boolean saved = super.update(item, where.getWhere());
         return saved;
     }
+
+    /**
+     * Adds the insert to the unit of work. The id is available after the commit.
+     * @return index of the insert in the unit of work
+     */
+    public int insert(UnitOfWork work, AccountTransaction entity) {
+        entity.contentValues.remove(AccountTransaction.TRANSID);
+
+        return work.insert(this, entity);
+    }
+
+    public void update(UnitOfWork work, AccountTransaction item) {
+        // fails the unit of work if the transaction no longer exists.
+        work.update(this, item, AccountTransaction.TRANSID + "=?",
+            MmxDatabaseUtils.getArgsForId(item.getId()), 1);
+    }
 }
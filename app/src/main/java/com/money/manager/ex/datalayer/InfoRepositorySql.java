@@ -18,6 +18,7 @@
 package com.money.manager.ex.datalayer;
 
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 
 import com.money.manager.ex.domainmodel.Info;
 import com.squareup.sqlbrite.BriteDatabase;
@@ -27,6 +28,8 @@ import java.util.List;
 
 import javax.inject.Inject;
 
+import timber.log.Timber;
+
 /**
  * Repository for InfoTable
  */
@@ -75,4 +78,38 @@ public class InfoRepositorySql
     public boolean update(Info entity) {
         return update(entity, Info.INFONAME + "=?", entity.getName());
     }
+
+    /**
+     * Reads the value with a cached statement.
+     * @return the value, or null if the info does not exist.
+     */
+    public String getValue(String infoName) {
+        return statements().queryForString(database.getReadableDatabase(),
+            "SELECT " + Info.INFOVALUE + " FROM " + TABLE_NAME + " WHERE " + Info.INFONAME + "=?",
+            infoName);
+    }
+
+    /**
+     * Updates the value, or inserts it if the info does not exist, with cached statements.
+     * @return true if stored.
+     */
+    public boolean setValue(String infoName, String value) {
+        SQLiteDatabase db = database.getWritableDatabase();
+
+        boolean result = statements().executeUpdateDelete(db,
+            "UPDATE " + TABLE_NAME + " SET " + Info.INFOVALUE + "=? WHERE " + Info.INFONAME + "=?",
+            value, infoName) > 0;
+        if (!result) {
+            result = statements().executeInsert(db,
+                "INSERT INTO " + TABLE_NAME + " (" + Info.INFONAME + ", " + Info.INFOVALUE + ") VALUES (?, ?)",
+                infoName, value) > 0;
+        }
+
+        if (result) {
+            notifySync();
+        } else {
+            Timber.w("storing info %s failed", infoName);
+        }
+        return result;
+    }
 }
@@ -0,0 +1,509 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.datalayer;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import com.money.manager.ex.Constants;
+import com.money.manager.ex.MoneyManagerApplication;
+import com.money.manager.ex.database.DataChangeBus;
+import com.money.manager.ex.database.DatabaseKey;
+import com.money.manager.ex.database.NameUsageChange;
+import com.money.manager.ex.database.QueryCategorySubCategory;
+import com.money.manager.ex.domainmodel.Payee;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import timber.log.Timber;
+
+/**
+ * In-memory index of the payee and category names, for the pickers. The names are read once
+ * per database, with the number of transactions using each of them, and filtered in memory
+ * on every keystroke.
+ * The filter is case and accent insensitive and matches anywhere in the name. The names
+ * starting with the filter come first. The payees are kept sorted by the folded name, so
+ * that those are found with a binary search.
+ * The index is discarded when the names change, or a different database is opened. The writes
+ * to the transactions and the splits only adjust the usage of the names, with the change
+ * reported by the content provider. The index is discarded when a writer does not report it.
+ */
+@Singleton
+public class NameIndex {
+
+    @Inject
+    public NameIndex(MoneyManagerApplication app, DataChangeBus changeBus) {
+        mApp = app;
+
+        String[] tables = new String[] {
+            new PayeeRepository(app).getSource(),
+            new CategoryRepository(app).getSource(),
+            new SubcategoryRepository(app).getSource()
+        };
+        for (String table : tables) {
+            // the change bus reports the names in lower case.
+            mTables.add(table.toLowerCase(Locale.US));
+        }
+        String[] usageTables = new String[] {
+            new AccountTransactionRepository(app).getSource(),
+            new SplitCategoriesRepository(app).getSource()
+        };
+        for (String table : usageTables) {
+            mUsageTables.add(table.toLowerCase(Locale.US));
+        }
+
+        changeBus.subscribeUsage(new DataChangeBus.UsageListener() {
+            @Override
+            public void onTablesChanged(Set<String> tables, NameUsageChange usage) {
+                boolean usageChanged = false;
+                for (String table : tables) {
+                    if (mTables.contains(table)) {
+                        invalidate();
+                        return;
+                    }
+                    usageChanged |= mUsageTables.contains(table);
+                }
+                if (!usageChanged) return;
+
+                if (usage == null) {
+                    invalidate();
+                } else {
+                    applyUsage(usage);
+                }
+            }
+        });
+    }
+
+    private static final String[] PAYEE_COLUMNS = new String[] {
+        "_id", Payee.PAYEEID, Payee.PAYEENAME, Payee.CATEGID, Payee.SUBCATEGID };
+    private static final String[] CATEGORY_COLUMNS = new String[] {
+        QueryCategorySubCategory.ID, QueryCategorySubCategory.CATEGID, QueryCategorySubCategory.CATEGNAME,
+        QueryCategorySubCategory.SUBCATEGID, QueryCategorySubCategory.SUBCATEGNAME,
+        QueryCategorySubCategory.CATEGSUBNAME };
+
+    private static final Comparator<Entry> BY_KEY = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            return lhs.key.compareTo(rhs.key);
+        }
+    };
+    /**
+     * Most used first. Stable, so the names stay sorted within the same usage.
+     */
+    private static final Comparator<Entry> BY_USAGE = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            return lhs.usage < rhs.usage ? 1 : (lhs.usage == rhs.usage ? 0 : -1);
+        }
+    };
+
+    private MoneyManagerApplication mApp;
+    private final Set<String> mTables = new HashSet<>();
+    private final Set<String> mUsageTables = new HashSet<>();
+    private volatile Snapshot mSnapshot;
+    /**
+     * Incremented on every invalidation and usage change, so that an index read while the data
+     * changed is not kept.
+     */
+    private int mVersion;
+
+    /**
+     * Folds the text for the comparisons: lower case, without the accents.
+     */
+    public static String fold(String text) {
+        if (text == null) return "";
+
+        return Normalizer.normalize(text, Normalizer.Form.NFD)
+            .replaceAll("\\p{InCombiningDiacriticalMarks}+", "").toLowerCase(Locale.US);
+    }
+
+    /**
+     * @param filter Text to find in the payee names. Null or empty for all the payees.
+     * @param byUsage Most used payees first, otherwise by name.
+     * @return the matching payees, with the columns of PayeeRepository.getAllColumns().
+     */
+    public Cursor getPayees(String filter, boolean byUsage) {
+        MatrixCursor cursor = new MatrixCursor(PAYEE_COLUMNS);
+        for (PayeeEntry payee : findPayees(filter, byUsage)) {
+            cursor.addRow(new Object[] { payee.id, payee.id, payee.name, payee.categId, payee.subCategId });
+        }
+        return cursor;
+    }
+
+    public List<PayeeEntry> findPayees(String filter, boolean byUsage) {
+        List<PayeeEntry> payees = getSnapshot().payees;
+        String search = fold(filter);
+
+        List<PayeeEntry> starting = new ArrayList<>();
+        List<PayeeEntry> containing = new ArrayList<>();
+        if (search.length() == 0) {
+            starting.addAll(payees);
+        } else {
+            // the names starting with the filter are a range of the sorted keys.
+            int first = findFirst(payees, search);
+            int last = first;
+            while (last < payees.size() && payees.get(last).key.startsWith(search)) {
+                starting.add(payees.get(last));
+                last++;
+            }
+            for (int i = 0; i < payees.size(); i++) {
+                if (i >= first && i < last) continue;
+
+                PayeeEntry payee = payees.get(i);
+                if (payee.key.contains(search)) {
+                    containing.add(payee);
+                }
+            }
+        }
+
+        if (byUsage) {
+            // the usage does not change while sorting.
+            synchronized (this) {
+                Collections.sort(starting, BY_USAGE);
+                Collections.sort(containing, BY_USAGE);
+            }
+        }
+        starting.addAll(containing);
+        return starting;
+    }
+
+    /**
+     * The rows of the categories, and of the subcategories, whose category or subcategory name
+     * contains the filter. The rows of a category are together, category first, as expected by
+     * the category list.
+     * @param filter Text to find in the names. Null or empty for all the categories.
+     * @return the matching rows, with the columns of QueryCategorySubCategory.
+     */
+    public Cursor getCategories(String filter) {
+        MatrixCursor cursor = new MatrixCursor(CATEGORY_COLUMNS);
+        for (CategoryEntry row : findCategories(filter)) {
+            boolean isCategory = row.subCategId == Constants.NOT_SET;
+            cursor.addRow(new Object[] {
+                isCategory ? row.categId : 10000 + row.subCategId,
+                row.categId, row.categName, row.subCategId,
+                isCategory ? null : row.name,
+                isCategory ? row.categName : row.categName + " : " + row.name
+            });
+        }
+        return cursor;
+    }
+
+    public List<CategoryEntry> findCategories(String filter) {
+        List<CategoryEntry> rows = getSnapshot().categories;
+        String search = fold(filter);
+        if (search.length() == 0) return rows;
+
+        // The matching rows, in groups by category.
+        List<CategoryGroup> groups = new ArrayList<>();
+        CategoryGroup group = null;
+        for (CategoryEntry row : rows) {
+            boolean isSubcategory = row.subCategId != Constants.NOT_SET;
+            // as in the query, all the rows of a matching category are included.
+            boolean starts = row.categKey.startsWith(search) || (isSubcategory && row.key.startsWith(search));
+            if (!starts && !row.categKey.contains(search) && !(isSubcategory && row.key.contains(search))) {
+                continue;
+            }
+
+            if (group == null || group.categId != row.categId) {
+                group = new CategoryGroup(row.categId, row.category.usage);
+                groups.add(group);
+            }
+            group.rows.add(row);
+            group.starts |= starts;
+        }
+
+        // The categories with a name starting with the filter come first, then the most used.
+        Collections.sort(groups, new Comparator<CategoryGroup>() {
+            @Override
+            public int compare(CategoryGroup lhs, CategoryGroup rhs) {
+                if (lhs.starts != rhs.starts) return lhs.starts ? -1 : 1;
+                return lhs.usage < rhs.usage ? 1 : (lhs.usage == rhs.usage ? 0 : -1);
+            }
+        });
+
+        List<CategoryEntry> result = new ArrayList<>();
+        for (CategoryGroup matching : groups) {
+            result.addAll(matching.rows);
+        }
+        return result;
+    }
+
+    public synchronized void invalidate() {
+        mVersion++;
+        mSnapshot = null;
+    }
+
+    /**
+     * Adjusts the usage of the names in the current index.
+     */
+    public synchronized void applyUsage(NameUsageChange usage) {
+        mVersion++;
+        Snapshot snapshot = mSnapshot;
+        if (snapshot == null) return;
+
+        apply(snapshot.payeesById, usage.getPayees());
+        apply(snapshot.categoriesById, usage.getCategories());
+        apply(snapshot.subcategoriesById, usage.getSubcategories());
+    }
+
+    // Private
+
+    private Snapshot getSnapshot() {
+        DatabaseKey database = DatabaseKey.current(mApp);
+
+        Snapshot snapshot = mSnapshot;
+        if (snapshot != null && database.equals(snapshot.database)) {
+            return snapshot;
+        }
+
+        int version;
+        synchronized (this) {
+            version = mVersion;
+        }
+
+        snapshot = new Snapshot();
+        snapshot.database = database;
+        try {
+            load(snapshot, mApp.openHelperAtomicReference.get().getReadableDatabase());
+        } catch (Exception e) {
+            Timber.e(e, "loading the name index");
+            return snapshot;
+        }
+
+        synchronized (this) {
+            if (version == mVersion) {
+                mSnapshot = snapshot;
+            }
+        }
+        return snapshot;
+    }
+
+    private void load(Snapshot snapshot, SQLiteDatabase db) {
+        // usage
+        SparseIntArray payeeUsage = new SparseIntArray();
+        Cursor c = db.rawQuery("SELECT PAYEEID, COUNT(*) FROM CHECKINGACCOUNT_V1 GROUP BY PAYEEID", null);
+        try {
+            while (c.moveToNext()) {
+                payeeUsage.put(c.getInt(0), c.getInt(1));
+            }
+        } finally {
+            c.close();
+        }
+
+        SparseIntArray categoryUsage = new SparseIntArray();
+        SparseIntArray subcategoryUsage = new SparseIntArray();
+        c = db.rawQuery("SELECT CATEGID, SUBCATEGID, COUNT(*) FROM (" +
+                "SELECT CATEGID, SUBCATEGID FROM CHECKINGACCOUNT_V1 WHERE CATEGID <> -1 " +
+                "UNION ALL SELECT CATEGID, SUBCATEGID FROM SPLITTRANSACTIONS_V1) " +
+            "GROUP BY CATEGID, SUBCATEGID", null);
+        try {
+            while (c.moveToNext()) {
+                int categId = c.getInt(0);
+                categoryUsage.put(categId, categoryUsage.get(categId) + c.getInt(2));
+                if (!c.isNull(1)) {
+                    subcategoryUsage.put(c.getInt(1), c.getInt(2));
+                }
+            }
+        } finally {
+            c.close();
+        }
+
+        // payees
+        c = db.rawQuery("SELECT PAYEEID, PAYEENAME, CATEGID, SUBCATEGID FROM PAYEE_V1", null);
+        try {
+            while (c.moveToNext()) {
+                PayeeEntry payee = new PayeeEntry();
+                payee.id = c.getInt(0);
+                payee.name = c.getString(1);
+                payee.key = fold(payee.name);
+                payee.categId = c.isNull(2) ? Constants.NOT_SET : c.getInt(2);
+                payee.subCategId = c.isNull(3) ? Constants.NOT_SET : c.getInt(3);
+                payee.usage = payeeUsage.get(payee.id);
+                snapshot.payees.add(payee);
+                snapshot.payeesById.put(payee.id, payee);
+            }
+        } finally {
+            c.close();
+        }
+        Collections.sort(snapshot.payees, BY_KEY);
+
+        // categories, with their subcategories.
+        SparseArray<List<CategoryEntry>> subcategories = new SparseArray<>();
+        c = db.rawQuery("SELECT SUBCATEGID, CATEGID, SUBCATEGNAME FROM SUBCATEGORY_V1", null);
+        try {
+            while (c.moveToNext()) {
+                CategoryEntry subcategory = new CategoryEntry();
+                subcategory.subCategId = c.getInt(0);
+                subcategory.categId = c.getInt(1);
+                subcategory.name = c.getString(2);
+                subcategory.key = fold(subcategory.name);
+                subcategory.usage = subcategoryUsage.get(subcategory.subCategId);
+                snapshot.subcategoriesById.put(subcategory.subCategId, subcategory);
+
+                List<CategoryEntry> list = subcategories.get(subcategory.categId);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    subcategories.put(subcategory.categId, list);
+                }
+                list.add(subcategory);
+            }
+        } finally {
+            c.close();
+        }
+
+        List<CategoryEntry> categories = new ArrayList<>();
+        c = db.rawQuery("SELECT CATEGID, CATEGNAME FROM CATEGORY_V1", null);
+        try {
+            while (c.moveToNext()) {
+                CategoryEntry category = new CategoryEntry();
+                category.categId = c.getInt(0);
+                category.subCategId = Constants.NOT_SET;
+                category.name = c.getString(1);
+                category.key = fold(category.name);
+                category.usage = categoryUsage.get(category.categId);
+                categories.add(category);
+                snapshot.categoriesById.put(category.categId, category);
+            }
+        } finally {
+            c.close();
+        }
+        Collections.sort(categories, BY_KEY);
+
+        for (CategoryEntry category : categories) {
+            category.categName = category.name;
+            category.categKey = category.key;
+            category.category = category;
+            snapshot.categories.add(category);
+
+            List<CategoryEntry> list = subcategories.get(category.categId);
+            if (list == null) continue;
+
+            Collections.sort(list, BY_KEY);
+            for (CategoryEntry subcategory : list) {
+                subcategory.categName = category.name;
+                subcategory.categKey = category.key;
+                subcategory.category = category;
+                snapshot.categories.add(subcategory);
+            }
+        }
+    }
+
+    private void apply(SparseArray<? extends Entry> entries, SparseIntArray changes) {
+        for (int i = 0; i < changes.size(); i++) {
+            Entry entry = entries.get(changes.keyAt(i));
+            if (entry == null) continue;
+
+            entry.usage += changes.valueAt(i);
+        }
+    }
+
+    /**
+     * @return the position of the first payee whose key is not before the search text.
+     */
+    private int findFirst(List<PayeeEntry> payees, String search) {
+        int low = 0;
+        int high = payees.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (payees.get(middle).key.compareTo(search) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * A name in the index.
+     */
+    public static class Entry {
+        public String name;
+        /**
+         * Number of transactions (and splits) using the name.
+         */
+        public int usage;
+        /**
+         * The folded name.
+         */
+        String key;
+    }
+
+    public static class PayeeEntry
+        extends Entry {
+
+        public int id;
+        public int categId;
+        public int subCategId;
+    }
+
+    /**
+     * A category (subCategId is NOT_SET) or a subcategory.
+     */
+    public static class CategoryEntry
+        extends Entry {
+
+        public int categId;
+        public int subCategId;
+        public String categName;
+        String categKey;
+        /**
+         * The category of the row, itself for a category.
+         */
+        CategoryEntry category;
+    }
+
+    private static class CategoryGroup {
+        CategoryGroup(int categId, int usage) {
+            this.categId = categId;
+            this.usage = usage;
+        }
+
+        final int categId;
+        final int usage;
+        boolean starts;
+        List<CategoryEntry> rows = new ArrayList<>();
+    }
+
+    private static class Snapshot {
+        DatabaseKey database;
+        /**
+         * Sorted by the folded name.
+         */
+        List<PayeeEntry> payees = new ArrayList<>();
+        SparseArray<PayeeEntry> payeesById = new SparseArray<>();
+        /**
+         * By category name, each category followed by its subcategories.
+         */
+        List<CategoryEntry> categories = new ArrayList<>();
+        SparseArray<CategoryEntry> categoriesById = new SparseArray<>();
+        SparseArray<CategoryEntry> subcategoriesById = new SparseArray<>();
+    }
+}
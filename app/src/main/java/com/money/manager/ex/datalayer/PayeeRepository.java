@@ -29,8 +29,10 @@ import com.money.manager.ex.utils.MmxDatabaseUtils;
 public class PayeeRepository
     extends RepositoryBase{
 
+    public static final String TABLE_NAME = "payee_v1";
+
     public PayeeRepository(Context context) {
-        super(context, "payee_v1", DatasetType.TABLE, "payee");
+        super(context, TABLE_NAME, DatasetType.TABLE, "payee");
 
     }
 
@@ -70,4 +72,8 @@ public class PayeeRepository
         int id = payee.getId();
         return super.update(payee, Payee.PAYEEID + "=" + id);
     }
+
+    public void save(UnitOfWork work, Payee payee) {
+        work.update(this, payee, Payee.PAYEEID + "=?", MmxDatabaseUtils.getArgsForId(payee.getId()));
+    }
 }
@@ -30,6 +30,7 @@ public class Select {
     public String selection = null;
     public String[] selectionArgs = null;
     public String sort = null;
+    public String limit = null;
 
     /**
      * Query generator. The constructor is also the projection definition. Empty arguments mean *.
@@ -90,11 +91,16 @@ public class Select {
         return this;
     }
 
+    public Select limit(int count) {
+        this.limit = Integer.toString(count);
+        return this;
+    }
+
     public String toString() {
         // compose select query.
         SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
         builder.setTables(from);
-        String sql = builder.buildQuery(projection, selection, null, null, sort, null);
+        String sql = builder.buildQuery(projection, selection, null, null, sort, limit);
         return sql;
     }
 }
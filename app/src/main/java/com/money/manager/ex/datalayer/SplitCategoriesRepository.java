@@ -25,6 +25,7 @@ import com.money.manager.ex.database.ITransactionEntity;
 import com.money.manager.ex.database.WhereStatementGenerator;
 import com.money.manager.ex.domainmodel.EntityBase;
 import com.money.manager.ex.domainmodel.SplitCategory;
+import com.money.manager.ex.utils.MmxDatabaseUtils;
 
 import java.util.ArrayList;
 
@@ -100,4 +101,27 @@ public class SplitCategoriesRepository
     public boolean delete(IEntity entity) {
         return delete((ISplitTransaction) entity);
     }
+
+    /**
+     * Adds the insert to the unit of work.
+     * @param transactionInsert Index of the insert of a new main transaction in the same unit of
+     *                          work, or NOT_SET if the transaction already exists.
+     * @return index of the insert in the unit of work
+     */
+    public int insert(UnitOfWork work, SplitCategory item, int transactionInsert) {
+        // Remove any existing id value.
+        item.contentValues.remove(SplitCategory.SPLITTRANSID);
+
+        return work.insert(this, item, SplitCategory.TRANSID, transactionInsert);
+    }
+
+    public void update(UnitOfWork work, SplitCategory entity) {
+        work.update(this, entity, SplitCategory.SPLITTRANSID + "=?",
+            MmxDatabaseUtils.getArgsForId(entity.getId()), 1);
+    }
+
+    public void delete(UnitOfWork work, ISplitTransaction entity) {
+        work.delete(this, SplitCategory.SPLITTRANSID + "=?",
+            MmxDatabaseUtils.getArgsForId(entity.getId()));
+    }
 }
@@ -21,10 +21,13 @@ import android.content.ContentValues;
 import android.database.Cursor;
 
 import com.money.manager.ex.MoneyManagerApplication;
+import com.money.manager.ex.database.StatementCache;
 import com.money.manager.ex.domainmodel.EntityBase;
-import com.money.manager.ex.sync.SyncManager;
 import com.squareup.sqlbrite.BriteDatabase;
 
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 import timber.log.Timber;
 
 /**
@@ -41,6 +44,12 @@ abstract class SqlRepositoryBase<T extends EntityBase> {
     public BriteDatabase database;
     public String tableName;
 
+    /**
+     * State of the runInTransaction on the current thread, shared by all the repositories.
+     * Set while the work runs; the changes are reported after the outermost commit.
+     */
+    private static final ThreadLocal<TransactionState> sTransaction = new ThreadLocal<>();
+
     public long insert(ContentValues values) {
         return database.insert(tableName, values);
     }
@@ -98,6 +107,45 @@ abstract class SqlRepositoryBase<T extends EntityBase> {
         return database.query(query.toString(), query.selectionArgs);
     }
 
+    /**
+     * Runs the statements of the given work in one database transaction. Either all the changes
+     * are saved or none. The changes made through any repository are reported once, after the
+     * commit of the outermost transaction on this thread.
+     * A failure of a nested call rolls back the outermost transaction as well.
+     * @return true if the changes were saved. False if this or any nested call failed.
+     */
+    public boolean runInTransaction(Runnable work) {
+        TransactionState state = sTransaction.get();
+        boolean outermost = state == null;
+        if (outermost) {
+            state = new TransactionState();
+            sTransaction.set(state);
+        }
+
+        BriteDatabase.Transaction transaction = database.newTransaction();
+        try {
+            work.run();
+            if (!state.failed) {
+                transaction.markSuccessful();
+            }
+        } catch (Exception e) {
+            Timber.e(e, "running in transaction on %s", tableName);
+            state.failed = true;
+        } finally {
+            transaction.end();
+            if (outermost) {
+                sTransaction.remove();
+            }
+        }
+
+        if (state.failed) return false;
+
+        if (outermost) {
+            MoneyManagerApplication.getApp().iocComponent.dataChangeBus().tablesChanged(state.changes);
+        }
+        return true;
+    }
+
     protected boolean update(EntityBase entity, String where, String... selectionArgs) {
         boolean result = false;
 
@@ -123,9 +171,31 @@ abstract class SqlRepositoryBase<T extends EntityBase> {
     }
 
     /**
-     * Notify sync engine about the database update.
+     * Compiled statements for the frequent writes and lookups.
+     */
+    protected StatementCache statements() {
+        return MoneyManagerApplication.getApp().iocComponent.statementCache();
+    }
+
+    /**
+     * Report the change of the table to the caches and the sync engine. Changes made in
+     * runInTransaction are reported once, after the commit.
      */
-    private void notifySync() {
-        new SyncManager(MoneyManagerApplication.getApp()).dataChanged();
+    protected void notifySync() {
+        TransactionState state = sTransaction.get();
+        if (state != null) {
+            state.changes.add(tableName);
+            return;
+        }
+
+        MoneyManagerApplication.getApp().iocComponent.dataChangeBus().tableChanged(tableName);
+    }
+
+    private static class TransactionState {
+        Set<String> changes = new LinkedHashSet<>();
+        /**
+         * Set when the work of any of the nested calls failed.
+         */
+        boolean failed;
     }
 }
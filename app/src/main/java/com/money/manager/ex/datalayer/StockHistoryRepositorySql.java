@@ -20,12 +20,16 @@ package com.money.manager.ex.datalayer;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteStatement;
 
 import com.money.manager.ex.domainmodel.StockHistory;
+import com.money.manager.ex.investment.events.PriceDownloadedEvent;
 import com.money.manager.ex.utils.MmxDate;
 import com.squareup.sqlbrite.BriteDatabase;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import javax.inject.Inject;
 
@@ -39,6 +43,11 @@ public class StockHistoryRepositorySql
     extends SqlRepositoryBase<StockHistory> {
 
     private static final String TABLE_NAME = "stockhistory_v1";
+    private static final String SQL_UPSERT = "INSERT OR REPLACE INTO " + TABLE_NAME + " (" +
+        StockHistory.SYMBOL + ", " + StockHistory.DATE + ", " + StockHistory.VALUE + ", " +
+        StockHistory.UPDTYPE + ") VALUES (?, ?, ?, ?)";
+    private static final String SQL_EXISTS = "SELECT COUNT(*) FROM " + TABLE_NAME +
+        " WHERE " + StockHistory.SYMBOL + "=? AND " + StockHistory.DATE + "=?";
 
     @Inject
     public StockHistoryRepositorySql(BriteDatabase db) {
@@ -48,29 +57,108 @@ public class StockHistoryRepositorySql
     }
 
     public boolean addStockHistoryRecord(String symbol, Money price, Date date) {
-        boolean success = false;
+        List<PriceDownloadedEvent> prices = new ArrayList<>();
+        prices.add(new PriceDownloadedEvent(symbol, price, date));
 
-        boolean recordExists = recordExists(symbol, date);
-
-        // check whether to insert or update.
-        if (!recordExists) {
-            ContentValues values = getContentValues(symbol, price, date);
-            long id = database.insert(TABLE_NAME, values);
+        return addStockHistoryRecords(prices) == 1;
+    }
 
-            if (id > 0) {
-                // success
-                success = true;
-            } else {
-                Timber.w("Failed inserting stock history record.");
+    /**
+     * Inserts the prices into the history, replacing any existing price for the same symbol and
+     * date. Uses one cached compiled statement for all the records, in one transaction.
+     * @return number of records stored
+     */
+    public int addStockHistoryRecords(List<PriceDownloadedEvent> prices) {
+        if (prices.isEmpty()) return 0;
+
+        int stored = 0;
+        String updateType = Integer.toString(StockHistoryRepository.UpdateType.Online.type);
+
+        BriteDatabase.Transaction tx = database.newTransaction();
+        SQLiteStatement statement = statements().acquire(database.getWritableDatabase(), SQL_UPSERT);
+        try {
+            for (PriceDownloadedEvent price : prices) {
+                statement.bindString(1, price.symbol);
+                statement.bindString(2, new MmxDate(price.date).toIsoString());
+                statement.bindString(3, price.price.toString());
+                statement.bindString(4, updateType);
+
+                if (statement.executeInsert() > 0) {
+                    stored++;
+                } else {
+                    Timber.w("Failed storing stock history record for %s.", price.symbol);
+                }
             }
-        } else {
-            // update
-            success = updateHistory(symbol, price, date);
+
+            tx.markSuccessful();
+        } finally {
+            statements().release(statement);
+            tx.end();
+        }
+
+        if (stored > 0) {
+            notifySync();
         }
 
-        // todo: notify of changes. sync manager.
+        return stored;
+    }
+
+    /**
+     * The queries below are resolved through the UNIQUE(SYMBOL, DATE) index, so they only read
+     * the requested records, regardless of the size of the history.
+     * @return the latest price for the symbol, or null if there is no price.
+     */
+    public StockHistory latest(String symbol) {
+        Select query = new Select()
+            .from(TABLE_NAME)
+            .where(StockHistory.SYMBOL + "=?", symbol)
+            .orderBy(StockHistory.DATE + " DESC")
+            .limit(1);
 
-        return success;
+        return single(query);
+    }
+
+    /**
+     * @return the price valid on the given date, the latest one on or before it. Null if there is
+     * no price.
+     */
+    public StockHistory asOf(String symbol, Date date) {
+        Select query = new Select()
+            .from(TABLE_NAME)
+            .where(StockHistory.SYMBOL + "=? AND " + StockHistory.DATE + "<=?",
+                symbol, new MmxDate(date).toIsoString())
+            .orderBy(StockHistory.DATE + " DESC")
+            .limit(1);
+
+        return single(query);
+    }
+
+    /**
+     * @return the prices between the given dates (inclusive), ordered by date.
+     */
+    public List<StockHistory> range(String symbol, Date from, Date to) {
+        Select query = new Select()
+            .from(TABLE_NAME)
+            .where(StockHistory.SYMBOL + "=? AND " + StockHistory.DATE + " BETWEEN ? AND ?",
+                symbol, new MmxDate(from).toIsoString(), new MmxDate(to).toIsoString())
+            .orderBy(StockHistory.DATE);
+
+        List<StockHistory> result = new ArrayList<>();
+
+        Cursor c = query(query);
+        if (c == null) return result;
+
+        try {
+            while (c.moveToNext()) {
+                StockHistory history = new StockHistory();
+                history.loadFromCursor(c);
+                result.add(history);
+            }
+        } finally {
+            c.close();
+        }
+
+        return result;
     }
 
     public ContentValues getContentValues(String symbol, Money price, Date date) {
@@ -86,24 +174,9 @@ public class StockHistoryRepositorySql
     }
 
     public boolean recordExists(String symbol, Date date) {
-        boolean result;
-
         String isoDate = new MmxDate(date).toIsoString();
 
-        String sql = new Select()
-            .from(TABLE_NAME)
-            .where(StockHistory.SYMBOL + "=? AND " + StockHistory.DATE + "=?")
-            .toString();
-
-        Cursor cursor = database.query(sql, symbol, isoDate);
-        if (cursor == null) return false;
-
-        int records = cursor.getCount();
-        result = records > 0;
-
-        cursor.close();
-
-        return result;
+        return statements().queryForLong(database.getReadableDatabase(), SQL_EXISTS, symbol, isoDate) > 0;
     }
 
     public boolean updateHistory(String symbol, Money price, Date date) {
@@ -121,4 +194,22 @@ public class StockHistoryRepositorySql
         return result;
     }
 
+    // Private
+
+    private StockHistory single(Select query) {
+        Cursor c = query(query);
+        if (c == null) return null;
+
+        StockHistory history = null;
+        try {
+            if (c.moveToFirst()) {
+                history = new StockHistory();
+                history.loadFromCursor(c);
+            }
+        } finally {
+            c.close();
+        }
+
+        return history;
+    }
 }
@@ -42,9 +42,11 @@ import info.javaperformance.money.Money;
 public class StockRepository
     extends RepositoryBase<Stock> {
 
+    public static final String TABLE_NAME = "stock_v1";
+
     @Inject
     public StockRepository(Context context) {
-        super(context, "stock_v1", DatasetType.TABLE, "stock");
+        super(context, TABLE_NAME, DatasetType.TABLE, "stock");
 
     }
 
@@ -178,8 +180,6 @@ public class StockRepository
         for (int id : ids) {
             Stock stock = load(id);
             stock.setCurrentPrice(price);
-            // recalculate & assign the value
-            Money value = stock.getValue();
 
             save(stock);
         }
@@ -18,11 +18,19 @@
 package com.money.manager.ex.datalayer;
 
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 
 import com.money.manager.ex.Constants;
+import com.money.manager.ex.database.AccountBalanceLedger;
 import com.money.manager.ex.domainmodel.Stock;
+import com.money.manager.ex.utils.MmxDatabaseUtils;
 import com.squareup.sqlbrite.BriteDatabase;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
 import javax.inject.Inject;
 
 import info.javaperformance.money.Money;
@@ -36,6 +44,12 @@ public class StockRepositorySql
 
     public static final String TABLE_NAME = "stock_v1";
 
+    /**
+     * Maximum number of symbols in one statement. Keeps the number of arguments under the
+     * SQLite limit of 999.
+     */
+    private static final int MAX_SYMBOLS_PER_STATEMENT = 200;
+
     @Inject
     public StockRepositorySql(BriteDatabase db) {
         super(TABLE_NAME, db);
@@ -65,20 +79,46 @@ public class StockRepositorySql
      * @param price Stock price
      */
     public void updateCurrentPrice(String symbol, Money price) {
-        int[] ids = findIdsBySymbol(symbol);
-        if (ids == null) return;
-
-        // recalculate value
-
-        for (int id : ids) {
-            Stock stock = load(id);
-            stock.setCurrentPrice(price);
-            // recalculate & assign the value
-            Money value = stock.getValue();
+        updateCurrentPrices(Collections.singletonMap(symbol, price));
+    }
 
-            save(stock);
+    /**
+     * Update price and value for all the records with the given symbols, and the balances of the
+     * accounts holding them. Uses one set-based statement per group of symbols instead of
+     * loading and saving every record.
+     * @param prices Stock prices by symbol
+     */
+    public void updateCurrentPrices(Map<String, Money> prices) {
+        if (prices.isEmpty()) return;
+
+        SQLiteDatabase db = database.getWritableDatabase();
+        List<String> symbols = new ArrayList<>(prices.keySet());
+        List<Integer> accountIds = new ArrayList<>();
+
+        BriteDatabase.Transaction tx = database.newTransaction();
+        try {
+            for (int start = 0; start < symbols.size(); start += MAX_SYMBOLS_PER_STATEMENT) {
+                List<String> group = symbols.subList(start,
+                    Math.min(symbols.size(), start + MAX_SYMBOLS_PER_STATEMENT));
+
+                updatePrices(db, group, prices);
+
+                for (int accountId : findAccountsHolding(db, group)) {
+                    if (!accountIds.contains(accountId)) {
+                        accountIds.add(accountId);
+                    }
+                }
+            }
+
+            // keep the investment account balances current.
+            new AccountBalanceLedger(db).refreshStockValue(accountIds);
+
+            tx.markSuccessful();
+        } finally {
+            tx.end();
         }
-        // todo: update notification for sync
+
+        notifySync();
     }
 
     public boolean save(Stock stock) {
@@ -89,29 +129,42 @@ public class StockRepositorySql
 
     // Private
 
-    /**
-     * Retrieves all record ids which refer the given symbol.
-     * @return array of ids of records which contain the symbol.
-     */
-    private int[] findIdsBySymbol(String symbol) {
-        int[] result;
+    private void updatePrices(SQLiteDatabase db, List<String> symbols, Map<String, Money> prices) {
+        String inSymbols = StockFields.SYMBOL + " IN (" +
+            MmxDatabaseUtils.makePlaceholders(symbols.size()) + ")";
+
+        StringBuilder sql = new StringBuilder("UPDATE " + tableName + " SET " +
+            StockFields.CURRENTPRICE + " = CASE " + StockFields.SYMBOL);
+        List<Object> args = new ArrayList<>(symbols.size() * 3);
+        for (String symbol : symbols) {
+            sql.append(" WHEN ? THEN ?");
+            args.add(symbol);
+            args.add(prices.get(symbol).toString());
+        }
+        sql.append(" END WHERE ").append(inSymbols);
+        args.addAll(symbols);
+
+        db.execSQL(sql.toString(), args.toArray());
 
-        String sql = new Select(StockFields.STOCKID)
-            .from(tableName)
-            .where(StockFields.SYMBOL + "=?")
-            .toString();
+        // value = current price * num shares
+        db.execSQL("UPDATE " + tableName + " SET " +
+                StockFields.VALUE + " = " + StockFields.NUMSHARES + " * " + StockFields.CURRENTPRICE +
+                " WHERE " + inSymbols,
+            symbols.toArray());
+    }
 
-        Cursor cursor = database.query(sql, symbol);
-        if (cursor == null) return null;
+    private List<Integer> findAccountsHolding(SQLiteDatabase db, List<String> symbols) {
+        List<Integer> result = new ArrayList<>();
 
-        int records = cursor.getCount();
-        result = new int[records];
+        Cursor c = db.rawQuery("SELECT DISTINCT " + StockFields.HELDAT + " FROM " + tableName +
+                " WHERE " + StockFields.SYMBOL + " IN (" + MmxDatabaseUtils.makePlaceholders(symbols.size()) + ")",
+            symbols.toArray(new String[symbols.size()]));
+        if (c == null) return result;
 
-        for (int i = 0; i < records; i++) {
-            cursor.moveToNext();
-            result[i] = cursor.getInt(cursor.getColumnIndex(StockFields.STOCKID));
+        while (c.moveToNext()) {
+            result.add(c.getInt(0));
         }
-        cursor.close();
+        c.close();
 
         return result;
     }
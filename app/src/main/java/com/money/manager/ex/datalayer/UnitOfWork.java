@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.datalayer;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.os.RemoteException;
+
+import com.money.manager.ex.Constants;
+import com.money.manager.ex.MmxContentProvider;
+import com.money.manager.ex.domainmodel.EntityBase;
+
+import java.util.ArrayList;
+
+import timber.log.Timber;
+
+/**
+ * Collects inserts, updates and deletes through the repositories and stores them all in one
+ * database transaction on commit. Either all the changes are saved or none.
+ * Observers are notified once per changed table, after the commit.
+ */
+public class UnitOfWork {
+
+    public UnitOfWork(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    private Context context;
+    private ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+    private ContentProviderResult[] results;
+
+    /**
+     * @return index of the operation, used to reference the new id.
+     */
+    public int insert(RepositoryBase repository, EntityBase entity) {
+        return insert(repository, entity, null, Constants.NOT_SET);
+    }
+
+    /**
+     * Inserts a record that references a record inserted earlier in the same unit of work.
+     * @param idColumn Column that receives the id of the referenced record.
+     * @param insertIndex Index of the referenced insert. Ignored if NOT_SET.
+     * @return index of the operation, used to reference the new id.
+     */
+    public int insert(RepositoryBase repository, EntityBase entity, String idColumn, int insertIndex) {
+        ContentValues values = new ContentValues(entity.contentValues);
+        // sanitize
+        values.remove("_id");
+
+        ContentProviderOperation.Builder builder = ContentProviderOperation.newInsert(repository.getUri())
+            .withValues(values);
+        if (insertIndex != Constants.NOT_SET) {
+            builder.withValueBackReference(idColumn, insertIndex);
+        }
+
+        return add(builder.build());
+    }
+
+    public void update(RepositoryBase repository, EntityBase entity, String where, String[] args) {
+        update(repository, entity, where, args, Constants.NOT_SET);
+    }
+
+    /**
+     * @param expectedCount Number of rows the update must change, otherwise none of the changes
+     *                      are saved. Ignored if NOT_SET.
+     */
+    public void update(RepositoryBase repository, EntityBase entity, String where, String[] args,
+                       int expectedCount) {
+        ContentValues values = new ContentValues(entity.contentValues);
+        // remove "_id" from the values.
+        values.remove("_id");
+
+        ContentProviderOperation.Builder builder = ContentProviderOperation.newUpdate(repository.getUri())
+            .withValues(values)
+            .withSelection(where, args);
+        if (expectedCount != Constants.NOT_SET) {
+            builder.withExpectedCount(expectedCount);
+        }
+
+        add(builder.build());
+    }
+
+    public void delete(RepositoryBase repository, String where, String[] args) {
+        add(ContentProviderOperation.newDelete(repository.getUri())
+            .withSelection(where, args)
+            .build());
+    }
+
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    /**
+     * Stores all the changes in one transaction.
+     * @return true if all the changes were saved, false if none were.
+     */
+    public boolean commit() {
+        if (operations.isEmpty()) return true;
+
+        try {
+            results = context.getContentResolver()
+                .applyBatch(MmxContentProvider.getAuthority(), operations);
+        } catch (RemoteException | OperationApplicationException e) {
+            Timber.e(e, "committing unit of work");
+            return false;
+        } finally {
+            operations = new ArrayList<>();
+        }
+        return true;
+    }
+
+    /**
+     * @param insertIndex Index returned by insert.
+     * @return id of the inserted record, after a successful commit.
+     */
+    public int getInsertedId(int insertIndex) {
+        if (results == null || results[insertIndex].uri == null) return Constants.NOT_SET;
+
+        return (int) ContentUris.parseId(results[insertIndex].uri);
+    }
+
+    private int add(ContentProviderOperation operation) {
+        operations.add(operation);
+        return operations.size() - 1;
+    }
+}
@@ -23,6 +23,8 @@ import android.os.Parcel;
 
 import java.util.Date;
 
+import info.javaperformance.money.Money;
+
 /**
  * A stock history record.
  */
@@ -55,7 +57,15 @@ public class StockHistory
         return getInt(HISTID);
     }
 
+    public String getSymbol() {
+        return getString(SYMBOL);
+    }
+
     public Date getDate() {
         return getDate(DATE);
     }
+
+    public Money getValue() {
+        return getMoney(VALUE);
+    }
 }
@@ -42,17 +42,18 @@ import com.afollestad.materialdialogs.DialogAction;
 import com.afollestad.materialdialogs.MaterialDialog;
 import com.mikepenz.google_material_typeface_library.GoogleMaterial;
 import com.mikepenz.iconics.IconicsDrawable;
+import com.money.manager.ex.MoneyManagerApplication;
 import com.money.manager.ex.PayeeActivity;
 import com.money.manager.ex.R;
 import com.money.manager.ex.adapter.MoneySimpleCursorAdapter;
 import com.money.manager.ex.core.ContextMenuIds;
 import com.money.manager.ex.core.IntentFactory;
 import com.money.manager.ex.core.UIHelper;
+import com.money.manager.ex.datalayer.NameIndex;
 import com.money.manager.ex.datalayer.PayeeRepository;
-import com.money.manager.ex.datalayer.Select;
 import com.money.manager.ex.servicelayer.PayeeService;
 import com.money.manager.ex.common.BaseListFragment;
-import com.money.manager.ex.common.MmxCursorLoader;
+import com.money.manager.ex.common.NameIndexLoader;
 import com.money.manager.ex.database.SQLTypeTransaction;
 import com.money.manager.ex.domainmodel.Payee;
 import com.money.manager.ex.search.SearchParameters;
@@ -60,6 +61,8 @@ import com.money.manager.ex.settings.AppSettings;
 import com.money.manager.ex.utils.AlertDialogWrapper;
 import com.shamanland.fonticon.FontIconDrawable;
 
+import javax.inject.Inject;
+
 /**
  * List of Payees. Used as a picker/selector also.
  */
@@ -73,8 +76,7 @@ public class PayeeListFragment
 //    private static final int MENU_ITEM_ADD = 1;
     private static final int ID_LOADER_PAYEE = 0;
 
-    private static final String SORT_BY_USAGE = "(SELECT COUNT(*) FROM CHECKINGACCOUNT_V1 WHERE PAYEE_V1.PAYEEID = CHECKINGACCOUNT_V1.PAYEEID) DESC";
-    private static final String SORT_BY_NAME = "UPPER(" + Payee.PAYEENAME + ")";
+    @Inject NameIndex nameIndex;
 
     private Context mContext;
     private String mCurFilter;
@@ -84,6 +86,8 @@ public class PayeeListFragment
     public void onActivityCreated(Bundle savedInstanceState) {
         super.onActivityCreated(savedInstanceState);
 
+        MoneyManagerApplication.getApp().iocComponent.inject(this);
+
         mContext = getActivity();
 
         setSearchMenuVisible(true);
@@ -254,18 +258,8 @@ public class PayeeListFragment
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
         switch (id) {
             case ID_LOADER_PAYEE:
-                String whereClause = null;
-                String selectionArgs[] = null;
-                if (!TextUtils.isEmpty(mCurFilter)) {
-                    whereClause = Payee.PAYEENAME + " LIKE ?"; // + mCurFilter + "%'";
-                    selectionArgs = new String[]{mCurFilter + '%'};
-                }
-                PayeeRepository repo = new PayeeRepository(getActivity());
-                Select query = new Select(repo.getAllColumns())
-                        .where(whereClause, selectionArgs)
-                        .orderBy(mSort == 1 ? SORT_BY_USAGE : SORT_BY_NAME);
-
-                return new MmxCursorLoader(getActivity(), repo.getUri(), query);
+                // filtered in memory, without a query per keystroke.
+                return NameIndexLoader.forPayees(getActivity(), nameIndex, mCurFilter, mSort == 1);
         }
 
         return null;
@@ -288,9 +282,8 @@ public class PayeeListFragment
         switch (loader.getId()) {
             case ID_LOADER_PAYEE:
                 MoneySimpleCursorAdapter adapter = (MoneySimpleCursorAdapter) getListAdapter();
-                String highlightFilter = mCurFilter != null
-                        ? mCurFilter.replace("%", "")
-                        : "";
+                // the highlight compares with the folded names.
+                String highlightFilter = NameIndex.fold(mCurFilter);
                 adapter.setHighlightFilter(highlightFilter);
 //                adapter.swapCursor(data);
                 adapter.changeCursor(data);
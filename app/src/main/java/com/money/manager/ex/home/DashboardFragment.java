@@ -18,9 +18,6 @@
 package com.money.manager.ex.home;
 
 import android.content.Context;
-import android.database.Cursor;
-import android.database.sqlite.SQLiteQueryBuilder;
-import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
@@ -43,22 +40,19 @@ import android.widget.TableLayout;
 import android.widget.TableRow;
 import android.widget.TextView;
 
+import com.money.manager.ex.MoneyManagerApplication;
 import com.money.manager.ex.R;
-import com.money.manager.ex.common.MmxCursorLoader;
 import com.money.manager.ex.core.Core;
 import com.money.manager.ex.core.UIHelper;
 import com.money.manager.ex.currency.CurrencyService;
-import com.money.manager.ex.database.QueryBillDeposits;
-import com.money.manager.ex.database.QueryReportIncomeVsExpenses;
-import com.money.manager.ex.database.SQLDataSet;
-import com.money.manager.ex.database.ViewMobileData;
-import com.money.manager.ex.datalayer.Select;
+import com.money.manager.ex.database.DataChangeBus;
 import com.money.manager.ex.reports.IncomeVsExpensesChartFragment;
 import com.money.manager.ex.utils.MmxDate;
 import com.money.manager.ex.view.RobotoTextView;
-import com.money.manager.ex.viewmodels.IncomeVsExpenseReportEntity;
 
-import java.util.Calendar;
+import java.util.List;
+
+import javax.inject.Inject;
 
 import info.javaperformance.money.MoneyFactory;
 
@@ -67,24 +61,31 @@ import info.javaperformance.money.MoneyFactory;
  */
 public class DashboardFragment
     extends Fragment
-    implements LoaderManager.LoaderCallbacks<Cursor> {
-
-    // ID LOADER
-    private static final int ID_LOADER_SCREEN1 = 0x000;
-    private static final int ID_LOADER_SCREEN2 = 0x001;
-    private static final int ID_LOADER_SCREEN3 = 0x002;
-    private static final int ID_LOADER_SCREEN4 = 0x003;
+    implements LoaderManager.LoaderCallbacks<DashboardSnapshot> {
+
+    private static final int ID_LOADER_DASHBOARD = 0x000;
+    // part screens
+    private static final int SCREEN1 = 0;
+    private static final int SCREEN2 = 1;
+    private static final int SCREEN3 = 2;
+    private static final int SCREEN4 = 3;
     // Padding
     final int padding_in_dp = 6; // 6 dps
     double scale;
     int padding_in_px;
 
+    @Inject DashboardSnapshotCache snapshotCache;
+    @Inject DataChangeBus changeBus;
+
     // array of part screen
     LinearLayout[] linearScreens;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+
+        MoneyManagerApplication.getApp().iocComponent.inject(this);
+
         //set has option menu to close dashboard item
         setHasOptionsMenu(true);
     }
@@ -97,12 +98,12 @@ public class DashboardFragment
         ViewGroup layout = (ViewGroup) inflater.inflate(R.layout.dashboard_fragment, container, false);
         if (layout == null)
             return null;
-        linearScreens = new LinearLayout[ID_LOADER_SCREEN4 + 1];
+        linearScreens = new LinearLayout[SCREEN4 + 1];
         // get sub linearlayout
-        linearScreens[ID_LOADER_SCREEN1] = (LinearLayout) layout.findViewById(R.id.linearLayoutScreen1);
-        linearScreens[ID_LOADER_SCREEN2] = (LinearLayout) layout.findViewById(R.id.linearLayoutScreen2);
-        linearScreens[ID_LOADER_SCREEN3] = (LinearLayout) layout.findViewById(R.id.linearLayoutScreen3);
-        linearScreens[ID_LOADER_SCREEN4] = (LinearLayout) layout.findViewById(R.id.linearLayoutScreen4);
+        linearScreens[SCREEN1] = (LinearLayout) layout.findViewById(R.id.linearLayoutScreen1);
+        linearScreens[SCREEN2] = (LinearLayout) layout.findViewById(R.id.linearLayoutScreen2);
+        linearScreens[SCREEN3] = (LinearLayout) layout.findViewById(R.id.linearLayoutScreen3);
+        linearScreens[SCREEN4] = (LinearLayout) layout.findViewById(R.id.linearLayoutScreen4);
         // calculate padding
         scale = getResources().getDisplayMetrics().density;
         padding_in_px = (int) (padding_in_dp * scale + 0.5f);
@@ -125,154 +126,64 @@ public class DashboardFragment
             itemDashboard.setVisible(false);
     }
 
+    /**
+     * All the parts are loaded together, from the cached dashboard snapshot.
+     */
     public void loadData() {
-        // restart loader
-        if (linearScreens[ID_LOADER_SCREEN1].getVisibility() == View.VISIBLE)
-            getLoaderManager().restartLoader(ID_LOADER_SCREEN1, null, this);
-
-        if (linearScreens[ID_LOADER_SCREEN2].getVisibility() == View.VISIBLE)
-            getLoaderManager().restartLoader(ID_LOADER_SCREEN2, null, this);
-
-        if (linearScreens[ID_LOADER_SCREEN3].getVisibility() == View.VISIBLE)
-            getLoaderManager().restartLoader(ID_LOADER_SCREEN3, null, this);
-
-        if (linearScreens[ID_LOADER_SCREEN4].getVisibility() == View.VISIBLE)
-            getLoaderManager().restartLoader(ID_LOADER_SCREEN4, null, this);
+        getLoaderManager().restartLoader(ID_LOADER_DASHBOARD, null, this);
     }
 
     @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        // add progress bar
-        ProgressBar progressBar = new ProgressBar(getActivity());
-        LinearLayout.LayoutParams layoutParams = new LinearLayout.LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT);
-        layoutParams.gravity = Gravity.CENTER;
-        progressBar.setLayoutParams(layoutParams);
-        progressBar.setIndeterminate(true);
-
-        if (id <= ID_LOADER_SCREEN4) {
-            linearScreens[id].removeAllViews();
-            // add view
-            linearScreens[id].addView(progressBar);
+    public Loader<DashboardSnapshot> onCreateLoader(int id, Bundle args) {
+        for (LinearLayout screen : linearScreens) {
+            if (screen.getVisibility() != View.VISIBLE) continue;
+
+            // add progress bar
+            ProgressBar progressBar = new ProgressBar(getActivity());
+            LinearLayout.LayoutParams layoutParams = new LinearLayout.LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT);
+            layoutParams.gravity = Gravity.CENTER;
+            progressBar.setLayoutParams(layoutParams);
+            progressBar.setIndeterminate(true);
+
+            screen.removeAllViews();
+            screen.addView(progressBar);
         }
 
-        Select query;
-
-        // start loader
-        switch (id) {
-            case ID_LOADER_SCREEN1:
-                QueryReportIncomeVsExpenses report = new QueryReportIncomeVsExpenses(getActivity());
-                query = new Select(report.getAllColumns())
-                    .where(IncomeVsExpenseReportEntity.Month + "=" + Integer.toString(Calendar.getInstance().get(Calendar.MONTH) + 1) +
-                            " AND " +
-                            IncomeVsExpenseReportEntity.YEAR + "=" + Integer.toString(Calendar.getInstance().get(Calendar.YEAR)));
-
-                return new MmxCursorLoader(getActivity(), report.getUri(), query);
+        return new DashboardSnapshotLoader(getActivity(), snapshotCache, changeBus);
+    }
 
-            case ID_LOADER_SCREEN2:
-                query = new Select().where(prepareQueryTopWithdrawals());
-                return new MmxCursorLoader(getActivity(), new SQLDataSet().getUri(), query);
+    @Override
+    public void onLoadFinished(Loader<DashboardSnapshot> loader, DashboardSnapshot data) {
+        for (LinearLayout screen : linearScreens) {
+            screen.removeAllViews();
+        }
 
-            case ID_LOADER_SCREEN3:
-                query = new Select().where(prepareQueryTopPayees());
-                return new MmxCursorLoader(getActivity(), new SQLDataSet().getUri(), query);
+        if (linearScreens[SCREEN1].getVisibility() == View.VISIBLE)
+            showChartIncomeVsExpensesCurrentMonth(data);
 
-            case ID_LOADER_SCREEN4:
-                QueryBillDeposits billDeposits = new QueryBillDeposits(getActivity());
-                query = new Select(billDeposits.getAllColumns())
-                    .where(QueryBillDeposits.DAYSLEFT + "<=10")
-                    .orderBy(QueryBillDeposits.DAYSLEFT);
+        if (linearScreens[SCREEN2].getVisibility() == View.VISIBLE)
+            linearScreens[SCREEN2].addView(showTableLayoutTopWithdrawals(data.topWithdrawals));
 
-                return new MmxCursorLoader(getActivity(), billDeposits.getUri(), query);
-        }
-        return null;
-    }
+        if (linearScreens[SCREEN3].getVisibility() == View.VISIBLE)
+            linearScreens[SCREEN3].addView(showTableLayoutTopPayees(data.topPayees));
 
-    @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        if (loader.getId() <= ID_LOADER_SCREEN4)
-            linearScreens[loader.getId()].removeAllViews();
-
-        switch (loader.getId()) {
-            case ID_LOADER_SCREEN1:
-                showChartIncomeVsExpensesCurrentMonth(data);
-                break;
-            case ID_LOADER_SCREEN2:
-                linearScreens[loader.getId()].addView(showTableLayoutTopWithdrawals(data));
-                break;
-            case ID_LOADER_SCREEN3:
-                linearScreens[loader.getId()].addView(showTableLayoutTopPayees(data));
-                break;
-            case ID_LOADER_SCREEN4:
-                linearScreens[loader.getId()].addView(showTableLayoutUpComingTransactions(data));
-                break;
-        }
+        if (linearScreens[SCREEN4].getVisibility() == View.VISIBLE)
+            linearScreens[SCREEN4].addView(showTableLayoutUpComingTransactions(data.upcomingBills));
     }
 
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
+    public void onLoaderReset(Loader<DashboardSnapshot> loader) {
 
     }
 
     // End loader
 
-    //@SuppressWarnings("deprecation")
-    private String prepareQueryTopWithdrawals() {
-        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
-        ViewMobileData mobileData = new ViewMobileData(getContext());
-        // data to compose builder
-        String[] projectionIn = new String[]{"ROWID AS _id", ViewMobileData.CATEGID, ViewMobileData.Category, ViewMobileData.SubcategID,
-                ViewMobileData.Subcategory, "SUM(" + ViewMobileData.AmountBaseConvRate + ") AS TOTAL", "COUNT(*) AS NUM"};
-
-        String selection = ViewMobileData.Status + "<>'V' AND " + ViewMobileData.TransactionType + " IN ('Withdrawal')"
-                + " AND (julianday(date('now')) - julianday(" + ViewMobileData.Date + ") <= 30)";
-
-        String groupBy = ViewMobileData.CATEGID + ", " + ViewMobileData.Category + ", " + ViewMobileData.SubcategID + ", " + ViewMobileData.Subcategory;
-        String having = "SUM(" + ViewMobileData.AmountBaseConvRate + ") < 0";
-        String sortOrder = "ABS(SUM(" + ViewMobileData.AmountBaseConvRate + ")) DESC";
-        String limit = "10";
-        // compose builder
-        builder.setTables(mobileData.getSource());
-        // return query
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR2) {
-            return builder.buildQuery(projectionIn, selection, groupBy, having, sortOrder, limit);
-        } else {
-            return builder.buildQuery(projectionIn, selection, null, groupBy, having, sortOrder, limit);
-        }
-    }
-
-    @SuppressWarnings("deprecation")
-    private String prepareQueryTopPayees() {
-        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
-        ViewMobileData mobileData = new ViewMobileData(getContext());
-        // data to compose builder
-        String[] projectionIn = new String[]{"ROWID AS _id",
-                ViewMobileData.PAYEEID, ViewMobileData.PAYEE,
-                "ABS(SUM(" + ViewMobileData.AmountBaseConvRate + ")) AS TOTAL",
-                "COUNT(*) AS NUM"};
-
-        String selection = ViewMobileData.Status + "<>'V' AND " + ViewMobileData.TransactionType
-                + " IN ('Withdrawal', 'Deposit') AND (julianday(date('now')) - julianday(" + ViewMobileData.Date + ") <= 30)";
-
-        String groupBy = ViewMobileData.PAYEEID + ", " + ViewMobileData.PAYEE;
-        String having = null;
-        String sortOrder = "ABS(SUM(" + ViewMobileData.AmountBaseConvRate + ")) DESC";
-        String limit = "10";
-        // compose builder
-        builder.setTables(mobileData.getSource());
-        // return query
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR2) {
-            return builder.buildQuery(projectionIn, selection, groupBy, having, sortOrder, limit);
-        } else {
-            return builder.buildQuery(projectionIn, selection, null, groupBy, having, sortOrder, limit);
-        }
-    }
-
     /*
      * Show Chart of Income Vs. Expenses Cur
      */
-    private void showChartIncomeVsExpensesCurrentMonth(Cursor cursor) {
-        // move to first
-        if (!cursor.moveToFirst())
+    private void showChartIncomeVsExpensesCurrentMonth(DashboardSnapshot snapshot) {
+        // no transactions in the month
+        if (snapshot.monthCount == 0)
             return;
         // arrays
         double[] incomes = new double[3];
@@ -280,11 +191,11 @@ public class DashboardFragment
         String[] titles = new String[3];
 
         // incomes and expenses
-        incomes[1] = cursor.getDouble(cursor.getColumnIndex(IncomeVsExpenseReportEntity.Income));
-        expenses[1] = Math.abs(cursor.getDouble(cursor.getColumnIndex(IncomeVsExpenseReportEntity.Expenses)));
+        incomes[1] = snapshot.income;
+        expenses[1] = Math.abs(snapshot.expenses);
         // titles
-        int year = cursor.getInt(cursor.getColumnIndex(IncomeVsExpenseReportEntity.YEAR));
-        int month = cursor.getInt(cursor.getColumnIndex(IncomeVsExpenseReportEntity.Month));
+        int year = snapshot.year;
+        int month = snapshot.month;
 
         // format month
 //        Calendar calendar = Calendar.getInstance();
@@ -320,7 +231,7 @@ public class DashboardFragment
         }
     }
 
-    private View showTableLayoutTopWithdrawals(Cursor cursor) {
+    private View showTableLayoutTopWithdrawals(List<DashboardSnapshot.Total> totals) {
         LayoutInflater inflater = (LayoutInflater) getActivity().getSystemService(Context.LAYOUT_INFLATER_SERVICE);
         LinearLayout layout = (LinearLayout) inflater.inflate(R.layout.dashboard_summary_layout, null);
         CurrencyService currencyService = new CurrencyService(getActivity().getApplicationContext());
@@ -335,14 +246,14 @@ public class DashboardFragment
                 "<small><b>" + getString(R.string.quantity) + "</b></small>", "<small><b>" + getString(R.string.summary) + "</b></small>"}, new Float[]{1f,
                 null, null}, new Integer[]{null, Gravity.RIGHT, Gravity.RIGHT}, new Integer[][]{null, {0, 0, padding_in_px, 0}, null}));
         // add rows
-        while (cursor.moveToNext()) {
+        for (DashboardSnapshot.Total item : totals) {
             // load values
-            String category = "<b>" + cursor.getString(cursor.getColumnIndex(ViewMobileData.Category)) + "</b>";
-            if (!TextUtils.isEmpty(cursor.getString(cursor.getColumnIndex(ViewMobileData.Subcategory)))) {
-                category += " : " + cursor.getString(cursor.getColumnIndex(ViewMobileData.Subcategory));
+            String category = "<b>" + item.name + "</b>";
+            if (!TextUtils.isEmpty(item.subName)) {
+                category += " : " + item.subName;
             }
-            double total = cursor.getDouble(cursor.getColumnIndex("TOTAL"));
-            int num = cursor.getInt(cursor.getColumnIndex("NUM"));
+            double total = item.total;
+            int num = item.count;
             // Add Row
             tableLayout.addView(createTableRow(new String[]{"<small>" + category + "</small>",
                             "<small><i>" + Integer.toString(num) + "</i></small>",
@@ -355,7 +266,7 @@ public class DashboardFragment
         return layout;
     }
 
-    private View showTableLayoutTopPayees(Cursor cursor) {
+    private View showTableLayoutTopPayees(List<DashboardSnapshot.Total> totals) {
         LayoutInflater inflater = (LayoutInflater) getActivity().getSystemService(Context.LAYOUT_INFLATER_SERVICE);
         LinearLayout layout = (LinearLayout) inflater.inflate(R.layout.dashboard_summary_layout, null);
         CurrencyService currencyService = new CurrencyService(getActivity().getApplicationContext());
@@ -370,11 +281,11 @@ public class DashboardFragment
                 "<small><b>" + getString(R.string.quantity) + "</b></small>", "<small><b>" + getString(R.string.summary) + "</b></small>"}, new Float[]{1f,
                 null, null}, new Integer[]{null, Gravity.RIGHT, Gravity.RIGHT}, new Integer[][]{null, {0, 0, padding_in_px, 0}, null}));
         // add rows
-        while (cursor.moveToNext()) {
+        for (DashboardSnapshot.Total item : totals) {
             // load values
-            String payee = cursor.getString(cursor.getColumnIndex(ViewMobileData.PAYEE));
-            double total = cursor.getDouble(cursor.getColumnIndex("TOTAL"));
-            int num = cursor.getInt(cursor.getColumnIndex("NUM"));
+            String payee = item.name;
+            double total = item.total;
+            int num = item.count;
             // Add Row
             tableLayout.addView(createTableRow(new String[]{"<small>" + payee + "</small>",
                             "<small><i>" + Integer.toString(num) + "</i></small>",
@@ -389,7 +300,7 @@ public class DashboardFragment
         return layout;
     }
 
-    private View showTableLayoutUpComingTransactions(Cursor cursor) {
+    private View showTableLayoutUpComingTransactions(List<DashboardSnapshot.UpcomingBill> bills) {
         LayoutInflater inflater = (LayoutInflater) getActivity().getSystemService(Context.LAYOUT_INFLATER_SERVICE);
         LinearLayout layout = (LinearLayout) inflater.inflate(R.layout.dashboard_summary_layout, null);
         CurrencyService currencyService = new CurrencyService(getActivity().getApplicationContext());
@@ -401,12 +312,12 @@ public class DashboardFragment
         // Table
         TableLayout tableLayout = (TableLayout) layout.findViewById(R.id.tableLayoutSummary);
         // add rows
-        while (cursor.moveToNext()) {
+        for (DashboardSnapshot.UpcomingBill bill : bills) {
             // load values
-            String payee = "<i>" + cursor.getString(cursor.getColumnIndex(QueryBillDeposits.PAYEENAME)) + "</i>";
-            double total = cursor.getDouble(cursor.getColumnIndex(QueryBillDeposits.AMOUNT));
-            int daysLeft = cursor.getInt(cursor.getColumnIndex(QueryBillDeposits.DAYSLEFT));
-            int currencyId = cursor.getInt(cursor.getColumnIndex(QueryBillDeposits.CURRENCYID));
+            String payee = "<i>" + bill.payeeName + "</i>";
+            double total = bill.amount;
+            int daysLeft = bill.daysLeft;
+            int currencyId = bill.currencyId;
             String daysLeftText = "";
             daysLeftText = Integer.toString(Math.abs(daysLeft)) + " " + getString(daysLeft >= 0 ? R.string.days_remaining : R.string.days_overdue);
             TableRow row = createTableRow(new String[]{"<small>" + payee + "</small>",
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.home;
+
+import com.money.manager.ex.database.DatabaseKey;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The data shown on the dashboard, calculated in one pass over the recent transactions
+ * (see DashboardSnapshotCache). Amounts are in the base currency, except for the upcoming
+ * bills, which are in the account currency.
+ * The snapshot is shared and must not be modified.
+ */
+public class DashboardSnapshot {
+
+    DatabaseKey database;
+    /**
+     * The day the snapshot was calculated for, yyyy-MM-dd.
+     */
+    String day;
+
+    // Income vs. expenses in the current month.
+
+    int year;
+    /**
+     * 1-based.
+     */
+    int month;
+    double income;
+    /**
+     * Negative, as in the income vs. expenses report.
+     */
+    double expenses;
+    /**
+     * Number of transactions in the month. The chart is not shown if there are none.
+     */
+    int monthCount;
+
+    // Last 30 days.
+
+    List<Total> topWithdrawals = new ArrayList<>();
+    List<Total> topPayees = new ArrayList<>();
+
+    List<UpcomingBill> upcomingBills = new ArrayList<>();
+
+    /**
+     * Total per category/subcategory or per payee.
+     */
+    static class Total {
+        Total(int id, int subId, String name, String subName) {
+            this.id = id;
+            this.subId = subId;
+            this.name = name;
+            this.subName = subName;
+        }
+
+        int id;
+        int subId;
+        String name;
+        String subName;
+        double total;
+        int count;
+    }
+
+    static class UpcomingBill {
+        String payeeName;
+        double amount;
+        int daysLeft;
+        int currencyId;
+    }
+}
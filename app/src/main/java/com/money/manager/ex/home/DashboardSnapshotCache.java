@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.home;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.money.manager.ex.MoneyManagerApplication;
+import com.money.manager.ex.core.TransactionTypes;
+import com.money.manager.ex.currency.CurrencyRepository;
+import com.money.manager.ex.currency.ExchangeRates;
+import com.money.manager.ex.database.DataChangeBus;
+import com.money.manager.ex.database.DatabaseKey;
+import com.money.manager.ex.database.QueryBillDeposits;
+import com.money.manager.ex.datalayer.AccountRepository;
+import com.money.manager.ex.datalayer.AccountTransactionRepository;
+import com.money.manager.ex.datalayer.CategoryRepository;
+import com.money.manager.ex.datalayer.PayeeRepository;
+import com.money.manager.ex.datalayer.RecurringTransactionRepository;
+import com.money.manager.ex.datalayer.SplitCategoriesRepository;
+import com.money.manager.ex.datalayer.SubcategoryRepository;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import timber.log.Timber;
+
+/**
+ * Application-wide cache of the dashboard data.
+ * The transactions from the start of the current month or the last 30 days, whichever is
+ * earlier, are read once and feed the income vs. expenses of the month and the top categories
+ * and payees of the last 30 days, converted at the rates on the transaction dates. The
+ * upcoming bills are read from their own (small) table.
+ * The snapshot is discarded when the transactions, the recurring transactions or the tables
+ * used for their names and rates change, when a different database is opened, and on the
+ * next day.
+ */
+@Singleton
+public class DashboardSnapshotCache {
+
+    static final int TOP_COUNT = 10;
+    static final int DAYS = 30;
+    static final int UPCOMING_DAYS = 10;
+
+    private static final String SQL_TRANSACTIONS =
+        "SELECT TX.TRANSCODE, date(TX.TRANSDATE), ifnull(TX.PAYEEID, -1), ifnull(p.PAYEENAME, ''), " +
+            // the splits are joined only for the split transactions.
+            "ifnull(st.CATEGID, TX.CATEGID), ifnull(ifnull(st.SUBCATEGID, TX.SUBCATEGID), -1), " +
+            "c.CATEGNAME, ifnull(sc.SUBCATEGNAME, ''), " +
+            "ROUND((CASE TX.TRANSCODE WHEN 'Withdrawal' THEN -1 ELSE 1 END) * " +
+                "ifnull(st.SPLITTRANSAMOUNT, TX.TRANSAMOUNT), 2) * " +
+                ExchangeRates.getRateSql("a.CURRENCYID", "TX.TRANSDATE", "cf.BASECONVRATE") + " " +
+        "FROM CHECKINGACCOUNT_V1 TX " +
+            "LEFT JOIN SPLITTRANSACTIONS_V1 st ON TX.CATEGID = -1 AND st.TRANSID = TX.TRANSID " +
+            "LEFT JOIN CATEGORY_V1 c ON c.CATEGID = ifnull(st.CATEGID, TX.CATEGID) " +
+            "LEFT JOIN SUBCATEGORY_V1 sc ON sc.SUBCATEGID = ifnull(st.SUBCATEGID, TX.SUBCATEGID) " +
+                "AND sc.CATEGID = ifnull(st.CATEGID, TX.CATEGID) " +
+            "LEFT JOIN PAYEE_V1 p ON p.PAYEEID = TX.PAYEEID " +
+            "LEFT JOIN ACCOUNTLIST_V1 a ON a.ACCOUNTID = TX.ACCOUNTID " +
+            "LEFT JOIN CURRENCYFORMATS_V1 cf ON cf.CURRENCYID = a.CURRENCYID " +
+        "WHERE TX.TRANSDATE >= ? AND TX.TRANSCODE IN ('Withdrawal', 'Deposit') AND TX.STATUS <> 'V'";
+
+    /**
+     * Largest amounts first.
+     */
+    private static final Comparator<DashboardSnapshot.Total> BY_AMOUNT_DESC = new Comparator<DashboardSnapshot.Total>() {
+        @Override
+        public int compare(DashboardSnapshot.Total lhs, DashboardSnapshot.Total rhs) {
+            return Double.compare(Math.abs(rhs.total), Math.abs(lhs.total));
+        }
+    };
+
+    @Inject
+    public DashboardSnapshotCache(MoneyManagerApplication app, DataChangeBus changeBus) {
+        mApp = app;
+
+        String[] tables = new String[] {
+            new AccountTransactionRepository(app).getSource(),
+            new SplitCategoriesRepository(app).getSource(),
+            new RecurringTransactionRepository(app).getSource(),
+            new CategoryRepository(app).getSource(),
+            new SubcategoryRepository(app).getSource(),
+            new PayeeRepository(app).getSource(),
+            new AccountRepository(app).getSource(),
+            new CurrencyRepository(app).getSource(),
+            ExchangeRates.HISTORY_TABLE
+        };
+        for (String table : tables) {
+            // the change bus reports the names in lower case.
+            mTables.add(table.toLowerCase(Locale.US));
+        }
+
+        changeBus.subscribe(new DataChangeBus.Listener() {
+            @Override
+            public void onTablesChanged(Set<String> tables) {
+                if (isAffectedBy(tables)) {
+                    invalidate();
+                }
+            }
+        });
+    }
+
+    private MoneyManagerApplication mApp;
+    /**
+     * Tables the snapshot is calculated from, lower case.
+     */
+    private final Set<String> mTables = new HashSet<>();
+    private volatile DashboardSnapshot mSnapshot;
+    /**
+     * Incremented on every invalidation, so that a snapshot calculated while the data changed
+     * is not kept.
+     */
+    private int mVersion;
+
+    /**
+     * @return the cached snapshot, calculating it if needed. Runs queries, so it must not be
+     * called on the main thread.
+     */
+    public DashboardSnapshot get() {
+        DatabaseKey database = DatabaseKey.current(mApp);
+        String today = formatDate(Calendar.getInstance());
+
+        DashboardSnapshot snapshot = mSnapshot;
+        if (snapshot != null && database.equals(snapshot.database)
+            && snapshot.day.equals(today)) {
+            return snapshot;
+        }
+
+        int version;
+        synchronized (this) {
+            version = mVersion;
+        }
+
+        snapshot = load(database);
+
+        synchronized (this) {
+            if (version == mVersion) {
+                mSnapshot = snapshot;
+            }
+        }
+        return snapshot;
+    }
+
+    public synchronized void invalidate() {
+        mVersion++;
+        mSnapshot = null;
+    }
+
+    /**
+     * @param tables Changed tables, lower case.
+     * @return true if the dashboard data depends on any of the tables.
+     */
+    public boolean isAffectedBy(Set<String> tables) {
+        for (String table : tables) {
+            if (mTables.contains(table)) return true;
+        }
+        return false;
+    }
+
+    // Private
+
+    private DashboardSnapshot load(DatabaseKey database) {
+        DashboardSnapshot snapshot = new DashboardSnapshot();
+        snapshot.database = database;
+
+        Calendar calendar = Calendar.getInstance();
+        snapshot.day = formatDate(calendar);
+        snapshot.year = calendar.get(Calendar.YEAR);
+        snapshot.month = calendar.get(Calendar.MONTH) + 1;
+
+        calendar.add(Calendar.DAY_OF_MONTH, -DAYS);
+        String periodStart = formatDate(calendar);
+        String monthStart = String.format(Locale.US, "%04d-%02d-01", snapshot.year, snapshot.month);
+        String scanStart = periodStart.compareTo(monthStart) < 0 ? periodStart : monthStart;
+
+        long start = System.nanoTime();
+        try {
+            SQLiteDatabase db = mApp.openHelperAtomicReference.get().getReadableDatabase();
+            loadTransactions(db, snapshot, scanStart, periodStart, monthStart.substring(0, 7));
+            loadUpcomingBills(db, snapshot);
+        } catch (Exception e) {
+            Timber.e(e, "loading the dashboard");
+        }
+        Timber.d("dashboard loaded in %d ms", (System.nanoTime() - start) / 1000000);
+
+        return snapshot;
+    }
+
+    private void loadTransactions(SQLiteDatabase db, DashboardSnapshot snapshot, String scanStart,
+                                  String periodStart, String month) {
+        Map<String, DashboardSnapshot.Total> categories = new HashMap<>();
+        Map<Integer, DashboardSnapshot.Total> payees = new HashMap<>();
+        String withdrawal = TransactionTypes.Withdrawal.name();
+
+        Cursor c = db.rawQuery(SQL_TRANSACTIONS, new String[] { scanStart });
+        try {
+            while (c.moveToNext()) {
+                boolean isWithdrawal = withdrawal.equals(c.getString(0));
+                String date = c.getString(1);
+                double amount = c.getDouble(8);
+
+                if (date.startsWith(month)) {
+                    if (isWithdrawal) {
+                        snapshot.expenses += amount;
+                    } else {
+                        snapshot.income += amount;
+                    }
+                    snapshot.monthCount++;
+                }
+
+                if (date.compareTo(periodStart) < 0) continue;
+
+                // payees
+                int payeeId = c.getInt(2);
+                DashboardSnapshot.Total payee = payees.get(payeeId);
+                if (payee == null) {
+                    payee = new DashboardSnapshot.Total(payeeId, -1, c.getString(3), null);
+                    payees.put(payeeId, payee);
+                }
+                payee.total += amount;
+                payee.count++;
+
+                // categories, withdrawals only
+                if (!isWithdrawal) continue;
+
+                int categoryId = c.isNull(4) ? -1 : c.getInt(4);
+                int subcategoryId = c.getInt(5);
+                String key = categoryId + ":" + subcategoryId;
+                DashboardSnapshot.Total category = categories.get(key);
+                if (category == null) {
+                    category = new DashboardSnapshot.Total(categoryId, subcategoryId, c.getString(6), c.getString(7));
+                    categories.put(key, category);
+                }
+                category.total += amount;
+                category.count++;
+            }
+        } finally {
+            c.close();
+        }
+
+        // only the categories with net expenses are shown.
+        List<DashboardSnapshot.Total> expenses = new ArrayList<>();
+        for (DashboardSnapshot.Total category : categories.values()) {
+            if (category.total < 0) {
+                expenses.add(category);
+            }
+        }
+        snapshot.topWithdrawals = getTop(expenses, TOP_COUNT);
+
+        snapshot.topPayees = getTop(payees.values(), TOP_COUNT);
+        for (DashboardSnapshot.Total payee : snapshot.topPayees) {
+            payee.total = Math.abs(payee.total);
+        }
+    }
+
+    private void loadUpcomingBills(SQLiteDatabase db, DashboardSnapshot snapshot) {
+        String sql = "SELECT " + QueryBillDeposits.PAYEENAME + ", " + QueryBillDeposits.AMOUNT + ", " +
+            QueryBillDeposits.DAYSLEFT + ", " + QueryBillDeposits.CURRENCYID +
+            " FROM (" + new QueryBillDeposits(mApp).getSource() + ") T" +
+            " WHERE " + QueryBillDeposits.DAYSLEFT + " <= " + UPCOMING_DAYS +
+            " ORDER BY " + QueryBillDeposits.DAYSLEFT;
+
+        Cursor c = db.rawQuery(sql, null);
+        try {
+            while (c.moveToNext()) {
+                DashboardSnapshot.UpcomingBill bill = new DashboardSnapshot.UpcomingBill();
+                bill.payeeName = c.getString(0);
+                bill.amount = c.getDouble(1);
+                bill.daysLeft = c.getInt(2);
+                bill.currencyId = c.getInt(3);
+                snapshot.upcomingBills.add(bill);
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * @return the count largest totals, by absolute amount, largest first. Keeps only count
+     * totals in a heap instead of sorting all of them.
+     */
+    private List<DashboardSnapshot.Total> getTop(Collection<DashboardSnapshot.Total> totals, int count) {
+        // the smallest of the kept totals is at the head.
+        PriorityQueue<DashboardSnapshot.Total> heap = new PriorityQueue<>(count + 1,
+            Collections.reverseOrder(BY_AMOUNT_DESC));
+        for (DashboardSnapshot.Total total : totals) {
+            heap.offer(total);
+            if (heap.size() > count) {
+                heap.poll();
+            }
+        }
+
+        List<DashboardSnapshot.Total> top = new ArrayList<>(heap);
+        Collections.sort(top, BY_AMOUNT_DESC);
+        return top;
+    }
+
+    private String formatDate(Calendar calendar) {
+        return new SimpleDateFormat("yyyy-MM-dd", Locale.US).format(calendar.getTime());
+    }
+}
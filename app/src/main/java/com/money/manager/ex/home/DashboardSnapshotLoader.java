@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.home;
+
+import android.content.Context;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.money.manager.ex.database.DataChangeBus;
+
+import java.util.Set;
+
+/**
+ * Loads the dashboard snapshot from the cache, which returns immediately unless the data has
+ * changed. Reloads when the tables of the dashboard change, once the writes settle.
+ */
+public class DashboardSnapshotLoader
+    extends AsyncTaskLoader<DashboardSnapshot> {
+
+    public DashboardSnapshotLoader(Context context, DashboardSnapshotCache cache, DataChangeBus changeBus) {
+        super(context);
+
+        mCache = cache;
+        mChangeBus = changeBus;
+    }
+
+    private final DashboardSnapshotCache mCache;
+    private final DataChangeBus mChangeBus;
+    private DashboardSnapshot mData;
+    private DataChangeBus.Listener mListener;
+
+    @Override
+    public DashboardSnapshot loadInBackground() {
+        return mCache.get();
+    }
+
+    @Override
+    public void deliverResult(DashboardSnapshot data) {
+        if (isReset()) return;
+
+        mData = data;
+        if (isStarted()) {
+            super.deliverResult(data);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mData != null) {
+            deliverResult(mData);
+        }
+
+        if (mListener == null) {
+            // the debounced notifications are delivered on the main thread.
+            mListener = new DataChangeBus.Listener() {
+                @Override
+                public void onTablesChanged(Set<String> tables) {
+                    if (mCache.isAffectedBy(tables)) {
+                        onContentChanged();
+                    }
+                }
+            };
+            mChangeBus.subscribeDebounced(mListener);
+        }
+
+        if (takeContentChanged() || mData == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        onStopLoading();
+
+        mData = null;
+        if (mListener != null) {
+            mChangeBus.unsubscribe(mListener);
+            mListener = null;
+        }
+    }
+}
@@ -30,4 +30,10 @@ public interface ISecurityPriceUpdater {
      * Store the values in the history table.
      */
     void downloadPrices(List<String> symbols);
+
+    /**
+     * Set a listener that receives the downloaded prices. When not set, the prices are posted
+     * on the event bus.
+     */
+    void setPriceListener(IPriceDownloadListener listener);
 }
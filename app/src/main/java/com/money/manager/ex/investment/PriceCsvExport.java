@@ -20,10 +20,11 @@ import android.content.Context;
 import android.database.Cursor;
 import android.widget.ListAdapter;
 
+import com.money.manager.ex.MoneyManagerApplication;
 import com.money.manager.ex.R;
 import com.money.manager.ex.domainmodel.Stock;
 import com.money.manager.ex.domainmodel.StockHistory;
-import com.money.manager.ex.datalayer.StockHistoryRepository;
+import com.money.manager.ex.datalayer.StockHistoryRepositorySql;
 import com.money.manager.ex.core.file.TextFileExport;
 import com.money.manager.ex.utils.MmxDate;
 import com.money.manager.ex.utils.MmxDateTimeUtils;
@@ -33,6 +34,10 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
 
+import javax.inject.Inject;
+
+import dagger.Lazy;
+
 import timber.log.Timber;
 
 /**
@@ -45,8 +50,12 @@ public class PriceCsvExport
         super(context);
 
         mContext = context;
+
+        MoneyManagerApplication.getApp().iocComponent.inject(this);
     }
 
+    @Inject Lazy<StockHistoryRepositorySql> historyRepository;
+
     private Context mContext;
 
     /**
@@ -78,7 +87,7 @@ public class PriceCsvExport
 
         StringBuilder builder = new StringBuilder();
         char separator = ',';
-        StockHistoryRepository historyRepository = new StockHistoryRepository(mContext);
+        StockHistoryRepositorySql historyRepository = this.historyRepository.get();
 
         int itemCount = adapter.getCount();
         Stock stock = new Stock();
@@ -88,7 +97,7 @@ public class PriceCsvExport
             stock.loadFromCursor(cursor);
 
             // use the latest price date here.
-            StockHistory latestPrice = historyRepository.getLatestPriceFor(stock.getSymbol());
+            StockHistory latestPrice = historyRepository.latest(stock.getSymbol());
             if (latestPrice == null) continue;
 
             Date date = latestPrice.getDate();
@@ -82,7 +82,7 @@ public class PriceCsvParser {
         Money price = MoneyFactory.fromString(priceString);
         // LSE stocks are expressed in GBp (pence), not Pounds.
         // From stockspanel.cpp, line 785: if (StockQuoteCurrency == "GBp") dPrice = dPrice / 100;
-        String currency = values[3];
+        String currency = values.length > 3 ? values[3] : "";
         if (currency.equals("GBp")) {
             price = price.divide(100, MoneyFactory.MAX_ALLOWED_PRECISION);
         }
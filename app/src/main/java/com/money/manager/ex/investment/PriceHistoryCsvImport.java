@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.investment;
+
+import android.content.Context;
+import android.text.TextUtils;
+
+import com.money.manager.ex.core.NumericHelper;
+import com.money.manager.ex.datalayer.StockHistoryRepositorySql;
+import com.money.manager.ex.investment.events.PriceDownloadedEvent;
+import com.money.manager.ex.utils.MmxDate;
+import com.opencsv.CSVReader;
+import com.squareup.sqlbrite.BriteDatabase;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import info.javaperformance.money.Money;
+import info.javaperformance.money.MoneyFactory;
+import timber.log.Timber;
+
+/**
+ * Bulk import of price history from CSV files into the stock history.
+ * The file is streamed and the records are upserted in batches, all in one transaction.
+ * Existing prices for the same symbol and date are replaced.
+ */
+public class PriceHistoryCsvImport {
+
+    /**
+     * Number of records stored with one call to the repository.
+     */
+    private static final int BATCH_SIZE = 500;
+
+    public PriceHistoryCsvImport(Context context, StockHistoryRepositorySql repository) {
+        mContext = context;
+        mRepository = repository;
+    }
+
+    private Context mContext;
+    private StockHistoryRepositorySql mRepository;
+
+    /**
+     * Imports a daily history file for one symbol, as provided by Yahoo Finance:
+     * Date,Open,High,Low,Close,Adj Close,Volume. The closing price is stored.
+     * @return number of imported prices
+     */
+    public int importHistory(String symbol, Reader reader) throws IOException {
+        CSVReader csvReader = new CSVReader(new BufferedReader(reader));
+
+        BriteDatabase.Transaction tx = mRepository.database.newTransaction();
+        try {
+            String[] header = csvReader.readNext();
+            if (header == null) return 0;
+
+            int dateColumn = indexOf(header, "Date");
+            int closeColumn = indexOf(header, "Close");
+            if (dateColumn == -1 || closeColumn == -1) {
+                throw new IllegalArgumentException("Date and Close columns are required");
+            }
+
+            List<PriceDownloadedEvent> batch = new ArrayList<>(BATCH_SIZE);
+            int imported = 0;
+            String[] values;
+            while ((values = csvReader.readNext()) != null) {
+                if (values.length <= Math.max(dateColumn, closeColumn)) continue;
+                // missing prices are written as "null".
+                if (!NumericHelper.isNumeric(values[closeColumn])) continue;
+
+                Money price = MoneyFactory.fromString(values[closeColumn]);
+                Date date = new MmxDate(values[dateColumn], "yyyy-MM-dd").toDate();
+                batch.add(new PriceDownloadedEvent(symbol, price, date));
+
+                if (batch.size() == BATCH_SIZE) {
+                    imported += store(batch);
+                }
+            }
+            imported += store(batch);
+
+            tx.markSuccessful();
+            return imported;
+        } finally {
+            tx.end();
+            csvReader.close();
+        }
+    }
+
+    /**
+     * Imports a file with one quote per line, in the format of the Yahoo CSV quotes:
+     * symbol, price, date (MM/dd/yyyy), currency.
+     * @return number of imported prices
+     */
+    public int importQuotes(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        PriceCsvParser parser = new PriceCsvParser(mContext);
+
+        BriteDatabase.Transaction tx = mRepository.database.newTransaction();
+        try {
+            List<PriceDownloadedEvent> batch = new ArrayList<>(BATCH_SIZE);
+            int imported = 0;
+            String line;
+            while ((line = lines.readLine()) != null) {
+                if (TextUtils.isEmpty(line.trim())) continue;
+
+                PriceDownloadedEvent price;
+                try {
+                    price = parser.parse(line);
+                } catch (Exception e) {
+                    Timber.w("skipping invalid price line %s", line);
+                    continue;
+                }
+                if (price == null) continue;
+
+                batch.add(price);
+                if (batch.size() == BATCH_SIZE) {
+                    imported += store(batch);
+                }
+            }
+            imported += store(batch);
+
+            tx.markSuccessful();
+            return imported;
+        } finally {
+            tx.end();
+            lines.close();
+        }
+    }
+
+    // Private
+
+    private int store(List<PriceDownloadedEvent> batch) {
+        int stored = mRepository.addStockHistoryRecords(batch);
+        batch.clear();
+        return stored;
+    }
+
+    private int indexOf(String[] header, String column) {
+        for (int i = 0; i < header.length; i++) {
+            if (column.equalsIgnoreCase(header[i].trim())) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.investment;
+
+import android.content.Context;
+import android.text.TextUtils;
+
+import com.money.manager.ex.MoneyManagerApplication;
+import com.money.manager.ex.datalayer.StockHistoryRepositorySql;
+import com.money.manager.ex.datalayer.StockRepositorySql;
+import com.money.manager.ex.investment.events.AllPricesDownloadedEvent;
+import com.money.manager.ex.investment.events.PriceDownloadedEvent;
+import com.money.manager.ex.servicelayer.AssetAllocationService;
+
+import org.greenrobot.eventbus.EventBus;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.inject.Inject;
+
+import dagger.Lazy;
+import info.javaperformance.money.Money;
+import rx.Observable;
+import rx.Subscriber;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.schedulers.Schedulers;
+import timber.log.Timber;
+
+/**
+ * Downloads security prices and stores them.
+ * The prices are collected while downloading and saved in one transaction, on a background
+ * thread, once all the downloads are done. The current prices, the stock values and the price
+ * history are updated in bulk. AllPricesDownloadedEvent is posted when the data is saved.
+ */
+public class PriceIngestion
+    implements IPriceDownloadListener {
+
+    public PriceIngestion(Context context) {
+        this(context, SecurityPriceUpdaterFactory.getUpdaterInstance(context));
+    }
+
+    public PriceIngestion(Context context, ISecurityPriceUpdater updater) {
+        mContext = context;
+        mUpdater = updater;
+
+        MoneyManagerApplication.getApp().iocComponent.inject(this);
+    }
+
+    @Inject Lazy<StockRepositorySql> stockRepository;
+    @Inject Lazy<StockHistoryRepositorySql> stockHistoryRepository;
+
+    private Context mContext;
+    private ISecurityPriceUpdater mUpdater;
+    /**
+     * The latest downloaded price for each symbol.
+     */
+    private final Map<String, PriceDownloadedEvent> mPrices = new LinkedHashMap<>();
+
+    public Context getContext() {
+        return mContext;
+    }
+
+    public void downloadPrices(List<String> symbols) {
+        synchronized (mPrices) {
+            mPrices.clear();
+        }
+
+        mUpdater.setPriceListener(this);
+        mUpdater.downloadPrices(symbols);
+    }
+
+    @Override
+    public void onPriceDownloaded(PriceDownloadedEvent price) {
+        if (price == null || TextUtils.isEmpty(price.symbol) || price.price == null) return;
+
+        synchronized (mPrices) {
+            mPrices.put(price.symbol, price);
+        }
+    }
+
+    @Override
+    public void onAllPricesDownloaded() {
+        final List<PriceDownloadedEvent> prices;
+        synchronized (mPrices) {
+            prices = new ArrayList<>(mPrices.values());
+            mPrices.clear();
+        }
+
+        Observable.fromCallable(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return save(prices);
+            }
+        })
+            .subscribeOn(Schedulers.io())
+            .observeOn(AndroidSchedulers.mainThread())
+            .subscribe(new Subscriber<Boolean>() {
+                @Override
+                public void onCompleted() {
+                }
+
+                @Override
+                public void onError(Throwable e) {
+                    Timber.e(e, "saving downloaded prices");
+
+                    EventBus.getDefault().post(new AllPricesDownloadedEvent());
+                }
+
+                @Override
+                public void onNext(Boolean saved) {
+                    EventBus.getDefault().post(new AllPricesDownloadedEvent());
+                }
+            });
+    }
+
+    /**
+     * Stores the current prices and the price history in one transaction.
+     * @return true if saved.
+     */
+    public boolean save(final List<PriceDownloadedEvent> prices) {
+        if (prices.isEmpty()) return true;
+
+        final Map<String, Money> currentPrices = new LinkedHashMap<>();
+        for (PriceDownloadedEvent price : prices) {
+            currentPrices.put(price.symbol, price.price);
+        }
+
+        final StockRepositorySql stockRepo = stockRepository.get();
+        final StockHistoryRepositorySql historyRepo = stockHistoryRepository.get();
+        AssetAllocationService assetAllocation = new AssetAllocationService(getContext());
+        // The saved prices are applied to the cached asset allocation below, so the stock change
+        // reported on commit does not need a reload, unless there are other changes.
+        int stockVersion = assetAllocation.getStockVersion();
+
+        boolean saved = stockRepo.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                stockRepo.updateCurrentPrices(currentPrices);
+                historyRepo.addStockHistoryRecords(prices);
+            }
+        });
+
+        if (saved) {
+            // keep the cached asset allocation current.
+            assetAllocation.updatePrices(currentPrices, stockVersion);
+        }
+        return saved;
+    }
+}
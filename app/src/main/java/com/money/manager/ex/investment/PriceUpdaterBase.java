@@ -21,6 +21,10 @@ import android.app.ProgressDialog;
 import android.content.Context;
 
 import com.money.manager.ex.R;
+import com.money.manager.ex.investment.events.AllPricesDownloadedEvent;
+import com.money.manager.ex.investment.events.PriceDownloadedEvent;
+
+import org.greenrobot.eventbus.EventBus;
 
 import java.util.List;
 
@@ -38,12 +42,18 @@ public class PriceUpdaterBase
 
     private Context mContext;
     private ProgressDialog mDialog = null;
+    private IPriceDownloadListener mListener;
 
     @Override
     public void downloadPrices(List<String> symbols) {
 
     }
 
+    @Override
+    public void setPriceListener(IPriceDownloadListener listener) {
+        mListener = listener;
+    }
+
     public Context getContext() {
         return mContext;
     }
@@ -67,6 +77,25 @@ public class PriceUpdaterBase
         mDialog.setProgress(progress);
     }
 
+    /**
+     * Pass the downloaded price to the listener or, if there is none, post it on the event bus.
+     */
+    protected void onPriceDownloaded(PriceDownloadedEvent price) {
+        if (mListener != null) {
+            mListener.onPriceDownloaded(price);
+        } else {
+            EventBus.getDefault().post(price);
+        }
+    }
+
+    protected void onAllPricesDownloaded() {
+        if (mListener != null) {
+            mListener.onAllPricesDownloaded();
+        } else {
+            EventBus.getDefault().post(new AllPricesDownloadedEvent());
+        }
+    }
+
     protected void closeProgressDialog() {
         try {
             if (mDialog != null) {
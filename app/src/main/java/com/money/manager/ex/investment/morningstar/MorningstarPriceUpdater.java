@@ -19,30 +19,21 @@ package com.money.manager.ex.investment.morningstar;
 import android.content.Context;
 import android.text.TextUtils;
 
-import com.money.manager.ex.MoneyManagerApplication;
 import com.money.manager.ex.R;
 import com.money.manager.ex.core.UIHelper;
-import com.money.manager.ex.datalayer.StockHistoryRepositorySql;
-import com.money.manager.ex.datalayer.StockRepositorySql;
 import com.money.manager.ex.investment.ISecurityPriceUpdater;
 import com.money.manager.ex.investment.PriceUpdaterBase;
-import com.money.manager.ex.investment.events.AllPricesDownloadedEvent;
 import com.money.manager.ex.investment.events.PriceDownloadedEvent;
 import com.money.manager.ex.utils.MmxDate;
 import com.money.manager.ex.utils.MmxDateTimeUtils;
-import com.squareup.sqlbrite.BriteDatabase;
 
-import org.apache.commons.lang3.tuple.Pair;
-import org.greenrobot.eventbus.EventBus;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 
-import java.util.Date;
 import java.util.List;
 
 import javax.inject.Inject;
 
-import dagger.Lazy;
 import info.javaperformance.money.Money;
 import info.javaperformance.money.MoneyFactory;
 import retrofit2.Retrofit;
@@ -51,7 +42,6 @@ import retrofit2.converter.scalars.ScalarsConverterFactory;
 import rx.Observable;
 import rx.Subscriber;
 import rx.android.schedulers.AndroidSchedulers;
-import rx.functions.Action1;
 import rx.functions.Func1;
 import rx.schedulers.Schedulers;
 import rx.subscriptions.CompositeSubscription;
@@ -64,11 +54,14 @@ public class MorningstarPriceUpdater
     extends PriceUpdaterBase
     implements ISecurityPriceUpdater {
 
+    /**
+     * Maximum number of prices downloaded at the same time.
+     */
+    private static final int MAX_CONCURRENT_DOWNLOADS = 4;
+
     @Inject
     public MorningstarPriceUpdater(Context context) {
         super(context);
-
-        MoneyManagerApplication.getApp().iocComponent.inject(this);
     }
 
     /**
@@ -77,8 +70,6 @@ public class MorningstarPriceUpdater
     private int mCounter;
     private int mTotalRecords;
     private CompositeSubscription compositeSubscription;
-    @Inject Lazy<StockRepositorySql> stockRepository;
-    @Inject Lazy<StockHistoryRepositorySql> stockHistoryRepository;
     private SymbolConverter symbolConverter;
     private IMorningstarService service;
 
@@ -94,132 +85,62 @@ public class MorningstarPriceUpdater
         compositeSubscription = new CompositeSubscription();
         symbolConverter = new SymbolConverter();
 
-//        processSequentially(symbols);
         processInParallel(symbols);
     }
 
-    private void processSequentially(List<String> symbols) {
-        compositeSubscription.add(Observable.from(symbols)
-                .subscribeOn(Schedulers.io())
-                .map(new Func1<String, String>() {
-                    @Override
-                    public String call(String s) {
-                        // get a Morningstar symbol
-                        return symbolConverter.convert(s);
-                    }
-                })
-                .observeOn(Schedulers.io())     // Observe the network call on IO thread!
-                .flatMap(new Func1<String, Observable<Pair<String, String>>>() {
-                    @Override
-                    public Observable<Pair<String, String>> call(final String s) {
-                        // download the price
-                        return service.getPrice(s)
-                                .doOnError(new Action1<Throwable>() {
-                                    @Override
-                                    public void call(Throwable throwable) {
-                                        mCounter++;
-                                        setProgress(mCounter);
-
-                                        // report to the UI
-                                        Timber.e(throwable, "fetching %s", s);
-                                    }
-                                })
-                                .onErrorResumeNext(Observable.<String>empty())
-                                .map(new Func1<String, Pair<String, String>>() {
-                                    @Override
-                                    public Pair<String, String> call(String price) {
-                                        return Pair.of(s, price);
-                                    }
-                                });
-                    }
-                })
-                .map(new Func1<Pair<String, String>, PriceDownloadedEvent>() {
-                    @Override
-                    public PriceDownloadedEvent call(Pair<String, String> s) {
-                        // parse the price
-                        return parse(s.getLeft(), s.getRight());
-                    }
-                })
-                .doOnNext(new Action1<PriceDownloadedEvent>() {
-                    @Override
-                    public void call(PriceDownloadedEvent priceDownloadedEvent) {
-                        // update to database
-                        savePrice(priceDownloadedEvent);
-                    }
-                })
-                .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(new Subscriber<PriceDownloadedEvent>() {
-                    @Override
-                    public void onCompleted() {
-                        closeProgressDialog();
-
-                        new UIHelper(getContext()).showToast(R.string.download_complete);
-
-                        compositeSubscription.unsubscribe();
-
-                        // send event to reload the data.
-                        EventBus.getDefault().post(new AllPricesDownloadedEvent());
-                    }
-
-                    @Override
-                    public void onError(Throwable e) {
-                        closeProgressDialog();
-
-                        Timber.e(e, "downloading prices");
-                    }
-
-                    @Override
-                    public void onNext(PriceDownloadedEvent event) {
-                        mCounter++;
-                        setProgress(mCounter);
-
-                        // todo: update price in the UI?
-                        // todo: remove the progress bar in that case.
-                    }
-                })
-        );
-    }
-
+    /**
+     * Downloads the prices, at most MAX_CONCURRENT_DOWNLOADS at a time.
+     */
     private void processInParallel(List<String> symbols) {
-        for(int i = 0; i < symbols.size(); i++) {
-            final String symbol = symbols.get(i);
-            final String morningstarSymbol = symbolConverter.convert(symbol);
+        compositeSubscription.add(Observable.from(symbols)
+            .flatMap(new Func1<String, Observable<PriceDownloadedEvent>>() {
+                @Override
+                public Observable<PriceDownloadedEvent> call(final String symbol) {
+                    final String morningstarSymbol = symbolConverter.convert(symbol);
 
-            compositeSubscription.add(
-                    service.getPrice(morningstarSymbol)
+                    return service.getPrice(morningstarSymbol)
                         .subscribeOn(Schedulers.io())
-                            .doOnNext(new Action1<String>() {
-                                @Override
-                                public void call(String s) {
-                                    PriceDownloadedEvent event = parse(morningstarSymbol, s);
-                                    savePrice(event);
-                                }
-                            })
-                        .observeOn(AndroidSchedulers.mainThread())
-                        .subscribe(new Subscriber<String>() {
+                        .map(new Func1<String, PriceDownloadedEvent>() {
                             @Override
-                            public void onCompleted() {
-                                finishIfAllDone();
+                            public PriceDownloadedEvent call(String html) {
+                                return parse(morningstarSymbol, html);
                             }
-
-                            @Override
-                            public void onError(Throwable e) {
-                                mCounter++;
-                                setProgress(mCounter);
-
-                                Timber.e(e, "error downloading price %s", symbol);
-
-                                finishIfAllDone();
-                            }
-
+                        })
+                        .onErrorReturn(new Func1<Throwable, PriceDownloadedEvent>() {
                             @Override
-                            public void onNext(String s) {
-                                mCounter++;
-                                setProgress(mCounter);
+                            public PriceDownloadedEvent call(Throwable throwable) {
+                                Timber.e(throwable, "error downloading price %s", symbol);
+                                // counted as done, without a price.
+                                return null;
                             }
-                        })
-            );
-        }
+                        });
+                }
+            }, MAX_CONCURRENT_DOWNLOADS)
+            .observeOn(AndroidSchedulers.mainThread())
+            .subscribe(new Subscriber<PriceDownloadedEvent>() {
+                @Override
+                public void onCompleted() {
+                    finish();
+                }
+
+                @Override
+                public void onError(Throwable e) {
+                    Timber.e(e, "downloading prices");
+
+                    finish();
+                }
+
+                @Override
+                public void onNext(PriceDownloadedEvent event) {
+                    mCounter++;
+                    setProgress(mCounter);
+
+                    if (event != null) {
+                        onPriceDownloaded(event);
+                    }
+                }
+            })
+        );
         // unsubscribe if the user navigates away while downloading prices?
     }
 
@@ -265,9 +186,7 @@ public class MorningstarPriceUpdater
         return new PriceDownloadedEvent(yahooSymbol, price, dateTime.toDate());
     }
 
-    private synchronized void finishIfAllDone() {
-        if (mCounter != mTotalRecords) return;
-
+    private void finish() {
         compositeSubscription.unsubscribe();
 
         closeProgressDialog();
@@ -275,22 +194,8 @@ public class MorningstarPriceUpdater
         // Notify user that all the prices have been downloaded.
         new UIHelper(getContext()).showToast(R.string.download_complete);
 
-        // fire an event so that the data can be reloaded.
-        EventBus.getDefault().post(new AllPricesDownloadedEvent());
-    }
-
-    private void savePrice(PriceDownloadedEvent event) {
-        BriteDatabase.Transaction tx = stockRepository.get().database.newTransaction();
-
-        // update the current price of the stock.
-        stockRepository.get().updateCurrentPrice(event.symbol, event.price);
-
-        // update price history record.
-        stockHistoryRepository.get().addStockHistoryRecord(event.symbol,
-                event.price, event.date);
-
-        tx.markSuccessful();
-        tx.end();
+        // the data can be reloaded.
+        onAllPricesDownloaded();
     }
 
     private IMorningstarService getMorningstarService() {
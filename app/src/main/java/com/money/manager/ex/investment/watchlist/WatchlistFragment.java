@@ -24,7 +24,6 @@ import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentTransaction;
 import android.support.v7.app.ActionBar;
 import android.support.v7.app.AppCompatActivity;
-import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -54,14 +53,11 @@ import com.money.manager.ex.datalayer.AccountRepository;
 import com.money.manager.ex.datalayer.StockFields;
 import com.money.manager.ex.datalayer.StockHistoryRepository;
 import com.money.manager.ex.log.ErrorRaisedEvent;
-import com.money.manager.ex.datalayer.StockRepository;
 import com.money.manager.ex.domainmodel.Account;
-import com.money.manager.ex.investment.ISecurityPriceUpdater;
 import com.money.manager.ex.investment.PriceCsvExport;
+import com.money.manager.ex.investment.PriceIngestion;
 import com.money.manager.ex.investment.QuoteProviders;
-import com.money.manager.ex.investment.SecurityPriceUpdaterFactory;
 import com.money.manager.ex.investment.events.AllPricesDownloadedEvent;
-import com.money.manager.ex.investment.events.PriceDownloadedEvent;
 import com.money.manager.ex.investment.events.PriceUpdateRequestEvent;
 import com.money.manager.ex.servicelayer.AccountService;
 import com.money.manager.ex.settings.InvestmentSettings;
@@ -75,10 +71,8 @@ import org.parceler.Parcels;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
 import java.util.List;
 
-import info.javaperformance.money.Money;
 import timber.log.Timber;
 
 /**
@@ -108,12 +102,7 @@ public class WatchlistFragment
 
     private WatchlistItemsFragment mDataFragment;
     private String mFragmentName;
-    private StockRepository mStockRepository;
     private Account mAccount;
-
-    // price update counter. Used to know when all the prices are done downloading.
-    private int mUpdateCounter;
-    private int mToUpdateTotal;
     private WatchlistViewHolder viewHolder;
 
     @Override
@@ -126,8 +115,6 @@ public class WatchlistFragment
             mAccount = Parcels.unwrap(savedInstanceState.getParcelable(KEY_ACCOUNT));
         }
 
-        mUpdateCounter = 0;
-
         Answers.getInstance().logCustom(new CustomEvent(AnswersEvents.Watchlist.name()));
     }
 
@@ -294,11 +281,6 @@ public class WatchlistFragment
         reloadData();
     }
 
-    @Subscribe
-    public void onEvent(PriceDownloadedEvent event) {
-        onPriceDownloaded(event.symbol, event.price, event.date);
-    }
-
     @Subscribe
     public void onEvent(PriceUpdateRequestEvent event) {
         onPriceUpdateRequested(event.symbol);
@@ -328,47 +310,17 @@ public class WatchlistFragment
 
     // Private
 
-    /**
-     * Called from asynchronous task when a first price is downloaded.
-     * @param symbol Stock symbol
-     * @param price Stock price
-     * @param date Date of the price
-     */
-    private void onPriceDownloaded(String symbol, Money price, Date date) {
-        // prices updated.
-
-        if (TextUtils.isEmpty(symbol)) return;
-
-        // update the current price of the stock.
-        StockRepository repo = getStockRepository();
-        repo.updateCurrentPrice(symbol, price);
-
-        // update price history record.
-        StockHistoryRepository historyRepo = mDataFragment.getStockHistoryRepository();
-        historyRepo.addStockHistoryRecord(symbol, price, date);
-
-        mUpdateCounter += 1;
-        if (mUpdateCounter == mToUpdateTotal) {
-            completePriceUpdate();
-        }
-    }
-
     /**
      * Price update requested from the securities list context menu.
      * @param symbol Stock symbol for which to fetch the price.
      */
     private void onPriceUpdateRequested(String symbol) {
-        // reset counter & max.
-        mToUpdateTotal = 1;
-        mUpdateCounter = 0;
-
         // http://stackoverflow.com/questions/1005073/initialization-of-an-arraylist-in-one-line
         List<String> symbols = new ArrayList<>();
         symbols.add(symbol);
 
-        ISecurityPriceUpdater updater = SecurityPriceUpdaterFactory.getUpdaterInstance(getActivity());
-        updater.downloadPrices(symbols);
-        // result received via onEvent.
+        new PriceIngestion(getActivity()).downloadPrices(symbols);
+        // data reloaded on AllPricesDownloadedEvent.
     }
 
     /**
@@ -405,27 +357,6 @@ public class WatchlistFragment
                 .show();
     }
 
-    private void completePriceUpdate() {
-        // this call is made from async task so have to get back to the main thread.
-        getActivity().runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                // refresh the data.
-                mDataFragment.reloadData();
-
-                // notify about db file change.
-                new SyncManager(getActivity()).dataChanged();
-            }
-        });
-    }
-
-    private StockRepository getStockRepository() {
-        if (mStockRepository == null) {
-            mStockRepository = new StockRepository(getActivity());
-        }
-        return mStockRepository;
-    }
-
     private String[] getAllShownSymbols() {
         int itemCount = mDataFragment.getListAdapter().getCount();
         String[] result = new String[itemCount];
@@ -470,14 +401,10 @@ public class WatchlistFragment
                     public void onClick(@NonNull MaterialDialog dialog, @NonNull DialogAction which) {
                         // get the list of symbols
                         String[] symbols = getAllShownSymbols();
-                        mToUpdateTotal = symbols.length;
-                        mUpdateCounter = 0;
 
                         // update security prices
-                        ISecurityPriceUpdater updater = SecurityPriceUpdaterFactory
-                                .getUpdaterInstance(getContext());
-                        updater.downloadPrices(Arrays.asList(symbols));
-                        // results received via event
+                        new PriceIngestion(getContext()).downloadPrices(Arrays.asList(symbols));
+                        // data reloaded on AllPricesDownloadedEvent
 
                         dialog.dismiss();
                     }
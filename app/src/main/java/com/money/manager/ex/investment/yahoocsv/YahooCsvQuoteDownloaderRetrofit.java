@@ -24,11 +24,8 @@ import com.money.manager.ex.core.UIHelper;
 import com.money.manager.ex.investment.ISecurityPriceUpdater;
 import com.money.manager.ex.investment.PriceCsvParser;
 import com.money.manager.ex.investment.PriceUpdaterBase;
-import com.money.manager.ex.investment.events.AllPricesDownloadedEvent;
 import com.money.manager.ex.investment.events.PriceDownloadedEvent;
 
-import org.greenrobot.eventbus.EventBus;
-
 import java.util.List;
 
 import retrofit2.Call;
@@ -73,9 +70,11 @@ public class YahooCsvQuoteDownloaderRetrofit
 
             @Override
             public void onFailure(Call<String> call, Throwable t) {
-                closeProgressDialog();
-
                 Timber.e(t, "fetching price");
+
+                mCounter++;
+                setProgress(mCounter);
+                finishIfAllDone();
             }
         };
 
@@ -96,8 +95,8 @@ public class YahooCsvQuoteDownloaderRetrofit
         // Notify user that all the prices have been downloaded.
         new UIHelper(getContext()).showToast(getContext().getString(R.string.download_complete));
 
-        // fire an event so that the data can be reloaded.
-        EventBus.getDefault().post(new AllPricesDownloadedEvent());
+        // the data can be reloaded.
+        onAllPricesDownloaded();
     }
 
     private void onContentDownloaded(String content) {
@@ -106,6 +105,7 @@ public class YahooCsvQuoteDownloaderRetrofit
 
         if (content == null) {
             new UIHelper(getContext()).showToast(getContext().getString(R.string.error_updating_rates));
+            finishIfAllDone();
             return;
         }
 
@@ -115,12 +115,13 @@ public class YahooCsvQuoteDownloaderRetrofit
             event = parser.parse(content);
         } catch (IllegalArgumentException e) {
             Timber.e(e, "parsing the csv contents.");
+            finishIfAllDone();
             return;
         }
 
         // Notify the caller by invoking the interface method.
         if (event != null) {
-            EventBus.getDefault().post(event);
+            onPriceDownloaded(event);
         }
 
         finishIfAllDone();
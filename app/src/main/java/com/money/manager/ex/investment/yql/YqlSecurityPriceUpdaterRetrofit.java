@@ -33,8 +33,6 @@ import com.money.manager.ex.investment.events.PriceDownloadedEvent;
 import com.money.manager.ex.utils.MmxDate;
 import com.money.manager.ex.utils.MmxDateTimeUtils;
 
-import org.greenrobot.eventbus.EventBus;
-
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -96,6 +94,7 @@ public class YqlSecurityPriceUpdaterRetrofit
             public void onFailure(Call<JsonElement> call, Throwable t) {
                 Timber.e(t, "fetching price");
                 closeProgressDialog();
+                onAllPricesDownloaded();
             }
         };
 
@@ -118,6 +117,7 @@ public class YqlSecurityPriceUpdaterRetrofit
         if (response == null) {
             uiHelper.showToast(R.string.error_updating_rates);
             closeProgressDialog();
+            onAllPricesDownloaded();
             return;
         }
 
@@ -129,13 +129,15 @@ public class YqlSecurityPriceUpdaterRetrofit
             // Send the parsed price data to the listener(s).
             for (SecurityPriceModel model : pricesList) {
                 // Notify the caller.
-                EventBus.getDefault().post(new PriceDownloadedEvent(model.symbol, model.price, model.date));
+                onPriceDownloaded(new PriceDownloadedEvent(model.symbol, model.price, model.date));
             }
         }
         closeProgressDialog();
 
         // Notify user that all the prices have been downloaded.
         uiHelper.showToast(R.string.download_complete);
+
+        onAllPricesDownloaded();
     }
 
     private List<SecurityPriceModel> getPricesFromJson(JsonObject root) {
@@ -44,9 +44,9 @@ import com.money.manager.ex.common.MmxCursorLoader;
 import com.money.manager.ex.core.IntentFactory;
 import com.money.manager.ex.core.UIHelper;
 import com.money.manager.ex.currency.CurrencyService;
+import com.money.manager.ex.database.MonthlyTotals;
 import com.money.manager.ex.database.QueryReportIncomeVsExpenses;
 import com.money.manager.ex.database.SQLDataSet;
-import com.money.manager.ex.database.ViewMobileData;
 import com.money.manager.ex.datalayer.Select;
 import com.money.manager.ex.search.SearchParameters;
 import com.money.manager.ex.utils.MmxDate;
@@ -75,6 +75,7 @@ public class IncomeVsExpensesListFragment
     private static final String KEY_BUNDLE_YEAR = "IncomeVsExpensesListFragment:Years";
 
     private View mFooterListView;
+    private View mRateNoteView;
     private SparseBooleanArray mYearsSelected = new SparseBooleanArray();
     private String mSort = SORT_ASCENDING;
 
@@ -137,8 +138,8 @@ public class IncomeVsExpensesListFragment
                 return new MmxCursorLoader(getActivity(), report.getUri(), query);
 
             case ID_LOADER_YEARS:
-                ViewMobileData mobileData = new ViewMobileData(getContext());
-                selection = "SELECT DISTINCT Year FROM " + mobileData.getSource() + " ORDER BY Year DESC";
+                selection = "SELECT DISTINCT " + MonthlyTotals.YEAR + " AS Year FROM " + MonthlyTotals.TABLE_NAME +
+                    " ORDER BY Year DESC";
                 query = new Select().where(selection);
                 return new MmxCursorLoader(getActivity(), new SQLDataSet().getUri(), query);
         }
@@ -176,7 +177,9 @@ public class IncomeVsExpensesListFragment
                 updateListViewFooter(mFooterListView, income, expenses);
                 if (data.getCount() > 0) {
                     getListView().removeFooterView(mFooterListView);
+                    getListView().removeFooterView(mRateNoteView);
                     getListView().addFooterView(mFooterListView);
+                    getListView().addFooterView(mRateNoteView, null, false);
                 }
 
                 if (((IncomeVsExpensesActivity) getActivity()).mIsDualPanel) {
@@ -330,6 +333,10 @@ public class IncomeVsExpensesListFragment
             setListAdapter(null);
             addListViewHeader();
             mFooterListView = addListViewFooter();
+            // The totals are converted at the rate at the end of each month, not on the
+            // transaction date as in the account lists.
+            mRateNoteView = View.inflate(getActivity(), R.layout.item_report_rate_note, null);
+            getListView().addFooterView(mRateNoteView, null, false);
         } catch (Exception e) {
             Timber.e(e, "adding header and footer in income vs expense report");
         }
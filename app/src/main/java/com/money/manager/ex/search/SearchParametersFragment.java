@@ -51,6 +51,7 @@ import com.money.manager.ex.PayeeActivity;
 import com.money.manager.ex.R;
 import com.money.manager.ex.core.FormatUtilities;
 import com.money.manager.ex.database.QueryAllData;
+import com.money.manager.ex.database.TransactionSearchIndex;
 import com.money.manager.ex.database.WhereStatementGenerator;
 import com.money.manager.ex.domainmodel.Account;
 import com.money.manager.ex.settings.AppSettings;
@@ -471,9 +472,11 @@ public class SearchParametersFragment
         if (!TextUtils.isEmpty(searchParameters.transactionNumber)) {
             where.addStatement(QueryAllData.TransactionNumber, " LIKE ", searchParameters.transactionNumber);
         }
-        // notes
+        // notes. Full-text search in the notes, payees, categories and transaction numbers.
         if (!TextUtils.isEmpty(searchParameters.notes)) {
-            where.addStatement(QueryAllData.Notes + " LIKE '%" + searchParameters.notes + "%'");
+            String match = TransactionSearchIndex.getMatchSelection(QueryAllData.ID, searchParameters.notes);
+            // no indexable words, i.e. only punctuation: no transaction can match.
+            where.addStatement(match != null ? match : "1 = 0");
         }
 
         return where.getWhere();
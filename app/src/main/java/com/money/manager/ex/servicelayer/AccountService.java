@@ -21,6 +21,7 @@ import android.database.Cursor;
 import android.database.DatabaseUtils;
 import android.database.MatrixCursor;
 import android.database.MergeCursor;
+import android.util.SparseArray;
 import android.widget.SimpleCursorAdapter;
 import android.widget.Spinner;
 
@@ -29,14 +30,13 @@ import com.money.manager.ex.R;
 import com.money.manager.ex.account.AccountStatuses;
 import com.money.manager.ex.account.AccountTypes;
 import com.money.manager.ex.core.ToolbarSpinnerAdapter;
-import com.money.manager.ex.core.TransactionStatuses;
-import com.money.manager.ex.core.TransactionTypes;
 import com.money.manager.ex.core.UIHelper;
 import com.money.manager.ex.currency.CurrencyService;
+import com.money.manager.ex.database.BalanceSql;
 import com.money.manager.ex.database.ITransactionEntity;
 import com.money.manager.ex.datalayer.AccountRepository;
 import com.money.manager.ex.database.QueryAccountBills;
-import com.money.manager.ex.database.QueryAllData;
+import com.money.manager.ex.database.SQLDataSet;
 import com.money.manager.ex.database.WhereStatementGenerator;
 import com.money.manager.ex.datalayer.AccountTransactionRepository;
 import com.money.manager.ex.datalayer.StockFields;
@@ -44,14 +44,13 @@ import com.money.manager.ex.datalayer.StockRepository;
 import com.money.manager.ex.domainmodel.Account;
 import com.money.manager.ex.settings.AppSettings;
 import com.money.manager.ex.settings.LookAndFeelSettings;
-import com.money.manager.ex.viewmodels.AccountTransactionDisplay;
+import com.money.manager.ex.utils.MoneyUnits;
 
-import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 
 import info.javaperformance.money.Money;
-import info.javaperformance.money.MoneyFactory;
+import info.javaperformance.money.MoneyAccumulator;
 import timber.log.Timber;
 
 /**
@@ -108,75 +107,35 @@ public class AccountService
      * @param isoDate date in ISO format
      */
     public Money calculateBalanceOn(int accountId, String isoDate) {
-        Money total = MoneyFactory.fromBigDecimal(BigDecimal.ZERO);
+        SparseArray<Money> balances = calculateBalancesOn(new int[] { accountId }, isoDate);
 
-        WhereStatementGenerator where = new WhereStatementGenerator();
-        // load all transactions on the account before and on given date.
-        where.addStatement(
-            where.concatenateOr(
-                where.getStatement(ITransactionEntity.ACCOUNTID, "=", accountId),
-                where.getStatement(ITransactionEntity.TOACCOUNTID, "=", accountId)
-            )
-        );
-
-        where.addStatement(ITransactionEntity.TRANSDATE, "<=", isoDate);
-        where.addStatement(ITransactionEntity.STATUS, "<>", TransactionStatuses.VOID.getCode());
-
-        String selection = where.getWhere();
+        return balances.get(accountId, MoneyUnits.toMoney(0));
+    }
 
-        AccountTransactionRepository repo = new AccountTransactionRepository(getContext());
+    /**
+     * Calculates the balances for several accounts at once. The signed amounts are summed
+     * in the database, as integers, in a single query.
+     * @param accountIds accounts for which to calculate the balance
+     * @param isoDate date in ISO format
+     * @return balances by account id. Accounts without transactions are not included.
+     */
+    public SparseArray<Money> calculateBalancesOn(int[] accountIds, String isoDate) {
+        SparseArray<Money> result = new SparseArray<>();
+        if (accountIds == null || accountIds.length == 0) return result;
 
-        Cursor cursor = getContext().getContentResolver().query(repo.getUri(),
-            null,
-            selection,
+        Cursor cursor = getContext().getContentResolver().query(new SQLDataSet().getUri(),
             null,
+            getBalancesSql(accountIds),
+            new String[] { isoDate },
             null);
-        if (cursor == null) return total;
-
-        AccountTransactionDisplay tx = new AccountTransactionDisplay();
-        Money amount;
+        if (cursor == null) return result;
 
-        // calculate balance.
         while (cursor.moveToNext()) {
-            tx.contentValues.clear();
-            String transType = cursor.getString(cursor.getColumnIndex(ITransactionEntity.TRANSCODE));
-
-            // Some users have invalid Transaction Type. Should we check .contains()?
-
-            switch (TransactionTypes.valueOf(transType)) {
-                case Withdrawal:
-                    DatabaseUtils.cursorDoubleToContentValues(cursor, ITransactionEntity.TRANSAMOUNT,
-                            tx.contentValues, QueryAllData.Amount);
-                    amount = tx.getAmount();
-                    total = total.subtract(amount);
-                    break;
-                case Deposit:
-                    DatabaseUtils.cursorDoubleToContentValues(cursor, ITransactionEntity.TRANSAMOUNT,
-                            tx.contentValues, QueryAllData.Amount);
-                    amount = tx.getAmount();
-                    total = total.add(amount);
-                    break;
-                case Transfer:
-                    DatabaseUtils.cursorDoubleToContentValues(cursor, ITransactionEntity.ACCOUNTID,
-                            tx.contentValues, QueryAllData.ACCOUNTID);
-
-                    if (tx.getAccountId().equals(accountId)) {
-                        DatabaseUtils.cursorDoubleToContentValues(cursor, ITransactionEntity.TRANSAMOUNT,
-                                tx.contentValues, QueryAllData.Amount);
-                        amount = tx.getAmount();
-                        total = total.subtract(amount);
-                    } else {
-                        DatabaseUtils.cursorDoubleToContentValues(cursor, ITransactionEntity.TOTRANSAMOUNT,
-                                tx.contentValues, QueryAllData.Amount);
-                        amount = tx.getAmount();
-                        total = total.add(amount);
-                    }
-                    break;
-            }
+            result.put(cursor.getInt(0), MoneyUnits.toMoney(cursor.getLong(1)));
         }
-
         cursor.close();
-        return total;
+
+        return result;
     }
 
     public String getAccountCurrencyCode(int accountId) {
@@ -343,7 +302,7 @@ public class AccountService
      * @return current balance in the currency of the account.
      */
     public Money loadBalance(String where) {
-        Money curTotal = MoneyFactory.fromString("0");
+        MoneyAccumulator curTotal = new MoneyAccumulator();
 
         QueryAccountBills accountBills = new QueryAccountBills(getContext());
         Cursor cursor = getContext().getContentResolver().query(accountBills.getUri(),
@@ -351,16 +310,16 @@ public class AccountService
                 where,
                 null,
                 null);
-        if (cursor == null) return curTotal;
+        if (cursor == null) return curTotal.toMoney();
 
-        // calculate summary
+        // calculate summary, in MoneyUnits.
+        int totalColumn = cursor.getColumnIndex(QueryAccountBills.TOTAL);
         while (cursor.moveToNext()) {
-//            curTotal = curTotal.add(MoneyFactory.fromDouble(cursor.getDouble(cursor.getColumnIndex(QueryAccountBills.TOTAL))));
-            curTotal = curTotal.add(MoneyFactory.fromString(cursor.getString(cursor.getColumnIndex(QueryAccountBills.TOTAL))));
+            curTotal.add(MoneyUnits.fromDouble(cursor.getDouble(totalColumn)), MoneyUnits.PRECISION);
         }
         cursor.close();
 
-        return curTotal;
+        return curTotal.toMoney();
     }
 
     // Private
@@ -383,6 +342,21 @@ public class AccountService
         return cursor;
     }
 
+    /**
+     * Signed sum per account of all the non-void transactions up to the date parameter.
+     * The amounts are summed as integers, in MoneyUnits.
+     */
+    private String getBalancesSql(int[] accountIds) {
+        StringBuilder ids = new StringBuilder();
+        for (int i = 0; i < accountIds.length; i++) {
+            if (i > 0) ids.append(',');
+            ids.append(accountIds[i]);
+        }
+        return "SELECT ACCOUNTID, " + MoneyUnits.getSumSql("AMOUNT") + " " +
+            "FROM (" + BalanceSql.getMovementsSql("IN (" + ids + ")", "TRANSDATE <= ?1") + ") " +
+            "GROUP BY ACCOUNTID";
+    }
+
     private String getWhereFilterFor(boolean openOnly, boolean favoriteOnly) {
         StringBuilder where = new StringBuilder();
 
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.servicelayer;
+
+import android.content.ContentValues;
+import android.util.SparseArray;
+
+import com.money.manager.ex.MoneyManagerApplication;
+import com.money.manager.ex.currency.CurrencyRepository;
+import com.money.manager.ex.database.DataChangeBus;
+import com.money.manager.ex.database.DatabaseKey;
+import com.money.manager.ex.datalayer.AccountRepository;
+import com.money.manager.ex.datalayer.AssetClassRepository;
+import com.money.manager.ex.datalayer.AssetClassStockRepository;
+import com.money.manager.ex.datalayer.StockRepository;
+import com.money.manager.ex.domainmodel.AssetClass;
+import com.money.manager.ex.domainmodel.AssetClassStock;
+import com.money.manager.ex.domainmodel.Stock;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import info.javaperformance.money.Money;
+
+/**
+ * Application-wide cache of the asset allocation, shared by the overview, the report and the
+ * editor. Keeps the source data (asset classes, stock links, linked stocks and account
+ * currencies) and the calculated tree.
+ * Each source is marked as changed when its table changes, and only the changed sources are
+ * reloaded. The data is used and modified by AssetAllocationService, which synchronizes on
+ * this object.
+ */
+@Singleton
+public class AssetAllocationCache {
+
+    static final int CLASSES = 1;
+    static final int LINKS = 2;
+    static final int STOCKS = 4;
+    static final int ACCOUNTS = 8;
+    static final int ALL = CLASSES | LINKS | STOCKS | ACCOUNTS;
+
+    @Inject
+    public AssetAllocationCache(MoneyManagerApplication app, DataChangeBus changeBus) {
+        mApp = app;
+
+        mSources.put(new AssetClassRepository(app).getSource(), CLASSES);
+        mSources.put(new AssetClassStockRepository(app).getSource(), LINKS);
+        mSources.put(new StockRepository(app).getSource(), STOCKS);
+        mSources.put(new AccountRepository(app).getSource(), ACCOUNTS);
+        mSources.put(new CurrencyRepository(app).getSource(), ACCOUNTS);
+
+        changeBus.subscribe(new DataChangeBus.Listener() {
+            @Override
+            public void onTablesChanged(Set<String> tables) {
+                int sources = 0;
+                for (String table : tables) {
+                    Integer source = mSources.get(table);
+                    if (source != null) {
+                        sources |= source;
+                    }
+                }
+                if (sources != 0) {
+                    setChanged(sources);
+                }
+            }
+        });
+    }
+
+    private MoneyManagerApplication mApp;
+    /**
+     * Source flags by table name.
+     */
+    private final Map<String, Integer> mSources = new HashMap<>();
+
+    /**
+     * Sources that have to be reloaded.
+     */
+    int changed = ALL;
+    /**
+     * Incremented on every reported change of the stocks.
+     */
+    int stockVersion;
+    DatabaseKey database;
+    int baseCurrencyId;
+
+    // Source data.
+
+    List<ContentValues> classes;
+    SparseArray<List<AssetClassStock>> linksByClass;
+    HashMap<String, List<Stock>> stocksBySymbol;
+    SparseArray<Integer> accountCurrencies;
+    /**
+     * Cash in the investment accounts, in base currency.
+     */
+    Money cashValue;
+
+    // Calculated tree.
+
+    AssetClass allocation;
+    /**
+     * The allocation classes that hold each symbol. Used to update the values on price changes.
+     */
+    HashMap<String, List<AssetClass>> classesBySymbol;
+
+    public synchronized void invalidate() {
+        changed = ALL;
+        stockVersion++;
+        allocation = null;
+    }
+
+    synchronized void setChanged(int sources) {
+        changed |= sources;
+        if ((sources & STOCKS) != 0) {
+            stockVersion++;
+        }
+    }
+
+    DatabaseKey getCurrentDatabase() {
+        return DatabaseKey.current(mApp);
+    }
+}
@@ -16,18 +16,23 @@
  */
 package com.money.manager.ex.servicelayer;
 
+import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.util.SparseArray;
 
 import com.money.manager.ex.Constants;
+import com.money.manager.ex.MoneyManagerApplication;
 import com.money.manager.ex.R;
 import com.money.manager.ex.account.AccountTypes;
 import com.money.manager.ex.assetallocation.ItemType;
 import com.money.manager.ex.log.ExceptionHandler;
 import com.money.manager.ex.currency.CurrencyService;
+import com.money.manager.ex.database.DatabaseKey;
 import com.money.manager.ex.datalayer.AccountRepository;
 import com.money.manager.ex.datalayer.AssetClassRepository;
 import com.money.manager.ex.datalayer.AssetClassStockRepository;
+import com.money.manager.ex.datalayer.StockFields;
 import com.money.manager.ex.datalayer.StockRepository;
 import com.money.manager.ex.domainmodel.Account;
 import com.money.manager.ex.domainmodel.AssetClass;
@@ -39,8 +44,12 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
 
 import info.javaperformance.money.Money;
+import info.javaperformance.money.MoneyAccumulator;
 import info.javaperformance.money.MoneyFactory;
 
 /*
@@ -66,16 +75,15 @@ public class AssetAllocationService
 
         this.repository = new AssetClassRepository(context);
         mCurrencyService = new CurrencyService(context);
-//        mAccountCurrencies = new HashMap<>();
+
+        MoneyManagerApplication.getApp().iocComponent.inject(this);
     }
 
     public AssetClassRepository repository;
 
+    @Inject AssetAllocationCache mCache;
+
     private CurrencyService mCurrencyService;
-    /**
-     * Hashmap of Account Id / Currency Id pairs to speed up the calculation with caching.
-     */
-    private HashMap<Integer, Integer> mAccountCurrencies;
 
     public boolean deleteAllocation(int assetClassId) {
         ExceptionHandler handler = new ExceptionHandler(getContext(), this);
@@ -122,36 +130,129 @@ public class AssetAllocationService
     }
 
     /**
-     * Main entry point when no data is loaded yet..
-     * @return Asset Allocation, see the method with the cursor parameter.
+     * Main entry point. Returns the cached asset allocation when nothing has changed.
+     * Otherwise reloads the changed data, with one query per table, and recalculates the tree.
+     * The returned tree is shared and must not be modified.
+     * @return Full Asset Allocation with all the calculated fields.
      */
     public AssetClass loadAssetAllocation() {
         // http://docs.mongodb.org/manual/tutorial/model-tree-structures/
 
-        // Step 1: Load all elements, ordered by ParentId.
-        Cursor c = loadData();
-        return loadAssetAllocationFrom(c);
+        synchronized (mCache) {
+            DatabaseKey database = mCache.getCurrentDatabase();
+            int baseCurrencyId = mCurrencyService.getBaseCurrencyId();
+            if (!database.equals(mCache.database)) {
+                mCache.database = database;
+                mCache.changed = AssetAllocationCache.ALL;
+            }
+            if (baseCurrencyId != mCache.baseCurrencyId) {
+                mCache.baseCurrencyId = baseCurrencyId;
+                mCache.changed |= AssetAllocationCache.ACCOUNTS;
+            }
+
+            if (mCache.changed == 0 && mCache.allocation != null) {
+                return mCache.allocation;
+            }
+
+            int changed = mCache.changed;
+            mCache.changed = 0;
+
+            if ((changed & AssetAllocationCache.CLASSES) != 0) {
+                mCache.classes = loadClasses();
+            }
+            if ((changed & AssetAllocationCache.LINKS) != 0) {
+                mCache.linksByClass = loadLinks();
+            }
+            if ((changed & (AssetAllocationCache.LINKS | AssetAllocationCache.STOCKS)) != 0) {
+                mCache.stocksBySymbol = loadLinkedStocks();
+            }
+            if ((changed & AssetAllocationCache.ACCOUNTS) != 0) {
+                loadAccounts();
+            }
+
+            mCache.allocation = createAssetAllocation();
+            return mCache.allocation;
+        }
     }
 
     /**
-     * Main entry point.
-     * @param c Cursor with asset classes, from which to load the Asset Allocation.
-     * @return Full Asset Allocation with all the calculated fields.
+     * Call before saving prices, to be passed to updatePrices after the save.
+     * @return the version of the cached stocks, or NOT_SET if they changed since they were
+     * loaded into the cached asset allocation.
      */
-    private AssetClass loadAssetAllocationFrom(Cursor c) {
-        if (c == null) return null;
+    public int getStockVersion() {
+        synchronized (mCache) {
+            if ((mCache.changed & AssetAllocationCache.STOCKS) != 0) return Constants.NOT_SET;
+
+            return mCache.stockVersion;
+        }
+    }
+
+    /**
+     * Updates the cached asset allocation with new stock prices, without reading the database.
+     * Only the values of the asset classes holding the symbols are summed again.
+     * @param prices Prices by stock symbol.
+     * @param stockVersion as returned by getStockVersion before the save. If the save, reported
+     *                     once on commit, is the only change of the stocks since, the stocks are
+     *                     up to date and are not reloaded because of it.
+     */
+    public void updatePrices(Map<String, Money> prices, int stockVersion) {
+        synchronized (mCache) {
+            if (mCache.stocksBySymbol == null) return;
 
+            if (stockVersion != Constants.NOT_SET && mCache.stockVersion == stockVersion + 1) {
+                mCache.changed &= ~AssetAllocationCache.STOCKS;
+            }
+
+            List<AssetClass> changedClasses = new ArrayList<>();
+
+            for (Map.Entry<String, Money> price : prices.entrySet()) {
+                List<Stock> stocks = mCache.stocksBySymbol.get(price.getKey());
+                if (stocks == null) continue;
+
+                for (Stock stock : stocks) {
+                    stock.setCurrentPrice(price.getValue());
+                }
+
+                if (mCache.classesBySymbol == null) continue;
+                List<AssetClass> classes = mCache.classesBySymbol.get(price.getKey());
+                if (classes == null) continue;
+                for (AssetClass assetClass : classes) {
+                    if (!changedClasses.contains(assetClass)) {
+                        changedClasses.add(assetClass);
+                    }
+                }
+            }
+
+            AssetClass root = mCache.allocation;
+            if (root == null || changedClasses.isEmpty()) return;
+
+            for (AssetClass assetClass : changedClasses) {
+                assetClass.setCurrentValue(sumStockValues(assetClass.getStocks()));
+            }
+
+            // The group totals and all the percentages depend on the portfolio value.
+            Money totalValue = sumCurrentValues(root.getChildren());
+            root.setCurrentValue(totalValue);
+            calculateStats(root, totalValue);
+        }
+    }
+
+    /**
+     * Creates the asset allocation tree from the cached source data.
+     */
+    private AssetClass createAssetAllocation() {
         // Main asset allocation object.
         AssetClass root = AssetClass.create("Asset Allocation");
         root.setType(ItemType.Group);
 
-        // Fill a hash map with one pass through cursor. Used for easier fetching of asset classes.
-        HashMap<Integer, AssetClass> map = loadMap(c);
-        c.close();
+        // Fill a hash map with one pass through the records. Used for easier fetching of asset classes.
+        HashMap<Integer, AssetClass> map = loadMap(mCache.classes);
         // Assign children to their parents. Create a hierarchical list.
         List<AssetClass> list = assignChildren(map);
 
         // Load stock links and stocks to asset allocations.
+        mCache.classesBySymbol = new HashMap<>();
         loadStocks(list);
 
         root.setChildren(list);
@@ -296,8 +397,7 @@ public class AssetAllocationService
         }
         cash.setType(ItemType.Cash);
 
-        Money currentValue = calculateCashCurrentValue();
-        cash.setCurrentValue(currentValue);
+        cash.setCurrentValue(mCache.cashValue);
     }
 
     private Money calculateCurrentAllocation(Money currentValue, Money portfolioValue) {
@@ -327,9 +427,8 @@ public class AssetAllocationService
         Money setValue = calculateSetValue(portfolioValue, allocation);
         item.setValue(setValue);
 
-        // Current value
-        Money currentValue = sumStockValues(item.getStocks());
-        item.setCurrentValue(currentValue);
+        // Current value. Calculated with the portfolio value.
+        Money currentValue = item.getCurrentValue();
 
         // Current allocation.
         Money currentAllocation = calculateCurrentAllocation(currentValue, portfolioValue);
@@ -359,43 +458,115 @@ public class AssetAllocationService
         return cash;
     }
 
-    private Money calculateCashCurrentValue() {
-        // get all investment accounts, their currencies and cash balances.
-        AccountService accountService = new AccountService(getContext());
-        List<String> investmentAccounts = new ArrayList<>();
-        investmentAccounts.add(AccountTypes.INVESTMENT.toString());
-        int destinationCurrency = mCurrencyService.getBaseCurrencyId();
-
-        List<Account> accounts = accountService.loadAccounts(false, false, investmentAccounts);
+    private List<ContentValues> loadClasses() {
+        List<ContentValues> result = new ArrayList<>();
 
-        Money sum = MoneyFactory.fromDouble(0);
+        Cursor c = repository.openCursor(null, null, null, AssetClass.PARENTID);
+        if (c == null) return result;
 
-        // Get the balances in base currency.
-        for (Account account : accounts) {
-            int sourceCurrency = account.getCurrencyId();
-            Money amountInBase = mCurrencyService.doCurrencyExchange(destinationCurrency,
-                    account.getInitialBalance(), sourceCurrency);
-            sum = sum.add(amountInBase);
+        while (c.moveToNext()) {
+            result.add(AssetClass.from(c).contentValues);
         }
+        c.close();
 
-        return sum;
+        return result;
     }
 
-    private Cursor loadData() {
-        Cursor c = repository.openCursor(null, null, null, AssetClass.PARENTID);
-        return c;
-    }
+    /**
+     * Loads all the stock links, by asset class.
+     */
+    private SparseArray<List<AssetClassStock>> loadLinks() {
+        SparseArray<List<AssetClassStock>> result = new SparseArray<>();
 
-    private HashMap<Integer, AssetClass> loadMap(Cursor c) {
-        HashMap<Integer, AssetClass> result = new HashMap<>();
+        AssetClassStockRepository linkRepo = new AssetClassStockRepository(getContext());
+        Cursor c = linkRepo.openCursor(null, null, null);
+        if (c == null) return result;
+
+        while (c.moveToNext()) {
+            AssetClassStock link = AssetClassStock.create(0, "");
+            link.loadFromCursor(c);
 
+            List<AssetClassStock> links = result.get(link.getAssetClassId());
+            if (links == null) {
+                links = new ArrayList<>();
+                result.put(link.getAssetClassId(), links);
+            }
+            links.add(link);
+        }
+        c.close();
+
+        return result;
+    }
+
+    /**
+     * Loads all the stocks that are linked to an asset class, by symbol.
+     */
+    private HashMap<String, List<Stock>> loadLinkedStocks() {
+        HashMap<String, List<Stock>> result = new HashMap<>();
+
+        AssetClassStockRepository linkRepo = new AssetClassStockRepository(getContext());
+        StockRepository stockRepo = new StockRepository(getContext());
+        Cursor c = stockRepo.openCursor(null,
+            StockFields.SYMBOL + " IN (SELECT " + AssetClassStock.STOCKSYMBOL +
+                " FROM " + linkRepo.getSource() + ")",
+            null);
         if (c == null) return result;
 
         while (c.moveToNext()) {
-            AssetClass ac = AssetClass.from(c);
+            Stock stock = Stock.from(c);
+
+            List<Stock> stocks = result.get(stock.getSymbol());
+            if (stocks == null) {
+                stocks = new ArrayList<>();
+                result.put(stock.getSymbol(), stocks);
+            }
+            stocks.add(stock);
+        }
+        c.close();
+
+        return result;
+    }
+
+    /**
+     * Loads the account currencies and the cash balance of the investment accounts, in base
+     * currency, with one query.
+     */
+    private void loadAccounts() {
+        SparseArray<Integer> currencies = new SparseArray<>();
+        MoneyAccumulator cash = new MoneyAccumulator();
+        int destinationCurrency = mCache.baseCurrencyId;
+        String investment = AccountTypes.INVESTMENT.toString();
+
+        AccountRepository repo = new AccountRepository(getContext());
+        Cursor c = repo.openCursor(repo.getAllColumns(), null, null);
+        if (c != null) {
+            while (c.moveToNext()) {
+                Account account = Account.from(c);
+                currencies.put(account.getId(), account.getCurrencyId());
+
+                if (!investment.equals(account.getTypeName())) continue;
+
+                // Get the balances in base currency.
+                Money amountInBase = mCurrencyService.doCurrencyExchange(destinationCurrency,
+                    account.getInitialBalance(), account.getCurrencyId());
+                cash.add(amountInBase);
+            }
+            c.close();
+        }
+
+        mCache.accountCurrencies = currencies;
+        mCache.cashValue = cash.toMoney();
+    }
+
+    private HashMap<Integer, AssetClass> loadMap(List<ContentValues> classes) {
+        HashMap<Integer, AssetClass> result = new HashMap<>();
+
+        // New instances, the tree can be created again from the same records.
+        for (ContentValues values : classes) {
+            AssetClass ac = new AssetClass();
+            ac.contentValues.putAll(values);
             result.put(ac.getId(), ac);
         }
-//        c.close();
 
         return result;
     }
@@ -451,28 +622,33 @@ public class AssetAllocationService
 
             assetClass.setType(ItemType.Allocation);
 
-            // load stock links
-            AssetClassStockRepository linkRepo = new AssetClassStockRepository(getContext());
-            List<AssetClassStock> links = linkRepo.loadForClass(assetClass.getId());
+            // stock links
+            List<AssetClassStock> links = mCache.linksByClass.get(assetClass.getId());
+            if (links == null) return;
             assetClass.setStockLinks(links);
 
-            if (assetClass.getStockLinks().size() == 0) return;
+            List<Stock> stocks = new ArrayList<>();
+            for (AssetClassStock link : links) {
+                String symbol = link.getStockSymbol();
 
-            int size = assetClass.getStockLinks().size();
-            String[] symbols = new String[size];
-            for (int i = 0; i < size; i++) {
-                AssetClassStock link = assetClass.getStockLinks().get(i);
-                symbols[i] = link.getStockSymbol();
-            }
+                List<Stock> symbolStocks = mCache.stocksBySymbol.get(symbol);
+                if (symbolStocks != null) {
+                    stocks.addAll(symbolStocks);
+                }
 
-            StockRepository stockRepo = new StockRepository(getContext());
-            List<Stock> stocks = stockRepo.loadForSymbols(symbols);
+                List<AssetClass> classes = mCache.classesBySymbol.get(symbol);
+                if (classes == null) {
+                    classes = new ArrayList<>();
+                    mCache.classesBySymbol.put(symbol, classes);
+                }
+                classes.add(assetClass);
+            }
             assetClass.setStocks(stocks);
         }
     }
 
     private Money calculateCurrentValue(List<AssetClass> allocations) {
-        Money result = MoneyFactory.fromDouble(0);
+        MoneyAccumulator result = new MoneyAccumulator();
 
         for (AssetClass ac : allocations) {
             Money itemValue;
@@ -501,10 +677,10 @@ public class AssetAllocationService
             }
 
             ac.setCurrentValue(itemValue);
-            result = result.add(itemValue);
+            result.add(itemValue);
         }
 
-        return result;
+        return result.toMoney();
     }
 
     /**
@@ -564,48 +740,43 @@ public class AssetAllocationService
     }
 
     private Money getAllocationSum(List<AssetClass> group) {
-        List<Money> allocations = new ArrayList<>();
+        MoneyAccumulator sum = new MoneyAccumulator();
         for (AssetClass item : group) {
-            allocations.add(item.getAllocation());
-        }
-
-        Money sum = MoneyFactory.fromString("0");
-        for (Money allocation : allocations) {
-            sum = sum.add(allocation);
+            sum.add(item.getAllocation());
         }
-        return sum;
+        return sum.toMoney();
     }
 
     private Money getValueSum(List<AssetClass> group) {
-        Money sum = MoneyFactory.fromDouble(0);
+        MoneyAccumulator sum = new MoneyAccumulator();
         for (AssetClass item : group) {
-            sum = sum.add(item.getValue());
+            sum.add(item.getValue());
         }
-        return sum;
+        return sum.toMoney();
     }
 
     private Money getCurrentAllocationSum(List<AssetClass> group) {
-        Money sum = MoneyFactory.fromDouble(0);
+        MoneyAccumulator sum = new MoneyAccumulator();
         for (AssetClass item : group) {
-            sum = sum.add(item.getCurrentAllocation());
+            sum.add(item.getCurrentAllocation());
         }
-        return sum;
+        return sum.toMoney();
     }
 
     private Money getCurrentValueSum(List<AssetClass> group) {
-        Money sum = MoneyFactory.fromDouble(0);
+        MoneyAccumulator sum = new MoneyAccumulator();
         for (AssetClass item : group) {
-            sum = sum.add(item.getCurrentValue());
+            sum.add(item.getCurrentValue());
         }
-        return sum;
+        return sum.toMoney();
     }
 
     private Money getDifferenceSum(List<AssetClass> group) {
-        Money sum = MoneyFactory.fromDouble(0);
+        MoneyAccumulator sum = new MoneyAccumulator();
         for (AssetClass item : group) {
-            sum = sum.add(item.getDifference());
+            sum.add(item.getDifference());
         }
-        return sum;
+        return sum.toMoney();
     }
 
     private void sortChildren(AssetClass allocation) {
@@ -624,7 +795,7 @@ public class AssetAllocationService
     }
 
     private Money sumStockValues(List<Stock> stocks) {
-        Money sum = MoneyFactory.fromDouble(0);
+        MoneyAccumulator sum = new MoneyAccumulator();
         int baseCurrencyId = mCurrencyService.getBaseCurrencyId();
 
         for (Stock stock : stocks) {
@@ -633,26 +804,25 @@ public class AssetAllocationService
             int currencyId = getAccountCurrencyId(accountId);
             Money value = mCurrencyService.doCurrencyExchange(baseCurrencyId, stock.getValue(), currencyId);
 
-            sum = sum.add(value);
+            sum.add(value);
         }
-        return sum;
+        return sum.toMoney();
     }
 
     private Integer getAccountCurrencyId(int accountId) {
-        if (mAccountCurrencies == null) {
-            mAccountCurrencies = new HashMap<>();
-        }
-
-        if (mAccountCurrencies.containsKey(accountId)) {
-            return mAccountCurrencies.get(accountId);
-        }
+        return mCache.accountCurrencies.get(accountId);
+    }
 
-        // else load
+    private Money sumCurrentValues(List<AssetClass> allocations) {
+        MoneyAccumulator result = new MoneyAccumulator();
 
-        AccountRepository repo = new AccountRepository(getContext());
-        Integer currencyId = repo.loadCurrencyIdFor(accountId);
-        mAccountCurrencies.put(accountId, currencyId);
+        for (AssetClass ac : allocations) {
+            if (ac.getType() == ItemType.Group) {
+                ac.setCurrentValue(sumCurrentValues(ac.getChildren()));
+            }
+            result.add(ac.getCurrentValue());
+        }
 
-        return currencyId;
+        return result.toMoney();
     }
 }
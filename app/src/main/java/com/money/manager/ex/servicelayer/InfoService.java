@@ -19,13 +19,14 @@ package com.money.manager.ex.servicelayer;
 
 import android.content.ContentValues;
 import android.content.Context;
-import android.database.Cursor;
 //import net.sqlcipher.database.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabase;
 
 import com.money.manager.ex.MoneyManagerApplication;
+import com.money.manager.ex.core.InfoKeys;
+import com.money.manager.ex.database.MonthlyTotals;
+import com.money.manager.ex.database.TransactionDates;
 import com.money.manager.ex.datalayer.InfoRepositorySql;
-import com.money.manager.ex.datalayer.Select;
 import com.money.manager.ex.domainmodel.Info;
 
 import javax.inject.Inject;
@@ -101,20 +102,10 @@ public class InfoService
      * @return value
      */
     public String getInfoValue(String info) {
-        Cursor cursor;
         String ret = null;
 
         try {
-            Select query = new Select()
-                    .from(InfoRepositorySql.TABLE_NAME)
-                    .where(Info.INFONAME + "=?", info);
-            cursor = repository.query(query);
-            if (cursor == null) return null;
-
-            if (cursor.moveToFirst()) {
-                ret = cursor.getString(cursor.getColumnIndex(Info.INFOVALUE));
-            }
-            cursor.close();
+            ret = repository.getValue(info);
         } catch (Exception e) {
             Timber.e(e, "retrieving info value: %s", info);
         }
@@ -130,22 +121,26 @@ public class InfoService
      */
     public boolean setInfoValue(String key, String value) {
         boolean result = false;
-        // check if info exists
-        boolean exists = (getInfoValue(key) != null);
-
-        Info entity = Info.create(key, value);
 
         try {
-            if (exists) {
-                result = repository.update(entity);
-            } else {
-                long id = repository.insert(entity);
-                result = id > 0;
-            }
+            result = repository.setValue(key, value);
         } catch (Exception e) {
             Timber.e(e, "writing info value");
         }
 
+        if (result && TransactionDates.dependsOn(key)) {
+            try {
+                SQLiteDatabase db = repository.database.getWritableDatabase();
+                new TransactionDates(db).rebuild();
+                // the financial years of the totals come from the transaction dates.
+                if (!InfoKeys.DATEFORMAT.equals(key)) {
+                    new MonthlyTotals(db).rebuild();
+                }
+            } catch (Exception e) {
+                Timber.e(e, "rebuilding transaction dates");
+            }
+        }
+
         return result;
     }
 }
@@ -18,6 +18,8 @@ package com.money.manager.ex.servicelayer.qif;
 
 import com.money.manager.ex.adapter.AllDataAdapter;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.text.ParseException;
 
 /**
@@ -26,5 +28,5 @@ import java.text.ParseException;
  */
 public interface IQifGenerator {
     // todo: replace AllDataAdapter with generic adapter (i.e. CursorAdapter).
-    String createFromAdapter(AllDataAdapter adapter) throws ParseException;
+    void writeFromAdapter(AllDataAdapter adapter, Writer writer) throws ParseException, IOException;
 }
@@ -23,6 +23,11 @@ import com.money.manager.ex.adapter.AllDataAdapter;
 import com.money.manager.ex.core.file.TextFileExport;
 import com.money.manager.ex.utils.MmxDate;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+
 import timber.log.Timber;
 
 /**
@@ -57,12 +62,21 @@ public class QifExport
             throws Exception {
         String fileName = generateFileName();
 
-        // get data into qif structure
+        // clear previously exported files.
+        clearCache();
+        File file = createExportFile(fileName);
+
+        // write the qif records directly into the file.
         IQifGenerator generator = getQifGenerator();
-        String content = generator.createFromAdapter(adapter);
-        String title = getContext().getString(R.string.qif_export);
+        Writer writer = new BufferedWriter(new FileWriter(file));
+        try {
+            generator.writeFromAdapter(adapter, writer);
+        } finally {
+            writer.close();
+        }
 
-        boolean success = this.export(fileName, content, title);
+        String title = getContext().getString(R.string.qif_export);
+        boolean success = this.export(file, title);
     }
 
 //    private void dumpContentIntoFile(String content, File file) {
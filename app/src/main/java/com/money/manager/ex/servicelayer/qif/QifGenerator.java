@@ -19,11 +19,17 @@ package com.money.manager.ex.servicelayer.qif;
 import android.content.Context;
 import android.database.Cursor;
 
+import com.money.manager.ex.Constants;
 import com.money.manager.ex.adapter.AllDataAdapter;
 import com.money.manager.ex.core.TransactionTypes;
+import com.money.manager.ex.database.QueryAllData;
 import com.money.manager.ex.viewmodels.AccountTransactionDisplay;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Generator of Qif file contents.
@@ -38,19 +44,24 @@ public class QifGenerator implements IQifGenerator {
 
     private Context mContext;
 
-    public String createFromAdapter(AllDataAdapter adapter)
-            throws ParseException {
-        StringBuilder builder = new StringBuilder();
-
+    /**
+     * Writes the transactions from the adapter's cursor as they are read, so that the whole
+     * contents are never held in memory.
+     */
+    public void writeFromAdapter(AllDataAdapter adapter, Writer writer)
+            throws ParseException, IOException {
         Cursor cursor = adapter.getCursor();
         int originalCursorPosition = cursor.getPosition();
-        cursor.moveToFirst();
+
+        QifSplits splits = new QifSplits(mContext);
+        splits.load(getSplitTransactionIds(cursor));
 
         int previousAccountId = 0;
         QifHeader header = new QifHeader(mContext);
-        QifRecord record = new QifRecord(mContext);
+        QifRecord record = new QifRecord(mContext, splits);
         AccountTransactionDisplay transaction = new AccountTransactionDisplay();
 
+        cursor.moveToFirst();
         while (!cursor.isAfterLast()) {
             // get data from cursor.
             transaction.loadFromCursor(cursor);
@@ -64,21 +75,30 @@ public class QifGenerator implements IQifGenerator {
             if (accountId != previousAccountId) {
                 previousAccountId = accountId;
                 // add header record
-                String headerRecord = header.parse(cursor);
-                builder.append(headerRecord);
+                writer.write(header.parse(cursor));
             }
 
             // add transaction record
-            String row = record.parse(transaction);
+            record.write(transaction, writer);
 
-            builder.append(row);
             cursor.moveToNext();
         }
         // No need to close the cursor here because it is used in the parent fragment.
-//        cursor.close();
         cursor.moveToPosition(originalCursorPosition);
-
-        return builder.toString();
     }
 
+    private List<Integer> getSplitTransactionIds(Cursor cursor) {
+        List<Integer> ids = new ArrayList<>();
+
+        int idColumn = cursor.getColumnIndex(QueryAllData.ID);
+        int splitColumn = cursor.getColumnIndex(QueryAllData.SPLITTED);
+
+        cursor.moveToPosition(Constants.NOT_SET);
+        while (cursor.moveToNext()) {
+            if (cursor.getInt(splitColumn) > 0) {
+                ids.add(cursor.getInt(idColumn));
+            }
+        }
+        return ids;
+    }
 }
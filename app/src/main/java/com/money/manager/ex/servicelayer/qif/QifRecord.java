@@ -19,17 +19,16 @@ package com.money.manager.ex.servicelayer.qif;
 import android.content.Context;
 import android.text.TextUtils;
 
-import com.money.manager.ex.Constants;
 import com.money.manager.ex.core.TransactionTypes;
 import com.money.manager.ex.database.ISplitTransaction;
-import com.money.manager.ex.datalayer.SplitCategoriesRepository;
-import com.money.manager.ex.servicelayer.CategoryService;
 import com.money.manager.ex.utils.MmxDate;
 import com.money.manager.ex.viewmodels.AccountTransactionDisplay;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.text.ParseException;
-import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import info.javaperformance.money.Money;
 
@@ -42,50 +41,46 @@ import info.javaperformance.money.Money;
  * http://www.unicode.org/reports/tr35/tr35-dates.html#Date_Format_Patterns
  */
 public class QifRecord {
-    public QifRecord(Context context) {
+    public QifRecord(Context context, QifSplits splits) {
         mContext = context;
+        mSplits = splits;
     }
 
+    private final String lineSeparator = System.getProperty("line.separator");
     private Context mContext;
+    private QifSplits mSplits;
 
     public Context getContext() {
         return mContext;
     }
 
     /**
-     * Parses the data and generates a QIF record for transaction.
-     * @return A string representing one QIF record
+     * Writes a QIF record for the transaction.
      */
-    public String parse(AccountTransactionDisplay transaction) throws ParseException {
-        final String lineSeparator = System.getProperty("line.separator");
-
-        StringBuilder builder = new StringBuilder();
+    public void write(AccountTransactionDisplay transaction, Writer writer)
+        throws ParseException, IOException {
 
         // Date
         String date = parseDate(transaction);
-        builder.append("D");
-        builder.append(date);
-        builder.append(lineSeparator);
+        writer.write("D");
+        writer.write(date);
+        writer.write(lineSeparator);
 
         // Amount
         String amount = parseAmount(transaction);
-//        builder.append("U");
-//        builder.append(this.Amount);
-//        builder.append(System.lineSeparator());
-        builder.append("T");
-        builder.append(amount);
-        builder.append(lineSeparator);
+        writer.write("T");
+        writer.write(amount);
+        writer.write(lineSeparator);
 
         // Cleared status
-//        String status = parseCleared(transaction);
         String status = transaction.getStatusCode();
         if (!TextUtils.isEmpty(status)) {
             // Cleared: * or c. We don't have Cleared in MMEX.
             // Reconciled: X or R
-            builder.append("C");
+            writer.write("C");
             switch (status) {
                 case "R":
-                    builder.append(status);
+                    writer.write(status);
                     break;
             }
         }
@@ -93,14 +88,13 @@ public class QifRecord {
         // Payee
         String payee = transaction.getPayee();
         if (!TextUtils.isEmpty(payee)) {
-            builder.append("P");
-            builder.append(payee);
-            builder.append(lineSeparator);
+            writer.write("P");
+            writer.write(payee);
+            writer.write(lineSeparator);
         }
 
         // Categories / Transfers
         String category;
-//        String transactionTypeName = getTransactionTypeName(transaction);
         TransactionTypes transactionType = transaction.getTransactionType();
         if (transactionType.equals(TransactionTypes.Transfer)) {
             // Category is the destination account name.
@@ -112,84 +106,63 @@ public class QifRecord {
             category = parseCategory(transaction);
         }
         if (category != null) {
-            builder.append("L");
-            builder.append(category);
-            builder.append(lineSeparator);
+            writer.write("L");
+            writer.write(category);
+            writer.write(lineSeparator);
         }
 
         // Split Categories
         boolean splitCategory = transaction.getIsSplit();
         if (splitCategory) {
-            String splits = getSplitCategories(transaction);
-            builder.append(splits);
+            writeSplitCategories(transaction, writer);
         }
 
         // Memo
         String memo = transaction.getNotes();
         if (!TextUtils.isEmpty(memo)) {
-            builder.append("M");
-            builder.append(memo);
-            builder.append(lineSeparator);
+            writer.write("M");
+            writer.write(memo);
+            writer.write(lineSeparator);
         }
 
-        builder.append("^");
-        builder.append(lineSeparator);
-
-        return builder.toString();
+        writer.write("^");
+        writer.write(lineSeparator);
     }
 
-    public String getSplitCategories(AccountTransactionDisplay transaction) {
-        StringBuilder builder = new StringBuilder();
+    private void writeSplitCategories(AccountTransactionDisplay transaction, Writer writer)
+        throws IOException {
+        List<ISplitTransaction> splits = mSplits.getSplitsFor(transaction.getId());
 
-        // retrieve splits
-        SplitCategoriesRepository repo = new SplitCategoriesRepository(mContext);
-        int transactionId = transaction.getId();
-        ArrayList<ISplitTransaction> splits = repo.loadSplitCategoriesFor(transactionId);
-        if (splits == null) return Constants.EMPTY_STRING;
+        TransactionTypes transactionType = TransactionTypes.valueOf(transaction.getTransactionTypeName());
 
-        String transactionType = transaction.getTransactionTypeName();
-
-        for(ISplitTransaction split : splits) {
-            String splitRecord = getSplitCategory(split, transactionType);
-            builder.append(splitRecord);
+        for (ISplitTransaction split : splits) {
+            writeSplitCategory(split, transactionType, writer);
         }
-
-        return builder.toString();
     }
 
-    private String getSplitCategory(ISplitTransaction split, String transactionType) {
-        final String lineSeparator = System.getProperty("line.separator");
-
-        StringBuilder builder = new StringBuilder();
-
+    private void writeSplitCategory(ISplitTransaction split, TransactionTypes transactionType,
+                                    Writer writer) throws IOException {
         // S = category in split
         // $ = amount in split
         // E = memo in split
 
         // category
-        CategoryService service = new CategoryService(getContext());
-        String category = service.getCategorySubcategoryName(split.getCategoryId(), split.getSubcategoryId());
-        builder.append("S");
-        builder.append(category);
-        builder.append(lineSeparator);
+        String category = mSplits.getCategorySubcategoryName(split.getCategoryId(), split.getSubcategoryId());
+        writer.write("S");
+        writer.write(category);
+        writer.write(lineSeparator);
 
         // amount
         Money amount = split.getAmount();
         // e sign
-        if (TransactionTypes.valueOf(transactionType).equals(TransactionTypes.Withdrawal)) {
+        if (transactionType.equals(TransactionTypes.Withdrawal)) {
             amount = amount.negate();
         }
-        if (TransactionTypes.valueOf(transactionType).equals(TransactionTypes.Deposit)) {
-            // leave positive?
-        }
-        builder.append("$");
-        builder.append(amount);
-        builder.append(lineSeparator);
+        writer.write("$");
+        writer.write(amount.toString());
+        writer.write(lineSeparator);
 
         // memo - currently we don't have a field for it.
-//        String memo = split.get
-
-        return builder.toString();
     }
 
     private String parseDate(AccountTransactionDisplay transaction) throws ParseException {
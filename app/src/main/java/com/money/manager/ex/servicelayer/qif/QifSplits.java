@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.servicelayer.qif;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.text.TextUtils;
+import android.util.SparseArray;
+
+import com.money.manager.ex.Constants;
+import com.money.manager.ex.database.ISplitTransaction;
+import com.money.manager.ex.datalayer.CategoryRepository;
+import com.money.manager.ex.datalayer.SplitCategoriesRepository;
+import com.money.manager.ex.datalayer.SubcategoryRepository;
+import com.money.manager.ex.domainmodel.Category;
+import com.money.manager.ex.domainmodel.SplitCategory;
+import com.money.manager.ex.domainmodel.Subcategory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Split categories and category names for the QIF export.
+ * The splits of all the exported transactions are loaded with one query, and the category
+ * names with one query per table, instead of querying for every transaction.
+ */
+public class QifSplits {
+
+    public QifSplits(Context context) {
+        mContext = context;
+    }
+
+    private Context mContext;
+    private SparseArray<List<ISplitTransaction>> mSplits = new SparseArray<>();
+    private SparseArray<String> mCategoryNames;
+    private SparseArray<String> mSubcategoryNames;
+
+    /**
+     * Loads the splits of the given (split) transactions.
+     */
+    public void load(List<Integer> transactionIds) {
+        mSplits.clear();
+        if (transactionIds.isEmpty()) return;
+
+        SplitCategoriesRepository repo = new SplitCategoriesRepository(mContext);
+        Cursor c = repo.openCursor(null,
+            SplitCategory.TRANSID + " IN (" + TextUtils.join(",", transactionIds) + ")",
+            null,
+            SplitCategory.TRANSID + ", " + SplitCategory.SPLITTRANSID);
+        if (c == null) return;
+
+        while (c.moveToNext()) {
+            SplitCategory split = new SplitCategory();
+            split.loadFromCursor(c);
+
+            List<ISplitTransaction> list = mSplits.get(split.getTransId());
+            if (list == null) {
+                list = new ArrayList<>();
+                mSplits.put(split.getTransId(), list);
+            }
+            list.add(split);
+        }
+        c.close();
+    }
+
+    public List<ISplitTransaction> getSplitsFor(int transactionId) {
+        List<ISplitTransaction> result = mSplits.get(transactionId);
+        return result == null
+            ? Collections.<ISplitTransaction>emptyList()
+            : result;
+    }
+
+    /**
+     * Same format as CategoryService.getCategorySubcategoryName.
+     */
+    public String getCategorySubcategoryName(int categoryId, int subCategoryId) {
+        if (mCategoryNames == null) {
+            loadCategoryNames();
+        }
+
+        String result = "";
+        if (categoryId != Constants.NOT_SET) {
+            result += mCategoryNames.get(categoryId, "n/a");
+        }
+        if (subCategoryId != Constants.NOT_SET) {
+            result += ":" + mSubcategoryNames.get(subCategoryId, "n/a");
+        }
+        return result;
+    }
+
+    private void loadCategoryNames() {
+        mCategoryNames = new SparseArray<>();
+        mSubcategoryNames = new SparseArray<>();
+
+        Cursor c = new CategoryRepository(mContext).openCursor(
+            new String[] { Category.CATEGID, Category.CATEGNAME }, null, null);
+        if (c != null) {
+            while (c.moveToNext()) {
+                mCategoryNames.put(c.getInt(0), c.getString(1));
+            }
+            c.close();
+        }
+
+        c = new SubcategoryRepository(mContext).openCursor(
+            new String[] { Subcategory.SUBCATEGID, Subcategory.SUBCATEGNAME }, null, null);
+        if (c != null) {
+            while (c.moveToNext()) {
+                mSubcategoryNames.put(c.getInt(0), c.getString(1));
+            }
+            c.close();
+        }
+    }
+}
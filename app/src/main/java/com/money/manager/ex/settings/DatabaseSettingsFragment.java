@@ -18,6 +18,7 @@ package com.money.manager.ex.settings;
 
 import android.database.sqlite.SQLiteDatabase;
 import android.os.Bundle;
+import android.support.annotation.NonNull;
 import android.support.v7.preference.Preference;
 import android.support.v7.preference.PreferenceFragmentCompat;
 import android.support.v7.preference.PreferenceScreen;
@@ -27,6 +28,7 @@ import android.text.TextUtils;
 import android.util.Log;
 import android.widget.Toast;
 
+import com.afollestad.materialdialogs.DialogAction;
 import com.afollestad.materialdialogs.MaterialDialog;
 import com.money.manager.ex.BuildConfig;
 import com.money.manager.ex.core.UIHelper;
@@ -35,8 +37,13 @@ import com.money.manager.ex.home.DatabaseMetadataFactory;
 import com.money.manager.ex.MoneyManagerApplication;
 import com.money.manager.ex.R;
 import com.money.manager.ex.core.Core;
+import com.money.manager.ex.database.AccountBalanceLedger;
+import com.money.manager.ex.database.MonthlyTotals;
+import com.money.manager.ex.database.TransactionSearchIndex;
 import com.money.manager.ex.database.DatabaseMigrator14To20;
 import com.money.manager.ex.database.MmxOpenHelper;
+import com.money.manager.ex.database.QueryStatistics;
+import com.money.manager.ex.database.StatementCache;
 import com.money.manager.ex.home.MainActivity;
 import com.money.manager.ex.home.RecentDatabasesProvider;
 import com.money.manager.ex.utils.DonateDialogUtils;
@@ -57,6 +64,8 @@ public class DatabaseSettingsFragment
 
     @Inject Lazy<MmxOpenHelper> openHelper;
     @Inject Lazy<RecentDatabasesProvider> mDatabases;
+    @Inject Lazy<QueryStatistics> queryStatistics;
+    @Inject Lazy<StatementCache> statementCache;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -97,6 +106,11 @@ public class DatabaseSettingsFragment
 
         // Fix duplicates
         initFixDuplicates();
+
+        // Account balances
+        initVerifyBalances();
+
+        initQueryStatistics();
     }
 
     @Override
@@ -378,6 +392,99 @@ public class DatabaseSettingsFragment
         preference.setOnPreferenceClickListener(clickListener);
     }
 
+    private void initVerifyBalances() {
+        Preference preference = findPreference(getString(R.string.pref_db_verify_balances));
+        if (preference == null) return;
+
+        preference.setSummary(getString(R.string.db_verify_balances_summary));
+
+        Preference.OnPreferenceClickListener clickListener = new Preference.OnPreferenceClickListener() {
+            @Override
+            public boolean onPreferenceClick(Preference preference) {
+                try {
+                    Timber.d("verifying account balances");
+
+                    SQLiteDatabase db = openHelper.get().getWritableDatabase();
+                    boolean result = new AccountBalanceLedger(db).verifyAndRebuild();
+                    result &= new MonthlyTotals(db).verifyAndRebuild();
+                    result &= new TransactionSearchIndex(db).verifyAndRebuild();
+
+                    if (result) {
+                        showToast(R.string.db_verify_balances_success, Toast.LENGTH_SHORT);
+                    } else {
+                        showToast(R.string.db_verify_balances_rebuilt, Toast.LENGTH_SHORT);
+                    }
+                } catch (Exception ex) {
+                    Timber.e(ex, "verifying account balances");
+                    showToast(R.string.error, Toast.LENGTH_SHORT);
+                }
+                return false;
+            }
+        };
+
+        preference.setOnPreferenceClickListener(clickListener);
+    }
+
+    private void initQueryStatistics() {
+        Preference preference = findPreference(getString(R.string.pref_db_query_statistics));
+        if (preference == null) return;
+
+        preference.setSummary(getString(R.string.db_query_statistics_summary));
+
+        Preference.OnPreferenceClickListener clickListener = new Preference.OnPreferenceClickListener() {
+            @Override
+            public boolean onPreferenceClick(Preference preference) {
+                QueryStatistics statistics = queryStatistics.get();
+                if (!statistics.isEnabled()) {
+                    statistics.setEnabled(true);
+                    showToast(R.string.db_query_statistics_started, Toast.LENGTH_SHORT);
+                    return false;
+                }
+
+                showQueryStatistics();
+                return false;
+            }
+        };
+
+        preference.setOnPreferenceClickListener(clickListener);
+    }
+
+    private void showQueryStatistics() {
+        new MaterialDialog.Builder(getActivity())
+            .title(R.string.db_query_statistics)
+            .content(queryStatistics.get().getReport() + "\n" + statementCache.get().getStatistics())
+            .positiveText(R.string.export)
+            .onPositive(new MaterialDialog.SingleButtonCallback() {
+                @Override
+                public void onClick(@NonNull MaterialDialog dialog, @NonNull DialogAction which) {
+                    exportQueryStatistics();
+                }
+            })
+            .neutralText(R.string.reset)
+            .onNeutral(new MaterialDialog.SingleButtonCallback() {
+                @Override
+                public void onClick(@NonNull MaterialDialog dialog, @NonNull DialogAction which) {
+                    queryStatistics.get().reset();
+                }
+            })
+            .negativeText(R.string.close)
+            .show();
+    }
+
+    private void exportQueryStatistics() {
+        MmxDatabaseUtils dbUtils = new MmxDatabaseUtils(getActivity());
+        File file = new File(dbUtils.getDefaultDatabaseDirectory(), "query_statistics.txt");
+        try {
+            queryStatistics.get().export(file);
+            Toast.makeText(getActivity(), getString(R.string.export_file_complete, file.getPath()),
+                Toast.LENGTH_LONG).show();
+        } catch (Exception e) {
+            Timber.e(e, "exporting query statistics");
+            Toast.makeText(getActivity(), getString(R.string.export_file_failed, file.getPath()),
+                Toast.LENGTH_LONG).show();
+        }
+    }
+
     private void showNumberOfRecentFiles() {
         Preference preference = findPreference(getString(R.string.pref_clear_recent_files));
         if (preference == null) return;
@@ -426,6 +426,9 @@ public class SyncManager {
         File localFile = new File(localPath);
         if (!localFile.exists()) return false;
 
+        // The recent changes may still be in the write-ahead log.
+        MoneyManagerApplication.getApp().checkpointDb(localPath);
+
         FileInputStream input;
         try {
             input = new FileInputStream(localFile);
@@ -217,13 +217,16 @@ public class SyncService
 
         notificationManager.cancel(SyncConstants.NOTIFICATION_SYNC_IN_PROGRESS);
 
-        // copy file
+        // copy file. The open database would keep using its write-ahead log over the new file.
+        MoneyManagerApplication.getApp().closeDb(localFile.getPath());
         try {
             MmxFileUtils.copy(tempFile, localFile);
             tempFile.delete();
         } catch (IOException e) {
             Timber.e(e, "copying downloaded database file");
             return;
+        } finally {
+            MoneyManagerApplication.getApp().databaseReplaced(localFile.getPath());
         }
 
         sync.saveRemoteLastModifiedDate(localFile.getAbsolutePath(), remoteFile);
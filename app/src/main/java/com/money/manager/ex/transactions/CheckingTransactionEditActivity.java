@@ -22,6 +22,7 @@ import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Parcelable;
 import android.preference.PreferenceManager;
+import android.util.SparseArray;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.Toast;
@@ -50,6 +51,7 @@ import com.money.manager.ex.datalayer.AccountRepository;
 import com.money.manager.ex.datalayer.AccountTransactionRepository;
 import com.money.manager.ex.datalayer.RecurringTransactionRepository;
 import com.money.manager.ex.datalayer.SplitCategoriesRepository;
+import com.money.manager.ex.datalayer.UnitOfWork;
 import com.money.manager.ex.domainmodel.AccountTransaction;
 import com.money.manager.ex.domainmodel.Payee;
 import com.money.manager.ex.settings.AppSettings;
@@ -561,6 +563,8 @@ public class CheckingTransactionEditActivity
 
     /**
      * Save data to the database.
+     * The transaction, its split categories and the default payee category are stored in one
+     * database transaction.
      * @return true if update data successful
      */
     private boolean saveData() {
@@ -572,24 +576,43 @@ public class CheckingTransactionEditActivity
             mCommon.resetTransfer();
         }
 
-        // Transaction. Need the Id for split categories.
-
-        if (!saveTransaction()) return false;
-
         // Split Categories
 
-        if (mCommon.convertOneSplitIntoRegularTransaction()) {
-            saveTransaction();
-        }
+        mCommon.convertOneSplitIntoRegularTransaction();
 
         if(!mCommon.isSplitSelected()) {
             // Delete any split categories if split is unchecked.
             mCommon.removeAllSplitCategories();
         }
-        if (!saveSplitCategories()) return false;
+
+        UnitOfWork work = new UnitOfWork(this);
+
+        // Transaction. The split categories reference the id of a new transaction.
+        boolean isNew = !mCommon.transactionEntity.hasId();
+        int transactionInsert = saveTransaction(work);
+
+        SparseArray<SplitCategory> splitInserts = saveSplitCategories(work, transactionInsert);
 
         // update category and subcategory for the default payee
-        saveDefaultPayee(isTransfer);
+        saveDefaultPayee(work, isTransfer);
+
+        if (!work.commit()) {
+            Toast.makeText(getApplicationContext(),
+                isNew ? R.string.db_checking_insert_failed : R.string.db_checking_update_failed,
+                Toast.LENGTH_SHORT).show();
+            Timber.w("Saving transaction failed!");
+            return false;
+        }
+
+        // Assign the new ids.
+        if (isNew) {
+            mCommon.transactionEntity.setId(work.getInsertedId(transactionInsert));
+        }
+        for (int i = 0; i < splitInserts.size(); i++) {
+            SplitCategory split = splitInserts.valueAt(i);
+            split.setId(work.getInsertedId(splitInserts.keyAt(i)));
+            split.setTransId(mCommon.transactionEntity.getId());
+        }
 
         // Process recurring transaction.
         if (mRecurringTransactionId != Constants.NOT_SET) {
@@ -600,7 +623,7 @@ public class CheckingTransactionEditActivity
         return true;
     }
 
-    private void saveDefaultPayee(boolean isTransfer) {
+    private void saveDefaultPayee(UnitOfWork work, boolean isTransfer) {
         if ((isTransfer) || !mCommon.hasPayee() || mCommon.hasSplitCategories()) {
             return;
         }
@@ -613,22 +636,24 @@ public class CheckingTransactionEditActivity
         payee.setCategoryId(mCommon.transactionEntity.getCategoryId());
         payee.setSubcategoryId(mCommon.transactionEntity.getSubcategoryId());
 
-        boolean saved = payeeRepository.save(payee);
-        if (!saved) {
-            Toast.makeText(getApplicationContext(), R.string.db_payee_update_failed, Toast.LENGTH_SHORT).show();
-            Timber.w("Update Payee with Id=%d return <= 0", mCommon.transactionEntity.getPayeeId());
-        }
-
+        payeeRepository.save(work, payee);
     }
 
-    private boolean saveSplitCategories() {
+    /**
+     * @return the inserted split categories by the index of their insert in the unit of work.
+     */
+    private SparseArray<SplitCategory> saveSplitCategories(UnitOfWork work, int transactionInsert) {
+        SparseArray<SplitCategory> inserts = new SparseArray<>();
         Integer transactionId = mCommon.transactionEntity.getId();
         SplitCategoriesRepository splitRepo = new SplitCategoriesRepository(this);
         ArrayList<ISplitTransaction> deletedSplits = mCommon.getDeletedSplitCategories();
 
         // deleted old split transaction
-        if (!deletedSplits.isEmpty()) {
-            if (!mCommon.deleteMarkedSplits(splitRepo)) return false;
+        for (ISplitTransaction splitToDelete : deletedSplits) {
+            // Ignore unsaved entities.
+            if (!splitToDelete.hasId()) continue;
+
+            splitRepo.delete(work, splitToDelete);
         }
 
         // update split transaction
@@ -642,50 +667,36 @@ public class CheckingTransactionEditActivity
                     continue;
                 }
 
-                entity.setTransId(transactionId);
+                if (transactionId != null) {
+                    entity.setTransId(transactionId);
+                }
 
                 if (entity.getId() == null || entity.getId() == Constants.NOT_SET) {
                     // insert data
-                    if (!splitRepo.insert(entity)) {
-                        Toast.makeText(getApplicationContext(), R.string.db_checking_insert_failed, Toast.LENGTH_SHORT).show();
-                        Timber.w("Insert new split transaction failed!");
-                        return false;
-                    }
+                    inserts.put(splitRepo.insert(work, entity, transactionInsert), entity);
                 } else {
                     // update data
-                    if (!splitRepo.update(entity)) {
-                        Toast.makeText(getApplicationContext(), R.string.db_checking_update_failed, Toast.LENGTH_SHORT).show();
-                        Timber.w("Update split transaction failed!");
-                        return false;
-                    }
+                    splitRepo.update(work, entity);
                 }
             }
         }
 
-        return true;
+        return inserts;
     }
 
-    private boolean saveTransaction() {
+    /**
+     * @return index of the insert in the unit of work, or NOT_SET for an existing transaction.
+     */
+    private int saveTransaction(UnitOfWork work) {
         AccountTransactionRepository repo = new AccountTransactionRepository(this);
 
         if (!mCommon.transactionEntity.hasId()) {
             // insert
-            mCommon.transactionEntity = repo.insert((AccountTransaction) mCommon.transactionEntity);
-
-            if (!mCommon.transactionEntity.hasId()) {
-                Toast.makeText(getApplicationContext(), R.string.db_checking_insert_failed, Toast.LENGTH_SHORT).show();
-                Timber.w("Insert new transaction failed!");
-                return false;
-            }
-        } else {
-            // update
-            boolean updated = repo.update((AccountTransaction) mCommon.transactionEntity);
-            if (!updated) {
-                Toast.makeText(getApplicationContext(), R.string.db_checking_update_failed, Toast.LENGTH_SHORT).show();
-                Timber.w("Update transaction failed!");
-                return false;
-            }
+            return repo.insert(work, (AccountTransaction) mCommon.transactionEntity);
         }
-        return true;
+
+        // update
+        repo.update(work, (AccountTransaction) mCommon.transactionEntity);
+        return Constants.NOT_SET;
     }
 }
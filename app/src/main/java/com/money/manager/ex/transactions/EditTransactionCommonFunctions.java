@@ -18,7 +18,6 @@ package com.money.manager.ex.transactions;
 
 import android.app.Activity;
 import android.content.Intent;
-import android.database.Cursor;
 import android.os.Bundle;
 import android.os.Parcelable;
 import android.support.annotation.NonNull;
@@ -48,6 +47,7 @@ import com.money.manager.ex.core.RequestCodes;
 import com.money.manager.ex.core.UIHelper;
 import com.money.manager.ex.database.ISplitTransaction;
 import com.money.manager.ex.database.ITransactionEntity;
+import com.money.manager.ex.database.StatementCache;
 import com.money.manager.ex.datalayer.CategoryRepository;
 import com.money.manager.ex.datalayer.IRepository;
 import com.money.manager.ex.datalayer.PayeeRepository;
@@ -103,6 +103,7 @@ public class EditTransactionCommonFunctions {
     }
 
     @Inject Lazy<MmxDateTimeUtils> dateTimeUtilsLazy;
+    @Inject Lazy<StatementCache> statementCache;
 
     // Model
     public ITransactionEntity transactionEntity;
@@ -685,26 +686,22 @@ public class EditTransactionCommonFunctions {
                     ITransactionEntity.ACCOUNTID + "=?";
 
                 String accountId = transactionEntity.getAccountId().toString();
-                Cursor cursor = mDatabase.query(sql, accountId);
-                if (cursor == null) return;
+                String transNumber = statementCache.get().queryForString(
+                    mDatabase.getReadableDatabase(), sql, accountId);
 
-                if (cursor.moveToFirst()) {
-                    String transNumber = cursor.getString(0);
-                    if (TextUtils.isEmpty(transNumber)) {
-                        transNumber = "0";
-                    }
-                    if ((!TextUtils.isEmpty(transNumber)) && TextUtils.isDigitsOnly(transNumber)) {
-                        try {
-                            // Use Money type to support very large numbers.
-                            Money transactionNumber = MoneyFactory.fromString(transNumber);
-                            viewHolder.edtTransNumber.setText(transactionNumber.add(MoneyFactory.fromString("1"))
-                                .toString());
-                        } catch (Exception e) {
-                            Timber.e(e, "increasing transaction number");
-                        }
+                if (TextUtils.isEmpty(transNumber)) {
+                    transNumber = "0";
+                }
+                if ((!TextUtils.isEmpty(transNumber)) && TextUtils.isDigitsOnly(transNumber)) {
+                    try {
+                        // Use Money type to support very large numbers.
+                        Money transactionNumber = MoneyFactory.fromString(transNumber);
+                        viewHolder.edtTransNumber.setText(transactionNumber.add(MoneyFactory.fromString("1"))
+                            .toString());
+                    } catch (Exception e) {
+                        Timber.e(e, "increasing transaction number");
                     }
                 }
-                cursor.close();
             }
         });
     }
@@ -212,7 +212,7 @@ public class MmxDatabaseUtils {
                 .concat(File.separator).concat(DEFAULT_DB_FILENAME);
     }
 
-    public String makePlaceholders(int len) {
+    public static String makePlaceholders(int len) {
         if (len < 1) {
             // It would lead to an invalid query anyway ..
             throw new RuntimeException("No placeholders");
@@ -313,6 +313,7 @@ public class MmxDatabaseUtils {
         }
 
         // close connection
+        MoneyManagerApplication.getApp().iocComponent.statementCache().clear();
         openHelper.get().close();
 
         // store as the current database in preferences
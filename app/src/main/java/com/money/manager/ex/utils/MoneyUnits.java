@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.money.manager.ex.utils;
+
+import info.javaperformance.money.Money;
+import info.javaperformance.money.MoneyFactory;
+
+/**
+ * Fixed-point amounts: long integers in units of 10^-PRECISION. Used for the balances, which
+ * are summed exactly, both in Java and in SQLite, instead of adding doubles or Money objects.
+ */
+public class MoneyUnits {
+
+    /**
+     * Number of decimals kept in the units.
+     */
+    public static final int PRECISION = 4;
+    private static final long MULTIPLIER = 10000;
+
+    public static long fromDouble(double amount) {
+        return Math.round(amount * MULTIPLIER);
+    }
+
+    public static Money toMoney(long units) {
+        return MoneyFactory.fromUnits(units, PRECISION);
+    }
+
+    /**
+     * @param amount SQL expression of the amount of a row
+     * @return SQL of the sum of the amounts, in units. Each amount is rounded to the units
+     * before adding. 0 if there are no rows.
+     */
+    public static String getSumSql(String amount) {
+        return "IFNULL(SUM(CAST(ROUND((" + amount + ") * " + MULTIPLIER + ") AS INTEGER)), 0)";
+    }
+}
@@ -0,0 +1,10 @@
+-- Indexes for the predicates used by the bundled queries.
+-- Transfers into an account and the balance calculations: (ACCOUNTID = ? OR TOACCOUNTID = ?) AND TRANSDATE ...
+CREATE INDEX IF NOT EXISTS IDX_CHECKINGACCOUNT_ACCOUNT_TRANSDATE ON CHECKINGACCOUNT_V1 (ACCOUNTID, TRANSDATE);
+CREATE INDEX IF NOT EXISTS IDX_CHECKINGACCOUNT_TOACCOUNT_TRANSDATE ON CHECKINGACCOUNT_V1 (TOACCOUNTID, TRANSDATE);
+-- Payee and category usage, reports and search.
+CREATE INDEX IF NOT EXISTS IDX_CHECKINGACCOUNT_PAYEE ON CHECKINGACCOUNT_V1 (PAYEEID);
+CREATE INDEX IF NOT EXISTS IDX_CHECKINGACCOUNT_CATEGORY ON CHECKINGACCOUNT_V1 (CATEGID, SUBCATEGID);
+CREATE INDEX IF NOT EXISTS IDX_SPLITTRANSACTIONS_CATEGORY ON SPLITTRANSACTIONS_V1 (CATEGID, SUBCATEGID);
+-- Stocks by symbol: price updates, watchlist and asset allocation.
+CREATE INDEX IF NOT EXISTS IDX_STOCK_SYMBOL ON STOCK_V1 (SYMBOL);
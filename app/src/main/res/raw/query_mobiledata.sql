@@ -1,5 +1,7 @@
 /*
     Query mobiledata. This is the base for most other queries.
+    AmountBaseConvRate is converted with the rate on the transaction date, from the rate
+    history (CURRENCYHISTORY_V1), or the current rate if there is none.
 */
 SELECT 	TX.TransID AS ID,
     TX.TransCode AS TransactionType,
@@ -31,7 +33,9 @@ SELECT 	TX.TransID AS ID,
     d.day AS Day,
     d.finyear AS FinYear,
     ROUND( ( CASE TX.TRANSCODE WHEN 'Withdrawal' THEN -1 ELSE 1 END ) * ( CASE TX.CATEGID WHEN -1 THEN st.splittransamount ELSE TX.TRANSAMOUNT END) , 2 )
-        * ifnull(cf.BaseConvRate, 1) As AmountBaseConvRate
+        * ifnull( ( SELECT h.CurrValue FROM CURRENCYHISTORY_V1 h
+            WHERE h.CurrencyID = FROMACC.CurrencyID AND h.CurrDate <= TX.TransDate
+            ORDER BY h.CurrDate DESC LIMIT 1 ), ifnull(cf.BaseConvRate, 1) ) As AmountBaseConvRate
 FROM CHECKINGACCOUNT_V1 TX
     LEFT JOIN CATEGORY_V1 CAT ON CAT.CATEGID = TX.CATEGID
     LEFT JOIN SUBCATEGORY_V1 SUBCAT ON SUBCAT.SUBCATEGID = TX.SUBCATEGID AND SUBCAT.CATEGID = TX.CATEGID
@@ -42,15 +46,4 @@ FROM CHECKINGACCOUNT_V1 TX
     LEFT JOIN CATEGORY_V1 SCAT ON SCAT.CATEGID = st.CATEGID AND TX.TransId = st.transid
     LEFT JOIN SUBCATEGORY_V1 SSCAT ON SSCAT.SUBCATEGID = st.SUBCATEGID AND SSCAT.CATEGID = st.CATEGID AND TX.TransId = st.transid
     LEFT JOIN currencyformats_v1 cf ON cf.currencyid = FROMACC.currencyid
-    LEFT JOIN  (
-        SELECT	transid AS id,
-            date( transdate ) AS transdate,
-            round( strftime( '%d', transdate )  ) AS day,
-            round( strftime( '%m', transdate )  ) AS month,
-            round( strftime( '%Y', transdate )  ) AS year,
-            round( strftime( '%Y', transdate, 'start of month', ( ( CASE WHEN fd.infovalue <= round( strftime( '%d', transdate ) ) THEN 1 ELSE 0 END ) - fm.infovalue ) || ' month' )  ) AS finyear,
-            ifnull( ifnull( strftime( df.infovalue, TransDate ), ( strftime( REPLACE( df.infovalue, '%y', SubStr( strftime( '%Y', TransDate ) , 3, 2 ) ) , TransDate ) ) ), date( TransDate )  ) AS UserDate
-        FROM CHECKINGACCOUNT_V1 LEFT JOIN infotable_v1 df ON df.infoname = 'DATEFORMAT'
-            LEFT JOIN infotable_v1 fm ON fm.infoname = 'FINANCIAL_YEAR_START_MONTH'
-            LEFT JOIN infotable_v1 fd ON fd.infoname = 'FINANCIAL_YEAR_START_DAY'
-    ) d ON d.id = TX.TRANSID
\ No newline at end of file
+    LEFT JOIN MMX_TRANSDATE d ON d.TRANSID = TX.TRANSID
\ No newline at end of file
@@ -1,6 +1,11 @@
 -- Retrieve watchlist symbols with latest prices
 select s.stockid, s.symbol, s.stockname, h.date, h.value
 from stock_v1 s
-	left outer join stockhistory_v1 h on h.symbol = s.symbol
+	left outer join stockhistory_v1 h on h.histid = (
+		-- latest price, read through the (symbol, date) index
+		select histid from stockhistory_v1
+		where symbol = s.symbol
+		order by date desc
+		limit 1)
 where s.heldat = ?
-group by s.symbol
\ No newline at end of file
+group by s.symbol
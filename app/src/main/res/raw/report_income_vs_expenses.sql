@@ -1,32 +1,40 @@
-SELECT SUB2.Year, SUB2.Month, SUM(SUB2.i) AS Income, SUM(SUB2.e) AS Expenses, SUM(SUB2.t) AS Transfers
+/*
+    Income vs. expenses per month, with the total for the year as month 99.
+    Aggregates the maintained monthly totals (MMX_MONTHLYTOTALS), which exclude the void
+    transactions. The totals are converted to the base currency with the rate at the end of
+    their month, from the rate history (CURRENCYHISTORY_V1), or the current rate if there is none.
+    The mobile data view uses the rate on the transaction date instead; the report notes this.
+*/
+SELECT t.Year AS Year, t.Month AS Month,
+    TOTAL( CASE WHEN lower( t.TransCode ) = 'deposit' THEN t.BaseTotal ELSE 0 END ) AS Income,
+    TOTAL( CASE WHEN lower( t.TransCode ) = 'withdrawal' THEN t.BaseTotal ELSE 0 END ) AS Expenses,
+    TOTAL( CASE WHEN lower( t.TransCode ) = 'transfer' THEN t.BaseTotal ELSE 0 END ) AS Transfers
 FROM (
-    select sub1.month, sub1.year,
-    case when lower(sub1.transactiontype)='deposit' then sub1.total else 0 end as i,
-    case when lower(sub1.transactiontype)='withdrawal' then sub1.total else 0 end as e,
-    case when lower(sub1.transactiontype)='transfer' then sub1.total else 0 end as t
-    from (
-        select mobiledata.month, mobiledata.year, mobiledata.transactiontype, sum(mobiledata.AmountBaseConvRate) as total
-        from %%mobiledata%%
-        where not(mobiledata.status = 'V')
-        group by month, year, transactiontype
-        ) sub1
-    ) SUB2
-GROUP BY SUB2.Year, SUB2.Month
+    SELECT m.Year AS Year, m.Month AS Month, m.TransCode AS TransCode,
+        m.Total * ifnull( ( SELECT h.CurrValue FROM CURRENCYHISTORY_V1 h
+            WHERE h.CurrencyID = a.CurrencyID
+                AND h.CurrDate <= date( m.Year || '-' || substr( '0' || m.Month, -2 ) || '-01', '+1 month', '-1 day' )
+            ORDER BY h.CurrDate DESC LIMIT 1 ), ifnull( cf.BaseConvRate, 1 ) ) AS BaseTotal
+    FROM MMX_MONTHLYTOTALS m
+        LEFT JOIN ACCOUNTLIST_V1 a ON a.AccountID = m.AccountID
+        LEFT JOIN currencyformats_v1 cf ON cf.CurrencyID = a.CurrencyID
+) t
+GROUP BY t.Year, t.Month
 
-UNION
+UNION ALL
 -- 	 The total for the year
-SELECT SUB2.Year, 99 AS Month, SUM(SUB2.i) AS Income, SUM(SUB2.e) AS Expenses, SUM(SUB2.t) AS Transfers
+SELECT t.Year AS Year, 99 AS Month,
+    TOTAL( CASE WHEN lower( t.TransCode ) = 'deposit' THEN t.BaseTotal ELSE 0 END ) AS Income,
+    TOTAL( CASE WHEN lower( t.TransCode ) = 'withdrawal' THEN t.BaseTotal ELSE 0 END ) AS Expenses,
+    TOTAL( CASE WHEN lower( t.TransCode ) = 'transfer' THEN t.BaseTotal ELSE 0 END ) AS Transfers
 FROM (
-	select sub1.month, sub1.year,
-	case when lower(sub1.transactiontype)='deposit' then sub1.total else 0 end as i,
-	case when lower(sub1.transactiontype)='withdrawal' then sub1.total else 0 end as e,
-	case when lower(sub1.transactiontype)='transfer' then sub1.total else 0 end as t
-	from (
-		select mobiledata.month, mobiledata.year, mobiledata.transactiontype, sum(mobiledata.AmountBaseConvRate) as total
-		from %%mobiledata%%
-    where not(mobiledata.status = 'V')
-    group by month, year, transactiontype
-    ) sub1
-) SUB2
-GROUP BY SUB2.Year
-
+    SELECT m.Year AS Year, m.TransCode AS TransCode,
+        m.Total * ifnull( ( SELECT h.CurrValue FROM CURRENCYHISTORY_V1 h
+            WHERE h.CurrencyID = a.CurrencyID
+                AND h.CurrDate <= date( m.Year || '-' || substr( '0' || m.Month, -2 ) || '-01', '+1 month', '-1 day' )
+            ORDER BY h.CurrDate DESC LIMIT 1 ), ifnull( cf.BaseConvRate, 1 ) ) AS BaseTotal
+    FROM MMX_MONTHLYTOTALS m
+        LEFT JOIN ACCOUNTLIST_V1 a ON a.AccountID = m.AccountID
+        LEFT JOIN currencyformats_v1 cf ON cf.CurrencyID = a.CurrencyID
+) t
+GROUP BY t.Year
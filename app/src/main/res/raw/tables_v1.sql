@@ -129,6 +129,10 @@ TRANSID integer primary key
 );
 CREATE INDEX IDX_CHECKINGACCOUNT_ACCOUNT ON CHECKINGACCOUNT_V1 (ACCOUNTID, TOACCOUNTID);
 CREATE INDEX IDX_CHECKINGACCOUNT_TRANSDATE ON CHECKINGACCOUNT_V1 (TRANSDATE);
+CREATE INDEX IDX_CHECKINGACCOUNT_ACCOUNT_TRANSDATE ON CHECKINGACCOUNT_V1 (ACCOUNTID, TRANSDATE);
+CREATE INDEX IDX_CHECKINGACCOUNT_TOACCOUNT_TRANSDATE ON CHECKINGACCOUNT_V1 (TOACCOUNTID, TRANSDATE);
+CREATE INDEX IDX_CHECKINGACCOUNT_PAYEE ON CHECKINGACCOUNT_V1 (PAYEEID);
+CREATE INDEX IDX_CHECKINGACCOUNT_CATEGORY ON CHECKINGACCOUNT_V1 (CATEGID, SUBCATEGID);
 
 -- Describe CURRENCYHISTORY_V1
 CREATE TABLE CURRENCYHISTORY_V1(
@@ -338,6 +342,7 @@ SPLITTRANSID integer primary key
 , SPLITTRANSAMOUNT numeric
 );
 CREATE INDEX IDX_SPLITTRANSACTIONS_TRANSID ON SPLITTRANSACTIONS_V1(TRANSID);
+CREATE INDEX IDX_SPLITTRANSACTIONS_CATEGORY ON SPLITTRANSACTIONS_V1(CATEGID, SUBCATEGID);
 
 -- Describe SPLITTRANSACTIONS_V2
 CREATE TABLE SPLITTRANSACTIONS_V2(
@@ -367,6 +372,7 @@ STOCKID integer primary key
 , COMMISSION numeric
 );
 CREATE INDEX IDX_STOCK_HELDAT ON STOCK_V1(HELDAT);
+CREATE INDEX IDX_STOCK_SYMBOL ON STOCK_V1(SYMBOL);
 
 -- Describe STOCKHISTORY_V1
 CREATE TABLE STOCKHISTORY_V1(
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.moneymanagerex.android.tests;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.money.manager.ex.BuildConfig;
+import com.money.manager.ex.MoneyManagerApplication;
+import com.money.manager.ex.account.AccountStatuses;
+import com.money.manager.ex.account.AccountTypes;
+import com.money.manager.ex.core.TransactionStatuses;
+import com.money.manager.ex.core.TransactionTypes;
+import com.money.manager.ex.database.AccountBalanceLedger;
+import com.money.manager.ex.database.BalanceCheckpoints;
+import com.money.manager.ex.database.CacheState;
+import com.money.manager.ex.database.QueryAccountBills;
+import com.money.manager.ex.datalayer.AccountRepository;
+import com.money.manager.ex.datalayer.AccountTransactionRepository;
+import com.money.manager.ex.domainmodel.Account;
+import com.money.manager.ex.domainmodel.AccountTransaction;
+import com.money.manager.ex.servicelayer.AccountService;
+import com.money.manager.ex.utils.MmxDate;
+import com.money.manager.ex.utils.MoneyUnits;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.moneymanagerex.android.testhelpers.UnitTestHelper;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import info.javaperformance.money.MoneyFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Account balance ledger tests.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class AccountBalanceLedgerTests {
+
+    private Context context;
+    private int accountId;
+
+    @Before
+    public void setup() {
+        UnitTestHelper.setupContentProvider();
+        context = UnitTestHelper.getContext();
+
+        Account account = new AccountService(context).createAccount("ledger", AccountTypes.CHECKING,
+            AccountStatuses.OPEN, false, 2);
+        accountId = account.getId();
+    }
+
+    @After
+    public void tearDown() {
+        UnitTestHelper.teardownDatabase();
+    }
+
+    @Test
+    public void balanceFollowsTransactionChanges() {
+        // Given
+        AccountTransactionRepository repo = new AccountTransactionRepository(context);
+        AccountTransaction deposit = repo.insert(createTransaction(TransactionTypes.Deposit, "100",
+            TransactionStatuses.NONE));
+        AccountTransaction withdrawal = repo.insert(createTransaction(TransactionTypes.Withdrawal, "30",
+            TransactionStatuses.RECONCILED));
+
+        QueryAccountBills bills = new AccountRepository(context).loadAccountBills(accountId);
+        assertThat(bills.getTotal()).isEqualTo(70);
+        assertThat(bills.getReconciled()).isEqualTo(-30);
+
+        // When
+        withdrawal.setAmount(MoneyFactory.fromString("40"));
+        repo.update(withdrawal);
+        context.getContentResolver().delete(repo.getUri(), AccountTransaction.TRANSID + "=?",
+            new String[] { Integer.toString(deposit.getId()) });
+
+        // Then
+        bills = new AccountRepository(context).loadAccountBills(accountId);
+        assertThat(bills.getTotal()).isEqualTo(-40);
+        assertThat(bills.getReconciled()).isEqualTo(-40);
+
+        AccountBalanceLedger ledger = new AccountBalanceLedger(
+            MoneyManagerApplication.getApp().openHelperAtomicReference.get().getWritableDatabase());
+        assertThat(ledger.verify()).isEmpty();
+    }
+
+    @Test
+    public void ledgerIsRebuiltAfterAnEditOutsideOfTheApp() {
+        // Given
+        SQLiteDatabase db = MoneyManagerApplication.getApp().openHelperAtomicReference.get()
+            .getWritableDatabase();
+        AccountBalanceLedger ledger = new AccountBalanceLedger(db);
+        ledger.ensure(new CacheState(db));
+
+        AccountTransactionRepository repo = new AccountTransactionRepository(context);
+        AccountTransaction deposit = repo.insert(createTransaction(TransactionTypes.Deposit, "100",
+            TransactionStatuses.NONE));
+        // the app's own writes keep the ledger current.
+        assertThat(ledger.ensure(new CacheState(db))).isFalse();
+
+        // When the amount is changed, keeping the number of transactions and the ids.
+        db.execSQL("UPDATE CHECKINGACCOUNT_V1 SET TRANSAMOUNT = 120 WHERE TRANSID = " + deposit.getId());
+        ledger.ensure(new CacheState(db));
+
+        // Then
+        assertThat(new AccountRepository(context).loadAccountBills(accountId).getTotal()).isEqualTo(120);
+    }
+
+    @Test
+    public void checkpointsFollowEarlierTransactions() {
+        // Given
+        AccountTransactionRepository repo = new AccountTransactionRepository(context);
+        AccountTransaction deposit = createTransaction(TransactionTypes.Deposit, "100", TransactionStatuses.NONE);
+        deposit.setDate(new MmxDate("2017-01-10").toDate());
+        repo.insert(deposit);
+
+        SQLiteDatabase db = MoneyManagerApplication.getApp().openHelperAtomicReference.get()
+            .getWritableDatabase();
+        BalanceCheckpoints checkpoints = new BalanceCheckpoints(db);
+        checkpoints.update();
+
+        // When a transaction is added before the checkpoint.
+        AccountTransaction withdrawal = createTransaction(TransactionTypes.Withdrawal, "30",
+            TransactionStatuses.NONE);
+        withdrawal.setDate(new MmxDate("2017-01-20").toDate());
+        repo.insert(withdrawal);
+
+        // Then
+        assertThat(checkpoints.getBalanceOn(accountId, "2017-03-01")).isEqualTo(MoneyUnits.fromDouble(70));
+    }
+
+    private AccountTransaction createTransaction(TransactionTypes type, String amount,
+                                                 TransactionStatuses status) {
+        AccountTransaction tx = AccountTransaction.create(accountId, 1, type, 1, -1,
+            MoneyFactory.fromString(amount));
+        tx.setStatus(status.getCode());
+        return tx;
+    }
+}
@@ -17,15 +17,20 @@
 package org.moneymanagerex.android.tests;
 
 import android.content.Context;
+import android.util.SparseArray;
 
 import com.money.manager.ex.BuildConfig;
 import com.money.manager.ex.account.AccountStatuses;
 import com.money.manager.ex.account.AccountTypes;
+import com.money.manager.ex.core.TransactionTypes;
 import com.money.manager.ex.currency.CurrencyService;
 import com.money.manager.ex.datalayer.AccountRepository;
+import com.money.manager.ex.datalayer.AccountTransactionRepository;
 import com.money.manager.ex.domainmodel.Account;
+import com.money.manager.ex.domainmodel.AccountTransaction;
 import com.money.manager.ex.domainmodel.Currency;
 import com.money.manager.ex.servicelayer.AccountService;
+import com.money.manager.ex.utils.MmxDate;
 
 import org.junit.After;
 import org.junit.Before;
@@ -35,6 +40,9 @@ import org.moneymanagerex.android.testhelpers.UnitTestHelper;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import info.javaperformance.money.Money;
+import info.javaperformance.money.MoneyFactory;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 /**
@@ -95,4 +103,38 @@ public class AccountServiceTests {
         // Then
         assertThat(actual).isEqualTo(expectedCode);
     }
+
+    @Test
+    public void calculateBalancesOn() {
+        // Given
+        UnitTestHelper.setupContentProvider();
+        Context context = UnitTestHelper.getContext();
+        Account first = testObject.createAccount("first", AccountTypes.CHECKING, AccountStatuses.OPEN,
+            false, 2);
+        Account second = testObject.createAccount("second", AccountTypes.CHECKING, AccountStatuses.OPEN,
+            false, 2);
+        AccountTransactionRepository repo = new AccountTransactionRepository(context);
+
+        AccountTransaction deposit = AccountTransaction.create(first.getId(), 1, TransactionTypes.Deposit,
+            1, -1, MoneyFactory.fromString("100.10"));
+        deposit.setDate(new MmxDate("2017-01-10").toDate());
+        repo.insert(deposit);
+
+        AccountTransaction transfer = AccountTransaction.create(first.getId(), 1, TransactionTypes.Transfer,
+            -1, -1, MoneyFactory.fromString("25.05"));
+        transfer.setAccountToId(second.getId());
+        transfer.setAmountTo(MoneyFactory.fromString("25.05"));
+        transfer.setDate(new MmxDate("2017-01-20").toDate());
+        repo.insert(transfer);
+
+        // When
+        SparseArray<Money> actual = testObject.calculateBalancesOn(
+            new int[] { first.getId(), second.getId() }, "2017-01-31");
+
+        // Then
+        assertThat(actual.get(first.getId()).toDouble()).isEqualTo(75.05);
+        assertThat(actual.get(second.getId()).toDouble()).isEqualTo(25.05);
+        assertThat(testObject.calculateBalanceOn(first.getId(), "2017-01-15").toDouble())
+            .isEqualTo(100.1);
+    }
 }
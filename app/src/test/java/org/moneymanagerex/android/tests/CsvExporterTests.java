@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.moneymanagerex.android.tests;
+
+import android.database.MatrixCursor;
+
+import com.money.manager.ex.BuildConfig;
+import com.money.manager.ex.core.CsvExporter;
+import com.money.manager.ex.database.QueryAllData;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.StringWriter;
+import java.text.NumberFormat;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * CSV export tests.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class CsvExporterTests {
+
+    @Test
+    public void exportsAllRows() throws Exception {
+        // Given
+        MatrixCursor cursor = createTransactions();
+        StringWriter output = new StringWriter();
+
+        // When
+        CsvExporter exporter = new CsvExporter(output);
+        int actual = exporter.export(cursor);
+        exporter.close();
+
+        // Then
+        assertThat(actual).isEqualTo(3);
+        String[] lines = output.toString().split("\n");
+        assertThat(lines).hasSize(3);
+        assertThat(lines[0]).isEqualTo("01/02/2017,Shop,-10.5,Food,,1,first");
+        assertThat(lines[1]).isEqualTo("02/02/2017,Wallet,20.0,Salary,,2,second");
+    }
+
+    @Test
+    public void exportsWithTheGivenFormats() throws Exception {
+        // Given
+        MatrixCursor cursor = createTransactions();
+        StringWriter output = new StringWriter();
+        NumberFormat amountFormat = NumberFormat.getNumberInstance(Locale.US);
+        amountFormat.setMinimumFractionDigits(2);
+        amountFormat.setGroupingUsed(false);
+
+        // When
+        CsvExporter exporter = new CsvExporter(output)
+            .setDatePattern("yyyy.MM.dd")
+            .setAmountFormat(amountFormat);
+        exporter.export(cursor);
+        exporter.close();
+
+        // Then
+        String[] lines = output.toString().split("\n");
+        assertThat(lines[0]).isEqualTo("2017.02.01,Shop,-10.50,Food,,1,first");
+        assertThat(lines[1]).isEqualTo("2017.02.02,Wallet,20.00,Salary,,2,second");
+    }
+
+    private MatrixCursor createTransactions() {
+        MatrixCursor cursor = new MatrixCursor(new String[] { QueryAllData.UserDate,
+            QueryAllData.Date, QueryAllData.Payee, QueryAllData.AccountName, QueryAllData.Amount,
+            QueryAllData.Category, QueryAllData.Subcategory, QueryAllData.TransactionNumber,
+            QueryAllData.Notes });
+        cursor.addRow(new Object[] { "01/02/2017", "2017-02-01", "Shop", "Wallet", -10.5,
+            "Food", "", 1, "first" });
+        cursor.addRow(new Object[] { "02/02/2017", "2017-02-02", "", "Wallet", 20.0,
+            "Salary", "", 2, "second" });
+        cursor.addRow(new Object[] { "03/02/2017", "2017-02-03", "Shop", "Wallet", -3.0,
+            "Food", "", 3, "third" });
+        return cursor;
+    }
+}
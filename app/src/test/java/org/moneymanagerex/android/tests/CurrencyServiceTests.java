@@ -19,7 +19,9 @@ package org.moneymanagerex.android.tests;
 import android.content.Context;
 
 import com.money.manager.ex.BuildConfig;
+import com.money.manager.ex.core.FormatUtilities;
 import com.money.manager.ex.currency.CurrencyService;
+import com.money.manager.ex.domainmodel.Currency;
 
 import org.junit.After;
 import org.junit.Before;
@@ -29,6 +31,9 @@ import org.moneymanagerex.android.testhelpers.UnitTestHelper;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import info.javaperformance.money.Money;
+import info.javaperformance.money.MoneyFactory;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 /**
@@ -93,4 +98,47 @@ public class CurrencyServiceTests {
         //assertThat(actual).isEqualTo("EUR");
         assertThat(actual).isNotEmpty();
     }
+
+    @Test
+    public void formattingWithCachedFormatter() {
+        // Given
+        Context context = UnitTestHelper.getContext();
+        Currency currency = testObject.getCurrency(2);
+        Money amount = MoneyFactory.fromString("-1234.5678");
+        String expected = new FormatUtilities(context).format(amount, currency);
+
+        // When
+        String actual = testObject.getCurrencyFormatted(2, amount);
+
+        // Then
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    public void formattingWithSeparators() {
+        // Given
+        FormatUtilities format = new FormatUtilities(UnitTestHelper.getContext());
+        Money amount = MoneyFactory.fromString("1234.5");
+
+        // When, the shared formatters are found by the separators.
+        String first = format.format(amount, 100, ",", ".");
+        String second = format.format(amount, 100, ".", ",");
+
+        // Then
+        assertThat(first).isEqualTo("1.234,50");
+        assertThat(second).isEqualTo("1,234.50");
+        assertThat(format.format(amount, 100, ",", ".")).isEqualTo(first);
+    }
+
+    @Test
+    public void cachedCurrencyIsNotModifiedByCallers() {
+        // Given
+        Currency currency = testObject.getCurrency(2);
+
+        // When
+        currency.setCentName("changed");
+
+        // Then
+        assertThat(testObject.getCurrency(2).getCentName()).isNotEqualTo("changed");
+    }
 }
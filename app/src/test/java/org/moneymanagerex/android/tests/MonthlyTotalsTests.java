@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.moneymanagerex.android.tests;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.money.manager.ex.BuildConfig;
+import com.money.manager.ex.MoneyManagerApplication;
+import com.money.manager.ex.account.AccountStatuses;
+import com.money.manager.ex.account.AccountTypes;
+import com.money.manager.ex.core.TransactionTypes;
+import com.money.manager.ex.database.CacheState;
+import com.money.manager.ex.database.MonthlyTotals;
+import com.money.manager.ex.datalayer.AccountTransactionRepository;
+import com.money.manager.ex.datalayer.SplitCategoriesRepository;
+import com.money.manager.ex.domainmodel.Account;
+import com.money.manager.ex.domainmodel.AccountTransaction;
+import com.money.manager.ex.domainmodel.SplitCategory;
+import com.money.manager.ex.servicelayer.AccountService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.moneymanagerex.android.testhelpers.UnitTestHelper;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import info.javaperformance.money.MoneyFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Monthly totals tests.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class MonthlyTotalsTests {
+
+    private Context context;
+    private int accountId;
+
+    @Before
+    public void setup() {
+        UnitTestHelper.setupContentProvider();
+        context = UnitTestHelper.getContext();
+
+        Account account = new AccountService(context).createAccount("totals", AccountTypes.CHECKING,
+            AccountStatuses.OPEN, false, 2);
+        accountId = account.getId();
+    }
+
+    @After
+    public void tearDown() {
+        UnitTestHelper.teardownDatabase();
+    }
+
+    @Test
+    public void totalsFollowTransactionAndSplitChanges() {
+        // Given
+        AccountTransactionRepository repo = new AccountTransactionRepository(context);
+        AccountTransaction deposit = repo.insert(AccountTransaction.create(accountId, 1,
+            TransactionTypes.Deposit, 1, -1, MoneyFactory.fromString("100")));
+        AccountTransaction withdrawal = repo.insert(AccountTransaction.create(accountId, 1,
+            TransactionTypes.Withdrawal, 1, -1, MoneyFactory.fromString("30")));
+        AccountTransaction split = repo.insert(AccountTransaction.create(accountId, 1,
+            TransactionTypes.Withdrawal, -1, -1, MoneyFactory.fromString("50")));
+
+        SplitCategoriesRepository splitRepo = new SplitCategoriesRepository(context);
+        SplitCategory first = SplitCategory.create(split.getId(), 1, -1, TransactionTypes.Withdrawal,
+            MoneyFactory.fromString("20"));
+        SplitCategory second = SplitCategory.create(split.getId(), 2, -1, TransactionTypes.Withdrawal,
+            MoneyFactory.fromString("30"));
+        splitRepo.insert(first);
+        splitRepo.insert(second);
+
+        assertThat(getTotal(TransactionTypes.Deposit)).isEqualTo(100);
+        assertThat(getTotal(TransactionTypes.Withdrawal)).isEqualTo(-80);
+
+        // When
+        withdrawal.setAmount(MoneyFactory.fromString("40"));
+        repo.update(withdrawal);
+        second.setAmount(MoneyFactory.fromString("25"));
+        splitRepo.update(second);
+        context.getContentResolver().delete(repo.getUri(), AccountTransaction.TRANSID + "=?",
+            new String[] { Integer.toString(deposit.getId()) });
+
+        // Then
+        assertThat(getTotal(TransactionTypes.Deposit)).isEqualTo(0);
+        assertThat(getTotal(TransactionTypes.Withdrawal)).isEqualTo(-85);
+        assertThat(new MonthlyTotals(getDatabase()).verify()).isEqualTo(0);
+    }
+
+    @Test
+    public void totalsAreRebuiltAfterASplitEditOutsideOfTheApp() {
+        // Given
+        AccountTransactionRepository repo = new AccountTransactionRepository(context);
+        AccountTransaction split = repo.insert(AccountTransaction.create(accountId, 1,
+            TransactionTypes.Withdrawal, -1, -1, MoneyFactory.fromString("50")));
+        SplitCategory first = SplitCategory.create(split.getId(), 1, -1, TransactionTypes.Withdrawal,
+            MoneyFactory.fromString("50"));
+        new SplitCategoriesRepository(context).insert(first);
+
+        SQLiteDatabase db = getDatabase();
+        MonthlyTotals totals = new MonthlyTotals(db);
+        totals.ensure(new CacheState(db));
+        // the app's own writes keep the totals current.
+        assertThat(totals.ensure(new CacheState(db))).isFalse();
+
+        // When the split amount is changed, keeping the number of splits and the ids.
+        db.execSQL("UPDATE SPLITTRANSACTIONS_V1 SET SPLITTRANSAMOUNT = 45 WHERE TRANSID = " + split.getId());
+        totals.ensure(new CacheState(db));
+
+        // Then
+        assertThat(getTotal(TransactionTypes.Withdrawal)).isEqualTo(-45);
+    }
+
+    private double getTotal(TransactionTypes type) {
+        Cursor c = getDatabase().rawQuery("SELECT TOTAL(" + MonthlyTotals.TOTAL + ") FROM " +
+            MonthlyTotals.TABLE_NAME + " WHERE " + MonthlyTotals.TRANSCODE + "=?",
+            new String[] { type.name() });
+        try {
+            c.moveToFirst();
+            return c.getDouble(0);
+        } finally {
+            c.close();
+        }
+    }
+
+    private SQLiteDatabase getDatabase() {
+        return MoneyManagerApplication.getApp().openHelperAtomicReference.get().getWritableDatabase();
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.moneymanagerex.android.tests;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.money.manager.ex.BuildConfig;
+import com.money.manager.ex.MoneyManagerApplication;
+import com.money.manager.ex.account.AccountStatuses;
+import com.money.manager.ex.account.AccountTypes;
+import com.money.manager.ex.core.TransactionTypes;
+import com.money.manager.ex.database.DataChangeBus;
+import com.money.manager.ex.datalayer.AccountTransactionRepository;
+import com.money.manager.ex.datalayer.NameIndex;
+import com.money.manager.ex.domainmodel.Account;
+import com.money.manager.ex.domainmodel.AccountTransaction;
+import com.money.manager.ex.domainmodel.Payee;
+import com.money.manager.ex.servicelayer.AccountService;
+import com.money.manager.ex.servicelayer.PayeeService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.moneymanagerex.android.testhelpers.UnitTestHelper;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import info.javaperformance.money.MoneyFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Payee and category name index tests.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class NameIndexTests {
+
+    private Context context;
+
+    @Before
+    public void setup() {
+        UnitTestHelper.setupContentProvider();
+        context = UnitTestHelper.getContext();
+    }
+
+    @After
+    public void tearDown() {
+        UnitTestHelper.teardownDatabase();
+    }
+
+    @Test
+    public void payeesStartingWithTheFilterComeFirst() {
+        // Given
+        PayeeService service = new PayeeService(context);
+        service.createNew("Café Central");
+        Payee market = service.createNew("Central Market");
+        service.createNew("Centrale");
+        service.createNew("Pharmacy");
+
+        Account account = new AccountService(context).createAccount("names", AccountTypes.CHECKING,
+            AccountStatuses.OPEN, false, 2);
+        AccountTransactionRepository repo = new AccountTransactionRepository(context);
+        repo.insert(AccountTransaction.create(account.getId(), market.getId(),
+            TransactionTypes.Withdrawal, 1, -1, MoneyFactory.fromString("10")));
+
+        NameIndex index = new NameIndex(MoneyManagerApplication.getApp(), new DataChangeBus());
+
+        // Then
+        assertThat(getNames(index.findPayees("CAFE", false))).containsExactly("Café Central");
+        assertThat(getNames(index.findPayees("central", false)))
+            .containsExactly("Central Market", "Centrale", "Café Central");
+        // the used one first, among those starting with the filter.
+        assertThat(getNames(index.findPayees("centr", true)))
+            .containsExactly("Central Market", "Centrale", "Café Central");
+        assertThat(getNames(index.findPayees("centrale", true))).containsExactly("Centrale");
+        assertThat(index.findPayees(null, false)).hasSize(4);
+    }
+
+    @Test
+    public void usageFollowsTheTransactionsWithoutReloading() {
+        // Given
+        PayeeService service = new PayeeService(context);
+        Payee bakery = service.createNew("Bakery");
+        Payee butcher = service.createNew("Butcher");
+        Payee grocer = service.createNew("Grocer");
+
+        Account account = new AccountService(context).createAccount("usage", AccountTypes.CHECKING,
+            AccountStatuses.OPEN, false, 2);
+        AccountTransactionRepository repo = new AccountTransactionRepository(context);
+        AccountTransaction tx = repo.insert(AccountTransaction.create(account.getId(), bakery.getId(),
+            TransactionTypes.Withdrawal, 1, -1, MoneyFactory.fromString("10")));
+
+        MoneyManagerApplication app = MoneyManagerApplication.getApp();
+        NameIndex index = new NameIndex(app, app.iocComponent.dataChangeBus());
+        assertThat(getNames(index.findPayees("b", true))).containsExactly("Bakery", "Butcher");
+        // not reported, so it stays in the index unless it is read again.
+        SQLiteDatabase db = app.openHelperAtomicReference.get().getWritableDatabase();
+        db.execSQL("DELETE FROM PAYEE_V1 WHERE PAYEEID = " + grocer.getId());
+
+        // When
+        repo.insert(AccountTransaction.create(account.getId(), butcher.getId(),
+            TransactionTypes.Withdrawal, 1, -1, MoneyFactory.fromString("20")));
+        tx.setPayeeId(butcher.getId());
+        repo.update(tx);
+
+        // Then
+        assertThat(getNames(index.findPayees("b", true))).containsExactly("Butcher", "Bakery");
+        List<NameIndex.PayeeEntry> payees = index.findPayees(null, true);
+        assertThat(getNames(payees)).containsExactly("Butcher", "Bakery", "Grocer");
+        assertThat(payees.get(0).usage).isEqualTo(2);
+        assertThat(payees.get(1).usage).isEqualTo(0);
+    }
+
+    @Test
+    public void indexIsReloadedAfterTheFileIsReplaced() {
+        // Given
+        new PayeeService(context).createNew("Bakery");
+        MoneyManagerApplication app = MoneyManagerApplication.getApp();
+        NameIndex index = new NameIndex(app, app.iocComponent.dataChangeBus());
+        assertThat(getNames(index.findPayees(null, false))).containsExactly("Bakery");
+
+        // When the file changes at the same path, i.e. downloaded by the sync.
+        String path = app.openHelperAtomicReference.get().getDatabaseName();
+        app.closeDb(path);
+        SQLiteDatabase db = app.openHelperAtomicReference.get().getWritableDatabase();
+        db.execSQL("INSERT INTO PAYEE_V1 (PAYEENAME, CATEGID, SUBCATEGID) VALUES ('Butcher', -1, -1)");
+        app.databaseReplaced(path);
+
+        // Then
+        assertThat(getNames(index.findPayees(null, false))).containsExactly("Bakery", "Butcher");
+    }
+
+    private List<String> getNames(List<NameIndex.PayeeEntry> payees) {
+        List<String> names = new ArrayList<>();
+        for (NameIndex.PayeeEntry payee : payees) {
+            names.add(payee.name);
+        }
+        return names;
+    }
+}
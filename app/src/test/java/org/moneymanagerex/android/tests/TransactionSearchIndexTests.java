@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.moneymanagerex.android.tests;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.money.manager.ex.BuildConfig;
+import com.money.manager.ex.MoneyManagerApplication;
+import com.money.manager.ex.account.AccountStatuses;
+import com.money.manager.ex.account.AccountTypes;
+import com.money.manager.ex.core.TransactionTypes;
+import com.money.manager.ex.database.CacheState;
+import com.money.manager.ex.database.TransactionSearchIndex;
+import com.money.manager.ex.datalayer.AccountTransactionRepository;
+import com.money.manager.ex.domainmodel.Account;
+import com.money.manager.ex.domainmodel.AccountTransaction;
+import com.money.manager.ex.servicelayer.AccountService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.moneymanagerex.android.testhelpers.UnitTestHelper;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import info.javaperformance.money.MoneyFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Transaction search index tests.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class TransactionSearchIndexTests {
+
+    private Context context;
+    private int accountId;
+
+    @Before
+    public void setup() {
+        UnitTestHelper.setupContentProvider();
+        context = UnitTestHelper.getContext();
+
+        Account account = new AccountService(context).createAccount("search", AccountTypes.CHECKING,
+            AccountStatuses.OPEN, false, 2);
+        accountId = account.getId();
+    }
+
+    @After
+    public void tearDown() {
+        UnitTestHelper.teardownDatabase();
+    }
+
+    @Test
+    public void matchQueryIsMadeOfWordPrefixes() {
+        assertThat(TransactionSearchIndex.getMatchQuery("Joe's \"Diner\" OR")).isEqualTo("joe* s* diner* or*");
+        assertThat(TransactionSearchIndex.getMatchQuery(" '%- ")).isNull();
+        // the tokenizer folds only the ASCII letters.
+        assertThat(TransactionSearchIndex.getMatchQuery("CAFÉ Éclair")).isEqualTo("cafÉ* Éclair*");
+    }
+
+    @Test
+    public void indexIsRebuiltAfterANoteEditOutsideOfTheApp() {
+        // Given
+        AccountTransactionRepository repo = new AccountTransactionRepository(context);
+        AccountTransaction dinner = AccountTransaction.create(accountId, 1,
+            TransactionTypes.Withdrawal, 1, -1, MoneyFactory.fromString("30"));
+        dinner.setNotes("Dinner");
+        dinner = repo.insert(dinner);
+
+        SQLiteDatabase db = getDatabase();
+        TransactionSearchIndex index = new TransactionSearchIndex(db);
+        index.ensure(new CacheState(db));
+        // the app's own writes keep the index current.
+        assertThat(index.ensure(new CacheState(db))).isFalse();
+
+        // When
+        db.execSQL("UPDATE CHECKINGACCOUNT_V1 SET NOTES = 'Breakfast' WHERE TRANSID = " + dinner.getId());
+        index.ensure(new CacheState(db));
+
+        // Then
+        assertThat(count("dinner")).isEqualTo(0);
+        assertThat(count("breakfast")).isEqualTo(1);
+    }
+
+    @Test
+    public void emptyIndexIsBuiltBeforeTheFirstSearch() {
+        // Given
+        AccountTransactionRepository repo = new AccountTransactionRepository(context);
+        AccountTransaction dinner = AccountTransaction.create(accountId, 1,
+            TransactionTypes.Withdrawal, 1, -1, MoneyFactory.fromString("30"));
+        dinner.setNotes("Dinner");
+        repo.insert(dinner);
+
+        SQLiteDatabase db = getDatabase();
+        TransactionSearchIndex index = new TransactionSearchIndex(db);
+        // as after the upgrade that creates the index.
+        db.execSQL("DELETE FROM " + TransactionSearchIndex.TABLE_NAME);
+
+        // When
+        boolean built = index.ensureNotEmpty();
+
+        // Then
+        assertThat(built).isTrue();
+        assertThat(count("dinner")).isEqualTo(1);
+        assertThat(index.ensureNotEmpty()).isFalse();
+    }
+
+    @Test
+    public void indexFollowsTransactionChanges() {
+        // Given
+        AccountTransactionRepository repo = new AccountTransactionRepository(context);
+        AccountTransaction dinner = AccountTransaction.create(accountId, 1,
+            TransactionTypes.Withdrawal, 1, -1, MoneyFactory.fromString("30"));
+        dinner.setNotes("Dinner at Joe's");
+        dinner = repo.insert(dinner);
+        AccountTransaction salary = AccountTransaction.create(accountId, 1,
+            TransactionTypes.Deposit, 1, -1, MoneyFactory.fromString("100"));
+        salary.setTransactionNumber("INV-2017");
+        salary = repo.insert(salary);
+
+        assertThat(count("joe's din")).isEqualTo(1);
+        assertThat(count("inv 2017")).isEqualTo(1);
+
+        // When
+        dinner.setNotes("Lunch");
+        repo.update(dinner);
+        context.getContentResolver().delete(repo.getUri(), AccountTransaction.TRANSID + "=?",
+            new String[] { Integer.toString(salary.getId()) });
+
+        // Then
+        assertThat(count("dinner")).isEqualTo(0);
+        assertThat(count("lun")).isEqualTo(1);
+        assertThat(count("inv")).isEqualTo(0);
+        assertThat(new TransactionSearchIndex(getDatabase()).verify()).isEqualTo(0);
+    }
+
+    private int count(String text) {
+        Cursor c = getDatabase().rawQuery("SELECT COUNT(*) FROM CHECKINGACCOUNT_V1 WHERE " +
+            TransactionSearchIndex.getMatchSelection("TRANSID", text), null);
+        try {
+            c.moveToFirst();
+            return c.getInt(0);
+        } finally {
+            c.close();
+        }
+    }
+
+    private SQLiteDatabase getDatabase() {
+        return MoneyManagerApplication.getApp().openHelperAtomicReference.get().getWritableDatabase();
+    }
+}
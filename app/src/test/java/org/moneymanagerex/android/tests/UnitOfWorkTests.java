@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.moneymanagerex.android.tests;
+
+import android.content.Context;
+
+import com.money.manager.ex.BuildConfig;
+import com.money.manager.ex.Constants;
+import com.money.manager.ex.account.AccountStatuses;
+import com.money.manager.ex.account.AccountTypes;
+import com.money.manager.ex.core.TransactionTypes;
+import com.money.manager.ex.database.ISplitTransaction;
+import com.money.manager.ex.database.ITransactionEntity;
+import com.money.manager.ex.datalayer.AccountTransactionRepository;
+import com.money.manager.ex.datalayer.SplitCategoriesRepository;
+import com.money.manager.ex.datalayer.UnitOfWork;
+import com.money.manager.ex.domainmodel.Account;
+import com.money.manager.ex.domainmodel.AccountTransaction;
+import com.money.manager.ex.domainmodel.SplitCategory;
+import com.money.manager.ex.servicelayer.AccountService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.moneymanagerex.android.testhelpers.UnitTestHelper;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+
+import info.javaperformance.money.MoneyFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit of work tests.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class UnitOfWorkTests {
+
+    private Context context;
+    private int accountId;
+
+    @Before
+    public void setup() {
+        UnitTestHelper.setupContentProvider();
+        context = UnitTestHelper.getContext();
+
+        Account account = new AccountService(context).createAccount("work", AccountTypes.CHECKING,
+            AccountStatuses.OPEN, false, 2);
+        accountId = account.getId();
+    }
+
+    @After
+    public void tearDown() {
+        UnitTestHelper.teardownDatabase();
+    }
+
+    @Test
+    public void savesTransactionWithSplits() {
+        // Given
+        AccountTransactionRepository txRepo = new AccountTransactionRepository(context);
+        SplitCategoriesRepository splitRepo = new SplitCategoriesRepository(context);
+        UnitOfWork work = new UnitOfWork(context);
+
+        // When
+        int txInsert = txRepo.insert(work, createTransaction());
+        splitRepo.insert(work, createSplit("10"), txInsert);
+        splitRepo.insert(work, createSplit("15"), txInsert);
+        boolean committed = work.commit();
+
+        // Then
+        assertThat(committed).isTrue();
+        int transactionId = work.getInsertedId(txInsert);
+        assertThat(txRepo.load(transactionId)).isNotNull();
+        List<ISplitTransaction> splits = splitRepo.loadSplitCategoriesFor(transactionId);
+        assertThat(splits).hasSize(2);
+    }
+
+    @Test
+    public void savesNothingWhenAnOperationFails() {
+        // Given
+        AccountTransactionRepository txRepo = new AccountTransactionRepository(context);
+        SplitCategoriesRepository splitRepo = new SplitCategoriesRepository(context);
+        UnitOfWork work = new UnitOfWork(context);
+
+        SplitCategory invalid = createSplit("10");
+        invalid.contentValues.put("NO_SUCH_COLUMN", 1);
+
+        // When
+        int txInsert = txRepo.insert(work, createTransaction());
+        splitRepo.insert(work, invalid, txInsert);
+        boolean committed = work.commit();
+
+        // Then
+        assertThat(committed).isFalse();
+        assertThat(work.getInsertedId(txInsert)).isEqualTo(Constants.NOT_SET);
+        assertThat(txRepo.count(ITransactionEntity.ACCOUNTID + "=?",
+            new String[] { Integer.toString(accountId) })).isEqualTo(0);
+    }
+
+    @Test
+    public void failsWhenTheUpdatedTransactionNoLongerExists() {
+        // Given
+        AccountTransactionRepository txRepo = new AccountTransactionRepository(context);
+        AccountTransaction deleted = txRepo.insert(createTransaction());
+        context.getContentResolver().delete(txRepo.getUri(), AccountTransaction.TRANSID + "=?",
+            new String[] { Integer.toString(deleted.getId()) });
+        UnitOfWork work = new UnitOfWork(context);
+
+        // When
+        txRepo.update(work, deleted);
+        int txInsert = txRepo.insert(work, createTransaction());
+        boolean committed = work.commit();
+
+        // Then
+        assertThat(committed).isFalse();
+        assertThat(work.getInsertedId(txInsert)).isEqualTo(Constants.NOT_SET);
+        assertThat(txRepo.count(ITransactionEntity.ACCOUNTID + "=?",
+            new String[] { Integer.toString(accountId) })).isEqualTo(0);
+    }
+
+    private AccountTransaction createTransaction() {
+        return AccountTransaction.create(accountId, 1, TransactionTypes.Withdrawal, 1, -1,
+            MoneyFactory.fromString("25"));
+    }
+
+    private SplitCategory createSplit(String amount) {
+        return SplitCategory.create(Constants.NOT_SET, 1, -1, TransactionTypes.Withdrawal,
+            MoneyFactory.fromString(amount));
+    }
+}
@@ -0,0 +1,195 @@
+/*
+* Copyright 2014 Mikhail Vorontsov
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package info.javaperformance.money;
+
+import java.math.BigDecimal;
+
+/**
+ * Mutable sum of Money values. Keeps the total as <code>long</code> units and precision and only
+ * switches to BigDecimal on overflow, so that summing a sequence of values does not create a new
+ * Money object for every addition.
+ * Instances are not thread-safe.
+ */
+public class MoneyAccumulator {
+
+    /**
+     * @param units Currency units of all values
+     * @param precision Precision of the units
+     * @return sum of the units
+     */
+    public static Money sum( final long[] units, final int precision ) {
+        return sum( units, 0, units.length, precision );
+    }
+
+    /**
+     * @param units Currency units
+     * @param offset Index of the first value
+     * @param length Number of values
+     * @param precision Precision of the units
+     * @return sum of the given part of the array
+     */
+    public static Money sum( final long[] units, final int offset, final int length, final int precision ) {
+        MoneyFactory.checkPrecision( precision );
+
+        final MoneyAccumulator acc = new MoneyAccumulator();
+        long total = 0;
+        long value;
+        long res;
+        for ( int i = offset; i < offset + length; ++i )
+        {
+            value = units[ i ];
+            res = total + value;
+            if ( isOverflow( total, value, res ) )
+            {
+                //continue with the slow path
+                acc.add( total, precision );
+                total = value;
+            }
+            else
+                total = res;
+        }
+        acc.add( total, precision );
+        return acc.toMoney();
+    }
+
+    /**
+     * @return sum of the values, zero for no values
+     */
+    public static Money sum( final Iterable<? extends Money> values ) {
+        final MoneyAccumulator acc = new MoneyAccumulator();
+        for ( final Money value : values )
+            acc.add( value );
+        return acc.toMoney();
+    }
+
+    /** Sum in units of <code>10^-m_precision</code>, valid while <code>m_big</code> is null */
+    private long m_units;
+    private int m_precision;
+    /** Sum after a <code>long</code> overflow */
+    private BigDecimal m_big;
+
+    public MoneyAccumulator() {
+    }
+
+    public MoneyAccumulator( final Money initial ) {
+        add( initial );
+    }
+
+    /**
+     * Add the given number of currency units.
+     * @param units Currency units
+     * @param precision Precision of the units
+     * @return this accumulator
+     */
+    public MoneyAccumulator add( final long units, final int precision ) {
+        MoneyFactory.checkPrecision( precision );
+        if ( m_big != null )
+        {
+            m_big = m_big.add( BigDecimal.valueOf( units, precision ) );
+            return this;
+        }
+
+        long value = units;
+        if ( precision > m_precision )
+        {
+            final long multiplier = MoneyFactory.MULTIPLIERS[ precision - m_precision ];
+            final long mult = m_units * multiplier;
+            if ( mult / multiplier != m_units ) //overflow check
+                return addBig( BigDecimal.valueOf( units, precision ) );
+            m_units = mult;
+            m_precision = precision;
+        }
+        else if ( precision < m_precision )
+        {
+            final long multiplier = MoneyFactory.MULTIPLIERS[ m_precision - precision ];
+            value = units * multiplier;
+            if ( value / multiplier != units ) //overflow check
+                return addBig( BigDecimal.valueOf( units, precision ) );
+        }
+
+        final long res = m_units + value;
+        if ( isOverflow( m_units, value, res ) )
+            return addBig( BigDecimal.valueOf( units, precision ) );
+        m_units = res;
+        return this;
+    }
+
+    /**
+     * @return this accumulator
+     */
+    public MoneyAccumulator add( final Money value ) {
+        if ( value instanceof MoneyLong )
+        {
+            final MoneyLong other = ( MoneyLong ) value;
+            return add( other.getUnits(), other.getPrecision() );
+        }
+        return addBig( value.toBigDecimal() );
+    }
+
+    /**
+     * @return this accumulator
+     */
+    public MoneyAccumulator subtract( final Money value ) {
+        if ( value instanceof MoneyLong && ( ( MoneyLong ) value ).getUnits() != Long.MIN_VALUE )
+        {
+            final MoneyLong other = ( MoneyLong ) value;
+            return add( -other.getUnits(), other.getPrecision() );
+        }
+        return addBig( value.toBigDecimal().negate() );
+    }
+
+    /**
+     * Reset the sum to zero.
+     * @return this accumulator
+     */
+    public MoneyAccumulator clear() {
+        m_units = 0;
+        m_precision = 0;
+        m_big = null;
+        return this;
+    }
+
+    public boolean isZero() {
+        return m_big == null ? m_units == 0 : m_big.signum() == 0;
+    }
+
+    /**
+     * @return the current sum as a Money object
+     */
+    public Money toMoney() {
+        return m_big == null
+                ? MoneyFactory.fromUnits( m_units, m_precision )
+                : MoneyFactory.fromBigDecimal( m_big );
+    }
+
+    @Override
+    public String toString() {
+        return toMoney().toString();
+    }
+
+    private MoneyAccumulator addBig( final BigDecimal value ) {
+        if ( m_big == null )
+            m_big = BigDecimal.valueOf( m_units, m_precision );
+        m_big = m_big.add( value );
+        return this;
+    }
+
+    private static boolean isOverflow( final long x, final long y, final long res ) {
+        //the sign of the result differs from the signs of both arguments
+        return ( ( x ^ res ) & ( y ^ res ) ) < 0;
+    }
+}
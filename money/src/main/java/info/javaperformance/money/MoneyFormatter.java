@@ -0,0 +1,187 @@
+/*
+* Copyright 2014 Mikhail Vorontsov
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package info.javaperformance.money;
+
+import java.math.BigDecimal;
+
+/**
+ * Formats Money values with a fixed number of decimals, decimal and grouping separators
+ * (groups of 3 digits) and optional prefix/suffix.
+ * Values stored in a <code>long</code> are written digit by digit into a reusable buffer, without
+ * the conversion to double and the DecimalFormat machinery. Other values fall back to BigDecimal.
+ * The output matches <code>DecimalFormat("#,##0.00")</code> for the values rounded with
+ * {@link Money#truncate(int)}.
+ * Instances are not thread-safe and should be used on one thread at a time.
+ */
+public class MoneyFormatter {
+
+    /** Longest integer part: 19 digits and 6 group separators */
+    private static final int MAX_INTEGER_LENGTH = MoneyFactory.MAX_LONG_LENGTH + 6;
+
+    private final int m_decimals;
+    private final char m_decimalSeparator;
+    /** Grouping separator or 0 for no grouping */
+    private final char m_groupSeparator;
+    private final String m_prefix;
+    private final String m_suffix;
+    private final char[] m_buf;
+
+    /**
+     * @param decimals Number of digits after the decimal separator
+     * @param decimalSeparator Decimal separator
+     * @param groupSeparator Grouping separator, 0 for no grouping
+     * @param prefix Text written before the number, may be null
+     * @param suffix Text written after the number, may be null
+     */
+    public MoneyFormatter( final int decimals, final char decimalSeparator, final char groupSeparator,
+                           final String prefix, final String suffix ) {
+        MoneyFactory.checkPrecision( decimals );
+
+        m_decimals = decimals;
+        m_decimalSeparator = decimalSeparator;
+        m_groupSeparator = groupSeparator;
+        m_prefix = prefix == null ? "" : prefix;
+        m_suffix = suffix == null ? "" : suffix;
+        m_buf = new char[ m_prefix.length() + MAX_INTEGER_LENGTH + 2 + decimals + m_suffix.length() ];
+    }
+
+    public MoneyFormatter( final int decimals, final char decimalSeparator, final char groupSeparator ) {
+        this( decimals, decimalSeparator, groupSeparator, null, null );
+    }
+
+    public int getDecimals() {
+        return m_decimals;
+    }
+
+    /**
+     * @return formatted value
+     */
+    public String format( final Money value ) {
+        if ( isLongValue( value ) )
+        {
+            final int start = fill( ( MoneyLong ) value );
+            return new String( m_buf, start, m_buf.length - start );
+        }
+        final StringBuilder sb = new StringBuilder( m_buf.length );
+        appendBigDecimal( value.toBigDecimal(), sb );
+        return sb.toString();
+    }
+
+    /**
+     * Appends the formatted value to the given builder.
+     * @return the same builder
+     */
+    public StringBuilder format( final Money value, final StringBuilder sb ) {
+        if ( isLongValue( value ) )
+        {
+            final int start = fill( ( MoneyLong ) value );
+            return sb.append( m_buf, start, m_buf.length - start );
+        }
+        appendBigDecimal( value.toBigDecimal(), sb );
+        return sb;
+    }
+
+    private static boolean isLongValue( final Money value ) {
+        //Long.MIN_VALUE has no positive counterpart
+        return value instanceof MoneyLong && ( ( MoneyLong ) value ).getUnits() != Long.MIN_VALUE;
+    }
+
+    /**
+     * Writes the value into the end of the buffer.
+     * @return the position of the first character
+     */
+    private int fill( final MoneyLong value ) {
+        long units = value.getUnits();
+        int precision = value.getPrecision();
+        if ( precision > m_decimals )
+        {
+            //same rounding as MoneyLong.truncate
+            units = Math.round( units * MoneyFactory.MULTIPLIERS_NEG[ precision - m_decimals ] );
+            precision = m_decimals;
+        }
+        final boolean negative = units < 0;
+        if ( negative )
+            units = -units;
+
+        final char[] buf = m_buf;
+        int p = buf.length;
+
+        p -= m_suffix.length();
+        m_suffix.getChars( 0, m_suffix.length(), buf, p );
+
+        //fraction
+        for ( int i = precision; i < m_decimals; ++i )
+            buf[ --p ] = '0';
+        long q;
+        int rem;
+        for ( int i = 0; i < precision; ++i )
+        {
+            q = units / 10;
+            rem = (int) (units - q * 10);  //avoiding direct % call
+            buf[ --p ] = (char) ('0' + rem);
+            units = q;
+        }
+        if ( m_decimals > 0 )
+            buf[ --p ] = m_decimalSeparator;
+
+        //integer part
+        int digits = 0;
+        do
+        {
+            if ( digits > 0 && digits % 3 == 0 && m_groupSeparator != 0 )
+                buf[ --p ] = m_groupSeparator;
+            q = units / 10;
+            rem = (int) (units - q * 10);
+            buf[ --p ] = (char) ('0' + rem);
+            units = q;
+            ++digits;
+        }
+        while ( units > 0 );
+
+        if ( negative )
+            buf[ --p ] = '-';
+
+        p -= m_prefix.length();
+        m_prefix.getChars( 0, m_prefix.length(), buf, p );
+        return p;
+    }
+
+    private void appendBigDecimal( final BigDecimal value, final StringBuilder sb ) {
+        final BigDecimal rounded = value.setScale( m_decimals, BigDecimal.ROUND_HALF_UP );
+        final String digits = rounded.unscaledValue().abs().toString();
+        //pad the digits so that there is at least one integer digit
+        final int padding = Math.max( 0, m_decimals + 1 - digits.length() );
+        final int integerLength = digits.length() + padding - m_decimals;
+
+        sb.append( m_prefix );
+        if ( rounded.signum() < 0 )
+            sb.append( '-' );
+        for ( int i = 0; i < integerLength; ++i )
+        {
+            if ( i > 0 && ( integerLength - i ) % 3 == 0 && m_groupSeparator != 0 )
+                sb.append( m_groupSeparator );
+            sb.append( i < padding ? '0' : digits.charAt( i - padding ) );
+        }
+        if ( m_decimals > 0 )
+        {
+            sb.append( m_decimalSeparator );
+            for ( int i = integerLength; i < integerLength + m_decimals; ++i )
+                sb.append( i < padding ? '0' : digits.charAt( i - padding ) );
+        }
+        sb.append( m_suffix );
+    }
+}
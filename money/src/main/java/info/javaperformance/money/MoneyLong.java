@@ -35,6 +35,16 @@ class MoneyLong extends AbstractMoney {
         m_precision = precision;
     }
 
+    /** Number of currency units, used by MoneyFormatter */
+    long getUnits() {
+        return m_units;
+    }
+
+    /** Precision of the units, used by MoneyFormatter */
+    int getPrecision() {
+        return m_precision;
+    }
+
     /**
      * Convert to the original currency - divide <code>units</code> by <code>10^precision</code>.
      * @return <code>units / (10^precision)</code>
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.javaperformance.money;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MoneyAccumulatorTest {
+
+    @Test
+    public void addsValuesWithDifferentPrecision() {
+        final MoneyAccumulator acc = new MoneyAccumulator();
+        acc.add( MoneyFactory.fromString( "10.5" ) )
+                .add( MoneyFactory.fromString( "0.25" ) )
+                .add( 3, 0 )
+                .subtract( MoneyFactory.fromString( "1.125" ) );
+
+        assertEquals( MoneyFactory.fromString( "12.625" ), acc.toMoney() );
+    }
+
+    @Test
+    public void sameResultAsMoneyAdd() {
+        Money expected = MoneyFactory.fromUnits( 0, 0 );
+        final MoneyAccumulator acc = new MoneyAccumulator();
+        for ( int i = -500; i < 500; ++i )
+        {
+            final Money value = MoneyFactory.fromUnits( i * 7919L, i & 3 );
+            expected = expected.add( value );
+            acc.add( value );
+        }
+        assertEquals( expected, acc.toMoney() );
+    }
+
+    @Test
+    public void switchesToBigDecimalOnOverflow() {
+        final MoneyAccumulator acc = new MoneyAccumulator();
+        acc.add( Long.MAX_VALUE, 2 ).add( Long.MAX_VALUE, 2 ).add( 1, 4 );
+
+        final BigDecimal expected = BigDecimal.valueOf( Long.MAX_VALUE, 2 ).multiply( BigDecimal.valueOf( 2 ) )
+                .add( BigDecimal.valueOf( 1, 4 ) );
+        assertEquals( 0, expected.compareTo( acc.toMoney().toBigDecimal() ) );
+
+        acc.subtract( MoneyFactory.fromBigDecimal( expected ) );
+        assertTrue( acc.isZero() );
+    }
+
+    @Test
+    public void sumOfUnits() {
+        assertEquals( MoneyFactory.fromString( "6.06" ), MoneyAccumulator.sum( new long[] { 101, 202, 303 }, 2 ) );
+        assertEquals( MoneyFactory.fromUnits( 0, 0 ), MoneyAccumulator.sum( new long[ 0 ], 2 ) );
+
+        final Money big = MoneyAccumulator.sum( new long[] { Long.MAX_VALUE, Long.MAX_VALUE, -Long.MAX_VALUE }, 0 );
+        assertEquals( MoneyFactory.fromUnits( Long.MAX_VALUE, 0 ), big );
+    }
+
+    @Test
+    public void sumOfValues() {
+        final Money sum = MoneyAccumulator.sum( Arrays.asList( MoneyFactory.fromString( "1.1" ),
+                MoneyFactory.fromString( "2.2" ), MoneyFactory.fromDouble( 3.3, 2 ) ) );
+
+        assertEquals( MoneyFactory.fromString( "6.6" ), sum );
+    }
+}
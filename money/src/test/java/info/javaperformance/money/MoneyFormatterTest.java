@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2012-2017 The Android Money Manager Ex Project Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package info.javaperformance.money;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+
+import static org.junit.Assert.assertEquals;
+
+public class MoneyFormatterTest {
+
+    @Test
+    public void formatsWithGroupingAndScale() {
+        final MoneyFormatter formatter = new MoneyFormatter( 2, '.', ',' );
+
+        assertEquals( "0.00", formatter.format( MoneyFactory.fromUnits( 0, 0 ) ) );
+        assertEquals( "1,234,567.50", formatter.format( MoneyFactory.fromString( "1234567.5" ) ) );
+        assertEquals( "-1,000.00", formatter.format( MoneyFactory.fromUnits( -1000, 0 ) ) );
+        assertEquals( "123.46", formatter.format( MoneyFactory.fromString( "123.4567" ) ) );
+        assertEquals( "0.00", formatter.format( MoneyFactory.fromString( "-0.001" ) ) );
+        assertEquals( "-0.05", formatter.format( MoneyFactory.fromString( "-0.05" ) ) );
+    }
+
+    @Test
+    public void writesSeparatorsAndSymbols() {
+        final MoneyFormatter formatter = new MoneyFormatter( 3, ',', '.', "$ ", " USD" );
+
+        assertEquals( "$ 12.345,678 USD", formatter.format( MoneyFactory.fromString( "12345.678" ) ) );
+
+        final StringBuilder sb = new StringBuilder( "total: " );
+        formatter.format( MoneyFactory.fromUnits( 1, 0 ), sb );
+        assertEquals( "total: $ 1,000 USD", sb.toString() );
+    }
+
+    @Test
+    public void noDecimalsAndNoGrouping() {
+        final MoneyFormatter formatter = new MoneyFormatter( 0, '.', (char) 0 );
+
+        assertEquals( "1234568", formatter.format( MoneyFactory.fromString( "1234567.5" ) ) );
+    }
+
+    @Test
+    public void bigDecimalFallback() {
+        final MoneyFormatter formatter = new MoneyFormatter( 2, '.', ',' );
+
+        assertEquals( "12,345,678,901,234,567,890.13",
+                formatter.format( MoneyFactory.fromBigDecimal( new BigDecimal( "12345678901234567890.125" ) ) ) );
+        assertEquals( "-0.50",
+                formatter.format( MoneyFactory.fromBigDecimal( new BigDecimal( "-0.5" ) ) ) );
+        assertEquals( "-9,223,372,036,854,775,808.00",
+                formatter.format( MoneyFactory.fromUnits( Long.MIN_VALUE, 0 ) ) );
+    }
+
+    @Test
+    public void sameOutputAsDecimalFormat() {
+        final DecimalFormatSymbols symbols = new DecimalFormatSymbols();
+        symbols.setDecimalSeparator( '.' );
+        symbols.setGroupingSeparator( ',' );
+        final DecimalFormat decimalFormat = new DecimalFormat( "#,##0.00", symbols );
+        final MoneyFormatter formatter = new MoneyFormatter( 2, '.', ',' );
+
+        for ( long units = -2000000; units <= 2000000; units += 997 )
+        {
+            final Money value = MoneyFactory.fromUnits( units, 3 );
+            assertEquals( decimalFormat.format( value.truncate( 2 ).toDouble() ), formatter.format( value ) );
+        }
+    }
+}